@@ -0,0 +1,83 @@
+package cz.cuni.mff.pijalekj.benchmarks;
+
+import cz.cuni.mff.pijalekj.battle.Battle;
+import cz.cuni.mff.pijalekj.entities.Entity;
+import cz.cuni.mff.pijalekj.entities.Pirate;
+import cz.cuni.mff.pijalekj.entities.Police;
+import cz.cuni.mff.pijalekj.entities.Trader;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
+import cz.cuni.mff.pijalekj.world.EntityStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Measures single battles: pirates attacking traders and police attacking pirates. A battle takes well under
+ * a microsecond, so every invocation fights a batch of battles and the score is per battle. Both fighters
+ * are repaired right before their battle, within the batch, so every battle starts at full health.
+ */
+@State(Scope.Benchmark)
+public class BattleBenchmark extends BenchmarkDefaults {
+    /** The number of battles fought by one invocation. */
+    private static final int BATCH = 1024;
+
+    private final SplittableRandom random = new SplittableRandom(WorldState.SEED);
+    private EntityStore store;
+    private Entity[] attackers;
+    private Entity[] defenders;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp(WorldState world) {
+        store = world.entityManager.getStore();
+        var pirates = new ArrayList<Entity>();
+        var traders = new ArrayList<Entity>();
+        var police = new ArrayList<Entity>();
+        for (var entity : world.entityManager.getEntities()) {
+            switch (entity) {
+                case Pirate pirate -> pirates.add(pirate);
+                case Trader trader -> traders.add(trader);
+                case Police officer -> police.add(officer);
+                default -> {}
+            }
+        }
+
+        int count = 2 * pirates.size();
+        attackers = new Entity[count];
+        defenders = new Entity[count];
+        for (int i = 0; i < pirates.size(); ++i) {
+            attackers[2 * i] = pirates.get(i);
+            defenders[2 * i] = traders.get(i % traders.size());
+            attackers[2 * i + 1] = police.get(i % police.size());
+            defenders[2 * i + 1] = pirates.get(i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void fight() {
+        for (int i = 0; i < BATCH; ++i) {
+            next = (next + 1) % attackers.length;
+            repair(attackers[next]);
+            repair(defenders[next]);
+            new Battle(attackers[next], defenders[next], random).fight();
+        }
+    }
+
+    /**
+     * Restores the hull and shields of an entity's ship.
+     *
+     * @param entity The entity to repair.
+     */
+    private void repair(Entity entity) {
+        int slot = EntityIDs.slotOf(entity.getID());
+        store.setHull(slot, store.getMaxHull(slot));
+        store.setShields(slot, store.getMaxShields(slot));
+    }
+}
@@ -0,0 +1,40 @@
+package cz.cuni.mff.pijalekj.benchmarks;
+
+import cz.cuni.mff.pijalekj.constants.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures a tick of the criminals' timeouts. Every tick marks a share of the NPCs as criminals, so that
+ * all NPCs are criminals most of the time and some of them expire every tick, as in a violent world.
+ */
+@State(Scope.Benchmark)
+public class CriminalsBenchmark extends BenchmarkDefaults {
+    private WorldState world;
+    private int[] entityIDs;
+    private int perTick;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp(WorldState world) {
+        this.world = world;
+        var entities = world.entityManager.getEntities();
+        entityIDs = new int[entities.length];
+        for (int i = 0; i < entities.length; ++i) {
+            entityIDs[i] = entities[i].getID();
+        }
+        perTick = Math.max(1, entityIDs.length / Constants.DEFAULT_TIMEOUT);
+    }
+
+    @Benchmark
+    public void updateCriminals() {
+        for (int i = 0; i < perTick; ++i) {
+            world.criminalsManager.addCriminal(entityIDs[next]);
+            next = (next + 1) % entityIDs.length;
+        }
+        world.criminalsManager.updateCriminals();
+    }
+}
@@ -0,0 +1,208 @@
+package cz.cuni.mff.pijalekj.benchmarks;
+
+import cz.cuni.mff.pijalekj.battle.BattleResolver;
+import cz.cuni.mff.pijalekj.constants.EconomyTables;
+import cz.cuni.mff.pijalekj.entities.Pirate;
+import cz.cuni.mff.pijalekj.entities.Trader;
+import cz.cuni.mff.pijalekj.enums.ShipType;
+import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.ships.Ship;
+import cz.cuni.mff.pijalekj.world.TradeRouteTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.function.IntConsumer;
+
+/**
+ * Measures the decisions of single NPCs: a trader choosing the route of its plan and a pirate looking
+ * for a victim. Both decisions are replayed through the public queries the NPCs make, which change
+ * nothing, so the NPCs are simply taken in turns.
+ * <p>
+ * The rows of the trade route table are kept for a big tick, and a big tick rebuilds the rows traders
+ * planned from since the previous one. Every invocation of the route choice therefore comes after a new big
+ * tick, in which the traders of the batch have planned from their planets before, as they keep doing in a
+ * running game. The rebuilds are left to the big tick, outside of the measurement, so the route choice
+ * measures what traders do during a tick: looking the routes up and rating them for themselves.
+ */
+@State(Scope.Benchmark)
+public class EntityBenchmark extends BenchmarkDefaults {
+    /** The number of traders planning in one invocation, after one big tick. */
+    private static final int TRADER_BATCH = 64;
+
+    private LocationsManager locationsManager;
+    private EntityManager entityManager;
+    private TradeRouteTable tradeRoutes;
+    private Trader[] traders;
+    private Pirate[] pirates;
+    private final int[] toBuy = new int[EconomyTables.GOODS_COUNT];
+    private final VictimScan victimScan = new VictimScan();
+    private int nextTrader = 0;
+    private int nextPirate = 0;
+
+    @Setup(Level.Trial)
+    public void setUp(WorldState world) {
+        locationsManager = world.locationsManager;
+        entityManager = world.entityManager;
+        tradeRoutes = locationsManager.getTradeRoutes();
+        var traderList = new ArrayList<Trader>();
+        var pirateList = new ArrayList<Pirate>();
+        for (var entity : entityManager.getEntities()) {
+            if (entity instanceof Trader trader && !trader.isTraveling()) {
+                traderList.add(trader);
+            } else if (entity instanceof Pirate pirate) {
+                pirateList.add(pirate);
+            }
+        }
+        traders = traderList.toArray(Trader[]::new);
+        pirates = pirateList.toArray(Pirate[]::new);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRADER_BATCH)
+    public int chooseTraderRoute(BigTickState bigTick) {
+        int destinations = 0;
+        for (int i = 0; i < TRADER_BATCH; ++i) {
+            destinations += chooseRoute(traders[nextTrader]);
+            nextTrader = (nextTrader + 1) % traders.length;
+        }
+        return destinations;
+    }
+
+    @Benchmark
+    public int findVictim() {
+        var pirate = pirates[nextPirate];
+        nextPirate = (nextPirate + 1) % pirates.length;
+        return scanForVictim(pirate);
+    }
+
+    /**
+     * Chooses the route of a trading plan as the trader does: the best routes from its location for its
+     * bracket are looked up in the trade route table and re-rated for its own credits and free space.
+     *
+     * @param trader The planning trader.
+     * @return The ID of the destination of the best route, or -1 if no planet is within reach.
+     */
+    private int chooseRoute(Trader trader) {
+        var stats = trader.getEntityStats();
+        int originID = trader.getCurrPosition();
+        int credits = stats.getCredits();
+        int freeSpace = trader.getOwnedShip().getMaxCargo() - stats.getTotalGoodsAmount();
+        int bracket = TradeRouteTable.getBracket(credits, freeSpace);
+
+        int bestRating = Integer.MIN_VALUE;
+        int bestDestinationID = -1;
+        for (int rank = 0; rank < TradeRouteTable.ROUTES_PER_BRACKET; ++rank) {
+            int destinationID = tradeRoutes.getDestination(originID, bracket, rank);
+            if (destinationID < 0) {
+                break;
+            }
+            int travelLength = tradeRoutes.getTravelLength(originID, bracket, rank);
+            int rating = tradeRoutes.rate(originID, destinationID, travelLength, credits, freeSpace, toBuy);
+            if (rating > bestRating) {
+                bestRating = rating;
+                bestDestinationID = destinationID;
+            }
+        }
+        return bestDestinationID;
+    }
+
+    /**
+     * Looks for a victim as the pirate does: the entities present where it is, or on its path, are visited
+     * and the one it outsustains the most is chosen.
+     *
+     * @param pirate The scanning pirate.
+     * @return The ID of the victim, or -1 if no entity is worth attacking.
+     */
+    private int scanForVictim(Pirate pirate) {
+        int from = pirate.getCurrPosition();
+        int to = pirate.isTraveling() ? pirate.getNextPosition() : from;
+        victimScan.reset(pirate);
+        locationsManager.forEachPresent(from, to, victimScan);
+        return victimScan.victimID;
+    }
+
+    /**
+     * Calculates the sustainability difference between an attacker and a victim, as the entities do.
+     *
+     * @param attacker The ship of the attacker.
+     * @param victim   The ship of the victim.
+     * @return The sustainability difference.
+     */
+    private static int outSustain(Ship attacker, Ship victim) {
+        return BattleResolver.outSustain(attacker.getHull() + attacker.getShields(),
+                victim.getHull() + victim.getShields(),
+                Ship.damageOutput(attacker, victim), Ship.damageOutput(victim, attacker));
+    }
+
+    /**
+     * Starts a new big tick before every invocation that uses it, after the traders of the next batch have
+     * looked up the routes from their planets, so that the big tick rebuilds the rows they plan on.
+     */
+    @State(Scope.Benchmark)
+    public static class BigTickState {
+        private LocationsManager locationsManager;
+
+        @Setup(Level.Trial)
+        public void setUp(WorldState world) {
+            locationsManager = world.locationsManager;
+        }
+
+        @Setup(Level.Invocation)
+        public void startBigTick(EntityBenchmark benchmark) {
+            var tradeRoutes = locationsManager.getTradeRoutes();
+            for (int i = 0; i < TRADER_BATCH; ++i) {
+                var trader = benchmark.traders[(benchmark.nextTrader + i) % benchmark.traders.length];
+                tradeRoutes.getDestination(trader.getCurrPosition(), 0, 0);
+            }
+            locationsManager.updateAllPlanets();
+        }
+    }
+
+    /**
+     * Visitor that remembers the present entity a pirate outsustains the most. One instance is reused
+     * for every scan, so that scanning does not allocate.
+     */
+    private final class VictimScan implements IntConsumer {
+        private Ship pirateShip;
+        private int pirateID;
+        private int maxSustain;
+        private int victimID;
+
+        /**
+         * Forgets the result of the previous scan and starts one for a pirate.
+         *
+         * @param pirate The scanning pirate.
+         */
+        private void reset(Pirate pirate) {
+            pirateShip = pirate.getOwnedShip();
+            pirateID = pirate.getID();
+            maxSustain = 0;
+            victimID = -1;
+        }
+
+        /**
+         * Rates one present entity as a potential victim.
+         *
+         * @param ID The ID of the present entity.
+         */
+        @Override
+        public void accept(int ID) {
+            var victimShip = entityManager.getEntityShip(ID);
+            var type = victimShip.getShipType();
+            if (type == ShipType.Gnat || type == ShipType.Flea || ID == pirateID) {
+                return;
+            }
+            int sustain = outSustain(pirateShip, victimShip);
+            if (sustain > maxSustain) {
+                maxSustain = sustain;
+                victimID = ID;
+            }
+        }
+    }
+}
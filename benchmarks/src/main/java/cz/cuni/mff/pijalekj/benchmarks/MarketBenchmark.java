@@ -0,0 +1,37 @@
+package cz.cuni.mff.pijalekj.benchmarks;
+
+import cz.cuni.mff.pijalekj.entities.Planet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the updates of markets: a big tick of all planets, and the update of a single planet.
+ * Markets are updated eagerly, as lazy markets defer the work of a big tick.
+ */
+@State(Scope.Benchmark)
+public class MarketBenchmark extends BenchmarkDefaults {
+    private WorldState world;
+    private Planet[] planets;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp(WorldState world) {
+        this.world = world;
+        world.locationsManager.setLazyMarkets(false);
+        planets = world.locationsManager.getAllPlanets();
+    }
+
+    @Benchmark
+    public void updateAllPlanets() {
+        world.locationsManager.updateAllPlanets();
+    }
+
+    @Benchmark
+    public void updatePlanet() {
+        planets[next].update();
+        next = (next + 1) % planets.length;
+    }
+}
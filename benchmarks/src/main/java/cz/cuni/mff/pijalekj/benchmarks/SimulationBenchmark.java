@@ -0,0 +1,44 @@
+package cz.cuni.mff.pijalekj.benchmarks;
+
+import cz.cuni.mff.pijalekj.Simulation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures whole ticks of the simulation: big ticks, NPCs playing, their battles and the update of criminals,
+ * on a varying number of threads. Every invocation runs the ticks of one market period, so it contains exactly
+ * one big tick, and the score is per tick. The world is generated anew for every iteration, so that all
+ * iterations start from the same state.
+ */
+@State(Scope.Benchmark)
+public class SimulationBenchmark extends BenchmarkDefaults {
+    /** The number of ticks run by one invocation, one market period. */
+    private static final int TICKS = 14;
+
+    @Param({"500", "2000", "8000"})
+    public int planets;
+
+    @Param({"1", "4"})
+    public int density;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Simulation simulation;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        simulation = WorldState.warmedUp(planets, density, threads);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public Simulation.Report tick() {
+        return simulation.run(TICKS);
+    }
+}
@@ -0,0 +1,49 @@
+package cz.cuni.mff.pijalekj.benchmarks;
+
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.persistence.WorldImage;
+import cz.cuni.mff.pijalekj.utils.WorldGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures the generation of planets and lanes, and opening the same world from its image. Entities are
+ * generated separately, so the density of NPCs does not apply.
+ */
+@State(Scope.Benchmark)
+public class WorldGeneratorBenchmark extends BenchmarkDefaults {
+    @Param({"500", "2000", "8000"})
+    public int planets;
+
+    private Path image;
+
+    @Setup(Level.Trial)
+    public void writeImage() throws IOException {
+        image = Files.createTempFile("world", ".img");
+        WorldImage.write(image, WorldGenerator.generateLocations(planets, WorldState.SEED));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteImage() throws IOException {
+        Files.deleteIfExists(image);
+    }
+
+    @Benchmark
+    public LocationsManager generateLocations() {
+        return WorldGenerator.generateLocations(planets, WorldState.SEED);
+    }
+
+    @Benchmark
+    public LocationsManager openImage() throws IOException {
+        return WorldImage.open(image).createLocations();
+    }
+}
@@ -0,0 +1,66 @@
+package cz.cuni.mff.pijalekj.benchmarks;
+
+import cz.cuni.mff.pijalekj.Simulation;
+import cz.cuni.mff.pijalekj.managers.CriminalsManager;
+import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A seeded world shared by the benchmarks, parameterized by the size of the galaxy and the density of NPCs.
+ * The world runs a number of ticks before it is measured, so that traders have plans, criminals are
+ * marked and markets went through big ticks.
+ */
+@State(Scope.Benchmark)
+public class WorldState {
+    /** The seed of every benchmarked world. */
+    public static final long SEED = 42;
+    /** How many ticks the world runs before it is measured. */
+    private static final int WARMUP_TICKS = 100;
+
+    @Param({"500", "2000", "8000"})
+    public int planets;
+
+    @Param({"1", "4"})
+    public int density;
+
+    public Simulation simulation;
+    public LocationsManager locationsManager;
+    public EntityManager entityManager;
+    public CriminalsManager criminalsManager;
+
+    /**
+     * Generates the world and lets it run for a while. The world runs on a single thread, so that the
+     * benchmarks measure the code rather than the machine's parallelism.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        simulation = warmedUp(planets, density, 1);
+        locationsManager = simulation.getLocationsManager();
+        entityManager = simulation.getEntityManager();
+        criminalsManager = simulation.getCriminalsManager();
+    }
+
+    /**
+     * Generates a seeded world and lets it run for a while.
+     *
+     * @param planets The number of planets in the galaxy.
+     * @param density The number of NPCs of each type generated at a planet.
+     * @param threads The number of threads the world runs on.
+     * @return The Simulation of the world.
+     */
+    public static Simulation warmedUp(int planets, int density, int threads) {
+        var simulation = new Simulation.Builder()
+                .planets(planets)
+                .density(density)
+                .seed(SEED)
+                .threads(threads)
+                .build();
+        simulation.run(WARMUP_TICKS);
+        return simulation;
+    }
+}
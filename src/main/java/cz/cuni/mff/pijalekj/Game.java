@@ -1,22 +1,30 @@
 package cz.cuni.mff.pijalekj;
 
-import cz.cuni.mff.pijalekj.battle.Battle;
+import cz.cuni.mff.pijalekj.battle.BattleEngine;
 import cz.cuni.mff.pijalekj.battle.Playerlike;
-import cz.cuni.mff.pijalekj.builders.ShipBuilder;
 import cz.cuni.mff.pijalekj.constants.Constants;
 import cz.cuni.mff.pijalekj.entities.*;
 import cz.cuni.mff.pijalekj.enums.GoodsIndex;
 import cz.cuni.mff.pijalekj.enums.ShipType;
 import cz.cuni.mff.pijalekj.managers.CriminalsManager;
 import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.FightRequests;
 import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.metrics.TickMetrics;
+import cz.cuni.mff.pijalekj.metrics.TickPhase;
+import cz.cuni.mff.pijalekj.metrics.TickTimer;
+import cz.cuni.mff.pijalekj.persistence.WorldSnapshot;
+import cz.cuni.mff.pijalekj.persistence.WorldState;
 import cz.cuni.mff.pijalekj.ships.Ship;
 import cz.cuni.mff.pijalekj.utils.RunnableWException;
+import cz.cuni.mff.pijalekj.world.ArbitrageIndex;
+import cz.cuni.mff.pijalekj.world.RngService;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Predicate;
 
@@ -25,12 +33,19 @@ import java.util.function.Predicate;
  * that all member variables have to be initialized.
  */
 public class Game  {
+    /** How many jumps away from the player the best deals are searched for. */
+    private static final int DEALS_JUMPS = 10;
+    /** How many best deals are shown. */
+    private static final int DEALS_SHOWN = 5;
     private final LocationsManager locationsManager;
     private final CriminalsManager criminalsManager;
     private final EntityManager entityManager;
-    private final GameClock clock = new GameClock();
+    private final GameClock clock;
+    private final BattleEngine battleEngine;
+    /** Measures the phases of every tick and publishes them over JMX. */
+    private final TickTimer timer = new TickTimer(TickMetrics.getPlatformInstance());
     /** Whether the game cycle runs for the first time. */
-    private boolean firstTime = true;
+    private boolean firstTime;
     /** Whether it should offer attacking ships when traveling. */
     private boolean searchOpponents = true;
 
@@ -41,9 +56,21 @@ public class Game  {
      * @param em The EntityManager the game is associated with.
      */
     public Game(LocationsManager lm, CriminalsManager cm, EntityManager em) {
-        locationsManager = lm;
-        criminalsManager = cm;
-        entityManager = em;
+        this(new WorldState(lm, em, cm, new GameClock()));
+        firstTime = true;
+    }
+
+    /**
+     * Constructs the game of a loaded world, whose player already has a name.
+     * @param world The world the game is associated with.
+     */
+    public Game(WorldState world) {
+        locationsManager = world.locationsManager();
+        criminalsManager = world.criminalsManager();
+        entityManager = world.entityManager();
+        clock = world.clock();
+        battleEngine = new BattleEngine(locationsManager.getRandom());
+        firstTime = false;
     }
 
     /**
@@ -52,7 +79,9 @@ public class Game  {
      * @throws Exception Any exception that is handled outside.
      */
     public boolean play() throws Exception {
-        handleGameTick();
+        timer.start();
+        boolean bigTick = handleGameTick();
+        timer.lap(TickPhase.bigTick);
 
         if (firstTime) {
             setPlayerName();
@@ -60,63 +89,56 @@ public class Game  {
         }
 
         OptionalInt playerActionResult = playerPlay();
-        HashMap<Integer, Integer> fightRequests = entityManager.play(playerActionResult);
-        handleBattles(fightRequests);
+        timer.lap(TickPhase.player);
+        FightRequests fightRequests = entityManager.play(playerActionResult, locationsManager);
+        timer.lap(TickPhase.play);
+        handlePlayerBattles(fightRequests);
+        timer.lap(TickPhase.player);
+        battleEngine.resolve(fightRequests, entityManager, criminalsManager);
+        timer.lap(TickPhase.battles);
         criminalsManager.updateCriminals();
+        timer.lap(TickPhase.criminals);
+        timer.end(bigTick);
 
         return entityManager.getPlayer().isAlive();
     }
 
     /**
-     * Updates all planets and resets all NPCs during the Big tick.
+     * Advances the world's randomness to the next tick. Updates all planets and resets all NPCs during the Big tick.
+     * @return Whether the tick is a big tick.
      */
-    private void handleGameTick() {
-        if (clock.tick()) {
+    private boolean handleGameTick() {
+        boolean bigTick = clock.tick();
+        locationsManager.getRandom().setTick(clock.get_ticks());
+        if (bigTick) {
             entityManager.resetNPCs(criminalsManager, locationsManager);
             locationsManager.updateAllPlanets();
         }
+        return bigTick;
     }
 
     /**
-     * Handles all requested battles in the fightRequests map.
-     * @param fightRequests All fight requests in the form Attacker -> Attacked.
+     * Handles all requested battles involving the player: the player's attack first, then the NPCs
+     * attacking the player. The battles between NPCs are left to the battle engine.
+     * @param fightRequests All accepted fight requests.
      */
-    private void handleBattles(HashMap<Integer, Integer> fightRequests) throws IOException {
+    private void handlePlayerBattles(FightRequests fightRequests) throws IOException {
         handlePlayerBattle(fightRequests);
-        handleOtherBattles(fightRequests);
+        for (int i = 0; i < fightRequests.size(); ++i) {
+            if (fightRequests.getAttacked(i) == EntityManager.PLAYER_ID) {
+                playerBattle(fightRequests.getAttacker(i), false);
+            }
+        }
     }
 
     /**
      * Manage Player's battle, if any.
      */
-    private void handlePlayerBattle(HashMap<Integer, Integer> fightRequests) throws IOException {
-        int playerOpponent = fightRequests.getOrDefault(-1, -2);
+    private void handlePlayerBattle(FightRequests fightRequests) throws IOException {
+        int playerOpponent = fightRequests.getAttackedBy(EntityManager.PLAYER_ID);
         if (playerOpponent >= 0) {
-            criminalsManager.addCriminal(-1);
+            criminalsManager.addCriminal(EntityManager.PLAYER_ID);
             playerBattle(playerOpponent, true);
-            fightRequests.remove(-1);
-        }
-    }
-
-    /** Handle battles of all NPCs */
-    private void handleOtherBattles(HashMap<Integer, Integer> fightRequests) throws IOException {
-        for (var entry : fightRequests.entrySet()) {
-            if (entry.getValue() == -1) {
-                playerBattle(entry.getKey(), false);
-                continue;
-            }
-            Entity attacker = entityManager.getEntity(entry.getKey());
-            Entity attacked = entityManager.getEntity(entry.getValue());
-            if (!(attacker instanceof Police)) {
-                criminalsManager.addCriminal(entry.getKey());
-            }
-            if (attacker.isAlive() && attacked.isAlive()){
-                Battle battle = new Battle(attacker, attacked);
-                battle.fight();
-            } else {
-                criminalsManager.removeCriminal(entry.getKey());
-                criminalsManager.removeCriminal(entry.getValue());
-            }
         }
     }
 
@@ -128,8 +150,8 @@ public class Game  {
      */
     private void playerBattle(int opponentID, boolean startedByPlayer) throws IOException {
         Entity opponent = entityManager.getEntity(opponentID);
-        Ship playersShip = entityManager.getEntityShip(-1);
-        Random generator = new Random();
+        Ship playersShip = entityManager.getEntityShip(EntityManager.PLAYER_ID);
+        var generator = locationsManager.getRandom().split(RngService.PLAYER_BATTLE_STREAM, opponentID);
         int playersDamage = Ship.damageOutput(playersShip, opponent.getOwnedShip());
         output.clearScreen();
         if (!startedByPlayer) {
@@ -191,20 +213,34 @@ public class Game  {
                 new Input.Option("Buy/sell goods", this::buySellGoods),
                 new Input.Option("Manage ship", this::manageShip),
                 new Input.Option("Seek markets", this::seekMarkets),
-                new Input.Option("Travel to another planet", this::travelToPlanet)
+                new Input.Option("Best deals nearby", this::bestDeals),
+                new Input.Option("Travel to another planet", this::travelToPlanet),
+                new Input.Option("Save game", this::saveGame)
         );
     }
+    /** Saves the world into the save file. A loaded game continues with the tick after the one it was saved in. */
+    private void saveGame() throws IOException {
+        output.clearScreen();
+        try {
+            WorldSnapshot.save(Path.of(Constants.SAVE_FILE),
+                    new WorldState(locationsManager, entityManager, criminalsManager, clock));
+            output.show("The game was saved to %s\n", Constants.SAVE_FILE);
+        } catch (IOException e) {
+            output.show("The game could not be saved: %s\n", e.getMessage());
+        }
+        output.show("\n0) Go back\n");
+        Input.askNumber(0, 0);
+    }
     /** Searches for possible opponents that are on the same path as the player. Asks the player if they want to
      * attack the found NPC. */
     private OptionalInt searchForOpponents() throws IOException {
         Player player = entityManager.getPlayer();
-        var presentEntities = player.getPresentEntities();
-        var possibleVictimID = presentEntities.stream().filter(ID -> ID != -1).findFirst();
+        var possibleVictimID = player.findPresentEntity(ID -> ID != EntityManager.PLAYER_ID);
         if (possibleVictimID.isEmpty()) {
             return OptionalInt.empty();
         }
         output.clearScreen();
-        Ship opponentShip = entityManager.getEntityShip(possibleVictimID.get());
+        Ship opponentShip = entityManager.getEntityShip(possibleVictimID.getAsInt());
         output.show("While traveling, you meet a ship:\n");
         output.showShipBattle(opponentShip, player.getOwnedShip());
 
@@ -216,7 +252,7 @@ public class Game  {
             return OptionalInt.empty();
         }
 
-        return OptionalInt.of(possibleVictimID.get());
+        return possibleVictimID;
     }
     /** Shows details about the given Planet. */
     private void scanNeighbors(Planet planet) throws IOException {
@@ -392,7 +428,7 @@ public class Game  {
             if (shipPrice > player.getCredits()) {
                 output.show("\nSorry, you cannot afford this ship!\n");
             } else {
-                player.ownedShip = ShipBuilder.buildShip(chosenShip);
+                player.ownedShip.refit(chosenShip);
                 player.entityStats.removeCredits(shipPrice);
                 player.entityStats.addCredits(currShipPrice);
                 break;
@@ -407,6 +443,16 @@ public class Game  {
     private void seekMarkets() throws IOException {
         scanNeighbors(entityManager.getPlayer().getCurrPlanet());
     }
+    /** Shows the goods with the largest price differences among the planets around the player. */
+    private void bestDeals() throws IOException {
+        int currPlanetID = entityManager.getPlayer().getCurrPlanet().planetID();
+        var region = new int[2];
+        locationsManager.getRegion(currPlanetID, DEALS_JUMPS, region);
+        locationsManager.ensureMarketsUpdated(region[0], region[1]);
+        var spreads = locationsManager.getArbitrageIndex().getTopSpreads(region[0], region[1], DEALS_SHOWN);
+        output.showBestDeals(spreads);
+        Input.askNumber(0, 0);
+    }
     /** Manages the dialogue for traveling to another planet. */
     private void travelToPlanet() throws IOException {
         Player player = entityManager.getPlayer();
@@ -447,9 +493,9 @@ public class Game  {
         private void showBattleInfo(Playerlike opponent) {
             show("===== Battle info =====\n");
             show("Your stats\n");
-            showShipBattle(entityManager.getEntityShip(-1), opponent.getOwnedShip());
+            showShipBattle(entityManager.getEntityShip(EntityManager.PLAYER_ID), opponent.getOwnedShip());
             show("\nOpponent's stats\n");
-            showShipBattle(opponent.getOwnedShip(), entityManager.getEntityShip(-1));
+            showShipBattle(opponent.getOwnedShip(), entityManager.getEntityShip(EntityManager.PLAYER_ID));
         }
 
         /**
@@ -459,8 +505,8 @@ public class Game  {
          * @param ship2         The second ship for comparison.
          */
         private void showShipBattle(Ship displayedShip, Ship ship2) {
-            show("Hull:    %s\n", displayedShip.getStats().hull.toString());
-            show("Shields: %s\n", displayedShip.getStats().shields.toString());
+            show("Hull:    %d/%d\n", displayedShip.getHull(), displayedShip.getMaxHull());
+            show("Shields: %d/%d\n", displayedShip.getShields(), displayedShip.getMaxShields());
             show("Damage:  %d\n\n", Ship.damageOutput(displayedShip, ship2));
         }
 
@@ -489,6 +535,29 @@ public class Game  {
             }
         }
 
+        /**
+         * Displays the best deals found around the player.
+         *
+         * @param spreads The goods with the largest price differences, from the most profitable.
+         */
+        private void showBestDeals(List<ArbitrageIndex.Spread> spreads) {
+            clearScreen();
+            show("Best deals within %d jumps:\n", DEALS_JUMPS);
+            if (spreads.isEmpty()) {
+                show("No good sells for more anywhere nearby.\n");
+            } else {
+                show("%-13s%-24s%-24s%s\n", "Name", "Buy at", "Sell at", "Profit");
+            }
+            for (var spread : spreads) {
+                show("%-13s%-24s%-24s%d\n",
+                        GoodsIndex.values()[spread.good()],
+                        "%s (%d)".formatted(locationsManager.getPlanetName(spread.buyPlanetID()), spread.buyPrice()),
+                        "%s (%d)".formatted(locationsManager.getPlanetName(spread.sellPlanetID()), spread.sellPrice()),
+                        spread.profit());
+            }
+            show("\n0) Go back\n");
+        }
+
         /**
          * Displays the available travel options from the current planet.
          *
@@ -598,10 +667,10 @@ public class Game  {
 
             clearScreen();
             show("Your ship's statistics:\n");
-            show("Hull:    %s\n", ship.getStats().hull.toString());
-            show("Shields: %s\n", ship.getStats().shields.toString());
+            show("Hull:    %d/%d\n", ship.getHull(), ship.getMaxHull());
+            show("Shields: %d/%d\n", ship.getShields(), ship.getMaxShields());
             show("Cargo:   %d/%d\n", player.getCurrCargo(), player.getMaxCargo());
-            show("Fuel:    %s\n", ship.getStats().fuel.toString());
+            show("Fuel:    %d/%d\n", ship.getFuel(), ship.getMaxFuel());
             show("Type:    %s\n\n", ship.getShipType().toString());
         }
 
@@ -0,0 +1,318 @@
+package cz.cuni.mff.pijalekj;
+
+import cz.cuni.mff.pijalekj.battle.BattleEngine;
+import cz.cuni.mff.pijalekj.managers.CriminalsManager;
+import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.FightRequests;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.metrics.TickMetrics;
+import cz.cuni.mff.pijalekj.metrics.TickPhase;
+import cz.cuni.mff.pijalekj.metrics.TickTimer;
+import cz.cuni.mff.pijalekj.persistence.WorldImage;
+import cz.cuni.mff.pijalekj.utils.WorldGenerator;
+
+import java.util.OptionalInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the world without the player and without any console I/O, for soak tests and benchmarks.
+ * A tick goes through the same phases as in the Game: the big tick, if it is due, NPCs playing,
+ * their battles and the update of criminals. The time spent in every phase is measured, and recorded into
+ * the platform TickMetrics as well, so that long runs can be watched over JMX.
+ * <p>
+ * All parallel work of the simulation runs in its own ForkJoinPool with the configured number of threads.
+ * The same settings and seed give the same world on any number of threads.
+ */
+public class Simulation {
+    private final LocationsManager locationsManager;
+    private final CriminalsManager criminalsManager;
+    private final EntityManager entityManager;
+    private final BattleEngine battleEngine;
+    private final GameClock clock = new GameClock();
+    private final int threads;
+    private final TickTimer timer = new TickTimer(TickMetrics.getPlatformInstance());
+    private final long[] phaseNanos = new long[TickPhase.values().length];
+    private long npcUpdates = 0;
+
+    /**
+     * Constructs a Simulation of a generated world, or of a world opened from an image.
+     *
+     * @param planets     The number of planets in the galaxy.
+     * @param density     The number of NPCs of each type generated at a planet.
+     * @param seed        The seed of the world.
+     * @param threads     The number of threads the simulation runs on.
+     * @param lazyMarkets Whether markets are updated lazily.
+     * @param image       The image of the world's planets and lanes, or null to generate them.
+     */
+    private Simulation(int planets, int density, long seed, int threads, boolean lazyMarkets, WorldImage image) {
+        this.threads = threads;
+        entityManager = new EntityManager();
+        locationsManager = image != null ? image.createLocations() : WorldGenerator.generateLocations(planets, seed);
+        locationsManager.setLazyMarkets(lazyMarkets);
+        entityManager.setParallel(threads > 1);
+        criminalsManager = new CriminalsManager(locationsManager);
+
+        WorldGenerator.generateEntities(locationsManager, entityManager, criminalsManager, density);
+        WorldGenerator.populateWorld(locationsManager, entityManager);
+        battleEngine = new BattleEngine(locationsManager.getRandom());
+    }
+
+    /**
+     * Gets the manager of the locations of the simulated world.
+     *
+     * @return The LocationsManager.
+     */
+    public LocationsManager getLocationsManager() {
+        return locationsManager;
+    }
+
+    /**
+     * Gets the manager of the entities of the simulated world.
+     *
+     * @return The EntityManager.
+     */
+    public EntityManager getEntityManager() {
+        return entityManager;
+    }
+
+    /**
+     * Gets the manager of the criminals of the simulated world.
+     *
+     * @return The CriminalsManager.
+     */
+    public CriminalsManager getCriminalsManager() {
+        return criminalsManager;
+    }
+
+    /**
+     * Gets the clock of the simulated world.
+     *
+     * @return The GameClock.
+     */
+    public GameClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Runs the specified number of ticks.
+     *
+     * @param ticks The number of ticks to run.
+     * @return The report of the run.
+     */
+    public Report run(int ticks) {
+        long[] phasesBefore = phaseNanos.clone();
+        long updatesBefore = npcUpdates;
+        long start = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> {
+                for (int i = 0; i < ticks; ++i) {
+                    tick();
+                }
+            }).join();
+        } finally {
+            pool.shutdown();
+        }
+
+        long totalNanos = System.nanoTime() - start;
+        long[] phases = phaseNanos.clone();
+        for (int i = 0; i < phases.length; ++i) {
+            phases[i] -= phasesBefore[i];
+        }
+        return new Report(ticks, npcUpdates - updatesBefore, totalNanos, phases);
+    }
+
+    /**
+     * Runs a single tick, measuring its phases.
+     */
+    private void tick() {
+        timer.start();
+        boolean bigTick = clock.tick();
+        locationsManager.getRandom().setTick(clock.get_ticks());
+        if (bigTick) {
+            entityManager.resetNPCs(criminalsManager, locationsManager);
+            locationsManager.updateAllPlanets();
+        }
+        timer.lap(TickPhase.bigTick);
+
+        npcUpdates += entityManager.getEntityCount();
+        FightRequests fightRequests = entityManager.play(OptionalInt.empty(), locationsManager);
+        timer.lap(TickPhase.play);
+
+        battleEngine.resolve(fightRequests, entityManager, criminalsManager);
+        timer.lap(TickPhase.battles);
+
+        criminalsManager.updateCriminals();
+        timer.lap(TickPhase.criminals);
+        timer.end(bigTick);
+
+        for (var phase : TickPhase.values()) {
+            phaseNanos[phase.ordinal()] += timer.getNanos(phase);
+        }
+    }
+
+    /**
+     * The results of a run of the simulation.
+     *
+     * @param ticks      The number of ticks run.
+     * @param npcUpdates The number of times an NPC played.
+     * @param totalNanos The duration of the run, in nanoseconds.
+     * @param phaseNanos The time spent in every phase, in nanoseconds, indexed by the ordinals of the phases.
+     */
+    public record Report(int ticks, long npcUpdates, long totalNanos, long[] phaseNanos) {
+        /**
+         * Gets the number of ticks per second.
+         *
+         * @return The throughput in ticks.
+         */
+        public double ticksPerSecond() {
+            return ticks / seconds();
+        }
+
+        /**
+         * Gets the number of NPC updates per second.
+         *
+         * @return The throughput in NPC updates.
+         */
+        public double npcUpdatesPerSecond() {
+            return npcUpdates / seconds();
+        }
+
+        /**
+         * Gets the duration of the run in seconds.
+         *
+         * @return The duration of the run.
+         */
+        private double seconds() {
+            return Math.max(totalNanos, 1) / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            var builder = new StringBuilder();
+            builder.append(String.format("%d ticks in %.3f s: %.1f ticks/s, %.0f NPC updates/s%n",
+                    ticks, seconds(), ticksPerSecond(), npcUpdatesPerSecond()));
+            for (var phase : TickPhase.values()) {
+                if (phase == TickPhase.player) {
+                    continue; // There is no player
+                }
+                long nanos = phaseNanos[phase.ordinal()];
+                builder.append(String.format("  %-10s %10.1f ms %8.1f us/tick %5.1f %%%n", phase,
+                        nanos / 1e6, nanos / 1e3 / Math.max(ticks, 1), 100.0 * nanos / Math.max(totalNanos, 1)));
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The Builder class of a Simulation. Every setting has a default, so only the interesting ones
+     * have to be set.
+     */
+    public static class Builder {
+        private int planets = 500;
+        private int density = 1;
+        private long seed = ThreadLocalRandom.current().nextLong();
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private boolean lazyMarkets = true;
+        private WorldImage image = null;
+        private boolean planetsSet = false;
+        private boolean seedSet = false;
+
+        /**
+         * Sets the number of planets in the galaxy.
+         *
+         * @param planets The number of planets.
+         * @return This Builder.
+         * @throws IllegalArgumentException if the number is not positive.
+         */
+        public Builder planets(int planets) {
+            if (planets <= 0)
+                throw new IllegalArgumentException("The galaxy has to have a planet!");
+            this.planets = planets;
+            planetsSet = true;
+            return this;
+        }
+
+        /**
+         * Sets the number of NPCs of each type generated at a planet.
+         *
+         * @param density The density of NPCs.
+         * @return This Builder.
+         * @throws IllegalArgumentException if the density is not positive.
+         */
+        public Builder density(int density) {
+            if (density <= 0)
+                throw new IllegalArgumentException("The density of entities has to be positive!");
+            this.density = density;
+            return this;
+        }
+
+        /**
+         * Sets the seed of the world; the same settings and seed give the same run.
+         *
+         * @param seed The seed of the world.
+         * @return This Builder.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            seedSet = true;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads the simulation runs on.
+         *
+         * @param threads The number of threads.
+         * @return This Builder.
+         * @throws IllegalArgumentException if the number is not positive.
+         */
+        public Builder threads(int threads) {
+            if (threads <= 0)
+                throw new IllegalArgumentException("The simulation needs a thread!");
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets whether markets are updated lazily, when they are accessed.
+         *
+         * @param lazyMarkets True to update markets lazily.
+         * @return This Builder.
+         */
+        public Builder lazyMarkets(boolean lazyMarkets) {
+            this.lazyMarkets = lazyMarkets;
+            return this;
+        }
+
+        /**
+         * Sets the image the planets and lanes of the world are created from, instead of generating them.
+         * The number of planets and the seed are then those of the image, and if they are set as well,
+         * they have to match it.
+         *
+         * @param image The image of the world, or null to generate the world.
+         * @return This Builder.
+         */
+        public Builder image(WorldImage image) {
+            this.image = image;
+            return this;
+        }
+
+        /**
+         * Generates the world and constructs the Simulation.
+         *
+         * @return The new Simulation.
+         * @throws IllegalStateException if the number of planets or the seed is set and does not match the image.
+         */
+        public Simulation build() {
+            if (image != null && planetsSet && planets != image.getPlanetCount())
+                throw new IllegalStateException("The world image has %d planets, not %d!"
+                        .formatted(image.getPlanetCount(), planets));
+            if (image != null && seedSet && seed != image.getSeed())
+                throw new IllegalStateException("The world image has the seed %d, not %d!"
+                        .formatted(image.getSeed(), seed));
+            return new Simulation(planets, density, seed, threads, lazyMarkets, image);
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package cz.cuni.mff.pijalekj.battle;
 
 import cz.cuni.mff.pijalekj.entities.Entity;
+import cz.cuni.mff.pijalekj.metrics.BattleEvent;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 /**
  * The Battle class represents a combat encounter between two entities in the game.
@@ -13,46 +14,47 @@ import java.util.Random;
 public class Battle {
     private final Entity[] fighters;
 
-    private final Random generator = new Random();
+    private final RandomGenerator generator;
 
     /**
-     * Constructs a Battle object with the given attacker and defender entities.
+     * Constructs a Battle object with the given attacker and defender entities, whose flee attempts
+     * are decided by the given generator.
      * Both entities must be alive at the start of the battle.
      *
-     * @param attacker The attacking entity.
-     * @param defender The defending entity.
+     * @param attacker  The attacking entity.
+     * @param defender  The defending entity.
+     * @param generator The random generator of the battle.
      * @throws AssertionError if either the attacker or defender is not alive.
      */
-    public Battle(Entity attacker, Entity defender) {
+    public Battle(Entity attacker, Entity defender, RandomGenerator generator) {
         assert attacker.isAlive() && defender.isAlive();
         fighters = new Entity[]{attacker, defender};
+        this.generator = generator;
     }
 
     /**
      * Initiates the battle, allowing the entities to take turns attacking and defending
      * until one of them is defeated or one party successfully flees.
+     * The outcome is computed by the BattleResolver instead of playing out every turn.
+     * The battle is recorded as a BattleEvent, if the event is enabled.
      */
     public void fight() {
-        int i = 0;
-        while (true) {
-            var attacking = fighters[i];
-            var attacked = fighters[(i + 1) % 2];
-
-            var attackerAction = attacking.battle(attacked);
-
-            switch (attackerAction.actionType()) {
-                case attack -> attacked.takeDamage(attackerAction.value());
-                case flee -> {
-                    double dieThrow = generator.nextInt(0, 101);
-                    if (dieThrow <= attackerAction.value()) {
-                        return; // One party fled
-                    }
-                }
-            }
-            if (!attacked.isAlive()) {
-                attacking.won(attacked);
-            }
-            i = (i + 1) % 2;
+        var event = new BattleEvent();
+        event.begin();
+        BattleResolver.resolve(fighters[0], fighters[1], generator);
+        event.end();
+
+        if (event.shouldCommit()) {
+            Entity attacker = fighters[0];
+            Entity defender = fighters[1];
+            event.attackerID = attacker.getID();
+            event.attackerType = attacker.getClass().getSimpleName();
+            event.defenderID = defender.getID();
+            event.defenderType = defender.getClass().getSimpleName();
+            event.outcome = !defender.isAlive() ? BattleEvent.ATTACKER_WON
+                    : !attacker.isAlive() ? BattleEvent.DEFENDER_WON
+                    : BattleEvent.ESCAPED;
+            event.commit();
         }
     }
 }
@@ -0,0 +1,189 @@
+package cz.cuni.mff.pijalekj.battle;
+
+import cz.cuni.mff.pijalekj.entities.Entity;
+import cz.cuni.mff.pijalekj.entities.Police;
+import cz.cuni.mff.pijalekj.managers.CriminalsManager;
+import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.FightRequests;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
+import cz.cuni.mff.pijalekj.world.RngService;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The BattleEngine class resolves the battles between NPCs of one tick as a batch. An entity can attack
+ * someone and be attacked by someone else in the same tick, so the fight requests are first grouped into
+ * independent groups of battles that share no entity. The groups are fought in parallel, and the battles
+ * of a group one by one in the order of the requests. Every battle draws from its own random stream,
+ * derived by the world's RngService from the tick and the order of the request, so the outcome does not
+ * depend on the number of threads. Criminals are marked afterwards, in the order of the requests, which
+ * leaves the same criminals as marking each attacker right before its battle: battles never look at
+ * criminals, and every entity takes part in at most one request.
+ * <p>
+ * Requests involving the player are skipped, as the player fights interactively.
+ */
+public class BattleEngine {
+    private final RngService random;
+    /** The union-find forest over entity slots; valid for slots whose mark equals the current batch. */
+    private int[] parents = new int[0];
+    private int[] marks = new int[0];
+    /** The group of every root slot of the forest. */
+    private int[] groups = new int[0];
+    private int batch = 0;
+    /** The indices of the NPC requests of the batch. */
+    private int[] requestIndices = new int[16];
+    /** The group of every request of the batch. */
+    private int[] requestGroups = new int[16];
+    /** The requests of the batch ordered by group, in the order of the requests within a group. */
+    private int[] groupOrder = new int[16];
+    private int[] groupStarts = new int[17];
+    private boolean[] fought = new boolean[16];
+
+    /**
+     * Constructs a BattleEngine whose battles are decided by random streams of the world.
+     *
+     * @param random The source of randomness of the world.
+     */
+    public BattleEngine(RngService random) {
+        this.random = random;
+    }
+
+    /**
+     * Fights all battles between NPCs requested in a tick and marks the attackers as criminals,
+     * unless they are police. If either party is dead by the time its battle comes, there is no battle
+     * and both parties are cleared of criminal charges instead.
+     *
+     * @param requests         The accepted fight requests of the tick.
+     * @param entityManager    The manager of the fighting entities.
+     * @param criminalsManager The manager of criminals.
+     */
+    public void resolve(FightRequests requests, EntityManager entityManager, CriminalsManager criminalsManager) {
+        int count = collect(requests);
+        if (count == 0) {
+            return;
+        }
+        int groupCount = group(requests, count);
+
+        IntStream.range(0, groupCount).parallel().forEach(group -> {
+            for (int i = groupStarts[group]; i < groupStarts[group + 1]; ++i) {
+                int k = groupOrder[i];
+                Entity attacker = entityManager.getEntity(requests.getAttacker(requestIndices[k]));
+                Entity attacked = entityManager.getEntity(requests.getAttacked(requestIndices[k]));
+                fought[k] = attacker.isAlive() && attacked.isAlive();
+                if (fought[k]) {
+                    new Battle(attacker, attacked, random.split(RngService.BATTLE_STREAM, k)).fight();
+                }
+            }
+        });
+
+        for (int k = 0; k < count; ++k) {
+            int attackerID = requests.getAttacker(requestIndices[k]);
+            int attackedID = requests.getAttacked(requestIndices[k]);
+            if (!(entityManager.getEntity(attackerID) instanceof Police)) {
+                criminalsManager.addCriminal(attackerID);
+            }
+            if (!fought[k]) {
+                criminalsManager.removeCriminal(attackerID);
+                criminalsManager.removeCriminal(attackedID);
+            }
+        }
+    }
+
+    /**
+     * Collects the requests that do not involve the player into a new batch.
+     *
+     * @param requests The accepted fight requests of the tick.
+     * @return The number of requests in the batch.
+     */
+    private int collect(FightRequests requests) {
+        int count = 0;
+        int maxSlot = 0;
+        for (int i = 0; i < requests.size(); ++i) {
+            int attackerID = requests.getAttacker(i);
+            int attackedID = requests.getAttacked(i);
+            if (attackerID == EntityManager.PLAYER_ID || attackedID == EntityManager.PLAYER_ID) {
+                continue;
+            }
+            if (count == requestIndices.length) {
+                int newLength = count * 2;
+                requestIndices = Arrays.copyOf(requestIndices, newLength);
+                requestGroups = Arrays.copyOf(requestGroups, newLength);
+                groupOrder = Arrays.copyOf(groupOrder, newLength);
+                groupStarts = Arrays.copyOf(groupStarts, newLength + 1);
+                fought = Arrays.copyOf(fought, newLength);
+            }
+            requestIndices[count++] = i;
+            maxSlot = Math.max(maxSlot, Math.max(EntityIDs.slotOf(attackerID), EntityIDs.slotOf(attackedID)));
+        }
+
+        if (maxSlot >= parents.length) {
+            int newLength = Math.max(maxSlot + 1, parents.length * 2);
+            parents = Arrays.copyOf(parents, newLength);
+            marks = Arrays.copyOf(marks, newLength);
+            groups = Arrays.copyOf(groups, newLength);
+        }
+        ++batch;
+        return count;
+    }
+
+    /**
+     * Groups the requests of the batch by the entities they share, ordering them by group.
+     *
+     * @param requests The accepted fight requests of the tick.
+     * @param count    The number of requests in the batch.
+     * @return The number of groups.
+     */
+    private int group(FightRequests requests, int count) {
+        for (int k = 0; k < count; ++k) {
+            int attackerSlot = EntityIDs.slotOf(requests.getAttacker(requestIndices[k]));
+            int attackedSlot = EntityIDs.slotOf(requests.getAttacked(requestIndices[k]));
+            parents[find(attackerSlot)] = find(attackedSlot);
+        }
+
+        // Groups are numbered in the order of their first requests
+        int groupCount = 0;
+        for (int k = 0; k < count; ++k) {
+            int root = find(EntityIDs.slotOf(requests.getAttacker(requestIndices[k])));
+            if (groups[root] < 0) {
+                groups[root] = groupCount++;
+            }
+            requestGroups[k] = groups[root];
+        }
+
+        // Counting sort of the requests by group, keeping their order within a group
+        Arrays.fill(groupStarts, 0, groupCount + 1, 0);
+        for (int k = 0; k < count; ++k) {
+            ++groupStarts[requestGroups[k] + 1];
+        }
+        for (int group = 0; group < groupCount; ++group) {
+            groupStarts[group + 1] += groupStarts[group];
+        }
+        int[] fill = Arrays.copyOf(groupStarts, groupCount);
+        for (int k = 0; k < count; ++k) {
+            groupOrder[fill[requestGroups[k]]++] = k;
+        }
+        return groupCount;
+    }
+
+    /**
+     * Finds the root of a slot in the union-find forest, adding the slot to the forest if it is new
+     * in the current batch.
+     *
+     * @param slot The slot of an entity.
+     * @return The root slot of the entity's group.
+     */
+    private int find(int slot) {
+        if (marks[slot] != batch) {
+            marks[slot] = batch;
+            parents[slot] = slot;
+            groups[slot] = -1;
+            return slot;
+        }
+        while (parents[slot] != slot) {
+            parents[slot] = parents[parents[slot]];
+            slot = parents[slot];
+        }
+        return slot;
+    }
+}
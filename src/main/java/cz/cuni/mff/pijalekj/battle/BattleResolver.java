@@ -0,0 +1,210 @@
+package cz.cuni.mff.pijalekj.battle;
+
+import cz.cuni.mff.pijalekj.entities.Entity;
+import cz.cuni.mff.pijalekj.enums.BattleTactic;
+import cz.cuni.mff.pijalekj.ships.Ship;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The BattleResolver class computes the outcome of a battle between two entities directly, instead of
+ * simulating it round by round. The fighters take turns, the attacker first; on its turn, a fighter
+ * either attacks, dealing the damage its ship type deals to the other's, or tries to flee, which succeeds
+ * with the probability (fleeChance + 1) / 101. The battle ends when a fighter flees or dies; the survivor
+ * of a fight to the death wins.
+ * <p>
+ * Damage first depletes the shields and then the hull, so a ship dies after ceil((hull + shields) / damage)
+ * hits. Whether a fighter attacks only changes with the health of the fighters, and flee attempts do not
+ * change it, so the resolver splits the battle into phases of fixed decisions. A phase in which one fighter
+ * attacks and the other flees is resolved by drawing the number of failed flee attempts from the geometric
+ * distribution, a phase in which both attack is a race of hits to kill, and if both flee, someone flees
+ * with no damage done. Only an exchange of attacks involving a pirate, whose decision depends on health,
+ * goes hit by hit, without drawing random numbers.
+ */
+public final class BattleResolver {
+    private static final int NEVER = Integer.MAX_VALUE;
+
+    private BattleResolver() {}
+
+    /**
+     * Computes how much longer an entity sustains a fight against a victim than the victim does.
+     *
+     * @param myHealth      The hull and shields of the entity.
+     * @param victimHealth  The hull and shields of the victim.
+     * @param myDamage      The damage the entity deals to the victim in one hit.
+     * @param victimDamage  The damage the victim deals to the entity in one hit.
+     * @return The difference of the numbers of hits each of them sustains; positive if the entity lasts longer.
+     */
+    public static int outSustain(int myHealth, int victimHealth, int myDamage, int victimDamage) {
+        // + 1 to prevent division by 0, should not affect the outcome
+        var mySustain = myHealth / (victimDamage + 1);
+        var victimSustain = victimHealth / (myDamage + 1);
+
+        return mySustain - victimSustain;
+    }
+
+    /**
+     * Fights a battle between two living entities, applying the damage and calling won() on the winner.
+     *
+     * @param attacker  The attacking entity, which acts first.
+     * @param defender  The defending entity.
+     * @param generator The random generator deciding the flee attempts.
+     */
+    public static void resolve(Entity attacker, Entity defender, RandomGenerator generator) {
+        Ship attackerShip = attacker.getOwnedShip();
+        Ship defenderShip = defender.getOwnedShip();
+        BattleTactic attackerTactic = attacker.getBattleTactic();
+        BattleTactic defenderTactic = defender.getBattleTactic();
+        int attackerDamage = Ship.damageOutput(attackerShip, defenderShip);
+        int defenderDamage = Ship.damageOutput(defenderShip, attackerShip);
+        int attackerHealth = attackerShip.getHull() + attackerShip.getShields();
+        int defenderHealth = defenderShip.getHull() + defenderShip.getShields();
+        // Hits taken so far by each fighter
+        int attackerHits = 0;
+        int defenderHits = 0;
+        boolean attackerMoves = true;
+
+        while (true) {
+            int attackerLeft = attackerHealth - attackerHits * defenderDamage;
+            int defenderLeft = defenderHealth - defenderHits * attackerDamage;
+            if (attackerLeft <= 0 || defenderLeft <= 0) {
+                finish(attacker, defender, attackerHits, defenderHits, defenderDamage, attackerDamage, defenderLeft <= 0);
+                return;
+            }
+            boolean attackerAttacks = attacks(attackerTactic, attackerLeft, defenderLeft, attackerDamage, defenderDamage);
+            boolean defenderAttacks = attacks(defenderTactic, defenderLeft, attackerLeft, defenderDamage, attackerDamage);
+            int attackerToKill = hitsToKill(defenderLeft, attackerDamage);
+            int defenderToKill = hitsToKill(attackerLeft, defenderDamage);
+
+            if (!attackerAttacks && !defenderAttacks) {
+                break; // Both try to flee until one of them does
+            }
+
+            if (attackerAttacks && defenderAttacks) {
+                if (attackerToKill == NEVER && defenderToKill == NEVER) {
+                    break; // Neither can hurt the other
+                }
+                if (attackerTactic == BattleTactic.sustain || defenderTactic == BattleTactic.sustain) {
+                    // A pirate may change its mind after any hit
+                    if (attackerMoves) {
+                        ++defenderHits;
+                    } else {
+                        ++attackerHits;
+                    }
+                    attackerMoves = !attackerMoves;
+                    continue;
+                }
+                // The one moving first wins a tie
+                boolean attackerWins = attackerMoves ? attackerToKill <= defenderToKill : attackerToKill < defenderToKill;
+                if (attackerWins) {
+                    defenderHits += attackerToKill;
+                    attackerHits += attackerMoves ? attackerToKill - 1 : attackerToKill;
+                } else {
+                    attackerHits += defenderToKill;
+                    defenderHits += attackerMoves ? defenderToKill : defenderToKill - 1;
+                }
+                finish(attacker, defender, attackerHits, defenderHits, defenderDamage, attackerDamage, attackerWins);
+                return;
+            }
+
+            // One attacks until the other flees or dies; neither changes its mind meanwhile
+            boolean attackerHunts = attackerAttacks;
+            Ship prey = attackerHunts ? defenderShip : attackerShip;
+            int toKill = attackerHunts ? attackerToKill : defenderToKill;
+            boolean preyMoves = attackerHunts != attackerMoves;
+            // Flee attempts the prey gets before the killing hit
+            long attempts = preyMoves ? toKill : toKill - 1L;
+            long failures = failedAttempts(prey.getFleeChance(), generator);
+            if (failures >= attempts && toKill == NEVER) {
+                break; // Neither can get away from the other, nor hurt it
+            }
+            int hits = failures >= attempts ? toKill : (int) (preyMoves ? failures : failures + 1);
+            if (attackerHunts) {
+                defenderHits += hits;
+            } else {
+                attackerHits += hits;
+            }
+            if (failures < attempts) {
+                break; // The prey fled
+            }
+        }
+        finish(attacker, defender, attackerHits, defenderHits, defenderDamage, attackerDamage, null);
+    }
+
+    /**
+     * Decides whether a fighter attacks in the current state of the battle.
+     *
+     * @param tactic        The tactic of the fighter.
+     * @param myHealth      The remaining health of the fighter.
+     * @param victimHealth  The remaining health of the opponent.
+     * @param myDamage      The damage the fighter deals.
+     * @param victimDamage  The damage the opponent deals.
+     * @return True if the fighter attacks, false if it tries to flee.
+     */
+    private static boolean attacks(BattleTactic tactic, int myHealth, int victimHealth, int myDamage, int victimDamage) {
+        return switch (tactic) {
+            case attack -> true;
+            case flee -> false;
+            case sustain -> outSustain(myHealth, victimHealth, myDamage, victimDamage) > 0;
+        };
+    }
+
+    /**
+     * Computes the number of hits that kill a ship.
+     *
+     * @param health The remaining hull and shields of the ship, greater than zero.
+     * @param damage The damage of one hit.
+     * @return The number of hits, or NEVER if the hits do no damage.
+     */
+    private static int hitsToKill(int health, int damage) {
+        return damage <= 0 ? NEVER : (health + damage - 1) / damage;
+    }
+
+    /**
+     * Draws the number of failed flee attempts before the first successful one.
+     *
+     * @param fleeChance The flee chance of the ship; an attempt succeeds if a number from 0 to 100 is at most it.
+     * @param generator  The random generator.
+     * @return The number of failed attempts, or NEVER if fleeing is impossible.
+     */
+    private static long failedAttempts(int fleeChance, RandomGenerator generator) {
+        if (fleeChance >= 100) {
+            return 0;
+        }
+        if (fleeChance < 0) {
+            return NEVER;
+        }
+        double success = (fleeChance + 1) / 101.0;
+        return (long) Math.floor(Math.log(1 - generator.nextDouble()) / Math.log(1 - success));
+    }
+
+    /**
+     * Applies the damage of a finished battle and lets the winner (if any) take its spoils.
+     *
+     * @param attacker       The attacking entity.
+     * @param defender       The defending entity.
+     * @param attackerHits   The number of hits the attacker took.
+     * @param defenderHits   The number of hits the defender took.
+     * @param defenderDamage The damage of the defender's hits.
+     * @param attackerDamage The damage of the attacker's hits.
+     * @param attackerWon    True if the attacker killed the defender, false if the defender killed
+     *                       the attacker, null if someone fled.
+     */
+    private static void finish(Entity attacker, Entity defender, int attackerHits, int defenderHits,
+                               int defenderDamage, int attackerDamage, Boolean attackerWon) {
+        if (attackerHits > 0) {
+            attacker.takeDamage(attackerHits * defenderDamage);
+        }
+        if (defenderHits > 0) {
+            defender.takeDamage(defenderHits * attackerDamage);
+        }
+        if (attackerWon == null) {
+            return;
+        }
+        if (attackerWon) {
+            attacker.won(defender);
+        } else {
+            defender.won(attacker);
+        }
+    }
+}
@@ -2,18 +2,20 @@ package cz.cuni.mff.pijalekj.builders;
 
 import cz.cuni.mff.pijalekj.constants.Constants;
 import cz.cuni.mff.pijalekj.entities.*;
-import cz.cuni.mff.pijalekj.enums.EntityActions;
 import cz.cuni.mff.pijalekj.enums.EntityType;
 import cz.cuni.mff.pijalekj.enums.ShipType;
 import cz.cuni.mff.pijalekj.managers.CriminalsManager;
 import cz.cuni.mff.pijalekj.managers.EntityManager;
 import cz.cuni.mff.pijalekj.managers.LocationsManager;
 import cz.cuni.mff.pijalekj.managers.TravelManager;
+import cz.cuni.mff.pijalekj.ships.Ship;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
 
 /**
  * The EntityBuilder class is responsible for creating new entities in the game.
  * It uses predefined configurations to generate entities based on their types,
- * such as pirates, traders, police, and players.
+ * such as pirates, traders, police, and players. The state of a new entity is written into its slot
+ * of the EntityManager's EntityStore, which has to have room for it.
  */
 public class EntityBuilder {
     private final EntityManager entityManager;
@@ -21,6 +23,15 @@ public class EntityBuilder {
     private final CriminalsManager criminalsManager;
     private final static String defaultShipKey = "Entities.DefaultShips.";
     private final static String startCreditsKey = "Entities.StartCredits.";
+    private final static EntityTemplate[] templates = new EntityTemplate[EntityType.values().length];
+
+    static {
+        for (var type : EntityType.values()) {
+            var shipType = ShipType.valueOf(Constants.builders.getString(defaultShipKey + type));
+            var credits = Constants.builders.getLong(startCreditsKey + type).intValue();
+            templates[type.ordinal()] = new EntityTemplate(type, shipType, ShipBuilder.getStats(shipType), credits);
+        }
+    }
 
     /**
      * Constructs an EntityBuilder with references to the entity manager, locations manager,
@@ -37,6 +48,17 @@ public class EntityBuilder {
         this.criminalsManager = criminalsManager;
     }
 
+    /**
+     * Checks whether this builder builds entities for the specified managers.
+     *
+     * @param locationsManager   The locations manager.
+     * @param criminalsManager   The criminals manager.
+     * @return                   True if the entities built are associated with both managers.
+     */
+    public boolean isFor(LocationsManager locationsManager, CriminalsManager criminalsManager) {
+        return this.locationsManager == locationsManager && this.criminalsManager == criminalsManager;
+    }
+
     /**
      * Creates and returns a new entity with the specified ID, current location ID, and entity type.
      *
@@ -47,22 +69,20 @@ public class EntityBuilder {
      * @throws RuntimeException if an incorrect EntityType is received.
      */
     public Entity newEntity(int ID, int currLocationID, EntityType type) {
-        var shipType = ShipType.valueOf(Constants.builders.getString(defaultShipKey + type));
-        var ship = ShipBuilder.buildShip(shipType);
+        var store = entityManager.getStore();
+        initialize(ID, currLocationID, getTemplate(type));
 
-        var goods = new int[9];
-        var credits = Constants.builders.getLong(startCreditsKey + type).intValue();
-        var stats = new EntityStats(credits, goods);
-        var travelManager = new TravelManager(locationsManager, currLocationID, ID);
-        var prevAction = EntityActions.none;
+        var ship = new Ship(store, ID);
+        var stats = new EntityStats(store, ID);
+        var travelManager = new TravelManager(locationsManager, store, ID);
 
         return switch (type) {
             case Pirate -> new Pirate(travelManager, entityManager, criminalsManager,
-                    ship, stats, prevAction, ID);
+                    ship, stats, ID);
             case Trader -> new Trader(travelManager, entityManager, criminalsManager,
-                    ship, stats, prevAction, ID);
+                    ship, stats, ID);
             case Police -> new Police(travelManager, entityManager, criminalsManager,
-                    ship, stats, prevAction, ID, currLocationID);
+                    ship, stats, ID, currLocationID);
             default -> throw new RuntimeException("Incorrect EntityType received!");
         };
     }
@@ -76,16 +96,64 @@ public class EntityBuilder {
      * @return                  The newly created player entity.
      */
     public Player newPlayer(int ID, int currLocationID, String name) {
-        var shipType = ShipType.valueOf(Constants.builders.getString(defaultShipKey + "Player"));
-        var ship = ShipBuilder.buildShip(shipType);
+        var store = entityManager.getStore();
+        initialize(ID, currLocationID, getTemplate(EntityType.Player));
 
-        var goods = new int[9];
-        var credits = Constants.builders.getLong(startCreditsKey + "Player").intValue();
-        var stats = new EntityStats(credits, goods);
-        var travelManager = new TravelManager(locationsManager, currLocationID, ID);
-        var prevAction = EntityActions.none;
+        var ship = new Ship(store, ID);
+        var stats = new EntityStats(store, ID);
+        var travelManager = new TravelManager(locationsManager, store, ID);
 
         return new Player(travelManager, ship, stats, name);
     }
-}
 
+    /**
+     * Respawns a dead entity in place: its slot in the entity store is reinitialized from the template
+     * of its type and the entity object itself is reused, so nothing is allocated.
+     *
+     * @param entity          The entity to respawn.
+     * @param currLocationID  The location ID where the entity respawns.
+     * @throws IllegalStateException if the entity is of an unexpected class.
+     */
+    public void respawn(Entity entity, int currLocationID) {
+        initialize(entity.getID(), currLocationID, getTemplate(typeOf(entity)));
+        entity.respawned(currLocationID);
+    }
+
+    /**
+     * Gets the type of an NPC.
+     *
+     * @param entity    The entity.
+     * @return          The EntityType of the entity.
+     * @throws IllegalStateException if the entity is of an unexpected class.
+     */
+    public static EntityType typeOf(Entity entity) {
+        return switch (entity) {
+            case Police police -> EntityType.Police;
+            case Pirate pirate -> EntityType.Pirate;
+            case Trader trader -> EntityType.Trader;
+            default -> throw new IllegalStateException("Unexpected value: " + entity);
+        };
+    }
+
+    /**
+     * Gets the template of the specified entity type.
+     *
+     * @param type  The type of the entity.
+     * @return      The template the entities of the type start with.
+     */
+    public static EntityTemplate getTemplate(EntityType type) {
+        return templates[type.ordinal()];
+    }
+
+    /**
+     * Writes the starting state of an entity into its slot of the entity store.
+     *
+     * @param ID                The ID of the entity.
+     * @param currLocationID    The location ID where the entity starts.
+     * @param template          The template of the entity's type.
+     */
+    private void initialize(int ID, int currLocationID, EntityTemplate template) {
+        entityManager.getStore().initialize(EntityIDs.slotOf(ID), template.shipType(), template.shipStats(),
+                template.credits(), currLocationID);
+    }
+}
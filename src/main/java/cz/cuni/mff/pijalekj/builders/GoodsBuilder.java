@@ -1,9 +1,9 @@
 package cz.cuni.mff.pijalekj.builders;
 
-import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.constants.EconomyTables;
 import cz.cuni.mff.pijalekj.entities.GoodsPrices;
-import cz.cuni.mff.pijalekj.enums.GoodsIndex;
 import cz.cuni.mff.pijalekj.enums.PlanetIndustryType;
+import cz.cuni.mff.pijalekj.world.MarketStore;
 
 /**
  * The GoodsBuilder class provides static methods for constructing goods-related objects,
@@ -11,25 +11,22 @@ import cz.cuni.mff.pijalekj.enums.PlanetIndustryType;
  */
 public class GoodsBuilder {
     /**
-     * Generates default goods prices based on a given planet industry type.
+     * Fills a planet's market with the default goods and prices of a given planet industry type.
      *
-     * @param type  The planet industry type for which goods prices are generated.
-     * @return      The GoodsPrices object representing the default goods prices.
+     * @param type      The planet industry type for which goods prices are generated.
+     * @param store     The market store holding the planet's market.
+     * @param planetID  The ID of the planet.
+     * @return          The GoodsPrices view of the planet's market.
      */
-    public static GoodsPrices defaultGoodsPrices(PlanetIndustryType type) {
-        String goodKey = type.toString() + ".Consumption.";
-        String priceKey = "BasePrices.";
-        var goods = new int[9];
-        var prices = new int[9];
+    public static GoodsPrices defaultGoodsPrices(PlanetIndustryType type, MarketStore store, int planetID) {
+        int[] consumption = EconomyTables.CONSUMPTION[type.ordinal()];
+        store.setType(planetID, type);
 
-        for (var goodIndex : GoodsIndex.values()) {
-            int amount = 3 * Constants.goods.getLong(goodKey + goodIndex).intValue();
-            int price = Constants.goods.getLong(priceKey + goodIndex).intValue();
-
-            goods[goodIndex.ordinal()] = amount;
-            prices[goodIndex.ordinal()] = price;
+        for (int good = 0; good < consumption.length; ++good) {
+            store.setStock(planetID, good, 3 * consumption[good]);
+            store.setPrice(planetID, good, EconomyTables.BASE_PRICES[good]);
         }
 
-        return new GoodsPrices(goods, prices);
+        return new GoodsPrices(store, planetID);
     }
 }
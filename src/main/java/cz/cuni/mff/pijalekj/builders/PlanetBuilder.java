@@ -2,12 +2,13 @@ package cz.cuni.mff.pijalekj.builders;
 
 import cz.cuni.mff.pijalekj.entities.Planet;
 import cz.cuni.mff.pijalekj.enums.PlanetIndustryType;
+import cz.cuni.mff.pijalekj.world.MarketStore;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import static cz.cuni.mff.pijalekj.builders.GoodsBuilder.defaultGoodsPrices;
 
@@ -16,14 +17,19 @@ import static cz.cuni.mff.pijalekj.builders.GoodsBuilder.defaultGoodsPrices;
  * including methods to build planets based on industry types or generate random planets.
  */
 public class PlanetBuilder {
-    private final static Random generator = new Random();
-    public final static String[] planetNames;
+    /**
+     * Holds the names planets are given. The names are only read when the first random planet is generated,
+     * so that planets built with known names, like those of a WorldImage, do not read the file.
+     */
+    private static final class Names {
+        private final static String[] planetNames;
 
-    static {
-        try (var reader = Files.newBufferedReader(Path.of("./src/data/PlanetNames.txt"), StandardCharsets.UTF_8)) {
-            planetNames = reader.lines().toArray(String[]::new);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        static {
+            try (var reader = Files.newBufferedReader(Path.of("./src/data/PlanetNames.txt"), StandardCharsets.UTF_8)) {
+                planetNames = reader.lines().toArray(String[]::new);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -33,32 +39,36 @@ public class PlanetBuilder {
      * @param type  The planet industry type.
      * @param name  The name of the planet.
      * @param ID    The unique identifier for the planet.
+     * @param store The market store holding the planet's market.
      * @return      The constructed Planet object.
      */
-    public static Planet buildPlanet(PlanetIndustryType type, String name, int ID) {
-        var goodsPrices = defaultGoodsPrices(type);
+    public static Planet buildPlanet(PlanetIndustryType type, String name, int ID, MarketStore store) {
+        var goodsPrices = defaultGoodsPrices(type, store, ID);
         return new Planet(name, type, ID, goodsPrices);
     }
 
     /**
      * Generates a random planet with a random industry type, a randomly selected name,
-     * and the specified ID.
+     * and the specified ID, drawing all randomness from the given generator.
      *
-     * @param ID    The unique identifier for the planet.
-     * @return      The randomly generated Planet object.
+     * @param ID        The unique identifier for the planet.
+     * @param generator The source of randomness.
+     * @param store     The market store holding the planet's market.
+     * @return          The randomly generated Planet object.
      */
-    public static Planet randomPlanet(int ID) {
+    public static Planet randomPlanet(int ID, RandomGenerator generator, MarketStore store) {
         int randomType = generator.nextInt(0, 101);
+        String[] planetNames = Names.planetNames;
         int randomName = generator.nextInt(0, planetNames.length);
 
         String name = planetNames[randomName];
 
         if (randomType <= 50) {
-            return buildPlanet(PlanetIndustryType.Agricultural, name, ID);
+            return buildPlanet(PlanetIndustryType.Agricultural, name, ID, store);
         } else if (randomType <= 80) {
-            return buildPlanet(PlanetIndustryType.Industrial, name, ID);
+            return buildPlanet(PlanetIndustryType.Industrial, name, ID, store);
         } else {
-            return buildPlanet(PlanetIndustryType.Technological, name, ID);
+            return buildPlanet(PlanetIndustryType.Technological, name, ID, store);
         }
     }
 }
@@ -3,26 +3,63 @@ package cz.cuni.mff.pijalekj.builders;
 import cz.cuni.mff.pijalekj.constants.Constants;
 import cz.cuni.mff.pijalekj.enums.ShipSize;
 import cz.cuni.mff.pijalekj.enums.ShipType;
-import cz.cuni.mff.pijalekj.ships.MaxValue;
-import cz.cuni.mff.pijalekj.ships.Ship;
 import cz.cuni.mff.pijalekj.ships.ShipStats;
 
 /**
- * The ShipBuilder class provides static methods for constructing ship objects,
- * including a method to build ships based on ship types.
+ * The ShipBuilder class provides the statistics of every ship type. They are read from the
+ * configuration once and shared by all ships of the type. The damage a ship deals only depends on
+ * the types of both ships, so it is precomputed for every pair of types.
  */
 public class ShipBuilder {
+    private final static ShipStats[] stats = new ShipStats[ShipType.values().length];
+    /** The damage dealt by a ship of the first type to a ship of the second type. */
+    private final static int[][] damage = new int[ShipType.values().length][ShipType.values().length];
+
+    static {
+        for (var type : ShipType.values()) {
+            stats[type.ordinal()] = buildStats(type);
+        }
+        for (var attacker : ShipType.values()) {
+            for (var defender : ShipType.values()) {
+                damage[attacker.ordinal()][defender.ordinal()] = computeDamage(getStats(attacker), getStats(defender));
+            }
+        }
+    }
+
     /**
-     * Builds a ship with the specified ship type.
+     * Gets the statistics of the specified ship type.
      *
      * @param type  The ship type.
-     * @return      The constructed Ship object.
+     * @return      The shared ShipStats of the type.
+     */
+    public static ShipStats getStats(ShipType type) {
+        return stats[type.ordinal()];
+    }
+
+    /**
+     * Gets the damage a ship deals to another ship in one attack.
+     *
+     * @param attacker  The type of the attacking ship.
+     * @param defender  The type of the defending ship.
+     * @return          The damage, after considering maneuverability and battle coefficient.
      */
-    public static Ship buildShip(ShipType type) {
-        var stats = buildStats(type);
-        var size = getShipSize(type);
+    public static int getDamage(ShipType attacker, ShipType defender) {
+        return damage[attacker.ordinal()][defender.ordinal()];
+    }
 
-        return new Ship(stats, size, type);
+    /**
+     * Calculates the damage output of an attacking ship type against a defending ship type.
+     *
+     * @param attacker  The statistics of the attacking ship type.
+     * @param defender  The statistics of the defending ship type.
+     * @return          The damage, after considering maneuverability and battle coefficient.
+     */
+    private static int computeDamage(ShipStats attacker, ShipStats defender) {
+        double attDamage = attacker.damage;
+        double defManeuver = defender.maneuver;
+
+        return Math.toIntExact(
+                Math.round(attDamage * (1 - (defManeuver / (100 + Constants.BATTLE_COEFF)))));
     }
 
     /**
@@ -33,14 +70,14 @@ public class ShipBuilder {
      */
     private static ShipStats buildStats(ShipType type) {
         String baseKey = "Ships." + type + ".";
-        var health = new MaxValue(Constants.ships.getLong(baseKey + "Hull").intValue());
+        var health = Constants.ships.getLong(baseKey + "Hull").intValue();
         var cargo = Constants.ships.getLong(baseKey + "Cargo").intValue();
-        var fuel = new MaxValue(3 * Constants.ships.getLong(baseKey + "MaxJump").intValue());
-        var shields = new MaxValue(Constants.ships.getLong(baseKey + "Shields").intValue());
+        var fuel = 3 * Constants.ships.getLong(baseKey + "MaxJump").intValue();
+        var shields = Constants.ships.getLong(baseKey + "Shields").intValue();
         int damage = Constants.ships.getLong(baseKey + "Damage").intValue();
         int maneuver = Constants.ships.getLong(baseKey + "Maneuver").intValue();
 
-        return new ShipStats(health, cargo, fuel, shields, damage, maneuver);
+        return new ShipStats(health, cargo, fuel, shields, damage, maneuver, getShipSize(type));
     }
 
     /**
@@ -54,4 +91,3 @@ public class ShipBuilder {
         return ShipSize.valueOf(Constants.ships.getString(key));
     }
 }
-
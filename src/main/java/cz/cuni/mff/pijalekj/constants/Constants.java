@@ -30,7 +30,13 @@ public class Constants {
     /** Coefficient used in battle calculations. */
     public static final double BATTLE_COEFF = 130.;
 
+    /** Maximum number of jumps of a trader's trading plan. */
+    public static final int TRADE_PLAN_DEPTH = 3;
+
     /** Default timeout value for the CriminalsList. */
     public static final int DEFAULT_TIMEOUT = 40;
+
+    /** The file the game is saved to. */
+    public static final String SAVE_FILE = "./spacetrader.sav";
 }
 
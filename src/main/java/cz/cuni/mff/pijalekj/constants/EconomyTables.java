@@ -0,0 +1,52 @@
+package cz.cuni.mff.pijalekj.constants;
+
+import cz.cuni.mff.pijalekj.enums.GoodsIndex;
+import cz.cuni.mff.pijalekj.enums.PlanetIndustryType;
+
+/**
+ * The EconomyTables class holds the economy configuration from goodsNumbers.toml, compiled once into dense
+ * integer tables indexed by PlanetIndustryType ordinal and GoodsIndex ordinal, so that planet updates
+ * do not have to build keys and look them up in the TOML configuration. The tables must not be modified.
+ */
+public class EconomyTables {
+    /** Number of goods, i.e. the length of every row. */
+    public static final int GOODS_COUNT = GoodsIndex.values().length;
+
+    /** Amount of each good produced during a big tick, indexed by [planet type][good]. */
+    public static final int[][] PRODUCTION = compile(".Production.");
+
+    /** Amount of each good consumed during a big tick, indexed by [planet type][good]. */
+    public static final int[][] CONSUMPTION = compile(".Consumption.");
+
+    /** Base price of each good, indexed by [good]. */
+    public static final int[] BASE_PRICES = compileRow("BasePrices.");
+
+    /**
+     * Compiles one table of per-type values from the goods configuration.
+     *
+     * @param section The section of the table within each planet type, e.g. ".Production.".
+     * @return The table indexed by [planet type][good].
+     */
+    private static int[][] compile(String section) {
+        var types = PlanetIndustryType.values();
+        int[][] table = new int[types.length][];
+        for (var type : types) {
+            table[type.ordinal()] = compileRow(type + section);
+        }
+        return table;
+    }
+
+    /**
+     * Compiles one row of per-good values from the goods configuration.
+     *
+     * @param baseKey The key prefix of the values, followed by the good's name.
+     * @return The row indexed by [good].
+     */
+    private static int[] compileRow(String baseKey) {
+        int[] row = new int[GOODS_COUNT];
+        for (var good : GoodsIndex.values()) {
+            row[good.ordinal()] = Constants.goods.getLong(baseKey + good).intValue();
+        }
+        return row;
+    }
+}
@@ -1,13 +1,19 @@
 package cz.cuni.mff.pijalekj.entities;
 
 import cz.cuni.mff.pijalekj.battle.BattleDecision;
+import cz.cuni.mff.pijalekj.battle.BattleResolver;
 import cz.cuni.mff.pijalekj.battle.Playerlike;
 import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.enums.BattleTactic;
 import cz.cuni.mff.pijalekj.enums.EntityActions;
 import cz.cuni.mff.pijalekj.enums.GoodsIndex;
 import cz.cuni.mff.pijalekj.managers.EntityManager;
 import cz.cuni.mff.pijalekj.managers.TravelManager;
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
 import cz.cuni.mff.pijalekj.ships.Ship;
+import cz.cuni.mff.pijalekj.world.EntityStore;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
 
 import java.util.OptionalInt;
 
@@ -30,17 +36,17 @@ public abstract class Entity implements Playerlike {
     /**
      * The Ship owned by the entity.
      */
-    protected Ship ownedShip;
+    protected final Ship ownedShip;
 
     /**
      * The statistics of the entity.
      */
-    protected EntityStats entityStats;
+    protected final EntityStats entityStats;
 
     /**
-     * The previous action performed by the entity.
+     * The store holding the state of the entity, including its previous action.
      */
-    protected EntityActions prevAction;
+    private final EntityStore store;
 
     /**
      * The unique identifier for the entity.
@@ -57,30 +63,30 @@ public abstract class Entity implements Playerlike {
     }
 
     /**
-     * Sets the Ship owned by the entity.
+     * Gets the statistics of the entity.
      *
-     * @param ownedShip The Ship to be set as owned.
+     * @return The EntityStats of the entity.
      */
-    public void setOwnedShip(Ship ownedShip) {
-        this.ownedShip = ownedShip;
+    public EntityStats getEntityStats() {
+        return entityStats;
     }
 
     /**
-     * Gets the statistics of the entity.
+     * Gets the previous action performed by the entity.
      *
-     * @return The EntityStats of the entity.
+     * @return The previous action.
      */
-    public EntityStats getEntityStats() {
-        return entityStats;
+    protected EntityActions getPrevAction() {
+        return store.getLastAction(EntityIDs.slotOf(entityID));
     }
 
     /**
-     * Sets the EntityStats for the entity.
+     * Sets the previous action performed by the entity.
      *
-     * @param entityStats The EntityStats to be set.
+     * @param prevAction The action just performed.
      */
-    public void setEntityStats(EntityStats entityStats) {
-        this.entityStats = entityStats;
+    protected void setPrevAction(EntityActions prevAction) {
+        store.setLastAction(EntityIDs.slotOf(entityID), prevAction);
     }
 
     /**
@@ -90,19 +96,39 @@ public abstract class Entity implements Playerlike {
      * @param entityManager The EntityManager for getting information about other Entities within the game.
      * @param ownedShip The Ship owned by the entity.
      * @param entityStats The statistics of the entity.
-     * @param prevAction The previous action performed by the entity.
      * @param entityID The unique identifier for the entity.
      */
     protected Entity(TravelManager travelManager, EntityManager entityManager,
-                     Ship ownedShip, EntityStats entityStats, EntityActions prevAction, int entityID) {
+                     Ship ownedShip, EntityStats entityStats, int entityID) {
         this.travelManager = travelManager;
         this.entityManager = entityManager;
         this.ownedShip = ownedShip;
         this.entityStats = entityStats;
-        this.prevAction = prevAction;
+        this.store = entityManager.getStore();
         this.entityID = entityID;
     }
 
+    /**
+     * Resets the state the entity keeps outside the entity store after it was respawned in place.
+     *
+     * @param currLocationID The location ID where the entity respawned.
+     */
+    public void respawned(int currLocationID) {}
+
+    /**
+     * Writes the state the entity keeps outside the entity store into a snapshot of the world.
+     *
+     * @param out The snapshot section of the entities.
+     */
+    public void save(SnapshotOutput out) {}
+
+    /**
+     * Reads the state written by save(). Called after the entity's slot of the entity store was loaded.
+     *
+     * @param in The snapshot section of the entities.
+     */
+    public void load(SnapshotInput in) {}
+
     /**
      * Abstract method representing the entity's action during a turn.
      *
@@ -118,6 +144,14 @@ public abstract class Entity implements Playerlike {
      */
     public abstract BattleDecision battle(Playerlike opponent);
 
+    /**
+     * Abstract method representing the rule the entity's battle decisions follow, so that battles
+     * between entities can be resolved without asking for every decision.
+     *
+     * @return The BattleTactic of the entity.
+     */
+    public abstract BattleTactic getBattleTactic();
+
     /**
      * Abstract method representing the entity's actions when it wins a battle against an opponent.
      *
@@ -183,7 +217,7 @@ public abstract class Entity implements Playerlike {
      * Sets the health of the entity's owned ship to zero, effectively killing the entity.
      */
     public void kill() {
-        ownedShip.getStats().hull.setCurr(0);
+        ownedShip.destroy();
     }
 
     /**
@@ -201,7 +235,7 @@ public abstract class Entity implements Playerlike {
      * @param opponent The opponent entity.
      */
     protected void takeAll(EntityStats opponent) {
-        int maxCapacity = ownedShip.getStats().maxCargo;
+        int maxCapacity = ownedShip.getMaxCargo();
         int free = maxCapacity - entityStats.getTotalGoodsAmount();
 
         entityStats.transferAllGoods(opponent, free);
@@ -224,19 +258,13 @@ public abstract class Entity implements Playerlike {
     protected int outSustain(Ship victimShip) {
         // Calculation of sustainability difference between the entity and a victim ship
         // based on health, shields, and damage output.
-        var myHealth = ownedShip.getStats().hull.getCurr() +
-                ownedShip.getStats().shields.getCurr();
-        var victimHealth = victimShip.getStats().hull.getCurr() +
-                victimShip.getStats().shields.getCurr();
+        var myHealth = ownedShip.getHull() + ownedShip.getShields();
+        var victimHealth = victimShip.getHull() + victimShip.getShields();
 
         var attackerDamage = Ship.damageOutput(ownedShip, victimShip);
         var victimDamage = Ship.damageOutput(victimShip, ownedShip);
 
-        // + 1 to prevent division by 0, should not affect the outcome
-        var mySustain = myHealth / (victimDamage + 1);
-        var victimSustain = victimHealth / (attackerDamage + 1);
-
-        return mySustain - victimSustain;
+        return BattleResolver.outSustain(myHealth, victimHealth, attackerDamage, victimDamage);
     }
 
     /**
@@ -247,22 +275,22 @@ public abstract class Entity implements Playerlike {
         ownedShip.rechargeShields();
 
         // Fuel
-        int fuelDiff = ownedShip.getStats().fuel.getMax() - ownedShip.getStats().fuel.getCurr();
+        int fuelDiff = ownedShip.getMaxFuel() - ownedShip.getFuel();
         int neededCredits = fuelDiff * Constants.fuelCost;
 
         if (fuelDiff > 0 && neededCredits <= entityStats.getCredits()) {
             entityStats.removeCredits(neededCredits);
-            ownedShip.refuel(fuelDiff);
+            ownedShip.refuel();
         } else {
             entityStats.addCredits(50);
         }
 
         // Hull
-        int hullDiff = ownedShip.getStats().hull.getMax() - ownedShip.getStats().hull.getCurr();
-        neededCredits = fuelDiff * Constants.fuelCost;
+        int hullDiff = ownedShip.getMaxHull() - ownedShip.getHull();
+        neededCredits = hullDiff * Constants.repairCost;
         if (hullDiff > 0 && neededCredits <= entityStats.getCredits()) {
             entityStats.removeCredits(neededCredits);
-            ownedShip.repairHull(hullDiff);
+            ownedShip.repairHull();
         } else {
             entityStats.addCredits(50);
         }
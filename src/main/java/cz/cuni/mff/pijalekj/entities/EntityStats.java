@@ -1,26 +1,27 @@
 package cz.cuni.mff.pijalekj.entities;
 
 import cz.cuni.mff.pijalekj.enums.GoodsIndex;
-
-import java.util.Arrays;
+import cz.cuni.mff.pijalekj.world.EntityStore;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
 
 /**
  * The EntityStats class represents the statistics and inventory of an entity in the game.
- * It includes information about credits and owned goods.
+ * It includes information about credits and owned goods. It is a handle over the entity's slot
+ * in the EntityStore, which holds the actual values.
  */
 public class EntityStats {
-    private int credits;
-    private final int[] ownedGoods;
+    private final EntityStore store;
+    private final int slot;
 
     /**
-     * Constructs an EntityStats object with specified initial credits and goods.
+     * Constructs a handle over the statistics of the specified entity.
      *
-     * @param credits     The initial credits.
-     * @param ownedGoods  An array representing the initial amounts of each type of goods.
+     * @param store     The store holding the state of all entities.
+     * @param entityID  The ID of the entity.
      */
-    public EntityStats(int credits, int[] ownedGoods) {
-        this.credits = credits;
-        this.ownedGoods = ownedGoods;
+    public EntityStats(EntityStore store, int entityID) {
+        this.store = store;
+        this.slot = EntityIDs.slotOf(entityID);
     }
 
     /**
@@ -29,7 +30,7 @@ public class EntityStats {
      * @return The total amount of goods.
      */
     public int getTotalGoodsAmount() {
-        return Arrays.stream(ownedGoods).sum();
+        return store.getTotalCargo(slot);
     }
 
     /**
@@ -38,7 +39,7 @@ public class EntityStats {
      * @return The amount of credits.
      */
     public int getCredits() {
-        return credits;
+        return store.getCredits(slot);
     }
 
     /**
@@ -48,7 +49,7 @@ public class EntityStats {
      */
     public void addCredits(int credits) {
         assert credits >= 0;
-        this.credits += credits;
+        store.setCredits(slot, store.getCredits(slot) + credits);
     }
 
     /**
@@ -58,7 +59,7 @@ public class EntityStats {
      */
     public void removeCredits(int credits) {
         assert credits >= 0;
-        this.credits -= credits;
+        store.setCredits(slot, store.getCredits(slot) - credits);
     }
 
     /**
@@ -78,7 +79,7 @@ public class EntityStats {
      * @return The amount of the specified good.
      */
     public int getGoodAmount(int good) {
-        return ownedGoods[good];
+        return store.getCargo(slot, good);
     }
 
     /**
@@ -89,7 +90,7 @@ public class EntityStats {
      */
     public void addGood(int good, int amount) {
         assert amount >= 0;
-        ownedGoods[good] += amount;
+        store.setCargo(slot, good, store.getCargo(slot, good) + amount);
     }
 
     /**
@@ -100,8 +101,8 @@ public class EntityStats {
      */
     public void removeGood(int good, int amount) {
         assert amount >= 0;
-        assert ownedGoods[good] >= amount;
-        ownedGoods[good] -= amount;
+        assert store.getCargo(slot, good) >= amount;
+        store.setCargo(slot, good, store.getCargo(slot, good) - amount);
     }
 
     /**
@@ -111,7 +112,7 @@ public class EntityStats {
      * @return The amount of the specified good.
      */
     public int getGoodAmount(GoodsIndex good) {
-        return ownedGoods[good.ordinal()];
+        return getGoodAmount(good.ordinal());
     }
 
     /**
@@ -121,8 +122,7 @@ public class EntityStats {
      * @param amount The amount to add.
      */
     public void addGood(GoodsIndex good, int amount) {
-        assert amount >= 0;
-        ownedGoods[good.ordinal()] += amount;
+        addGood(good.ordinal(), amount);
     }
 
     /**
@@ -132,9 +132,7 @@ public class EntityStats {
      * @param amount The amount to remove.
      */
     public void removeGood(GoodsIndex good, int amount) {
-        assert amount >= 0;
-        assert ownedGoods[good.ordinal()] >= amount;
-        ownedGoods[good.ordinal()] -= amount;
+        removeGood(good.ordinal(), amount);
     }
 
     /**
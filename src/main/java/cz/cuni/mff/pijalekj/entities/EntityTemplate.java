@@ -0,0 +1,16 @@
+package cz.cuni.mff.pijalekj.entities;
+
+import cz.cuni.mff.pijalekj.enums.EntityType;
+import cz.cuni.mff.pijalekj.enums.ShipType;
+import cz.cuni.mff.pijalekj.ships.ShipStats;
+
+/**
+ * The EntityTemplate record holds everything a new entity of one type starts with. Templates are
+ * immutable and read from the configuration once, so creating or respawning an entity only copies them.
+ *
+ * @param type      The type of the entity.
+ * @param shipType  The type of the entity's starting ship.
+ * @param shipStats The statistics of the starting ship type.
+ * @param credits   The starting credits.
+ */
+public record EntityTemplate(EntityType type, ShipType shipType, ShipStats shipStats, int credits) {}
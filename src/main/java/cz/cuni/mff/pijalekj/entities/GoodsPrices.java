@@ -1,47 +1,64 @@
 package cz.cuni.mff.pijalekj.entities;
 
 import cz.cuni.mff.pijalekj.enums.GoodsIndex;
+import cz.cuni.mff.pijalekj.world.MarketStore;
 
+/**
+ * The GoodsPrices class is a lightweight view of one planet's market inside the galaxy-wide MarketStore.
+ * Every access first brings the market up to date, in case the store is in lazy mode.
+ */
 public class GoodsPrices {
-    private final int[] goods;
-    private final int[] prices;
+    private final MarketStore store;
+    private final int planetID;
 
-    public GoodsPrices(int[] goods, int[] prices) {
-        this.goods = goods;
-        this.prices = prices;
+    public GoodsPrices(MarketStore store, int planetID) {
+        this.store = store;
+        this.planetID = planetID;
     }
 
     public int getGoodAmount(int good) {
-        assert goods[good] >= 0: "Good " + good + " is < 0!";
-        return goods[good];
+        store.ensureUpdated(planetID);
+        assert store.getStock(planetID, good) >= 0: "Good " + good + " is < 0!";
+        return store.getStock(planetID, good);
     }
 
     public int getGoodAmount(GoodsIndex good) {
-        assert goods[good.ordinal()] >= 0: "Good " + good + " is < 0!";
-        return goods[good.ordinal()];
+        return getGoodAmount(good.ordinal());
     }
 
     public void addGood(int good, int amount) {
+        store.ensureUpdated(planetID);
         assert amount >= 0: "Good " + good + " amount cannot be negative!";
-        goods[good] += amount;
+        store.setStock(planetID, good, store.getStock(planetID, good) + amount);
     }
 
     public void removeGood(int good, int amount) {
+        store.ensureUpdated(planetID);
         assert amount >= 0: "Good " + good + " amount cannot be negative!";
-        assert goods[good] >= amount: "Amount has to be larger than goods[good]!";
-        goods[good] -= amount;
+        assert store.getStock(planetID, good) >= amount: "Amount has to be larger than goods[good]!";
+        store.setStock(planetID, good, store.getStock(planetID, good) - amount);
     }
 
     public int getPrice(int good) {
-        return prices[good];
+        store.ensureUpdated(planetID);
+        return store.getPrice(planetID, good);
     }
 
     public int getPrice(GoodsIndex good) {
-        return prices[good.ordinal()];
+        return getPrice(good.ordinal());
     }
 
     public void setPrice(int good, int price) {
+        store.ensureUpdated(planetID);
         assert price >= 0;
-        prices[good] = price;
+        store.setPrice(planetID, good, price);
+    }
+
+    public MarketStore getStore() {
+        return store;
+    }
+
+    public int getPlanetID() {
+        return planetID;
     }
 }
@@ -3,6 +3,7 @@ package cz.cuni.mff.pijalekj.entities;
 import cz.cuni.mff.pijalekj.battle.BattleDecision;
 import cz.cuni.mff.pijalekj.battle.Playerlike;
 import cz.cuni.mff.pijalekj.enums.BattleActionType;
+import cz.cuni.mff.pijalekj.enums.BattleTactic;
 import cz.cuni.mff.pijalekj.enums.EntityActions;
 import cz.cuni.mff.pijalekj.managers.CriminalsManager;
 import cz.cuni.mff.pijalekj.managers.EntityManager;
@@ -10,13 +11,14 @@ import cz.cuni.mff.pijalekj.managers.TravelManager;
 import cz.cuni.mff.pijalekj.ships.Ship;
 
 import java.util.OptionalInt;
-import java.util.Random;
+import java.util.function.IntConsumer;
 
 /**
  * The Pirate class, representing a type of Entity specialized in battles and attacking other entities.
  * Extends the abstract Entity class.
  */
 public class Pirate extends Entity {
+    private final VictimScan victimScan = new VictimScan();
 
     /**
      * Constructs a Pirate with specified attributes.
@@ -26,12 +28,11 @@ public class Pirate extends Entity {
      * @param criminalsManager The CriminalsManager for managing criminal entities.
      * @param ownedShip       The Ship owned by the pirate.
      * @param entityStats     The statistics of the pirate entity.
-     * @param prevAction      The previous action performed by the pirate.
      * @param entityID        The unique identifier for the pirate entity.
      */
     public Pirate(TravelManager travelManager, EntityManager entityManager, CriminalsManager criminalsManager,
-                  Ship ownedShip, EntityStats entityStats, EntityActions prevAction, int entityID) {
-        super(travelManager, entityManager, ownedShip, entityStats, prevAction, entityID);
+                  Ship ownedShip, EntityStats entityStats, int entityID) {
+        super(travelManager, entityManager, ownedShip, entityStats, entityID);
     }
 
     /**
@@ -49,6 +50,16 @@ public class Pirate extends Entity {
         return new BattleDecision(BattleActionType.flee, ownedShip.getFleeChance());
     }
 
+    /**
+     * Gets the rule the pirate's battle decisions follow. Pirates attack while they outsustain the opponent.
+     *
+     * @return The BattleTactic of the pirate.
+     */
+    @Override
+    public BattleTactic getBattleTactic() {
+        return BattleTactic.sustain;
+    }
+
     /**
      * Actions to be performed when the pirate wins a battle against an opponent.
      *
@@ -72,7 +83,7 @@ public class Pirate extends Entity {
         }
 
         if (travelManager.isTraveling()) {
-            if (prevAction != EntityActions.battle && prevAction != EntityActions.scan) {
+            if (getPrevAction() != EntityActions.battle && getPrevAction() != EntityActions.scan) {
                 return findVictim();
             }
 
@@ -84,17 +95,17 @@ public class Pirate extends Entity {
         if (isFull()) {
             sell();
         }
-        prevAction = EntityActions.maintenance;
+        setPrevAction(EntityActions.maintenance);
 
-        if (ownedShip.getStats().fuel.getCurr() < 13) {
+        if (ownedShip.getFuel() < 13) {
             return OptionalInt.empty();
         }
 
         // Otherwise, travel to a random neighbor
         var neighbors = travelManager.getNeighbors();
-        int randomIndex = new Random().nextInt(neighbors.length);
+        int randomIndex = travelManager.nextTravelChoice(neighbors.length);
 
-        prevAction = EntityActions.travelPrep;
+        setPrevAction(EntityActions.travelPrep);
         travelManager.travelStart(neighbors[randomIndex]);
         return OptionalInt.empty();
     }
@@ -105,21 +116,50 @@ public class Pirate extends Entity {
      * @return An OptionalInt indicating the chosen victim's ID, or an empty OptionalInt if no victim is found.
      */
     private OptionalInt findVictim() {
-        var presentEnt = travelManager.getPresentEntities();
-        int maxSustain = 0;
-        int victimID = -2;
-        prevAction = EntityActions.scan;
+        setPrevAction(EntityActions.scan);
+        victimScan.reset();
+        travelManager.forEachPresent(victimScan);
+
+        if (victimScan.victimID != -2) {
+            setPrevAction(EntityActions.battle);
+            return OptionalInt.of(victimScan.victimID);
+        }
+
+        return OptionalInt.empty();
+    }
+
+    /**
+     * Visitor that remembers the present entity this pirate outsustains the most. One instance is reused
+     * for every scan, so that scanning does not allocate.
+     */
+    private class VictimScan implements IntConsumer {
+        private int maxSustain;
+        private int victimID;
+
+        /**
+         * Forgets the result of the previous scan.
+         */
+        private void reset() {
+            maxSustain = 0;
+            victimID = -2;
+        }
 
-        for (var ID : presentEnt) {
+        /**
+         * Rates one present entity as a potential victim.
+         *
+         * @param ID The ID of the present entity.
+         */
+        @Override
+        public void accept(int ID) {
             var entityShip = entityManager.getEntityShip(ID);
             // Ignore the worst ships
             switch (entityShip.getShipType()) {
                 case Gnat, Flea -> {
-                    continue;
+                    return;
                 }
             }
             if (ID == entityID) {
-                continue;
+                return;
             }
 
             int sustain = outSustain(entityShip);
@@ -128,13 +168,5 @@ public class Pirate extends Entity {
                 victimID = ID;
             }
         }
-
-        if (victimID != -2) {
-            prevAction = EntityActions.battle;
-            return OptionalInt.of(victimID);
-        }
-
-        return OptionalInt.empty();
     }
 }
-
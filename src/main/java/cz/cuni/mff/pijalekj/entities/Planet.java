@@ -1,15 +1,13 @@
 package cz.cuni.mff.pijalekj.entities;
 
-import cz.cuni.mff.pijalekj.constants.Constants;
 import cz.cuni.mff.pijalekj.enums.GoodsIndex;
 import cz.cuni.mff.pijalekj.enums.PlanetIndustryType;
-
-import java.util.Random;
+import cz.cuni.mff.pijalekj.metrics.MarketTradeEvent;
 
 /**
  * The Planet class represents a celestial body in the game, with attributes such as name,
- * planet ID, goods and their prices; and industry type. It provides methods for buying and selling goods,
- * updating the planet's state, and computing prices.
+ * planet ID, goods and their prices; and industry type. It provides methods for buying and selling goods
+ * and updating the planet's state. The goods and prices themselves live in the galaxy-wide MarketStore.
  *
  * @param name        The name of the planet.
  * @param planetID    The unique identifier for the planet.
@@ -77,7 +75,9 @@ public record Planet(String name, PlanetIndustryType planetType, int planetID, G
      */
     public int buy(int good, int amount) {
         goodsPrices.removeGood(good, amount);
-        return amount * goodsPrices.getPrice(good);
+        int price = goodsPrices.getPrice(good);
+        emitTrade(good, amount, price, false);
+        return amount * price;
     }
 
     /**
@@ -89,71 +89,35 @@ public record Planet(String name, PlanetIndustryType planetType, int planetID, G
      */
     public int sell(int good, int amount) {
         goodsPrices.addGood(good, amount);
-        return amount * goodsPrices.getPrice(good);
-    }
-
-    /**
-     * Updates the state of the planet, including industry, items, and prices.
-     */
-    public void update() {
-        updateIndustry();
-        updateItems();
-        updatePrices();
-    }
-
-    /**
-     * Updates the industry of the planet based on its type.
-     */
-    private void updateIndustry() {
-        String baseKey = planetType().toString() + ".Production.";
-
-        for (var goodType : GoodsIndex.values()) {
-            String key = baseKey + goodType;
-            goodsPrices.addGood(goodType.ordinal(), Constants.goods.getLong(key).intValue());
-        }
+        int price = goodsPrices.getPrice(good);
+        emitTrade(good, amount, price, true);
+        return amount * price;
     }
 
     /**
-     * Updates the prices of goods on the planet, introducing randomness.
-     */
-    private void updatePrices() {
-        Random random = new Random();
-
-        String baseKey = "BasePrices.";
-        for (var goodType : GoodsIndex.values()) {
-            String key = baseKey + goodType;
-            int basePrice = Constants.goods.getLong(key).intValue() + random.nextInt(0, 21);
-            int offset = goodsPrices.getGoodAmount(goodType.ordinal());
-
-            goodsPrices.setPrice(goodType.ordinal(), computePrice(basePrice, offset));
-        }
-    }
-
-    /**
-     * Updates the items on the planet based on its type.
+     * Emits a MarketTradeEvent for a trade, if the event is enabled.
+     *
+     * @param good   The traded good.
+     * @param amount How many were traded.
+     * @param price  The price of a unit after the trade.
+     * @param sale   True if the goods were sold to the planet.
      */
-    private void updateItems() {
-        String baseKey = planetType().toString() + ".Consumption.";
-
-        for (var goodType : GoodsIndex.values()) {
-            String key = baseKey + goodType;
-            int by = Math.min(goodsPrices.getGoodAmount(goodType.ordinal()), Constants.goods.getLong(key).intValue());
-            goodsPrices.removeGood(goodType.ordinal(), by);
+    private void emitTrade(int good, int amount, int price, boolean sale) {
+        var event = new MarketTradeEvent();
+        if (event.isEnabled()) {
+            event.planetID = planetID;
+            event.good = GoodsIndex.values()[good].name();
+            event.amount = amount;
+            event.unitPrice = price;
+            event.sale = sale;
+            event.commit();
         }
     }
 
     /**
-     * Computes the new price based on the base price and offset.
-     *
-     * @param base   The base price.
-     * @param offset The offset value.
-     * @return The computed price.
+     * Updates the state of the planet, including industry, items, and prices.
      */
-    private int computePrice(int base, int offset) {
-        int newPrice = base - (offset / 3);
-        if (newPrice <= 0) {
-            newPrice = 20;
-        }
-        return newPrice;
+    public void update() {
+        goodsPrices.getStore().update(planetID);
     }
-}
\ No newline at end of file
+}
@@ -4,7 +4,8 @@ import cz.cuni.mff.pijalekj.battle.Playerlike;
 import cz.cuni.mff.pijalekj.managers.TravelManager;
 import cz.cuni.mff.pijalekj.ships.Ship;
 
-import java.util.HashSet;
+import java.util.OptionalInt;
+import java.util.function.IntPredicate;
 
 /**
  * The Player class represents the player in the game, implementing the Playerlike interface.
@@ -13,7 +14,7 @@ import java.util.HashSet;
 public class Player implements Playerlike {
     public String name;
     private final TravelManager travelManager;
-    public Ship ownedShip;
+    public final Ship ownedShip;
     public final EntityStats entityStats;
 
     /**
@@ -44,7 +45,7 @@ public class Player implements Playerlike {
      * @return True if the player is alive, false otherwise.
      */
     public boolean isAlive() {
-        return ownedShip.getStats().hull.getCurr() > 0;
+        return ownedShip.isAlive();
     }
 
     /**
@@ -53,7 +54,7 @@ public class Player implements Playerlike {
      * @return The current fuel level.
      */
     public int getCurrFuel() {
-        return ownedShip.getStats().fuel.getCurr();
+        return ownedShip.getFuel();
     }
 
     /**
@@ -62,7 +63,7 @@ public class Player implements Playerlike {
      * @return The maximum fuel capacity.
      */
     public int getMaxFuel() {
-        return ownedShip.getStats().fuel.getMax();
+        return ownedShip.getMaxFuel();
     }
 
     /**
@@ -80,7 +81,7 @@ public class Player implements Playerlike {
      * @return The maximum cargo capacity.
      */
     public int getMaxCargo() {
-        return ownedShip.getStats().maxCargo;
+        return ownedShip.getMaxCargo();
     }
 
     /**
@@ -98,7 +99,7 @@ public class Player implements Playerlike {
      * @return The current hull health.
      */
     public int getCurrHull() {
-        return ownedShip.getStats().hull.getCurr();
+        return ownedShip.getHull();
     }
 
     /**
@@ -107,7 +108,7 @@ public class Player implements Playerlike {
      * @return The maximum hull health.
      */
     public int getMaxHull() {
-        return ownedShip.getStats().hull.getMax();
+        return ownedShip.getMaxHull();
     }
 
     /**
@@ -164,12 +165,13 @@ public class Player implements Playerlike {
     }
 
     /**
-     * Gets the set of entity IDs present at the current location of the player.
+     * Finds the first entity present at the current location of the player that matches the predicate.
      *
-     * @return The set of entity IDs.
+     * @param predicate The predicate the entity ID has to match.
+     * @return The ID of the first matching entity, or an empty OptionalInt if there is none.
      */
-    public HashSet<Integer> getPresentEntities() {
-        return travelManager.getPresentEntities();
+    public OptionalInt findPresentEntity(IntPredicate predicate) {
+        return travelManager.findPresent(predicate);
     }
 
     /**
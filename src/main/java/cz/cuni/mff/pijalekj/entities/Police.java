@@ -3,21 +3,23 @@ package cz.cuni.mff.pijalekj.entities;
 import cz.cuni.mff.pijalekj.battle.BattleDecision;
 import cz.cuni.mff.pijalekj.battle.Playerlike;
 import cz.cuni.mff.pijalekj.enums.BattleActionType;
+import cz.cuni.mff.pijalekj.enums.BattleTactic;
 import cz.cuni.mff.pijalekj.enums.EntityActions;
 import cz.cuni.mff.pijalekj.managers.CriminalsManager;
 import cz.cuni.mff.pijalekj.managers.EntityManager;
 import cz.cuni.mff.pijalekj.managers.TravelManager;
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
 import cz.cuni.mff.pijalekj.ships.Ship;
 
 import java.util.OptionalInt;
-import java.util.Random;
 
 /**
  * The Police class represents a police entity in the game, extending the Entity class.
  * It includes additional functionality for enforcing law and maintaining order.
  */
 public class Police extends Entity {
-    private final int homePlanetID;
+    private int homePlanetID;
     private final CriminalsManager criminalsManager;
 
     /**
@@ -28,18 +30,47 @@ public class Police extends Entity {
      * @param criminalsManager  The CriminalsManager for managing criminal entities in the game.
      * @param ownedShip         The Ship owned by the police.
      * @param entityStats       The EntityStats representing the police's statistics and inventory.
-     * @param prevAction        The previous action of the police.
      * @param entityID          The ID of the police entity.
      * @param homePlanetID      The ID of the home planet where the police is stationed.
      */
     public Police(TravelManager travelManager, EntityManager entityManager, CriminalsManager criminalsManager,
-                  Ship ownedShip, EntityStats entityStats, EntityActions prevAction, int entityID, int homePlanetID)
+                  Ship ownedShip, EntityStats entityStats, int entityID, int homePlanetID)
     {
-        super(travelManager, entityManager, ownedShip, entityStats, prevAction, entityID);
+        super(travelManager, entityManager, ownedShip, entityStats, entityID);
         this.homePlanetID = homePlanetID;
         this.criminalsManager = criminalsManager;
     }
 
+    /**
+     * Stations the police at the planet it respawned at.
+     *
+     * @param currLocationID The location ID where the police respawned.
+     */
+    @Override
+    public void respawned(int currLocationID) {
+        homePlanetID = currLocationID;
+    }
+
+    /**
+     * Writes the home planet, relative to the current position, as the police stay close to it.
+     *
+     * @param out The snapshot section of the entities.
+     */
+    @Override
+    public void save(SnapshotOutput out) {
+        out.writeSignedVarInt(homePlanetID - getCurrPosition());
+    }
+
+    /**
+     * Reads the home planet written by save().
+     *
+     * @param in The snapshot section of the entities.
+     */
+    @Override
+    public void load(SnapshotInput in) {
+        homePlanetID = getCurrPosition() + in.readSignedVarInt();
+    }
+
     /**
      * Handles the battle decision for the police. The police always choose to attack.
      *
@@ -51,6 +82,16 @@ public class Police extends Entity {
         return new BattleDecision(BattleActionType.attack, Ship.damageOutput(ownedShip, opponent.getOwnedShip()));
     }
 
+    /**
+     * Gets the rule the police's battle decisions follow. The police always attack.
+     *
+     * @return The BattleTactic of the police.
+     */
+    @Override
+    public BattleTactic getBattleTactic() {
+        return BattleTactic.attack;
+    }
+
     /**
      * Handles the actions to be performed when the police wins a battle.
      *
@@ -75,7 +116,7 @@ public class Police extends Entity {
         // This NPC is travelling
         if (travelManager.isTraveling()) {
             // If the police have scanned or fought someone during this travel, do nothing for the rest
-            if (prevAction == EntityActions.battle || prevAction == EntityActions.scan) {
+            if (getPrevAction() == EntityActions.battle || getPrevAction() == EntityActions.scan) {
                 travel();
                 return OptionalInt.empty();
             }
@@ -84,7 +125,7 @@ public class Police extends Entity {
         }
 
         // This NPC is at a planet. Do maintenance and sell all confiscated goods (if any).
-        prevAction = EntityActions.maintenance;
+        setPrevAction(EntityActions.maintenance);
         maintenance();
         if (isFull()) {
             sell();
@@ -96,9 +137,9 @@ public class Police extends Entity {
         } else {
             // Otherwise, travel to a random neighbor
             var neighbors = travelManager.getNeighbors();
-            int randomIndex = new Random().nextInt(neighbors.length);
+            int randomIndex = travelManager.nextTravelChoice(neighbors.length);
 
-            prevAction = EntityActions.travelPrep;
+            setPrevAction(EntityActions.travelPrep);
             travelManager.travelStart(neighbors[randomIndex]);
         }
 
@@ -111,9 +152,7 @@ public class Police extends Entity {
      * @return An OptionalInt representing the ID of the criminal entity, if found.
      */
     private OptionalInt findCriminal() {
-        return travelManager.getPresentEntities().stream().mapToInt(i -> i)
-                .filter(ID -> criminalsManager.isCriminal(ID) && ID != entityID)
-                .findFirst();
+        return travelManager.findCriminal();
     }
 
     /**
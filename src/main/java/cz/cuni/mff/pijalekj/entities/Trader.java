@@ -3,22 +3,33 @@ package cz.cuni.mff.pijalekj.entities;
 import cz.cuni.mff.pijalekj.battle.BattleDecision;
 import cz.cuni.mff.pijalekj.battle.Playerlike;
 import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.constants.EconomyTables;
 import cz.cuni.mff.pijalekj.enums.BattleActionType;
+import cz.cuni.mff.pijalekj.enums.BattleTactic;
 import cz.cuni.mff.pijalekj.enums.EntityActions;
-import cz.cuni.mff.pijalekj.enums.GoodsIndex;
 import cz.cuni.mff.pijalekj.managers.CriminalsManager;
 import cz.cuni.mff.pijalekj.managers.EntityManager;
 import cz.cuni.mff.pijalekj.managers.TravelManager;
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
 import cz.cuni.mff.pijalekj.ships.Ship;
+import cz.cuni.mff.pijalekj.world.TradeRouteTable;
 
-import java.util.*;
+import java.util.OptionalInt;
 
 /**
  * The Trader class represents a trader entity in the game, extending the Entity class.
  * It includes additional functionality for trading and planning travel routes.
  */
 public class Trader extends Entity {
-    private Deque<Integer> path = new LinkedList<>();
+    /** The maximum number of jumps of a trading plan. */
+    private static final int PLAN_DEPTH = Constants.TRADE_PLAN_DEPTH;
+    /** The buffers of planning, one set per thread, so that planning allocates nothing. */
+    private static final ThreadLocal<PlanScratch> scratches = ThreadLocal.withInitial(PlanScratch::new);
+    /** The planets of the trading plan left to visit after the current jump, from pathPosition to pathLength. */
+    private final int[] path = new int[PLAN_DEPTH];
+    private int pathPosition = 0;
+    private int pathLength = 0;
 
     /**
      * Constructs a Trader object with specified attributes.
@@ -28,12 +39,52 @@ public class Trader extends Entity {
      * @param criminalsManager  The CriminalsManager for managing criminal entities in the game.
      * @param ownedShip         The Ship owned by the trader.
      * @param entityStats       The EntityStats representing the trader's statistics and inventory.
-     * @param prevAction        The previous action of the trader.
      * @param entityID          The ID of the trader entity.
      */
     public Trader(TravelManager travelManager, EntityManager entityManager, CriminalsManager criminalsManager,
-                  Ship ownedShip, EntityStats entityStats, EntityActions prevAction, int entityID) {
-        super(travelManager, entityManager, ownedShip, entityStats, prevAction, entityID);
+                  Ship ownedShip, EntityStats entityStats, int entityID) {
+        super(travelManager, entityManager, ownedShip, entityStats, entityID);
+    }
+
+    /**
+     * Forgets the trading plan of the previous life.
+     *
+     * @param currLocationID The location ID where the trader respawned.
+     */
+    @Override
+    public void respawned(int currLocationID) {
+        pathPosition = pathLength = 0;
+    }
+
+    /**
+     * Writes the rest of the trading plan, the planets relative to the current position.
+     *
+     * @param out The snapshot section of the entities.
+     */
+    @Override
+    public void save(SnapshotOutput out) {
+        out.writeVarInt(pathLength - pathPosition);
+        for (int i = pathPosition; i < pathLength; ++i) {
+            out.writeSignedVarInt(path[i] - getCurrPosition());
+        }
+    }
+
+    /**
+     * Reads the rest of the trading plan written by save().
+     *
+     * @param in The snapshot section of the entities.
+     * @throws IllegalStateException if the plan is longer than a trading plan can be.
+     */
+    @Override
+    public void load(SnapshotInput in) {
+        int length = in.readCount();
+        if (length > PLAN_DEPTH)
+            throw new IllegalStateException("The snapshot holds a trading plan that is too long!");
+        for (int i = 0; i < length; ++i) {
+            path[i] = getCurrPosition() + in.readSignedVarInt();
+        }
+        pathPosition = 0;
+        pathLength = length;
     }
 
     /**
@@ -47,6 +98,16 @@ public class Trader extends Entity {
         return new BattleDecision(BattleActionType.flee, ownedShip.getFleeChance());
     }
 
+    /**
+     * Gets the rule the trader's battle decisions follow. Traders always flee.
+     *
+     * @return The BattleTactic of the trader.
+     */
+    @Override
+    public BattleTactic getBattleTactic() {
+        return BattleTactic.flee;
+    }
+
     /**
      * Handles the actions to be performed when the trader wins a battle.
      *
@@ -79,155 +140,92 @@ public class Trader extends Entity {
             sell();
         }
 
-        if (path.isEmpty()) {
-            if (prevAction != EntityActions.sell) {
+        if (pathPosition == pathLength) {
+            if (getPrevAction() != EntityActions.sell) {
                 sell();
-                prevAction = EntityActions.sell;
+                setPrevAction(EntityActions.sell);
                 return OptionalInt.empty();
-            } else if (ownedShip.getStats().fuel.getCurr() < 13) {
+            } else if (ownedShip.getFuel() < 13) {
                 return OptionalInt.empty();
             } else {
                 createPlan();
             }
         } else {
-            int nextDestinationID = path.pop();
+            int nextDestinationID = path[pathPosition++];
             travelManager.travelStart(nextDestinationID);
-            prevAction = EntityActions.travelPrep;
+            setPrevAction(EntityActions.travelPrep);
         }
         return OptionalInt.empty();
     }
 
     /**
-     * Creates a trading plan for the trader, determining the best planets to visit for trading.
+     * Creates a trading plan for the trader: buys the goods for the best route from the current location
+     * and sets off.
      */
     private void createPlan() {
-        Deque<Integer> newPath = new LinkedList<>();
-        newPath.add(travelManager.getCurrLocationID());
+        int bestRank = chooseRoute();
+        if (bestRank < 0) {
+            return; // No planet within reach
+        }
 
-        HashSet<Integer> visited = new HashSet<>();
-        var results = findBestPlanet(newPath, 0, Integer.MIN_VALUE, visited, -1);
+        var scratch = scratches.get();
         var currPlanet = travelManager.getCurrLocation();
-
-        for (var goodIndex : GoodsIndex.values()) {
-            int index = goodIndex.ordinal();
-            entityStats.removeCredits(currPlanet.buy(index, results.toBuy[index]));
-            entityStats.addGood(index, results.toBuy[index]);
+        for (int index = 0; index < EconomyTables.GOODS_COUNT; ++index) {
+            entityStats.removeCredits(currPlanet.buy(index, scratch.bestToBuy[index]));
+            entityStats.addGood(index, scratch.bestToBuy[index]);
         }
 
-        results.path.removeFirst();
-        path = results.path;
-        travelManager.travelStart(path.removeFirst());
+        // The first planet of the route is where the trader sets off to, the rest is left in the path
+        var tradeRoutes = travelManager.getTradeRoutes();
+        int originID = travelManager.getCurrLocationID();
+        int stopCount = tradeRoutes.copyStops(originID, scratch.bracket, bestRank, path);
+        path[stopCount] = tradeRoutes.getDestination(originID, scratch.bracket, bestRank);
+        pathPosition = 1;
+        pathLength = stopCount + 1;
+        travelManager.travelStart(path[0]);
     }
 
     /**
-     * Finds the best planet for trading based on a recursive exploration of possible travel routes.
+     * Chooses the route of a trading plan. The best routes from the current location for the trader's
+     * bracket are looked up in the trade route table and re-rated for the trader's own credits and free
+     * space. Leaves the bracket and the goods to buy for the best route in the thread's scratch, and
+     * changes nothing else.
      *
-     * @param path          The current path being explored.
-     * @param travelLength  The current travel length in the exploration.
-     * @param rating        The current rating of the exploration.
-     * @param visited       A set of visited planets to avoid revisiting.
-     * @param counter       A counter to limit the exploration depth.
-     * @return A TraderPlan containing the best path, rating, and items to buy.
+     * @return The rank of the best route in the table, or -1 if no planet is within reach.
      */
-    private TraderPlan findBestPlanet(Deque<Integer> path, int travelLength, int rating,
-                                      HashSet<Integer> visited, int counter)
-    {
-        int currPlanetID = path.getLast();
-        int bestRating = rating;
-        Deque<Integer> bestPath = new LinkedList<>(path);
-        int[] toBuy = new int[9];
-
-        ++counter;
-        visited.add(currPlanetID);
-
-        if (currPlanetID != travelManager.getCurrLocationID()) {
-            var planetRating = ratePlanet(travelManager.getPlanet(currPlanetID), travelLength);
-            if (planetRating.rating > bestRating) {
-                bestRating = planetRating.rating;
-                toBuy = planetRating.toBuy;
-            }
-        }
-
-        if (counter == 3) {
-            return new TraderPlan(bestPath, bestRating, toBuy);
-        }
-
-        for (int neighborID : travelManager.getNeighbors(currPlanetID)) {
-            if (visited.contains(neighborID)) {
-                continue;
+    private int chooseRoute() {
+        var scratch = scratches.get();
+        var tradeRoutes = travelManager.getTradeRoutes();
+        int originID = travelManager.getCurrLocationID();
+        int credits = entityStats.getCredits();
+        int freeSpace = ownedShip.getMaxCargo() - entityStats.getTotalGoodsAmount();
+        int bracket = TradeRouteTable.getBracket(credits, freeSpace);
+        scratch.bracket = bracket;
+
+        int bestRating = Integer.MIN_VALUE;
+        int bestRank = -1;
+        for (int rank = 0; rank < TradeRouteTable.ROUTES_PER_BRACKET; ++rank) {
+            int destinationID = tradeRoutes.getDestination(originID, bracket, rank);
+            if (destinationID < 0) {
+                break;
             }
-
-            path.addLast(neighborID);
-            int distance = travelLength + travelManager.getDistanceBetween(currPlanetID, neighborID);
-            var found = findBestPlanet(path, distance, bestRating, visited, counter);
-            path.removeLast();
-
-            if (found.rating > bestRating) {
-                bestRating = found.rating;
-                bestPath = found.path;
-                toBuy = found.toBuy;
+            int travelLength = tradeRoutes.getTravelLength(originID, bracket, rank);
+            int rating = tradeRoutes.rate(originID, destinationID, travelLength, credits, freeSpace, scratch.toBuy);
+            if (rating > bestRating) {
+                bestRating = rating;
+                bestRank = rank;
+                System.arraycopy(scratch.toBuy, 0, scratch.bestToBuy, 0, EconomyTables.GOODS_COUNT);
             }
         }
-
-        return new TraderPlan(bestPath, bestRating, toBuy);
+        return bestRank;
     }
 
     /**
-     * Rates a planet based on its goods prices and distance from the current location.
-     *
-     * @param planet        The planet to be rated.
-     * @param travelLength  The current travel length in the exploration.
-     * @return A RatingBuy object containing the rating and items to buy on the planet.
+     * Holds the buffers of planning of one thread.
      */
-    private RatingBuy ratePlanet(Planet planet, int travelLength) {
-        int[] toBuy = new int[9];
-        SortedMap<Integer, Integer> goodsDiff = new TreeMap<>();
-        var currPlanetGoodsPrices = travelManager.getCurrLocation().goodsPrices();
-        var planetGoodsPrices = planet.goodsPrices();
-        int rating = -(travelLength * Constants.fuelCost);
-
-        for (var goodIndex : GoodsIndex.values()) {
-            int index = goodIndex.ordinal();
-            int priceDiff = planetGoodsPrices.getPrice(index) - currPlanetGoodsPrices.getPrice(index);
-
-            while (goodsDiff.containsKey(priceDiff)) {
-                --priceDiff;
-            }
-            if (priceDiff > 0)
-                goodsDiff.put(priceDiff, index);
-        }
-
-        int credits = entityStats.getCredits();
-        int freeSpace = ownedShip.getStats().maxCargo - entityStats.getTotalGoodsAmount();
-        for (var key : goodsDiff.reversed().keySet()) {
-            int index = goodsDiff.get(key);
-            int available = currPlanetGoodsPrices.getGoodAmount(index);
-            int affordable = credits / currPlanetGoodsPrices.getPrice(index);
-            // limit one commodity to 10 pieces max, so that traders won't buy the best one out
-            int buyable = Math.min(10, Math.min(available, affordable));
-
-            if (freeSpace - buyable <= 0) {
-                toBuy[index] = freeSpace;
-                rating += freeSpace * key;
-                return new RatingBuy(rating, toBuy);
-            }
-
-            toBuy[index] = buyable;
-            rating += buyable * key;
-            freeSpace -= buyable;
-            credits -= buyable * currPlanetGoodsPrices.getPrice(index);
-        }
-
-        return new RatingBuy(rating, toBuy);
+    private static final class PlanScratch {
+        final int[] toBuy = new int[EconomyTables.GOODS_COUNT];
+        final int[] bestToBuy = new int[EconomyTables.GOODS_COUNT];
+        int bracket;
     }
-
-    /**
-     * Represents a trading plan with the best path, rating, and items to buy.
-     */
-    private record TraderPlan(Deque<Integer> path, int rating, int[] toBuy) {}
-
-    /**
-     * Represents the rating and items to buy on a planet.
-     */
-    private record RatingBuy(int rating, int[] toBuy) {}
 }
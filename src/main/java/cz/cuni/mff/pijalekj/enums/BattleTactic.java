@@ -0,0 +1,5 @@
+package cz.cuni.mff.pijalekj.enums;
+
+public enum BattleTactic {
+    attack, flee, sustain
+}
@@ -4,17 +4,29 @@ import cz.cuni.mff.pijalekj.Game;
 import cz.cuni.mff.pijalekj.managers.CriminalsManager;
 import cz.cuni.mff.pijalekj.managers.EntityManager;
 import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.persistence.WorldSnapshot;
 import cz.cuni.mff.pijalekj.utils.WorldGenerator;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Starts a new game, or continues a saved one if the path of its save file is given as the argument.
+ */
 public class Main {
     public static void main(String... args) {
-        EntityManager em = new EntityManager();
-        LocationsManager lm = WorldGenerator.generateLocations(500);
-        CriminalsManager cm = new CriminalsManager();
-
-        WorldGenerator.generateEntities(lm, em, cm);
-        WorldGenerator.populateWorld(lm, em);
-        Game game = new Game(lm, cm, em);
+        Game game;
+        if (args.length > 0) {
+            try {
+                var world = WorldSnapshot.load(Path.of(args[0]));
+                game = new Game(world);
+            } catch (IOException e) {
+                System.err.printf("The saved game cannot be loaded:\n%s\n", e.getMessage());
+                return;
+            }
+        } else {
+            game = newGame();
+        }
 
         try {
             while (game.play()) {
@@ -25,4 +37,19 @@ public class Main {
             System.err.printf("Fatal error: The game cannot recover. Exception details:\n%s", e.getMessage());
         }
     }
+
+    /**
+     * Generates a new world and constructs its game.
+     *
+     * @return The new game.
+     */
+    private static Game newGame() {
+        EntityManager em = new EntityManager();
+        LocationsManager lm = WorldGenerator.generateLocations(500);
+        CriminalsManager cm = new CriminalsManager(lm);
+
+        WorldGenerator.generateEntities(lm, em, cm);
+        WorldGenerator.populateWorld(lm, em);
+        return new Game(lm, cm, em);
+    }
 }
@@ -1,23 +1,57 @@
 package cz.cuni.mff.pijalekj.main;
 
-import cz.cuni.mff.pijalekj.Game;
-import cz.cuni.mff.pijalekj.managers.CriminalsManager;
-import cz.cuni.mff.pijalekj.managers.EntityManager;
-import cz.cuni.mff.pijalekj.managers.LocationsManager;
-import cz.cuni.mff.pijalekj.utils.WorldGenerator;
+import cz.cuni.mff.pijalekj.Simulation;
+import cz.cuni.mff.pijalekj.persistence.WorldImage;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the world without the player and reports the throughput. Settings are given as arguments of the form
+ * name=value: planets, density, seed, threads, ticks and lazy (true or false). Missing settings keep their defaults.
+ * <p>
+ * The setting image names a world image: if it exists, the planets and lanes are opened from it instead of
+ * being generated, and otherwise the image of the generated world is written there for the next runs. An opened
+ * image decides the planets and the seed, so these settings may only be given if they match the image.
+ */
 public class MainNPCsOnly {
-    public static void main(String[] args) throws Exception {
-        EntityManager em = new EntityManager();
-        LocationsManager lm = WorldGenerator.generateLocations(500);
-        CriminalsManager cm = new CriminalsManager();
+    /** How many ticks are run unless set otherwise. */
+    private static final int DEFAULT_TICKS = 1000;
+
+    public static void main(String[] args) throws IOException {
+        var builder = new Simulation.Builder();
+        int ticks = DEFAULT_TICKS;
+        Path imagePath = null;
 
-        WorldGenerator.generateEntities(lm, em, cm);
-        WorldGenerator.populateWorld(lm, em);
-        Game game = new Game(lm, cm, em);
-        boolean state = true;
-        while (state) {
-            state = game.play();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0)
+                throw new IllegalArgumentException("Settings have to be given as name=value, got: " + arg);
+            String value = arg.substring(separator + 1);
+            switch (arg.substring(0, separator)) {
+                case "planets" -> builder.planets(Integer.parseInt(value));
+                case "density" -> builder.density(Integer.parseInt(value));
+                case "seed" -> builder.seed(Long.parseLong(value));
+                case "threads" -> builder.threads(Integer.parseInt(value));
+                case "ticks" -> ticks = Integer.parseInt(value);
+                case "lazy" -> builder.lazyMarkets(Boolean.parseBoolean(value));
+                case "image" -> imagePath = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown setting: " + arg);
+            }
+        }
+
+        long start = System.nanoTime();
+        boolean writeImage = imagePath != null && !Files.exists(imagePath);
+        if (imagePath != null && !writeImage) {
+            builder.image(WorldImage.open(imagePath));
+        }
+        Simulation simulation = builder.build();
+        if (writeImage) {
+            WorldImage.write(imagePath, simulation.getLocationsManager());
         }
+        System.out.printf("%d NPCs on %d planets, started in %d ms%n", simulation.getEntityManager().getEntityCount(),
+                simulation.getLocationsManager().getAllPlanets().length, (System.nanoTime() - start) / 1_000_000);
+        System.out.print(simulation.run(ticks));
     }
 }
@@ -1,15 +1,50 @@
 package cz.cuni.mff.pijalekj.managers;
 
 import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
- * The CriminalsManager class extends HashMap and represents a manager for tracking
- * entities marked as criminals. It provides methods to check, add, and remove entities
- * from the list of criminals, as well as updating the remaining timeout for each criminal.
+ * The CriminalsManager class represents a manager for tracking entities marked as criminals.
+ * It provides methods to check, add, and remove entities from the list of criminals, as well as
+ * updating the remaining timeout for each criminal.
+ * Every change of an entity's status is passed on to the LocationsManager, which keeps track of the
+ * criminals present at every location.
+ * <p>
+ * Criminals are kept in a timing wheel: instead of counting down every timeout, each criminal is linked
+ * into the wheel slot of the tick its status expires at, through intrusive lists stored in primitive
+ * arrays indexed by entity slots. A tick only visits the wheel slot of that tick, so marking, pardoning
+ * and expiry are O(1) and a tick without expirations costs nothing. A BitSet answers isCriminal().
  */
-public class CriminalsManager extends HashMap<Integer, Integer> {
+public class CriminalsManager {
+    /** The number of slots of the wheel, larger than any timeout. */
+    private static final int WHEEL_SIZE = Integer.highestOneBit(Constants.DEFAULT_TIMEOUT) << 1;
+    private static final int NONE = -1;
+
+    private final LocationsManager locationsManager;
+    private final BitSet criminals = new BitSet();
+    private final int[] wheel = new int[WHEEL_SIZE];
+    /** The full ID of the criminal in every slot, so that stale IDs are not mistaken for it. */
+    private int[] ids = new int[0];
+    private int[] expiries = new int[0];
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int now = 0;
+    private int count = 0;
+
+    /**
+     * Constructs an empty CriminalsManager.
+     *
+     * @param locationsManager The manager of the locations the criminals are tracked at.
+     */
+    public CriminalsManager(LocationsManager locationsManager) {
+        this.locationsManager = locationsManager;
+        Arrays.fill(wheel, NONE);
+    }
 
     /**
      * Checks if the specified entity is marked as a criminal.
@@ -18,16 +53,37 @@ public class CriminalsManager extends HashMap<Integer, Integer> {
      * @return True if the entity is a criminal, false otherwise.
      */
     public boolean isCriminal(int entityID) {
-        return containsKey(entityID);
+        int slot = EntityIDs.slotOf(entityID);
+        return criminals.get(slot) && ids[slot] == entityID;
+    }
+
+    /**
+     * Gets the number of criminals.
+     *
+     * @return The number of entities marked as criminals.
+     */
+    public int getCriminalCount() {
+        return count;
     }
 
     /**
-     * Adds a new criminal entity with a default timeout to the manager.
+     * Adds a new criminal entity with a default timeout to the manager. If the entity already is
+     * a criminal, its timeout starts over.
      *
      * @param entityID The unique identifier of the criminal entity.
      */
     public void addCriminal(int entityID) {
-        put(entityID, Constants.DEFAULT_TIMEOUT);
+        int slot = EntityIDs.slotOf(entityID);
+        if (isCriminal(entityID)) {
+            unlink(slot);
+        } else {
+            ensureCapacity(slot + 1);
+            criminals.set(slot);
+            ids[slot] = entityID;
+            ++count;
+            locationsManager.setCriminal(entityID, true);
+        }
+        link(slot, now + Constants.DEFAULT_TIMEOUT);
     }
 
     /**
@@ -36,16 +92,132 @@ public class CriminalsManager extends HashMap<Integer, Integer> {
      * @param entityID The unique identifier of the entity to be removed.
      */
     public void removeCriminal(int entityID) {
-        remove(entityID);
+        if (isCriminal(entityID)) {
+            pardon(EntityIDs.slotOf(entityID));
+        }
     }
 
     /**
-     * Updates the remaining timeout for each criminal entity and removes entities
-     * with a timeout equal to or less than zero.
+     * Advances the time by one tick and removes the criminals whose timeout ran out.
      */
     public void updateCriminals() {
-        replaceAll((key, value) -> value - 1);
-        entrySet().removeIf(item -> item.getValue() <= 0);
+        ++now;
+        int slot = wheel[now & (WHEEL_SIZE - 1)];
+        while (slot != NONE) {
+            int nextSlot = next[slot];
+            if (expiries[slot] == now) {
+                pardon(slot);
+            }
+            slot = nextSlot;
+        }
+    }
+
+    /**
+     * Writes the criminals into a snapshot of the world: the current tick, then the slot, the ID and
+     * the remaining timeout of every criminal, in the order of slots.
+     *
+     * @param out The snapshot section of the criminals.
+     */
+    public void save(SnapshotOutput out) {
+        out.writeVarInt(now);
+        out.writeVarInt(count);
+        int previous = 0;
+        for (int slot = criminals.nextSetBit(0); slot >= 0; slot = criminals.nextSetBit(slot + 1)) {
+            out.writeVarInt(slot - previous);
+            out.writeSignedVarInt(ids[slot]);
+            out.writeVarInt(expiries[slot] - now);
+            previous = slot;
+        }
     }
-}
 
+    /**
+     * Reads the criminals written by save() into this empty CriminalsManager and marks them in the
+     * LocationsManager, unless they are marked there already.
+     *
+     * @param in The snapshot section of the criminals.
+     * @throws IllegalStateException if the manager is not empty or a timeout is invalid.
+     */
+    public void load(SnapshotInput in) {
+        if (count != 0)
+            throw new IllegalStateException("Only an empty CriminalsManager can be loaded!");
+        now = in.readVarInt();
+        int criminalCount = in.readCount();
+        int slot = 0;
+        for (int i = 0; i < criminalCount; ++i) {
+            slot += in.readCount();
+            int entityID = in.readSignedVarInt();
+            int timeout = in.readVarInt();
+            if (EntityIDs.slotOf(entityID) != slot || criminals.get(slot) || timeout <= 0 || timeout >= WHEEL_SIZE)
+                throw new IllegalStateException("The snapshot holds an invalid criminal!");
+
+            ensureCapacity(slot + 1);
+            criminals.set(slot);
+            ids[slot] = entityID;
+            ++count;
+            link(slot, now + timeout);
+            locationsManager.setCriminal(entityID, true);
+        }
+    }
+
+    /**
+     * Clears the criminal status of the entity in a slot.
+     *
+     * @param slot The slot of the criminal.
+     */
+    private void pardon(int slot) {
+        unlink(slot);
+        criminals.clear(slot);
+        --count;
+        locationsManager.setCriminal(ids[slot], false);
+    }
+
+    /**
+     * Links a slot into the wheel slot of its expiry tick.
+     *
+     * @param slot   The slot of the criminal.
+     * @param expiry The tick the criminal status expires at.
+     */
+    private void link(int slot, int expiry) {
+        int position = expiry & (WHEEL_SIZE - 1);
+        int head = wheel[position];
+        expiries[slot] = expiry;
+        next[slot] = head;
+        prev[slot] = NONE;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        wheel[position] = slot;
+    }
+
+    /**
+     * Unlinks a slot from the wheel.
+     *
+     * @param slot The slot of the criminal.
+     */
+    private void unlink(int slot) {
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } else {
+            wheel[expiries[slot] & (WHEEL_SIZE - 1)] = next[slot];
+        }
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        }
+    }
+
+    /**
+     * Grows the per-slot arrays so that they hold at least the specified number of slots.
+     *
+     * @param slotCount The required number of slots.
+     */
+    private void ensureCapacity(int slotCount) {
+        if (slotCount <= ids.length) {
+            return;
+        }
+        int newLength = Math.max(slotCount, ids.length * 2);
+        ids = Arrays.copyOf(ids, newLength);
+        expiries = Arrays.copyOf(expiries, newLength);
+        next = Arrays.copyOf(next, newLength);
+        prev = Arrays.copyOf(prev, newLength);
+    }
+}
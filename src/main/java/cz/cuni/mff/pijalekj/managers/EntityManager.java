@@ -3,19 +3,55 @@ package cz.cuni.mff.pijalekj.managers;
 import cz.cuni.mff.pijalekj.builders.EntityBuilder;
 import cz.cuni.mff.pijalekj.entities.*;
 import cz.cuni.mff.pijalekj.enums.EntityType;
+import cz.cuni.mff.pijalekj.metrics.NpcRespawnEvent;
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
 import cz.cuni.mff.pijalekj.ships.Ship;
+import cz.cuni.mff.pijalekj.world.EntityStore;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
+import cz.cuni.mff.pijalekj.world.OccupancyIndex;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
-import static cz.cuni.mff.pijalekj.enums.EntityType.Trader;
 /**
  * The EntityManager class is responsible for owning and managing all entities in the game.
  * It provides methods to add, remove, and retrieve entities. Player is treated as a separate
- * class with an ID of -1.
+ * class with the ID PLAYER_ID.
+ * <p>
+ * NPCs are kept in a growable table. Despawning an NPC puts its index on a free list, to be reused by
+ * the next spawned NPC, and bumps the generation of the index, which is a part of the NPC's ID
+ * (see EntityIDs). An ID kept after its NPC was despawned is thus recognized as stale in O(1),
+ * instead of referring to whichever NPC reused the index. An index in its last generation is retired
+ * when its NPC is despawned and never used again, so that generations do not wrap around.
  */
 public class EntityManager {
-    private Entity[] entities;
+    /** The ID of the player. */
+    public static final int PLAYER_ID = -1;
+
+    private final EntityStore store = new EntityStore();
+    private Entity[] entities = new Entity[0];
+    /** The current generation of every index of the table. */
+    private int[] generations = new int[0];
+    /** The number of indices of the table in use, including the free ones. */
+    private int size = 0;
+    private int[] freeIndices = new int[16];
+    private int freeCount = 0;
+    /** The number of retired indices, which are neither in use nor free. */
+    private int retiredCount = 0;
+    /** The builder of spawned NPCs, made for the managers of the last spawn. */
+    private EntityBuilder spawnBuilder = null;
     private Player player;
+    private boolean parallel = false;
+    /** The entity every NPC wants to attack in the current tick, or FightRequests.NO_TARGET. */
+    private int[] claims = new int[0];
+    /** Whether an entity, indexed by its slot, attacks someone in the current tick. */
+    private boolean[] attacking = new boolean[0];
+    /** Whether an entity, indexed by its slot, is attacked by someone in the current tick. */
+    private boolean[] attacked = new boolean[0];
+    private int[] sectorStarts = new int[0];
+    private int[] sectorOrder = new int[0];
+    private int[] entitySectors = new int[0];
 
     /**
      * Constructs a new EntityManager.
@@ -24,43 +60,187 @@ public class EntityManager {
 
     /**
      * Retrieves the ship associated with the specified entity ID.
-     * If the entity ID is -1, returns the player's owned ship.
+     * If the entity ID is PLAYER_ID, returns the player's owned ship.
      *
      * @param entityID The ID of the entity.
      * @return The Ship associated with the entity.
+     * @throws IllegalArgumentException if the ID is stale.
      */
     public Ship getEntityShip(int entityID) {
-        if (entityID == -1) {
+        if (entityID == PLAYER_ID) {
             return player.ownedShip;
         }
-        return entities[entityID].getOwnedShip();
+        return getEntity(entityID).getOwnedShip();
+    }
+
+    /**
+     * Gets the store holding the state of all entities, including the player.
+     *
+     * @return The entity store.
+     */
+    public EntityStore getStore() {
+        return store;
     }
 
     /**
-     * Sets the array of entities for this EntityManager.
+     * Makes room in the entity store for the specified number of NPCs and the player. Has to be called
+     * before building entities in parallel.
+     *
+     * @param npcCount The number of NPCs.
+     */
+    public void reserve(int npcCount) {
+        store.ensureCapacity(EntityIDs.slotOf(npcCount - 1) + 1);
+    }
+
+    /**
+     * Sets the array of entities for this EntityManager. The entities have to be of the first generation,
+     * so that the ID of every entity is its index in the array; null entries become free indices.
      *
      * @param entities The array of entities to be set.
      */
     public void setEntities(Entity[] entities) {
         this.entities = entities;
+        size = entities.length;
+        generations = new int[entities.length];
+        freeCount = 0;
+        retiredCount = 0;
+        for (int index = entities.length - 1; index >= 0; --index) {
+            if (entities[index] == null) {
+                pushFreeIndex(index);
+            }
+        }
     }
+
+    /**
+     * Checks whether an ID belongs to an existing NPC, in constant time.
+     *
+     * @param entityID The ID of the entity.
+     * @return False if the NPC was despawned (or never existed), true otherwise.
+     */
+    public boolean isCurrent(int entityID) {
+        if (entityID < 0) {
+            return false;
+        }
+        int index = EntityIDs.indexOf(entityID);
+        return index < size && entities[index] != null
+                && generations[index] == EntityIDs.generationOf(entityID);
+    }
+
     /**
      * Retrieves the entity with the specified ID.
      *
      * @param entityID The ID of the entity to be retrieved.
      * @return The Entity with the specified ID.
+     * @throws IllegalArgumentException if the ID is stale.
      */
     public Entity getEntity(int entityID) {
-        return entities[entityID];
+        if (!isCurrent(entityID))
+            throw new IllegalArgumentException("Entity %d does not exist!".formatted(entityID));
+        return entities[EntityIDs.indexOf(entityID)];
     }
 
     /**
-     * Retrieves all entities managed by this EntityManager.
+     * Retrieves all entities managed by this EntityManager, in the order of their indices.
      *
-     * @return An array of entities.
+     * @return A new array of the existing entities.
      */
     public Entity[] getEntities() {
-        return entities;
+        Entity[] result = new Entity[getEntityCount()];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (entities[i] != null) {
+                result[count++] = entities[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of existing NPCs.
+     *
+     * @return The number of NPCs.
+     */
+    public int getEntityCount() {
+        return size - freeCount - retiredCount;
+    }
+
+    /**
+     * Spawns a new NPC at a planet, reusing a free index of the table if there is one. Must not be called
+     * while entities play.
+     *
+     * @param type             The type of the new NPC.
+     * @param planetID         The ID of the planet the NPC starts at.
+     * @param locationsManager The manager of the locations the NPC moves between.
+     * @param criminalsManager The manager of criminals the NPC is associated with.
+     * @return The ID of the new NPC.
+     * @throws IllegalStateException if the table is full.
+     */
+    public int spawn(EntityType type, int planetID, LocationsManager locationsManager,
+                     CriminalsManager criminalsManager) {
+        int index;
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            if (size > EntityIDs.MAX_INDEX)
+                throw new IllegalStateException("The entity table is full!");
+            index = size++;
+            if (index == entities.length) {
+                int newLength = Math.max(16, entities.length * 2);
+                entities = Arrays.copyOf(entities, newLength);
+                generations = Arrays.copyOf(generations, newLength);
+            }
+        }
+
+        int entityID = EntityIDs.of(index, generations[index]);
+        store.ensureCapacity(EntityIDs.slotOf(entityID) + 1);
+        if (spawnBuilder == null || !spawnBuilder.isFor(locationsManager, criminalsManager)) {
+            spawnBuilder = new EntityBuilder(this, locationsManager, criminalsManager);
+        }
+        entities[index] = spawnBuilder.newEntity(entityID, planetID, type);
+        locationsManager.addEntityTo(entityID, planetID);
+        return entityID;
+    }
+
+    /**
+     * Despawns an NPC: removes it from its location and from the criminals and frees its index, so that
+     * its ID becomes stale. An index in its last generation is retired instead of freed.
+     * Must not be called while entities play.
+     *
+     * @param entityID         The ID of the NPC.
+     * @param locationsManager The manager of the locations the NPC is in.
+     * @param criminalsManager The manager of criminals the NPC may be in.
+     * @throws IllegalArgumentException if the ID is stale.
+     */
+    public void despawn(int entityID, LocationsManager locationsManager, CriminalsManager criminalsManager) {
+        Entity entity = getEntity(entityID);
+        if (entity.isTraveling()) {
+            locationsManager.removeEntityFrom(entityID, entity.getCurrPosition(), entity.getNextPosition());
+        } else {
+            locationsManager.removeEntityFrom(entityID, entity.getCurrPosition());
+        }
+        entity.getOwnedShip().destroy();
+        criminalsManager.removeCriminal(entityID);
+
+        int index = EntityIDs.indexOf(entityID);
+        entities[index] = null;
+        if (EntityIDs.hasNextGeneration(generations[index])) {
+            generations[index] = EntityIDs.nextGeneration(generations[index]);
+            pushFreeIndex(index);
+        } else {
+            ++retiredCount;
+        }
+    }
+
+    /**
+     * Puts an index of the table on the free list.
+     *
+     * @param index The free index.
+     */
+    private void pushFreeIndex(int index) {
+        if (freeCount == freeIndices.length) {
+            freeIndices = Arrays.copyOf(freeIndices, freeCount * 2);
+        }
+        freeIndices[freeCount++] = index;
     }
 
     /**
@@ -89,59 +269,265 @@ public class EntityManager {
         player.setName(name);
     }
 
+    /**
+     * Sets whether NPCs play in parallel. Both modes give the same results, see play(); parallel play only
+     * spreads the work over the threads of the common pool, or of the pool it is called from.
+     *
+     * @param parallel True to let NPCs play in parallel.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * This method lets entities play and collects their targets (if any).
      * Everyone can have at most 1 attacker.
+     * <p>
+     * Moves are deferred until everyone has played and are then applied in the order of entity IDs, so an
+     * entity sees where the others were at the start of the tick. In sequential mode, the entities play
+     * one by one in the order of their IDs. Entities only see other entities in their own sector, so in
+     * parallel mode, the sectors play in parallel and the entities of a sector play one by one in the order
+     * of their IDs; as no thread sees the buckets of another one change, the results are the same as in
+     * the sequential mode, on any number of threads. In both modes, the targets are accepted in the order
+     * of entity IDs.
+     *
+     * @param playerAttack     An optional player attack, if present.
+     * @param locationsManager The manager of the locations the entities move between.
+     * @return The accepted fight requests.
+     */
+    public FightRequests play(OptionalInt playerAttack, LocationsManager locationsManager) {
+        if (claims.length != size) {
+            claims = new int[size];
+            attacking = new boolean[size + 1];
+            attacked = new boolean[size + 1];
+        }
+
+        locationsManager.deferMoves();
+        if (parallel) {
+            playBySectors(locationsManager);
+        } else {
+            for (int i = 0; i < size; i++) {
+                claims[i] = entities[i] == null ? FightRequests.NO_TARGET
+                        : entities[i].play().orElse(FightRequests.NO_TARGET);
+            }
+        }
+        locationsManager.commitMoves();
+
+        return resolveClaims(playerAttack);
+    }
+
+    /**
+     * Groups the entities by the sector they are in and lets the sectors play in parallel.
+     *
+     * @param locationsManager The manager of the locations the entities are in.
+     */
+    private void playBySectors(LocationsManager locationsManager) {
+        int sectorCount = locationsManager.getSectorCount();
+        if (sectorStarts.length != sectorCount + 1) {
+            sectorStarts = new int[sectorCount + 1];
+        }
+        if (sectorOrder.length != size) {
+            sectorOrder = new int[size];
+            entitySectors = new int[size];
+        }
+
+        // Counting sort of the entities by sector, keeping them ordered by ID within a sector
+        Arrays.fill(sectorStarts, 0);
+        for (int i = 0; i < size; i++) {
+            Entity entity = entities[i];
+            if (entity == null) {
+                claims[i] = FightRequests.NO_TARGET;
+                entitySectors[i] = OccupancyIndex.NONE;
+                continue;
+            }
+            int sector = entity.isTraveling()
+                    ? locationsManager.getSectorOf(entity.getCurrPosition(), entity.getNextPosition())
+                    : locationsManager.getSectorOf(entity.getCurrPosition(), entity.getCurrPosition());
+            entitySectors[i] = sector;
+            ++sectorStarts[sector + 1];
+        }
+        for (int sector = 0; sector < sectorCount; sector++) {
+            sectorStarts[sector + 1] += sectorStarts[sector];
+        }
+        int[] fill = Arrays.copyOf(sectorStarts, sectorCount);
+        for (int i = 0; i < size; i++) {
+            if (entitySectors[i] != OccupancyIndex.NONE) {
+                sectorOrder[fill[entitySectors[i]]++] = i;
+            }
+        }
+
+        IntStream.range(0, sectorCount).parallel().forEach(sector -> {
+            for (int k = sectorStarts[sector]; k < sectorStarts[sector + 1]; k++) {
+                int i = sectorOrder[k];
+                claims[i] = entities[i].play().orElse(FightRequests.NO_TARGET);
+            }
+        });
+    }
+
+    /**
+     * Accepts the targets of the current tick in the order of entity IDs, the player's first. A target is
+     * accepted if the attacked entity still exists and neither attacks nor is attacked by anyone already.
      *
      * @param playerAttack An optional player attack, if present.
-     * @return A HashMap containing entity IDs as keys and their respective targets as values.
+     * @return The accepted fight requests.
      */
-    public HashMap<Integer, Integer> play(OptionalInt playerAttack) {
-        var results = new HashMap<Integer, Integer>();
-        var victims = new HashSet<Integer>();
+    private FightRequests resolveClaims(OptionalInt playerAttack) {
+        var results = new FightRequests();
         if (playerAttack.isPresent()) {
-            results.put(-1, playerAttack.getAsInt());
-            victims.add(playerAttack.getAsInt());
+            accept(results, PLAYER_ID, playerAttack.getAsInt());
         }
 
-        for (int i = 0; i < entities.length; i++) {
-            OptionalInt result = entities[i].play();
-            if (result.isEmpty()) {
+        for (int i = 0; i < size; i++) {
+            int target = claims[i];
+            if (target == FightRequests.NO_TARGET || (target != PLAYER_ID && !isCurrent(target))) {
                 continue;
             }
-
-            if (!results.containsKey(result.getAsInt()) && !victims.contains(result.getAsInt())) {
-                results.put(i, result.getAsInt());
-                victims.add(result.getAsInt());
+            int targetSlot = EntityIDs.slotOf(target);
+            if (!attacking[targetSlot] && !attacked[targetSlot]) {
+                accept(results, EntityIDs.of(i, generations[i]), target);
             }
         }
 
+        for (int i = 0; i < results.size(); i++) {
+            attacking[EntityIDs.slotOf(results.getAttacker(i))] = false;
+            attacked[EntityIDs.slotOf(results.getAttacked(i))] = false;
+        }
         return results;
     }
 
     /**
-     * Resets non-player entities by creating new entities of the same type if they are not alive.
+     * Accepts a fight request, marking both entities as engaged.
+     *
+     * @param results    The accepted fight requests.
+     * @param attackerID The ID of the attacking entity.
+     * @param attackedID The ID of the attacked entity.
+     */
+    private void accept(FightRequests results, int attackerID, int attackedID) {
+        results.add(attackerID, attackedID);
+        attacking[EntityIDs.slotOf(attackerID)] = true;
+        attacked[EntityIDs.slotOf(attackedID)] = true;
+    }
+
+    /**
+     * Respawns dead non-player entities in place, reinitializing them from the template of their type.
      *
-     * @param criminalsManager The manager for criminals that the new Entities will be associated with.
-     * @param locationsManager The manager for locations that the new Entities will be associated with.
+     * @param criminalsManager The manager for criminals that the respawned Entities are associated with.
+     * @param locationsManager The manager for locations that the respawned Entities are associated with.
      */
     public void resetNPCs(CriminalsManager criminalsManager, LocationsManager locationsManager) {
         EntityBuilder eb = new EntityBuilder(this, locationsManager, criminalsManager);
-        for (var entity : entities) {
+        for (int i = 0; i < size; i++) {
+            var entity = entities[i];
             if (entity == null) {
-                throw new RuntimeException("Fatal error: an Entity is null!");
+                continue;
             }
 
-            if (!entity.isAlive()) {
-                locationsManager.removeEntityFrom(entity.getID(), entity.getCurrPosition());
-                switch (entity) {
-                    case Police police -> entity = eb.newEntity(entity.getID(), entity.getCurrPosition(), EntityType.Police);
-                    case Pirate pirate -> entity = eb.newEntity(entity.getID(), entity.getCurrPosition(), EntityType.Pirate);
-                    case Trader trader -> entity = eb.newEntity(entity.getID(), entity.getCurrPosition(), Trader);
-                    default -> throw new IllegalStateException("Unexpected value: " + entity);
+            if (!store.isAlive(EntityIDs.slotOf(entity.getID()))) {
+                int locationID = entity.getCurrPosition();
+                eb.respawn(entity, locationID);
+                locationsManager.moveEntity(entity.getID(), locationID);
+
+                var event = new NpcRespawnEvent();
+                if (event.isEnabled()) {
+                    event.entityID = entity.getID();
+                    event.entityType = entity.getClass().getSimpleName();
+                    event.planetID = locationID;
+                    event.commit();
                 }
             }
-            locationsManager.addEntityTo(entity.getID(), entity.getCurrPosition());
+        }
+    }
+
+    /**
+     * Writes the table of NPCs, the player and the entity store into a snapshot of the world. Every index
+     * of the table is written with its generation and the type of its NPC, 0 standing for a free or retired
+     * index; the free ones are listed after the table.
+     *
+     * @param out The snapshot section of the entities.
+     */
+    public void save(SnapshotOutput out) {
+        out.writeVarInt(size);
+        for (int i = 0; i < size; i++) {
+            int type = entities[i] == null ? 0 : EntityBuilder.typeOf(entities[i]).ordinal() + 1;
+            out.writeVarInt(generations[i] << 3 | type);
+        }
+        out.writeVarInt(freeCount);
+        out.writeVarInts(freeIndices, 0, freeCount);
+        out.writeString(player.name);
+
+        store.save(out, size + 1);
+        for (int i = 0; i < size; i++) {
+            if (entities[i] != null) {
+                entities[i].save(out);
+            }
+        }
+    }
+
+    /**
+     * Reads the state written by save() into this empty EntityManager. The NPCs and the player are rebuilt
+     * in parallel, but not placed at their locations, which is up to the LocationsManager.
+     *
+     * @param in               The snapshot section of the entities.
+     * @param locationsManager The manager of the locations the entities move between.
+     * @param criminalsManager The manager of criminals the entities are associated with.
+     * @throws IllegalStateException if the manager is not empty or the snapshot is invalid.
+     */
+    public void load(SnapshotInput in, LocationsManager locationsManager, CriminalsManager criminalsManager) {
+        if (size != 0 || player != null)
+            throw new IllegalStateException("Only an empty EntityManager can be loaded!");
+        int count = in.readCount();
+        if (count > EntityIDs.MAX_INDEX + 1)
+            throw new IllegalStateException("The snapshot holds too many entities!");
+
+        var types = EntityType.values();
+        int[] typeIndices = new int[count];
+        generations = new int[count];
+        for (int i = 0; i < count; i++) {
+            int value = in.readVarInt();
+            typeIndices[i] = value & 7;
+            generations[i] = value >>> 3;
+            if (typeIndices[i] > types.length || typeIndices[i] == EntityType.Player.ordinal() + 1)
+                throw new IllegalStateException("The snapshot holds an unknown entity type!");
+            if (generations[i] > EntityIDs.MAX_GENERATION)
+                throw new IllegalStateException("The snapshot holds an invalid generation!");
+        }
+        freeCount = in.readCount();
+        freeIndices = new int[Math.max(16, freeCount)];
+        in.readVarInts(freeIndices, 0, freeCount);
+        // Every index without an NPC is either free or retired
+        var free = new BitSet(count);
+        for (int k = 0; k < freeCount; k++) {
+            if (freeIndices[k] < 0 || freeIndices[k] >= count || typeIndices[freeIndices[k]] != 0
+                    || free.get(freeIndices[k]))
+                throw new IllegalStateException("The snapshot holds an invalid free index!");
+            free.set(freeIndices[k]);
+        }
+        retiredCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (typeIndices[i] == 0 && !free.get(i)) {
+                if (EntityIDs.hasNextGeneration(generations[i]))
+                    throw new IllegalStateException("The snapshot holds an index that is neither used nor free!");
+                ++retiredCount;
+            }
+        }
+        String playerName = in.readString();
+
+        entities = new Entity[count];
+        size = count;
+        store.ensureCapacity(count + 1);
+        var eb = new EntityBuilder(this, locationsManager, criminalsManager);
+        IntStream.range(0, count).parallel().forEach(i -> {
+            if (typeIndices[i] != 0) {
+                entities[i] = eb.newEntity(EntityIDs.of(i, generations[i]), 0, types[typeIndices[i] - 1]);
+            }
+        });
+        player = eb.newPlayer(PLAYER_ID, 0, playerName);
+
+        store.load(in, count + 1);
+        for (int i = 0; i < count; i++) {
+            if (entities[i] != null) {
+                entities[i].load(in);
+            }
         }
     }
 }
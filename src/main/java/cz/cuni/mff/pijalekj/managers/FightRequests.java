@@ -0,0 +1,77 @@
+package cz.cuni.mff.pijalekj.managers;
+
+import java.util.Arrays;
+
+/**
+ * The FightRequests class holds the accepted fight requests of one tick as pairs of attacker and attacked
+ * entity IDs, in primitive arrays. Requests are kept in the order they were accepted in: the player's
+ * attack first (if any), then the NPCs' in the order of their IDs.
+ */
+public class FightRequests {
+    /** Returned when an entity does not attack anyone. */
+    public static final int NO_TARGET = -2;
+
+    private int[] attackers = new int[16];
+    private int[] attacked = new int[16];
+    private int size = 0;
+
+    /**
+     * Adds a fight request.
+     *
+     * @param attackerID The ID of the attacking entity.
+     * @param attackedID The ID of the attacked entity.
+     */
+    public void add(int attackerID, int attackedID) {
+        if (size == attackers.length) {
+            attackers = Arrays.copyOf(attackers, size * 2);
+            attacked = Arrays.copyOf(attacked, size * 2);
+        }
+        attackers[size] = attackerID;
+        attacked[size] = attackedID;
+        ++size;
+    }
+
+    /**
+     * Gets the number of fight requests.
+     *
+     * @return The number of fight requests.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the attacker of the index-th fight request.
+     *
+     * @param index The index of the request.
+     * @return The ID of the attacking entity.
+     */
+    public int getAttacker(int index) {
+        return attackers[index];
+    }
+
+    /**
+     * Gets the attacked entity of the index-th fight request.
+     *
+     * @param index The index of the request.
+     * @return The ID of the attacked entity.
+     */
+    public int getAttacked(int index) {
+        return attacked[index];
+    }
+
+    /**
+     * Finds the entity attacked by the specified attacker, in linear time.
+     *
+     * @param attackerID The ID of the attacking entity.
+     * @return The ID of the attacked entity, or NO_TARGET if the entity attacks no one.
+     */
+    public int getAttackedBy(int attackerID) {
+        for (int i = 0; i < size; ++i) {
+            if (attackers[i] == attackerID) {
+                return attacked[i];
+            }
+        }
+        return NO_TARGET;
+    }
+}
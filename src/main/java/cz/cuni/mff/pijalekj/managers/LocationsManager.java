@@ -1,172 +1,489 @@
-package cz.cuni.mff.pijalekj.managers;
-
-import cz.cuni.mff.pijalekj.entities.Planet;
-
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-
-/**
- * Manages the locations, entities, and relationships between planets in a system.
- */
-public class LocationsManager {
-    private final int[][] adjacencyMatrix;
-    private final List<List<HashSet<Integer>>> presentEntities;
-    private final List<Integer[]> neighborList;
-    private final Planet[] planets;
-
-    /**
-     * Constructs a LocationsManager with the given parameters.
-     *
-     * @param adjacencyMatrix    The adjacency matrix representing the relationships between planets.
-     * @param presentEntities    The list of entities present on each pair of planets.
-     * @param neighborList       The list of neighbors for each planet.
-     * @param planets            The array of Planet objects representing each planet.
-     */
-    public LocationsManager(int[][] adjacencyMatrix,
-                            List<List<HashSet<Integer>>> presentEntities,
-                            List<Integer[]> neighborList,
-                            Planet[] planets)
-    {
-        this.adjacencyMatrix = adjacencyMatrix;
-        this.presentEntities = presentEntities;
-        this.neighborList = neighborList;
-        this.planets = planets;
-    }
-
-    /**
-     * Retrieves the neighbors of a specific planet.
-     *
-     * @param planetID   The ID of the planet.
-     * @return           An array of Integer representing the neighbors of the specified planet.
-     */
-    public Integer[] getNeighborsOf(Integer planetID) {
-        return neighborList.get(planetID);
-    }
-
-    /**
-     * Gets the distance between two planets.
-     *
-     * @param planetIDFrom   The ID of the source planet.
-     * @param planetIDTo     The ID of the destination planet.
-     * @return               The distance between the specified planets.
-     * @throws IllegalArgumentException if the planet IDs are incorrect.
-     */
-    public int getDistanceBetween(int planetIDFrom, int planetIDTo) {
-        if (planetIDFrom > adjacencyMatrix.length || planetIDTo > adjacencyMatrix[0].length)
-            throw new IllegalArgumentException("Adjacency matrix was given incorrect ID(s)");
-
-        return adjacencyMatrix[planetIDFrom][planetIDTo];
-    }
-    /**
-     * Adds an entity to the relationship between two planets.
-     *
-     * @param entityID      The ID of the entity.
-     * @param planetIDFrom  The ID of the source planet.
-     * @param planetIDTo    The ID of the destination planet.
-     * @throws IllegalArgumentException if the planet IDs are incorrect.
-     */
-    public void addEntityTo(int entityID, int planetIDFrom, int planetIDTo) {
-        if (planetIDFrom > presentEntities.size() || planetIDTo > presentEntities.getFirst().size())
-            throw new IllegalArgumentException("LocationsManager was given an incorrect planet ID!");
-        presentEntities.get(planetIDFrom).get(planetIDTo).add(entityID);
-    }
-    /**
-     * Removes an entity from the relationship between two planets.
-     *
-     * @param entityID      The ID of the entity.
-     * @param planetIDFrom  The ID of the source planet.
-     * @param planetIDTo    The ID of the destination planet.
-     * @throws IllegalArgumentException if the planet IDs are incorrect.
-     */
-    public void removeEntityFrom(int entityID, int planetIDFrom, int planetIDTo) {
-        if (planetIDFrom > presentEntities.size() || planetIDTo > presentEntities.getFirst().size())
-            throw new IllegalArgumentException("LocationsManager was given an incorrect planet ID!");
-        presentEntities.get(planetIDFrom).get(planetIDTo).remove(entityID);
-    }
-    /**
-     * Gets the set of entities present on the path between two planets.
-     *
-     * @param planetIDFrom  The ID of the source planet.
-     * @param planetIDTo    The ID of the destination planet.
-     * @return              The set of entities present on the specified relationship.
-     * @throws IllegalArgumentException if the planet IDs are incorrect.
-     */
-    public HashSet<Integer> getPresentEntities(int planetIDFrom, int planetIDTo) {
-        if (planetIDFrom > presentEntities.size() || planetIDTo > presentEntities.getFirst().size())
-            throw new IllegalArgumentException("LocationsManager was given an incorrect planet ID!");
-
-        var first = presentEntities.get(planetIDFrom).get(planetIDTo);
-        if (planetIDFrom == planetIDTo) {
-            return first;
-        }
-
-        var second = presentEntities.get(planetIDTo).get(planetIDFrom);
-        first.addAll(second);
-
-        return first;
-    }
-    /**
-     * Gets the set of entities present on a planet.
-     *
-     * @param planetID   The ID of the planet.
-     * @return           The set of entities present on the specified planet.
-     */
-    public HashSet<Integer> getPresentEntities(int planetID) {
-        return getPresentEntities(planetID, planetID);
-    }
-    /**
-     * Adds an entity to a planet.
-     *
-     * @param entityID   The ID of the entity.
-     * @param planetID   The ID of the planet.
-     */
-    public void addEntityTo(int entityID, int planetID) {
-        addEntityTo(entityID, planetID, planetID);
-    }
-    /**
-     * Removes an entity from a planet.
-     *
-     * @param entityID   The ID of the entity.
-     * @param planetID   The ID of the planet.
-     */
-    public void removeEntityFrom(int entityID, int planetID) {
-        removeEntityFrom(entityID, planetID, planetID);
-    }
-    /**
-     * Gets the Planet object for a specific planet ID.
-     *
-     * @param planetID   The ID of the planet.
-     * @return           The Planet object representing the specified planet.
-     * @throws IllegalArgumentException if the planet ID is incorrect.
-     */
-    public Planet getPlanet(int planetID) {
-        if (planetID >= planets.length) // NOTE Originally was ">", replace it if a bug occurs
-            throw new IllegalArgumentException("LocationsManager was given an incorrect planetID!");
-
-        return planets[planetID];
-    }
-    /**
-     * Gets an array of all Planet objects in the system.
-     *
-     * @return   An array of all Planet objects.
-     */
-    public Planet[] getAllPlanets() {
-        return planets;
-    }
-    /**
-     * Updates all planets in parallel by invoking their update method.
-     */
-    public void updateAllPlanets() {
-        Arrays.stream(planets).parallel().forEach(Planet::update);
-    }
-    /**
-     * Gets the name of a planet based on its ID.
-     *
-     * @param ID   The ID of the planet.
-     * @return     The name of the specified planet.
-     */
-    public String getPlanetName(int ID) {
-        return planets[ID].name();
-    }
-}
+package cz.cuni.mff.pijalekj.managers;
+
+import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.entities.Planet;
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
+import cz.cuni.mff.pijalekj.world.ArbitrageIndex;
+import cz.cuni.mff.pijalekj.world.LaneGraph;
+import cz.cuni.mff.pijalekj.world.MarketStore;
+import cz.cuni.mff.pijalekj.world.OccupancyIndex;
+import cz.cuni.mff.pijalekj.world.RngService;
+import cz.cuni.mff.pijalekj.world.TradeRouteTable;
+
+import java.util.OptionalInt;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Manages the locations, entities, and relationships between planets in a system.
+ */
+public class LocationsManager {
+    private final LaneGraph lanes;
+    private final OccupancyIndex presentEntities;
+    private final Planet[] planets;
+    private final MarketStore markets;
+    private final TradeRouteTable tradeRoutes;
+
+    /**
+     * Constructs a LocationsManager with the given parameters.
+     *
+     * @param lanes              The lane graph representing the relationships between planets.
+     * @param planets            The array of Planet objects representing each planet.
+     * @param markets            The market store holding the markets of all planets.
+     */
+    public LocationsManager(LaneGraph lanes, Planet[] planets, MarketStore markets) {
+        this.lanes = lanes;
+        this.planets = planets;
+        this.markets = markets;
+        this.tradeRoutes = new TradeRouteTable(lanes, markets, Constants.TRADE_PLAN_DEPTH);
+        this.presentEntities = new OccupancyIndex(planets.length + lanes.getLaneCount());
+    }
+
+    /**
+     * Retrieves the neighbors of a specific planet.
+     *
+     * @param planetID   The ID of the planet.
+     * @return           An array of the neighbors' IDs, sorted in ascending order.
+     */
+    public int[] getNeighborsOf(int planetID) {
+        return lanes.getNeighbors(planetID);
+    }
+
+    /**
+     * Gets the lane graph, which allows iterating over neighbors without copying them.
+     *
+     * @return The lane graph between all planets.
+     */
+    public LaneGraph getLaneGraph() {
+        return lanes;
+    }
+
+    /**
+     * Gets the distance between two planets.
+     *
+     * @param planetIDFrom   The ID of the source planet.
+     * @param planetIDTo     The ID of the destination planet.
+     * @return               The distance between the specified planets, or 0 if they are not neighbors.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public int getDistanceBetween(int planetIDFrom, int planetIDTo) {
+        if (planetIDFrom >= planets.length || planetIDTo >= planets.length)
+            throw new IllegalArgumentException("LaneGraph was given incorrect ID(s)");
+
+        return lanes.getDistanceBetween(planetIDFrom, planetIDTo);
+    }
+    /**
+     * Adds an entity, which is not present anywhere yet, to the relationship between two planets.
+     * Use moveEntity() for entities that are already present somewhere.
+     *
+     * @param entityID      The ID of the entity.
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @throws IllegalArgumentException if the planet IDs are incorrect or the entity is already present.
+     */
+    public void addEntityTo(int entityID, int planetIDFrom, int planetIDTo) {
+        presentEntities.add(entityID, getBucket(planetIDFrom, planetIDTo));
+    }
+    /**
+     * Removes an entity from the relationship between two planets.
+     *
+     * @param entityID      The ID of the entity.
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public void removeEntityFrom(int entityID, int planetIDFrom, int planetIDTo) {
+        presentEntities.remove(entityID, getBucket(planetIDFrom, planetIDTo));
+    }
+    /**
+     * Moves an entity from wherever it is to the relationship between two planets.
+     *
+     * @param entityID      The ID of the entity.
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public void moveEntity(int entityID, int planetIDFrom, int planetIDTo) {
+        presentEntities.move(entityID, getBucket(planetIDFrom, planetIDTo));
+    }
+    /**
+     * Moves an entity from wherever it is to a planet.
+     *
+     * @param entityID   The ID of the entity.
+     * @param planetID   The ID of the planet.
+     */
+    public void moveEntity(int entityID, int planetID) {
+        moveEntity(entityID, planetID, planetID);
+    }
+    /**
+     * Starts deferring entity moves: until commitMoves() is called, moves are only recorded and
+     * present entities stay where they were, so that entities can move from many threads at once.
+     */
+    public void deferMoves() {
+        presentEntities.deferMoves();
+    }
+    /**
+     * Applies all deferred entity moves, in the order of entity IDs, and stops deferring them.
+     */
+    public void commitMoves() {
+        presentEntities.commitMoves();
+    }
+    /**
+     * Gets the number of sectors, see getSectorOf().
+     *
+     * @return The number of sectors.
+     */
+    public int getSectorCount() {
+        return planets.length + lanes.getLaneCount();
+    }
+    /**
+     * Gets the sector of a position, which is either a planet or a lane regardless of its direction.
+     * Entities only ever see entities present in their own sector.
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet, equal to the source for the planet itself.
+     * @return              The sector of the position.
+     * @throws IllegalArgumentException if the planet IDs are incorrect or the planets are not neighbors.
+     */
+    public int getSectorOf(int planetIDFrom, int planetIDTo) {
+        return getBucket(Math.min(planetIDFrom, planetIDTo), Math.max(planetIDFrom, planetIDTo));
+    }
+    /**
+     * Places entities, which are not present anywhere yet, onto planets, in parallel.
+     *
+     * @param entityIDs  The IDs of the entities.
+     * @param planetIDs  The ID of the planet of each entity.
+     * @throws IllegalArgumentException if a planet ID is incorrect or an entity is already placed.
+     */
+    public void placeEntities(int[] entityIDs, int[] planetIDs) {
+        for (int planetID : planetIDs) {
+            if (planetID < 0 || planetID >= planets.length)
+                throw new IllegalArgumentException("LocationsManager was given an incorrect planet ID!");
+        }
+        presentEntities.placeAll(entityIDs, planetIDs);
+    }
+    /**
+     * Performs the given action for every entity present on the path between two planets, in both
+     * directions, or on a planet if both IDs are the same. Neither allocates nor modifies anything.
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @param action        The action to perform for each present entity ID.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public void forEachPresent(int planetIDFrom, int planetIDTo, IntConsumer action) {
+        presentEntities.forEach(getBucket(planetIDFrom, planetIDTo), action);
+        if (planetIDFrom != planetIDTo) {
+            presentEntities.forEach(getBucket(planetIDTo, planetIDFrom), action);
+        }
+    }
+    /**
+     * Counts the entities present on the path between two planets, in both directions, or on a planet
+     * if both IDs are the same.
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @return              The number of present entities.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public int countPresent(int planetIDFrom, int planetIDTo) {
+        int count = presentEntities.getCount(getBucket(planetIDFrom, planetIDTo));
+        if (planetIDFrom != planetIDTo) {
+            count += presentEntities.getCount(getBucket(planetIDTo, planetIDFrom));
+        }
+        return count;
+    }
+    /**
+     * Checks whether any entity present on the path between two planets, in both directions, or on
+     * a planet if both IDs are the same, matches the given predicate.
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @param predicate     The predicate the entity ID has to match.
+     * @return              True if a matching entity is present, false otherwise.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public boolean anyPresent(int planetIDFrom, int planetIDTo, IntPredicate predicate) {
+        return findPresentSlot(planetIDFrom, planetIDTo, predicate) != OccupancyIndex.NONE;
+    }
+    /**
+     * Finds the first entity present on the path between two planets, in both directions, or on
+     * a planet if both IDs are the same, that matches the given predicate.
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @param predicate     The predicate the entity ID has to match.
+     * @return              The ID of the first matching entity, or an empty OptionalInt if there is none.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public OptionalInt findPresent(int planetIDFrom, int planetIDTo, IntPredicate predicate) {
+        int slot = findPresentSlot(planetIDFrom, planetIDTo, predicate);
+        if (slot == OccupancyIndex.NONE) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(presentEntities.getEntityID(slot));
+    }
+    /**
+     * Sets whether an entity is a criminal, so that criminals can be found without scanning everyone present.
+     * Must not be called while entities play.
+     *
+     * @param entityID      The ID of the entity.
+     * @param isCriminal    True if the entity is a criminal.
+     */
+    public void setCriminal(int entityID, boolean isCriminal) {
+        presentEntities.setCriminal(entityID, isCriminal);
+    }
+    /**
+     * Counts the criminals present on the path between two planets, in both directions, or on a planet
+     * if both IDs are the same, in constant time.
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @return              The number of present criminals.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public int countCriminals(int planetIDFrom, int planetIDTo) {
+        int count = presentEntities.getCriminalCount(getBucket(planetIDFrom, planetIDTo));
+        if (planetIDFrom != planetIDTo) {
+            count += presentEntities.getCriminalCount(getBucket(planetIDTo, planetIDFrom));
+        }
+        return count;
+    }
+    /**
+     * Finds a criminal present on the path between two planets, in both directions, or on a planet
+     * if both IDs are the same. Only criminals are visited, and a path without them is ruled out in O(1).
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @param excludedID    The ID of an entity not to be returned, usually the one searching.
+     * @return              The ID of a criminal, or an empty OptionalInt if there is none.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public OptionalInt findCriminal(int planetIDFrom, int planetIDTo, int excludedID) {
+        int bucket = getBucket(planetIDFrom, planetIDTo);
+        int slot = presentEntities.getCriminalCount(bucket) == 0
+                ? OccupancyIndex.NONE : presentEntities.findCriminalSlot(bucket, excludedID);
+        if (slot == OccupancyIndex.NONE && planetIDFrom != planetIDTo) {
+            bucket = getBucket(planetIDTo, planetIDFrom);
+            if (presentEntities.getCriminalCount(bucket) != 0) {
+                slot = presentEntities.findCriminalSlot(bucket, excludedID);
+            }
+        }
+        if (slot == OccupancyIndex.NONE) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(presentEntities.getEntityID(slot));
+    }
+    /**
+     * Finds the slot of the first entity present on the path between two planets that matches the predicate.
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @param predicate     The predicate the entity ID has to match.
+     * @return              The slot of the first matching entity, or OccupancyIndex.NONE if there is none.
+     */
+    private int findPresentSlot(int planetIDFrom, int planetIDTo, IntPredicate predicate) {
+        int slot = presentEntities.findSlot(getBucket(planetIDFrom, planetIDTo), predicate);
+        if (slot == OccupancyIndex.NONE && planetIDFrom != planetIDTo) {
+            slot = presentEntities.findSlot(getBucket(planetIDTo, planetIDFrom), predicate);
+        }
+        return slot;
+    }
+    /**
+     * Gets a copy of the entities present on the path between two planets, in both directions.
+     * Prefer forEachPresent() on hot paths, as it does not allocate.
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet.
+     * @return              A new array of the IDs of entities present on the specified relationship.
+     * @throws IllegalArgumentException if the planet IDs are incorrect.
+     */
+    public int[] getPresentEntities(int planetIDFrom, int planetIDTo) {
+        int first = getBucket(planetIDFrom, planetIDTo);
+        if (planetIDFrom == planetIDTo) {
+            int[] result = new int[presentEntities.getCount(first)];
+            presentEntities.copyEntities(first, result, 0);
+            return result;
+        }
+
+        int second = getBucket(planetIDTo, planetIDFrom);
+        int[] result = new int[presentEntities.getCount(first) + presentEntities.getCount(second)];
+        presentEntities.copyEntities(second, result, presentEntities.copyEntities(first, result, 0));
+        return result;
+    }
+    /**
+     * Gets the entities present on a planet.
+     *
+     * @param planetID   The ID of the planet.
+     * @return           A new array of the IDs of entities present on the specified planet.
+     */
+    public int[] getPresentEntities(int planetID) {
+        return getPresentEntities(planetID, planetID);
+    }
+    /**
+     * Adds an entity, which is not present anywhere yet, to a planet.
+     *
+     * @param entityID   The ID of the entity.
+     * @param planetID   The ID of the planet.
+     * @throws IllegalArgumentException if the planet ID is incorrect or the entity is already present.
+     */
+    public void addEntityTo(int entityID, int planetID) {
+        addEntityTo(entityID, planetID, planetID);
+    }
+    /**
+     * Removes an entity from a planet.
+     *
+     * @param entityID   The ID of the entity.
+     * @param planetID   The ID of the planet.
+     */
+    public void removeEntityFrom(int entityID, int planetID) {
+        removeEntityFrom(entityID, planetID, planetID);
+    }
+    /**
+     * Finds the occupancy bucket of a planet or of a directed lane between two planets.
+     *
+     * @param planetIDFrom  The ID of the source planet.
+     * @param planetIDTo    The ID of the destination planet, equal to the source for the planet itself.
+     * @return              The bucket in the occupancy index.
+     * @throws IllegalArgumentException if the planet IDs are incorrect or the planets are not neighbors.
+     */
+    private int getBucket(int planetIDFrom, int planetIDTo) {
+        if (planetIDFrom < 0 || planetIDFrom >= planets.length || planetIDTo < 0 || planetIDTo >= planets.length)
+            throw new IllegalArgumentException("LocationsManager was given an incorrect planet ID!");
+        if (planetIDFrom == planetIDTo) {
+            return planetIDFrom;
+        }
+
+        int lane = lanes.getLaneIndex(planetIDFrom, planetIDTo);
+        if (lane < 0)
+            throw new IllegalArgumentException("LocationsManager was given planets that are not neighbors!");
+        return planets.length + lane;
+    }
+    /**
+     * Gets the Planet object for a specific planet ID.
+     *
+     * @param planetID   The ID of the planet.
+     * @return           The Planet object representing the specified planet.
+     * @throws IllegalArgumentException if the planet ID is incorrect.
+     */
+    public Planet getPlanet(int planetID) {
+        if (planetID >= planets.length) // NOTE Originally was ">", replace it if a bug occurs
+            throw new IllegalArgumentException("LocationsManager was given an incorrect planetID!");
+
+        return planets[planetID];
+    }
+    /**
+     * Gets an array of all Planet objects in the system.
+     *
+     * @return   An array of all Planet objects.
+     */
+    public Planet[] getAllPlanets() {
+        return planets;
+    }
+    /**
+     * Gets the market store holding the markets of all planets.
+     *
+     * @return The market store.
+     */
+    public MarketStore getMarkets() {
+        return markets;
+    }
+    /**
+     * Gets the source of all randomness of the world.
+     *
+     * @return The RngService of the world.
+     */
+    public RngService getRandom() {
+        return markets.getRandom();
+    }
+    /**
+     * Gets the index of the cheapest and most expensive planets of every good.
+     *
+     * @return The arbitrage index of the markets.
+     */
+    public ArbitrageIndex getArbitrageIndex() {
+        return markets.getArbitrageIndex();
+    }
+
+    /**
+     * Gets the range of planet IDs that can be reached from a planet in the given number of jumps,
+     * clamped to the existing planets.
+     *
+     * @param planetID The ID of the planet.
+     * @param jumps    The number of jumps.
+     * @param region   Receives the lowest planet ID of the region, inclusive, and the highest one, exclusive.
+     */
+    public void getRegion(int planetID, int jumps, int[] region) {
+        long radius = (long) jumps * lanes.getMaxSpan();
+        region[0] = (int) Math.max(0, planetID - radius);
+        region[1] = (int) Math.min(planets.length, planetID + radius + 1);
+    }
+
+    /**
+     * Brings the markets of a range of planets up to date, so that the arbitrage index holds their current
+     * prices even in lazy mode.
+     *
+     * @param from The lowest planet ID of the range, inclusive.
+     * @param to   The highest planet ID of the range, exclusive.
+     */
+    public void ensureMarketsUpdated(int from, int to) {
+        for (int planetID = from; planetID < to; ++planetID) {
+            markets.ensureUpdated(planetID);
+        }
+    }
+
+    /**
+     * Switches the markets between updating all planets every big tick and catching planets up when accessed.
+     *
+     * @param lazy True to update markets only when accessed.
+     */
+    public void setLazyMarkets(boolean lazy) {
+        markets.setLazy(lazy);
+    }
+
+    /**
+     * Gets the table of the best trade routes from every planet.
+     *
+     * @return The trade route table.
+     */
+    public TradeRouteTable getTradeRoutes() {
+        return tradeRoutes;
+    }
+
+    /**
+     * Updates the markets of all planets in parallel, or only marks the big tick if the markets are lazy.
+     * Then rebuilds the rows of the trade route table that traders planned from since the last big tick,
+     * in parallel as well; other rows are rebuilt when accessed.
+     */
+    public void updateAllPlanets() {
+        markets.updateAll();
+        tradeRoutes.rebuildUsedRows();
+    }
+
+    /**
+     * Writes where the entities are present into a snapshot of the world.
+     *
+     * @param out The snapshot section of the occupancy.
+     */
+    public void saveOccupancy(SnapshotOutput out) {
+        presentEntities.save(out);
+    }
+    /**
+     * Reads where the entities are present, as written by saveOccupancy(), before any entity is placed.
+     *
+     * @param in The snapshot section of the occupancy.
+     */
+    public void loadOccupancy(SnapshotInput in) {
+        presentEntities.load(in);
+    }
+    /**
+     * Gets the name of a planet based on its ID.
+     *
+     * @param ID   The ID of the planet.
+     * @return     The name of the specified planet.
+     */
+    public String getPlanetName(int ID) {
+        return planets[ID].name();
+    }
+}
@@ -1,30 +1,39 @@
 package cz.cuni.mff.pijalekj.managers;
 
 import cz.cuni.mff.pijalekj.entities.Planet;
+import cz.cuni.mff.pijalekj.metrics.TravelEndEvent;
+import cz.cuni.mff.pijalekj.metrics.TravelStartEvent;
+import cz.cuni.mff.pijalekj.world.EntityStore;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
+import cz.cuni.mff.pijalekj.world.RngService;
+import cz.cuni.mff.pijalekj.world.TradeRouteTable;
 
-import java.util.HashSet;
+import java.util.OptionalInt;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 /**
  * The TravelManager class represents a manager for handling travel between locations for a specific entity.
+ * It is a handle over the entity's slot in the EntityStore, which holds its location and travel state.
  */
 public class TravelManager {
     private final LocationsManager locMan;
+    private final EntityStore store;
     private final int ownerID;
-    private int currLocID;
-    private int nextLocID = -1;
-    private int travelTimeLeft = 0;
+    private final int slot;
 
     /**
      * Constructs a TravelManager with the specified parameters.
      *
      * @param locMan   The LocationsManager responsible for managing locations and distances.
-     * @param currLocID The current location ID where the entity is initially located.
-     * @param ownerID   The owner ID associated with the entity using this TravelManager.
+     * @param store    The store holding the location of the entity.
+     * @param ownerID  The owner ID associated with the entity using this TravelManager.
      */
-    public TravelManager(LocationsManager locMan, int currLocID, int ownerID) {
+    public TravelManager(LocationsManager locMan, EntityStore store, int ownerID) {
         this.locMan = locMan;
-        this.currLocID = currLocID;
+        this.store = store;
         this.ownerID = ownerID;
+        this.slot = EntityIDs.slotOf(ownerID);
     }
 
     /**
@@ -35,7 +44,8 @@ public class TravelManager {
             return;
         }
 
-        --travelTimeLeft;
+        int travelTimeLeft = store.getTravelTimeLeft(slot) - 1;
+        store.setTravelTimeLeft(slot, travelTimeLeft);
         if (travelTimeLeft <= 0) {
             travelEnd();
         }
@@ -48,26 +58,43 @@ public class TravelManager {
      * @throws IllegalArgumentException if the travel distance is non-positive or the destination is the same as the current location.
      */
     public void travelStart(int nextLocationID) {
-        nextLocID = nextLocationID;
-        travelTimeLeft = locMan.getDistanceBetween(currLocID, nextLocID);
+        int currLocID = store.getLocation(slot);
+        int travelTimeLeft = locMan.getDistanceBetween(currLocID, nextLocationID);
+        store.setNextLocation(slot, nextLocationID);
+        store.setTravelTimeLeft(slot, travelTimeLeft);
         if (travelTimeLeft <= 0) {
             throw new IllegalArgumentException(
                     "NPC wants to travel to either the same place or those two places aren't neighbors");
         }
 
-        locMan.removeEntityFrom(ownerID, currLocID);
-        locMan.addEntityTo(ownerID, currLocID, nextLocID);
+        locMan.moveEntity(ownerID, currLocID, nextLocationID);
+
+        var event = new TravelStartEvent();
+        if (event.isEnabled()) {
+            event.entityID = ownerID;
+            event.fromPlanetID = currLocID;
+            event.toPlanetID = nextLocationID;
+            event.distance = travelTimeLeft;
+            event.commit();
+        }
     }
 
     /**
      * Completes the travel by updating the location and cleaning up the entities' presence.
      */
     private void travelEnd() {
-        locMan.removeEntityFrom(ownerID, currLocID, nextLocID);
-        locMan.addEntityTo(ownerID, nextLocID);
+        int nextLocID = store.getNextLocation(slot);
+        locMan.moveEntity(ownerID, nextLocID);
 
-        currLocID = nextLocID;
-        nextLocID = -1;
+        store.setLocation(slot, nextLocID);
+        store.setNextLocation(slot, -1);
+
+        var event = new TravelEndEvent();
+        if (event.isEnabled()) {
+            event.entityID = ownerID;
+            event.planetID = nextLocID;
+            event.commit();
+        }
     }
 
     /**
@@ -76,19 +103,51 @@ public class TravelManager {
      * @return true if the entity is currently traveling; false otherwise.
      */
     public boolean isTraveling() {
-        return travelTimeLeft > 0;
+        return store.getTravelTimeLeft(slot) > 0;
     }
 
     /**
-     * Retrieves the set of entities present at the current or next location depending on the travel status.
+     * Performs the given action for every entity present at the current location, or on the path to
+     * the next location if the entity is traveling.
      *
-     * @return A HashSet of Integer representing entity IDs present at the current or next location.
+     * @param action The action to perform for each present entity ID.
      */
-    public HashSet<Integer> getPresentEntities() {
-        if (isTraveling()) {
-            return locMan.getPresentEntities(currLocID, nextLocID);
-        }
-        return locMan.getPresentEntities(currLocID);
+    public void forEachPresent(IntConsumer action) {
+        int currLocID = store.getLocation(slot);
+        locMan.forEachPresent(currLocID, isTraveling() ? store.getNextLocation(slot) : currLocID, action);
+    }
+
+    /**
+     * Finds the first entity present at the current location, or on the path to the next location if
+     * the entity is traveling, that matches the given predicate.
+     *
+     * @param predicate The predicate the entity ID has to match.
+     * @return The ID of the first matching entity, or an empty OptionalInt if there is none.
+     */
+    public OptionalInt findPresent(IntPredicate predicate) {
+        int currLocID = store.getLocation(slot);
+        return locMan.findPresent(currLocID, isTraveling() ? store.getNextLocation(slot) : currLocID, predicate);
+    }
+
+    /**
+     * Finds a criminal other than the entity at the current location, or on the path to the next location
+     * if the entity is traveling. Locations without criminals are ruled out in constant time.
+     *
+     * @return The ID of a criminal, or an empty OptionalInt if there is none.
+     */
+    public OptionalInt findCriminal() {
+        int currLocID = store.getLocation(slot);
+        return locMan.findCriminal(currLocID, isTraveling() ? store.getNextLocation(slot) : currLocID, ownerID);
+    }
+
+    /**
+     * Draws a random value for the owner's travel decision in the current tick.
+     *
+     * @param bound The exclusive upper bound of the value.
+     * @return A value from 0 (inclusive) to bound (exclusive).
+     */
+    public int nextTravelChoice(int bound) {
+        return locMan.getRandom().nextInt(RngService.TRAVEL_STREAM, ownerID, bound);
     }
 
     /**
@@ -105,19 +164,28 @@ public class TravelManager {
      * Retrieves an array of neighbor planet IDs for the specified planet ID.
      *
      * @param planetID The ID of the planet for which to retrieve neighbor information.
-     * @return An array of Integer representing the neighbor planet IDs.
+     * @return An array of the neighbor planet IDs.
      */
-    public Integer[] getNeighbors(int planetID) {
+    public int[] getNeighbors(int planetID) {
         return locMan.getNeighborsOf(planetID);
     }
 
+    /**
+     * Gets the table of the best trade routes from every planet.
+     *
+     * @return The trade route table.
+     */
+    public TradeRouteTable getTradeRoutes() {
+        return locMan.getTradeRoutes();
+    }
+
     /**
      * Retrieves an array of neighbor planet IDs for the current location.
      *
-     * @return An array of Integer representing the neighbor planet IDs of the current location.
+     * @return An array of the neighbor planet IDs of the current location.
      */
-    public Integer[] getNeighbors() {
-        return getNeighbors(currLocID);
+    public int[] getNeighbors() {
+        return getNeighbors(store.getLocation(slot));
     }
 
     /**
@@ -126,7 +194,7 @@ public class TravelManager {
      * @return The Planet object representing the current location.
      */
     public Planet getCurrLocation() {
-        return locMan.getPlanet(currLocID);
+        return locMan.getPlanet(store.getLocation(slot));
     }
 
     /**
@@ -135,7 +203,7 @@ public class TravelManager {
      * @return The Planet object representing the next location.
      */
     public Planet getNextLocation() {
-        return locMan.getPlanet(nextLocID);
+        return locMan.getPlanet(store.getNextLocation(slot));
     }
 
     /**
@@ -144,7 +212,7 @@ public class TravelManager {
      * @return The ID of the next location.
      */
     public int getNextLocationID() {
-        return nextLocID;
+        return store.getNextLocation(slot);
     }
 
     /**
@@ -153,7 +221,7 @@ public class TravelManager {
      * @return The ID of the current location.
      */
     public int getCurrLocationID() {
-        return currLocID;
+        return store.getLocation(slot);
     }
 
     /**
@@ -0,0 +1,40 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event spanning a battle between two entities.
+ */
+@Name("cz.cuni.mff.pijalekj.Battle")
+@Label("Battle")
+@Category({"Space Trader", "Battles"})
+@Description("A battle between two entities")
+@StackTrace(false)
+public class BattleEvent extends Event {
+    /** The outcome of a battle in which the attacker killed the defender. */
+    public static final String ATTACKER_WON = "attacker won";
+    /** The outcome of a battle in which the defender killed the attacker. */
+    public static final String DEFENDER_WON = "defender won";
+    /** The outcome of a battle that ended without a death. */
+    public static final String ESCAPED = "escaped";
+
+    @Label("Attacker ID")
+    public int attackerID;
+
+    @Label("Attacker Type")
+    public String attackerType;
+
+    @Label("Defender ID")
+    public int defenderID;
+
+    @Label("Defender Type")
+    public String defenderType;
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,38 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event emitted when goods are bought from or sold to a planet's market. There is one for
+ * every trade, so it is disabled by default and has to be enabled in the recording settings.
+ */
+@Name("cz.cuni.mff.pijalekj.MarketTrade")
+@Label("Market Trade")
+@Category({"Space Trader", "Markets"})
+@Description("Goods were bought from or sold to a planet")
+@StackTrace(false)
+@Enabled(false)
+public class MarketTradeEvent extends Event {
+    @Label("Planet")
+    public int planetID;
+
+    @Label("Good")
+    public String good;
+
+    @Label("Amount")
+    public int amount;
+
+    @Label("Unit Price")
+    @Description("The price of a unit after the trade")
+    public int unitPrice;
+
+    @Label("Sale")
+    @Description("True if the goods were sold to the planet, false if they were bought from it")
+    public boolean sale;
+}
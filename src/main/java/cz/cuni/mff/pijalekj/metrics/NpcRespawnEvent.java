@@ -0,0 +1,27 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event emitted when a dead NPC is respawned in a big tick.
+ */
+@Name("cz.cuni.mff.pijalekj.NpcRespawn")
+@Label("NPC Respawn")
+@Category({"Space Trader", "Entities"})
+@Description("A dead NPC was respawned in place")
+@StackTrace(false)
+public class NpcRespawnEvent extends Event {
+    @Label("Entity ID")
+    public int entityID;
+
+    @Label("Entity Type")
+    public String entityType;
+
+    @Label("Planet")
+    public int planetID;
+}
@@ -0,0 +1,82 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+/**
+ * A snapshot of the latencies of a phase, in microseconds, as shown by JMX clients.
+ */
+public class PhaseSnapshot {
+    private final String phase;
+    private final long count;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final double maxMicros;
+
+    /**
+     * Takes a snapshot of a histogram.
+     *
+     * @param phase     The name of the phase.
+     * @param histogram The histogram of the phase's latencies.
+     */
+    PhaseSnapshot(String phase, LatencyHistogram histogram) {
+        this.phase = phase;
+        count = histogram.getCount();
+        meanMicros = histogram.getMean() / 1e3;
+        p50Micros = histogram.getPercentile(50) / 1e3;
+        p99Micros = histogram.getPercentile(99) / 1e3;
+        maxMicros = histogram.getMax() / 1e3;
+    }
+
+    /**
+     * Gets the name of the phase, or "tick" for whole ticks.
+     *
+     * @return The name of the phase.
+     */
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return The count of latencies.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return The mean in microseconds.
+     */
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    /**
+     * Gets the median latency.
+     *
+     * @return The 50th percentile in microseconds.
+     */
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    /**
+     * Gets the 99th percentile of the latencies.
+     *
+     * @return The 99th percentile in microseconds.
+     */
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    /**
+     * Gets the longest latency.
+     *
+     * @return The maximum in microseconds.
+     */
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+}
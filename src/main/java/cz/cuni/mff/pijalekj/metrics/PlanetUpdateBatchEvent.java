@@ -0,0 +1,27 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event spanning the update of a batch of consecutive planets' markets in a big tick.
+ */
+@Name("cz.cuni.mff.pijalekj.PlanetUpdateBatch")
+@Label("Planet Update Batch")
+@Category({"Space Trader", "Markets"})
+@Description("The markets of a batch of consecutive planets were updated")
+@StackTrace(false)
+public class PlanetUpdateBatchEvent extends Event {
+    @Label("Big Tick")
+    public int bigTick;
+
+    @Label("First Planet")
+    public int firstPlanetID;
+
+    @Label("Planet Count")
+    public int planetCount;
+}
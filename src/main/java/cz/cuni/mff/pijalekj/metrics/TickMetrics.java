@@ -0,0 +1,140 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The TickMetrics class records how long every phase of a tick takes, separately for ticks with and
+ * without a big tick, so that the stalls of big ticks can be told apart from the rest and attributed
+ * to a phase. Besides the phases, it records the whole tick without the player's phase, which waits
+ * for the player's input.
+ * <p>
+ * The latencies are kept in lock-free histograms, and the platform instance is published as an MXBean,
+ * so that they can be watched live with JConsole or any other JMX client.
+ */
+public class TickMetrics implements TickMetricsMXBean {
+    /** The name of the platform instance's MBean. */
+    public static final String OBJECT_NAME = "cz.cuni.mff.pijalekj:type=TickMetrics";
+    /** The name of the histogram of whole ticks in the snapshots. */
+    private static final String TICK = "tick";
+
+    private static TickMetrics platformInstance;
+
+    private final LatencyHistogram[] normalPhases = newHistograms();
+    private final LatencyHistogram[] bigPhases = newHistograms();
+    private final LatencyHistogram normalTicks = new LatencyHistogram();
+    private final LatencyHistogram bigTicks = new LatencyHistogram();
+
+    /**
+     * Gets the instance published to the platform MBean server, registering it on the first call.
+     *
+     * @return The platform instance.
+     * @throws IllegalStateException if the MBean cannot be registered.
+     */
+    public static synchronized TickMetrics getPlatformInstance() {
+        if (platformInstance == null) {
+            var metrics = new TickMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                throw new IllegalStateException("TickMetrics could not be published over JMX!", e);
+            }
+            platformInstance = metrics;
+        }
+        return platformInstance;
+    }
+
+    /**
+     * Records the duration of a phase.
+     *
+     * @param phase   The phase.
+     * @param bigTick Whether the tick is a big tick.
+     * @param nanos   The duration of the phase in nanoseconds.
+     */
+    public void record(TickPhase phase, boolean bigTick, long nanos) {
+        (bigTick ? bigPhases : normalPhases)[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records the duration of a whole tick, without the player's phase.
+     *
+     * @param bigTick Whether the tick is a big tick.
+     * @param nanos   The duration of the tick in nanoseconds.
+     */
+    public void recordTick(boolean bigTick, long nanos) {
+        (bigTick ? bigTicks : normalTicks).record(nanos);
+    }
+
+    /**
+     * Gets the histogram of a phase.
+     *
+     * @param phase   The phase.
+     * @param bigTick Whether to get the histogram of big ticks or of normal ticks.
+     * @return The histogram of the phase's latencies.
+     */
+    public LatencyHistogram getHistogram(TickPhase phase, boolean bigTick) {
+        return (bigTick ? bigPhases : normalPhases)[phase.ordinal()];
+    }
+
+    @Override
+    public long getNormalTickCount() {
+        return normalTicks.getCount();
+    }
+
+    @Override
+    public long getBigTickCount() {
+        return bigTicks.getCount();
+    }
+
+    @Override
+    public List<PhaseSnapshot> getNormalTicks() {
+        return snapshot(normalTicks, normalPhases);
+    }
+
+    @Override
+    public List<PhaseSnapshot> getBigTicks() {
+        return snapshot(bigTicks, bigPhases);
+    }
+
+    @Override
+    public void reset() {
+        normalTicks.reset();
+        bigTicks.reset();
+        for (var phase : TickPhase.values()) {
+            normalPhases[phase.ordinal()].reset();
+            bigPhases[phase.ordinal()].reset();
+        }
+    }
+
+    /**
+     * Takes snapshots of the histograms of a kind of ticks.
+     *
+     * @param ticks  The histogram of whole ticks.
+     * @param phases The histograms of the phases.
+     * @return The snapshot of whole ticks followed by the snapshots of the phases.
+     */
+    private static List<PhaseSnapshot> snapshot(LatencyHistogram ticks, LatencyHistogram[] phases) {
+        var result = new ArrayList<PhaseSnapshot>(phases.length + 1);
+        result.add(new PhaseSnapshot(TICK, ticks));
+        for (var phase : TickPhase.values()) {
+            result.add(new PhaseSnapshot(phase.name(), phases[phase.ordinal()]));
+        }
+        return result;
+    }
+
+    /**
+     * Creates a histogram for every phase.
+     *
+     * @return The histograms, indexed by the ordinals of the phases.
+     */
+    private static LatencyHistogram[] newHistograms() {
+        var histograms = new LatencyHistogram[TickPhase.values().length];
+        for (int i = 0; i < histograms.length; ++i) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+}
@@ -0,0 +1,42 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+import java.util.List;
+
+/**
+ * The management interface of TickMetrics, which JMX clients like JConsole show as the attributes and
+ * operations of the MBean named TickMetrics.OBJECT_NAME.
+ */
+public interface TickMetricsMXBean {
+    /**
+     * Gets the number of recorded ticks without a big tick.
+     *
+     * @return The number of normal ticks.
+     */
+    long getNormalTickCount();
+
+    /**
+     * Gets the number of recorded ticks with a big tick.
+     *
+     * @return The number of big ticks.
+     */
+    long getBigTickCount();
+
+    /**
+     * Gets the latencies of the whole tick and of its phases, measured in ticks without a big tick.
+     *
+     * @return A snapshot for the tick and for every phase.
+     */
+    List<PhaseSnapshot> getNormalTicks();
+
+    /**
+     * Gets the latencies of the whole tick and of its phases, measured in ticks with a big tick.
+     *
+     * @return A snapshot for the tick and for every phase.
+     */
+    List<PhaseSnapshot> getBigTicks();
+
+    /**
+     * Forgets all recorded latencies.
+     */
+    void reset();
+}
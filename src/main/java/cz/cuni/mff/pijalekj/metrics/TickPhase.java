@@ -0,0 +1,8 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+/**
+ * The phases of a tick, in the order they run in.
+ */
+public enum TickPhase {
+    bigTick, player, play, battles, criminals
+}
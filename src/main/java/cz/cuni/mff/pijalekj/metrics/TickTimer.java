@@ -0,0 +1,76 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+import java.util.Arrays;
+
+/**
+ * The TickTimer class measures the phases of the ticks of one game loop and records them into TickMetrics
+ * at the end of every tick. A phase may run in several parts of a tick; its parts are added up. Phases that
+ * did not run in a tick are not recorded. A TickTimer is reused for every tick and must only be used
+ * by the thread running the loop.
+ */
+public class TickTimer {
+    private final TickMetrics metrics;
+    private final long[] phaseNanos = new long[TickPhase.values().length];
+    /** The phases that ran in the current tick, as a bit mask of their ordinals. */
+    private int ranPhases = 0;
+    private long lastLap = 0;
+
+    /**
+     * Constructs a TickTimer recording into the specified metrics.
+     *
+     * @param metrics The metrics to record the ticks into.
+     */
+    public TickTimer(TickMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts a new tick; the first phase starts now.
+     */
+    public void start() {
+        Arrays.fill(phaseNanos, 0);
+        ranPhases = 0;
+        lastLap = System.nanoTime();
+    }
+
+    /**
+     * Ends a phase; the next phase starts now.
+     *
+     * @param phase The phase that just ended.
+     */
+    public void lap(TickPhase phase) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - lastLap;
+        ranPhases |= 1 << phase.ordinal();
+        lastLap = now;
+    }
+
+    /**
+     * Ends the tick and records its phases, and the whole tick without the player's phase.
+     *
+     * @param bigTick Whether the tick was a big tick.
+     */
+    public void end(boolean bigTick) {
+        long tickNanos = 0;
+        for (var phase : TickPhase.values()) {
+            if ((ranPhases & (1 << phase.ordinal())) == 0) {
+                continue;
+            }
+            metrics.record(phase, bigTick, phaseNanos[phase.ordinal()]);
+            if (phase != TickPhase.player) {
+                tickNanos += phaseNanos[phase.ordinal()];
+            }
+        }
+        metrics.recordTick(bigTick, tickNanos);
+    }
+
+    /**
+     * Gets how long a phase took in the last tick.
+     *
+     * @param phase The phase.
+     * @return The duration of the phase in nanoseconds.
+     */
+    public long getNanos(TickPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+}
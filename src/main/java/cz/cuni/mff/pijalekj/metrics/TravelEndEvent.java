@@ -0,0 +1,27 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event emitted when an entity arrives at a planet. There is one for every travel of every NPC,
+ * so it is disabled by default and has to be enabled in the recording settings.
+ */
+@Name("cz.cuni.mff.pijalekj.TravelEnd")
+@Label("Travel End")
+@Category({"Space Trader", "Travel"})
+@Description("An entity arrived at a planet")
+@StackTrace(false)
+@Enabled(false)
+public class TravelEndEvent extends Event {
+    @Label("Entity ID")
+    public int entityID;
+
+    @Label("Planet")
+    public int planetID;
+}
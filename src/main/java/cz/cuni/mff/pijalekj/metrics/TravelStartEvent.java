@@ -0,0 +1,34 @@
+package cz.cuni.mff.pijalekj.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event emitted when an entity sets off on a lane. There is one for every travel of every NPC,
+ * so it is disabled by default and has to be enabled in the recording settings.
+ */
+@Name("cz.cuni.mff.pijalekj.TravelStart")
+@Label("Travel Start")
+@Category({"Space Trader", "Travel"})
+@Description("An entity set off from a planet towards a neighbor")
+@StackTrace(false)
+@Enabled(false)
+public class TravelStartEvent extends Event {
+    @Label("Entity ID")
+    public int entityID;
+
+    @Label("From Planet")
+    public int fromPlanetID;
+
+    @Label("To Planet")
+    public int toPlanetID;
+
+    @Label("Distance")
+    @Description("The number of ticks the travel takes")
+    public int distance;
+}
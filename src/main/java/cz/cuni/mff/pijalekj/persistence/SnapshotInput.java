@@ -0,0 +1,220 @@
+package cz.cuni.mff.pijalekj.persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * The SnapshotInput class decodes the data written by a SnapshotOutput from a range of a byte array.
+ * Every read checks the end of the range, so a truncated or corrupted snapshot is reported as
+ * an IllegalStateException instead of being read past the end of its section.
+ */
+public class SnapshotInput {
+    private final byte[] bytes;
+    private final int start;
+    private int position;
+    private final int limit;
+
+    /**
+     * Constructs a SnapshotInput over a range of a byte array.
+     *
+     * @param bytes The encoded data.
+     * @param from  The position of the first byte of the range.
+     * @param to    The position after the last byte of the range.
+     * @throws IllegalArgumentException if the range is out of the array.
+     */
+    public SnapshotInput(byte[] bytes, int from, int to) {
+        if (from < 0 || from > to || to > bytes.length)
+            throw new IllegalArgumentException("SnapshotInput was given a range out of the array!");
+        this.bytes = bytes;
+        this.start = from;
+        this.position = from;
+        this.limit = to;
+    }
+
+    /**
+     * Checks whether there are bytes left to read.
+     *
+     * @return True if the range is not read to the end yet.
+     */
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Computes the CRC-32C checksum of the whole range, regardless of what was read from it.
+     *
+     * @return The checksum.
+     */
+    public int checksum() {
+        var crc = new CRC32C();
+        crc.update(bytes, start, limit - start);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Splits off the specified number of following bytes as a separate input and skips them.
+     *
+     * @param length The number of bytes.
+     * @return A SnapshotInput over the bytes.
+     * @throws IllegalStateException if there are fewer bytes left.
+     */
+    public SnapshotInput section(int length) {
+        require(length);
+        var section = new SnapshotInput(bytes, position, position + length);
+        position += length;
+        return section;
+    }
+
+    /**
+     * Reads a single byte.
+     *
+     * @return The byte, from 0 to 255.
+     */
+    public int readByte() {
+        require(1);
+        return bytes[position++] & 0xFF;
+    }
+
+    /**
+     * Reads a boolean written as a single byte.
+     *
+     * @return The boolean.
+     */
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    /**
+     * Reads an int written as 4 bytes in big-endian order.
+     *
+     * @return The int.
+     */
+    public int readFixedInt() {
+        require(4);
+        int value = (bytes[position] & 0xFF) << 24 | (bytes[position + 1] & 0xFF) << 16
+                | (bytes[position + 2] & 0xFF) << 8 | bytes[position + 3] & 0xFF;
+        position += 4;
+        return value;
+    }
+
+    /**
+     * Reads an int written as a variable-length quantity.
+     *
+     * @return The int.
+     * @throws IllegalStateException if the quantity is longer than 5 bytes.
+     */
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("The snapshot holds a malformed number!");
+    }
+
+    /**
+     * Reads an int written as a zigzag-encoded variable-length quantity.
+     *
+     * @return The int.
+     */
+    public int readSignedVarInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a long written as a variable-length quantity.
+     *
+     * @return The long.
+     * @throws IllegalStateException if the quantity is longer than 10 bytes.
+     */
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("The snapshot holds a malformed number!");
+    }
+
+    /**
+     * Reads a long written as a zigzag-encoded variable-length quantity.
+     *
+     * @return The long.
+     */
+    public long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a string written as its length in bytes followed by its UTF-8 encoding.
+     *
+     * @return The string.
+     */
+    public String readString() {
+        int length = readCount();
+        require(length);
+        String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads a count or a length, which has to be a variable-length quantity that is not negative.
+     *
+     * @return The count.
+     * @throws IllegalStateException if the count is negative.
+     */
+    public int readCount() {
+        int count = readVarInt();
+        if (count < 0)
+            throw new IllegalStateException("The snapshot holds a negative count!");
+        return count;
+    }
+
+    /**
+     * Reads variable-length quantities into a range of an array.
+     *
+     * @param values The array.
+     * @param from   The first index of the range.
+     * @param to     The index after the last one of the range.
+     */
+    public void readVarInts(int[] values, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            values[i] = readVarInt();
+        }
+    }
+
+    /**
+     * Reads values written as the differences between neighbors into a range of an array.
+     *
+     * @param values The array.
+     * @param from   The first index of the range.
+     * @param to     The index after the last one of the range.
+     */
+    public void readDeltas(int[] values, int from, int to) {
+        int previous = 0;
+        for (int i = from; i < to; ++i) {
+            previous += readSignedVarInt();
+            values[i] = previous;
+        }
+    }
+
+    /**
+     * Checks that the specified number of bytes is left.
+     *
+     * @param length The number of bytes.
+     * @throws IllegalStateException if there are fewer bytes left.
+     */
+    private void require(int length) {
+        if (length < 0 || limit - position < length)
+            throw new IllegalStateException("The snapshot ends unexpectedly!");
+    }
+}
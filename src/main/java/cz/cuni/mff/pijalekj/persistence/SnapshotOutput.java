@@ -0,0 +1,201 @@
+package cz.cuni.mff.pijalekj.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * The SnapshotOutput class encodes one section of a world snapshot into a growable byte array.
+ * Integers are written as variable-length quantities of 7 bits per byte, the lowest group first,
+ * so small values take a single byte; values that may be negative are zigzag-encoded first, so that
+ * small negative values are short as well. Sequences of nearby values, like sorted IDs, are written
+ * as the differences between neighbors.
+ */
+public class SnapshotOutput {
+    private byte[] bytes;
+    private int position = 0;
+
+    /**
+     * Constructs an empty SnapshotOutput.
+     *
+     * @param initialCapacity The number of bytes to make room for at first.
+     */
+    public SnapshotOutput(int initialCapacity) {
+        bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     *
+     * @return The size of the encoded data.
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * Discards everything written, keeping the allocated room.
+     */
+    public void clear() {
+        position = 0;
+    }
+
+    /**
+     * Computes the CRC-32C checksum of the bytes written so far.
+     *
+     * @return The checksum.
+     */
+    public int checksum() {
+        var crc = new CRC32C();
+        crc.update(bytes, 0, position);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Wraps the bytes written so far, without copying them, for writing into a channel.
+     *
+     * @return A ByteBuffer over the encoded data.
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, position);
+    }
+
+    /**
+     * Writes the lowest 8 bits of a value as a single byte.
+     *
+     * @param value The value to write.
+     */
+    public void writeByte(int value) {
+        ensureRoom(1);
+        bytes[position++] = (byte) value;
+    }
+
+    /**
+     * Writes a boolean as a single byte.
+     *
+     * @param value The value to write.
+     */
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes an int as 4 bytes in big-endian order, for values that need a fixed position, like a magic number.
+     *
+     * @param value The value to write.
+     */
+    public void writeFixedInt(int value) {
+        ensureRoom(4);
+        bytes[position++] = (byte) (value >>> 24);
+        bytes[position++] = (byte) (value >>> 16);
+        bytes[position++] = (byte) (value >>> 8);
+        bytes[position++] = (byte) value;
+    }
+
+    /**
+     * Writes an int as a variable-length quantity. Meant for values that are never negative;
+     * a negative value takes 5 bytes.
+     *
+     * @param value The value to write.
+     */
+    public void writeVarInt(int value) {
+        ensureRoom(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    /**
+     * Writes an int that may be negative as a zigzag-encoded variable-length quantity.
+     *
+     * @param value The value to write.
+     */
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Writes a long as a variable-length quantity. Meant for values that are never negative;
+     * a negative value takes 10 bytes.
+     *
+     * @param value The value to write.
+     */
+    public void writeVarLong(long value) {
+        ensureRoom(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    /**
+     * Writes a long that may be negative as a zigzag-encoded variable-length quantity.
+     *
+     * @param value The value to write.
+     */
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 encoding.
+     *
+     * @param value The string to write.
+     */
+    public void writeString(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(encoded.length);
+        ensureRoom(encoded.length);
+        System.arraycopy(encoded, 0, bytes, position, encoded.length);
+        position += encoded.length;
+    }
+
+    /**
+     * Writes a range of an array as variable-length quantities. Meant for values that are never negative.
+     *
+     * @param values The array.
+     * @param from   The first index of the range.
+     * @param to     The index after the last one of the range.
+     */
+    public void writeVarInts(int[] values, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            writeVarInt(values[i]);
+        }
+    }
+
+    /**
+     * Writes a range of an array as the zigzag-encoded differences between neighbors, the first value
+     * as its difference from zero.
+     *
+     * @param values The array.
+     * @param from   The first index of the range.
+     * @param to     The index after the last one of the range.
+     */
+    public void writeDeltas(int[] values, int from, int to) {
+        int previous = 0;
+        for (int i = from; i < to; ++i) {
+            writeSignedVarInt(values[i] - previous);
+            previous = values[i];
+        }
+    }
+
+    /**
+     * Makes room for the specified number of bytes after the current position.
+     *
+     * @param length The number of bytes.
+     * @throws IllegalStateException if the section would exceed the largest array.
+     */
+    private void ensureRoom(int length) {
+        if (bytes.length - position >= length) {
+            return;
+        }
+        long required = (long) position + length;
+        if (required > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("A snapshot section cannot be larger than 2 GiB!");
+        bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, 2L * bytes.length)));
+    }
+}
@@ -0,0 +1,314 @@
+package cz.cuni.mff.pijalekj.persistence;
+
+import cz.cuni.mff.pijalekj.builders.PlanetBuilder;
+import cz.cuni.mff.pijalekj.entities.Planet;
+import cz.cuni.mff.pijalekj.enums.PlanetIndustryType;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.world.LaneGraph;
+import cz.cuni.mff.pijalekj.world.MarketStore;
+import cz.cuni.mff.pijalekj.world.RngService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+/**
+ * The WorldImage class holds the parts of a world that never change once it is generated: the seed, the lane
+ * graph, and the types and names of the planets. An image is written once and then memory-mapped, and the lane
+ * graph is used in place, without reading or copying it, so opening a world from an image takes the same time
+ * regardless of the size of the galaxy. Only the markets, whose state changes, are built when a world is created
+ * from the image, and a single image can be shared by any number of worlds.
+ * <p>
+ * The image is a header followed by flat little-endian arrays, the integer ones first so that all of them are
+ * aligned:
+ * <ol>
+ *     <li>the header: the magic number, the version, the seed, and the numbers of planets, directed lanes,
+ *     distinct planet names and bytes of the names,</li>
+ *     <li>the CSR offsets, targets and distances of the lane graph (see LaneGraph),</li>
+ *     <li>the index of every planet's name, and the offsets of the names within the bytes of the names,</li>
+ *     <li>the type of every planet, as a byte,</li>
+ *     <li>the UTF-8 bytes of the distinct names.</li>
+ * </ol>
+ * Unlike a WorldSnapshot, an image holds no entities; a world opened from an image is the same as a world
+ * generated with the same seed, before its entities are generated.
+ */
+public final class WorldImage {
+    /** The magic number every image starts with, "STWI" in ASCII. */
+    private static final int MAGIC = 0x53545749;
+    /** The version of the format written; images of other versions cannot be opened. */
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private final long seed;
+    private final int planetCount;
+    private final LaneGraph lanes;
+    private final IntBuffer nameIndices;
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer types;
+    private final ByteBuffer names;
+
+    /**
+     * Constructs a WorldImage over the mapped file, checking that its arrays are consistent.
+     *
+     * @param image The mapped file.
+     * @throws IllegalStateException if the image is corrupted.
+     */
+    private WorldImage(MappedByteBuffer image) {
+        image.order(ByteOrder.LITTLE_ENDIAN);
+        if (image.getInt(0) != MAGIC)
+            throw new IllegalStateException("The file is not a Space Trader world image!");
+        if (image.getInt(4) != VERSION)
+            throw new IllegalStateException("World images of version %d are not supported!".formatted(image.getInt(4)));
+        seed = image.getLong(8);
+        planetCount = image.getInt(16);
+        int laneCount = image.getInt(20);
+        int nameCount = image.getInt(24);
+        int nameBytes = image.getInt(28);
+        if (planetCount < 0 || laneCount < 0 || nameCount < 0 || nameBytes < 0)
+            throw new IllegalStateException("The world image has a corrupted header!");
+
+        int position = HEADER_BYTES;
+        var offsets = ints(image, position, planetCount + 1L);
+        position += 4 * (planetCount + 1);
+        var targets = ints(image, position, laneCount);
+        position += 4 * laneCount;
+        var distances = ints(image, position, laneCount);
+        position += 4 * laneCount;
+        nameIndices = ints(image, position, planetCount);
+        position += 4 * planetCount;
+        nameOffsets = ints(image, position, nameCount + 1L);
+        position += 4 * (nameCount + 1);
+        types = bytes(image, position, planetCount);
+        position += planetCount;
+        names = bytes(image, position, nameBytes);
+        if (position + nameBytes != image.limit())
+            throw new IllegalStateException("The world image has trailing bytes!");
+
+        lanes = LaneGraph.wrap(offsets, targets, distances);
+        if (nameOffsets.get(0) != 0 || nameOffsets.get(nameCount) != nameBytes)
+            throw new IllegalStateException("The world image has corrupted names!");
+        for (int name = 0; name < nameCount; ++name) {
+            if (nameOffsets.get(name + 1) < nameOffsets.get(name))
+                throw new IllegalStateException("The world image has corrupted names!");
+        }
+        int typeCount = PlanetIndustryType.values().length;
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            if (types.get(planetID) < 0 || types.get(planetID) >= typeCount)
+                throw new IllegalStateException("The world image holds an unknown planet type!");
+            if (nameIndices.get(planetID) < 0 || nameIndices.get(planetID) >= nameCount)
+                throw new IllegalStateException("The world image holds an unknown planet name!");
+        }
+    }
+
+    /**
+     * Writes the image of a world into a file, replacing it if it exists.
+     *
+     * @param path      The path of the file.
+     * @param locations The manager of the locations of the world.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(Path path, LocationsManager locations) throws IOException {
+        var planets = locations.getAllPlanets();
+        var lanes = locations.getLaneGraph();
+        int laneCount = lanes.getLaneCount();
+
+        var distinctNames = new HashMap<String, Integer>();
+        int[] indices = new int[planets.length];
+        for (int planetID = 0; planetID < planets.length; ++planetID) {
+            indices[planetID] = distinctNames.computeIfAbsent(planets[planetID].name(), name -> distinctNames.size());
+        }
+        var encodedNames = new byte[distinctNames.size()][];
+        distinctNames.forEach((name, index) -> encodedNames[index] = name.getBytes(StandardCharsets.UTF_8));
+        long nameBytes = 0;
+        for (var name : encodedNames) {
+            nameBytes += name.length;
+        }
+
+        long size = HEADER_BYTES + 4L * (planets.length + 1) + 8L * laneCount + 4L * planets.length
+                + 4L * (encodedNames.length + 1) + planets.length + nameBytes;
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("The world is too large for an image: " + path);
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var image = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            image.order(ByteOrder.LITTLE_ENDIAN);
+            image.putInt(MAGIC).putInt(VERSION).putLong(locations.getRandom().getSeed());
+            image.putInt(planets.length).putInt(laneCount).putInt(encodedNames.length).putInt((int) nameBytes);
+
+            int offset = 0;
+            for (int planetID = 0; planetID < planets.length; ++planetID) {
+                image.putInt(offset);
+                offset += lanes.getNeighborCount(planetID);
+            }
+            image.putInt(offset);
+            for (int lane = 0; lane < laneCount; ++lane) {
+                image.putInt(lanes.getLaneTarget(lane));
+            }
+            for (int lane = 0; lane < laneCount; ++lane) {
+                image.putInt(lanes.getLaneDistance(lane));
+            }
+            for (int index : indices) {
+                image.putInt(index);
+            }
+            int nameOffset = 0;
+            for (var name : encodedNames) {
+                image.putInt(nameOffset);
+                nameOffset += name.length;
+            }
+            image.putInt(nameOffset);
+            for (var planet : planets) {
+                image.put((byte) planet.planetType().ordinal());
+            }
+            for (var name : encodedNames) {
+                image.put(name);
+            }
+            image.force();
+        }
+    }
+
+    /**
+     * Opens an image written by write(), mapping it into memory. The file must not be modified while the image
+     * or any world created from it is in use.
+     *
+     * @param path The path of the file.
+     * @return The opened WorldImage.
+     * @throws IOException if the file cannot be read or is not a valid image.
+     */
+    public static WorldImage open(Path path) throws IOException {
+        MappedByteBuffer image;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE || channel.size() < HEADER_BYTES)
+                throw new IOException("The file is not a Space Trader world image: " + path);
+            // The mapping stays valid after the channel is closed
+            image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            return new WorldImage(image);
+        } catch (IllegalStateException | IndexOutOfBoundsException e) {
+            throw new IOException("The world image is corrupted: " + path, e);
+        }
+    }
+
+    /**
+     * Gets the seed of the world.
+     *
+     * @return The seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the number of planets in the world.
+     *
+     * @return The number of planets.
+     */
+    public int getPlanetCount() {
+        return planetCount;
+    }
+
+    /**
+     * Gets the lane graph of the world, which reads the image in place.
+     *
+     * @return The lane graph.
+     */
+    public LaneGraph getLaneGraph() {
+        return lanes;
+    }
+
+    /**
+     * Gets the industry type of a planet.
+     *
+     * @param planetID The ID of the planet.
+     * @return The type of the planet.
+     */
+    public PlanetIndustryType getPlanetType(int planetID) {
+        return PlanetIndustryType.values()[types.get(planetID)];
+    }
+
+    /**
+     * Gets the name of a planet, decoding it from the image.
+     *
+     * @param planetID The ID of the planet.
+     * @return The name of the planet.
+     */
+    public String getPlanetName(int planetID) {
+        return decodeName(nameIndices.get(planetID));
+    }
+
+    /**
+     * Creates a new world from the image: the planets with their default markets, sharing the lane graph
+     * of the image. Its entities are to be generated or loaded afterwards.
+     *
+     * @return The manager of the locations of the new world.
+     */
+    public LocationsManager createLocations() {
+        // Names repeat a lot, so every distinct name is decoded once and shared by its planets
+        var distinctNames = new String[nameOffsets.limit() - 1];
+        for (int name = 0; name < distinctNames.length; ++name) {
+            distinctNames[name] = decodeName(name);
+        }
+        var planetTypes = PlanetIndustryType.values();
+
+        var markets = new MarketStore(planetCount, new RngService(seed));
+        markets.deferPrices();
+        Planet[] planets = IntStream.range(0, planetCount)
+                .parallel()
+                .mapToObj(ID -> PlanetBuilder.buildPlanet(planetTypes[types.get(ID)],
+                        distinctNames[nameIndices.get(ID)], ID, markets))
+                .toArray(Planet[]::new);
+        markets.commitPrices();
+        return new LocationsManager(lanes, planets, markets);
+    }
+
+    /**
+     * Decodes one of the distinct names of the image.
+     *
+     * @param name The index of the name.
+     * @return The decoded name.
+     */
+    private String decodeName(int name) {
+        int from = nameOffsets.get(name);
+        byte[] bytes = new byte[nameOffsets.get(name + 1) - from];
+        names.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Views a part of the image as an array of integers.
+     *
+     * @param image    The mapped file.
+     * @param position The position of the array in bytes.
+     * @param length   The number of integers.
+     * @return The view of the array.
+     * @throws IllegalStateException if the array does not fit into the image.
+     */
+    private static IntBuffer ints(ByteBuffer image, int position, long length) {
+        return bytes(image, position, 4 * length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    /**
+     * Views a part of the image as an array of bytes.
+     *
+     * @param image    The mapped file.
+     * @param position The position of the array in bytes.
+     * @param length   The number of bytes.
+     * @return The view of the array.
+     * @throws IllegalStateException if the array does not fit into the image.
+     */
+    private static ByteBuffer bytes(ByteBuffer image, int position, long length) {
+        if (position < 0 || position + length > image.limit())
+            throw new IllegalStateException("The world image is truncated!");
+        return image.slice(position, (int) length);
+    }
+}
@@ -0,0 +1,300 @@
+package cz.cuni.mff.pijalekj.persistence;
+
+import cz.cuni.mff.pijalekj.GameClock;
+import cz.cuni.mff.pijalekj.entities.GoodsPrices;
+import cz.cuni.mff.pijalekj.entities.Planet;
+import cz.cuni.mff.pijalekj.enums.PlanetIndustryType;
+import cz.cuni.mff.pijalekj.managers.CriminalsManager;
+import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.world.LaneGraph;
+import cz.cuni.mff.pijalekj.world.MarketStore;
+import cz.cuni.mff.pijalekj.world.RngService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * The WorldSnapshot class saves a whole world into a compact binary file and loads it back.
+ * <p>
+ * A snapshot starts with a magic number and the version of the format, followed by sections. Every section
+ * is its tag, its length in bytes, its content and the CRC-32C checksum of the content, so a reader skips
+ * sections it does not know and rejects corrupted ones. The sections come in the order of their tags, as
+ * later ones build on the earlier ones:
+ * <ol>
+ *     <li>the world: the seed and the tick of the RngService, the ticks of the clock and the number of planets,</li>
+ *     <li>the planets: their types and names, the names as indices into a table of distinct names,</li>
+ *     <li>the lane graph,</li>
+ *     <li>the markets of the planets,</li>
+ *     <li>the entities: the table of NPCs, the player and the entity store,</li>
+ *     <li>where the entities are present,</li>
+ *     <li>the criminals and their timeouts.</li>
+ * </ol>
+ * Sections are packed by the classes holding their state, attribute after attribute, as variable-length
+ * and delta-encoded integers (see SnapshotOutput). They are written through a FileChannel with one gathering
+ * write per section, and a snapshot is read with a single read into memory.
+ * <p>
+ * The trade route table and the arbitrage index are derived from the markets, so they are rebuilt instead of
+ * saved. Rows of the trade route table only depend on the big tick, so a loaded world continues exactly as
+ * the saved one would have, whenever in the market period it was saved.
+ * <p>
+ * Snapshots of version 1 have no checksums; they are still loaded.
+ */
+public final class WorldSnapshot {
+    /** The magic number every snapshot starts with, "STSV" in ASCII. */
+    private static final int MAGIC = 0x53545356;
+    /** The version of the format written; snapshots of newer versions cannot be loaded. */
+    private static final int VERSION = 2;
+    /** The first version whose sections are followed by checksums. */
+    private static final int CHECKSUM_VERSION = 2;
+
+    private static final int WORLD_SECTION = 1;
+    private static final int PLANETS_SECTION = 2;
+    private static final int LANES_SECTION = 3;
+    private static final int MARKETS_SECTION = 4;
+    private static final int ENTITIES_SECTION = 5;
+    private static final int OCCUPANCY_SECTION = 6;
+    private static final int CRIMINALS_SECTION = 7;
+    private static final int LAST_SECTION = CRIMINALS_SECTION;
+
+    private WorldSnapshot() {}
+
+    /**
+     * Saves a world into a file, replacing it if it exists. Must not be called while the world runs a tick.
+     *
+     * @param path  The path of the file.
+     * @param world The world to save.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void save(Path path, WorldState world) throws IOException {
+        var locations = world.locationsManager();
+        var random = locations.getRandom();
+        var planets = locations.getAllPlanets();
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var header = new SnapshotOutput(32);
+            var section = new SnapshotOutput(1 << 16);
+            header.writeFixedInt(MAGIC);
+            header.writeVarInt(VERSION);
+            writeFully(channel, header.toByteBuffer());
+
+            writeSection(channel, header, section, WORLD_SECTION, out -> {
+                out.writeSignedVarLong(random.getSeed());
+                out.writeVarLong(random.getTick());
+                out.writeVarLong(world.clock().get_ticks());
+                out.writeVarInt(planets.length);
+            });
+            writeSection(channel, header, section, PLANETS_SECTION, out -> savePlanets(out, planets));
+            writeSection(channel, header, section, LANES_SECTION, locations.getLaneGraph()::save);
+            writeSection(channel, header, section, MARKETS_SECTION, locations.getMarkets()::save);
+            writeSection(channel, header, section, ENTITIES_SECTION, world.entityManager()::save);
+            writeSection(channel, header, section, OCCUPANCY_SECTION, locations::saveOccupancy);
+            writeSection(channel, header, section, CRIMINALS_SECTION, world.criminalsManager()::save);
+        }
+    }
+
+    /**
+     * Loads a world from a file written by save().
+     *
+     * @param path The path of the file.
+     * @return The loaded world.
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    public static WorldState load(Path path) throws IOException {
+        byte[] bytes;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE - 8)
+                throw new IOException("The snapshot is too large: " + path);
+            bytes = new byte[(int) channel.size()];
+            var buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    throw new IOException("The snapshot was truncated while reading: " + path);
+            }
+        }
+
+        try {
+            return decode(new SnapshotInput(bytes, 0, bytes.length));
+        } catch (IllegalStateException | IllegalArgumentException | ArithmeticException | IndexOutOfBoundsException e) {
+            throw new IOException("The snapshot is corrupted: " + path, e);
+        }
+    }
+
+    /**
+     * Decodes a whole snapshot.
+     *
+     * @param in The snapshot.
+     * @return The decoded world.
+     * @throws IOException if the snapshot is not a valid one.
+     */
+    private static WorldState decode(SnapshotInput in) throws IOException {
+        if (in.readFixedInt() != MAGIC)
+            throw new IOException("The file is not a Space Trader snapshot!");
+        int version = in.readVarInt();
+        if (version <= 0 || version > VERSION)
+            throw new IOException("Snapshots of version %d are not supported!".formatted(version));
+
+        RngService random = null;
+        GameClock clock = null;
+        int planetCount = 0;
+        MarketStore markets = null;
+        Planet[] planets = null;
+        LaneGraph lanes = null;
+        LocationsManager locations = null;
+        EntityManager entities = null;
+        CriminalsManager criminals = null;
+        int lastTag = 0;
+
+        while (in.hasRemaining()) {
+            int tag = in.readVarInt();
+            var section = in.section(in.readCount());
+            if (version >= CHECKSUM_VERSION && in.readFixedInt() != section.checksum())
+                throw new IOException("Section %d of the snapshot is corrupted!".formatted(tag));
+            if (tag <= lastTag)
+                throw new IOException("The sections of the snapshot are out of order!");
+            if (tag > LAST_SECTION) {
+                continue; // A section of a later format, which this one does without
+            }
+            if (tag != lastTag + 1)
+                throw new IOException("The snapshot misses section %d!".formatted(lastTag + 1));
+            lastTag = tag;
+
+            switch (tag) {
+                case WORLD_SECTION -> {
+                    random = new RngService(section.readSignedVarLong());
+                    random.setTick(section.readVarLong());
+                    clock = new GameClock(section.readVarLong());
+                    planetCount = section.readCount();
+                }
+                case PLANETS_SECTION -> {
+                    markets = new MarketStore(planetCount, random);
+                    planets = loadPlanets(section, planetCount, markets);
+                }
+                case LANES_SECTION -> {
+                    lanes = LaneGraph.load(section);
+                    if (lanes.getPlanetCount() != planetCount)
+                        throw new IOException("The lane graph of the snapshot has a different number of planets!");
+                }
+                case MARKETS_SECTION -> {
+                    markets.load(section);
+                    locations = new LocationsManager(lanes, planets, markets);
+                }
+                case ENTITIES_SECTION -> {
+                    entities = new EntityManager();
+                    criminals = new CriminalsManager(locations);
+                    entities.load(section, locations, criminals);
+                }
+                case OCCUPANCY_SECTION -> locations.loadOccupancy(section);
+                case CRIMINALS_SECTION -> criminals.load(section);
+                default -> throw new AssertionError(tag);
+            }
+        }
+        if (lastTag != LAST_SECTION)
+            throw new IOException("The snapshot misses section %d!".formatted(lastTag + 1));
+        return new WorldState(locations, entities, criminals, clock);
+    }
+
+    /**
+     * Writes the planets: the types, the table of distinct names and the index of every planet's name.
+     *
+     * @param out     The snapshot section of the planets.
+     * @param planets The planets, ordered by their IDs.
+     */
+    private static void savePlanets(SnapshotOutput out, Planet[] planets) {
+        for (var planet : planets) {
+            out.writeByte(planet.planetType().ordinal());
+        }
+        var nameIndices = new HashMap<String, Integer>();
+        int[] indices = new int[planets.length];
+        for (int planetID = 0; planetID < planets.length; ++planetID) {
+            indices[planetID] = nameIndices.computeIfAbsent(planets[planetID].name(), name -> nameIndices.size());
+        }
+        var names = new String[nameIndices.size()];
+        nameIndices.forEach((name, index) -> names[index] = name);
+        out.writeVarInt(names.length);
+        for (var name : names) {
+            out.writeString(name);
+        }
+        out.writeVarInts(indices, 0, indices.length);
+    }
+
+    /**
+     * Reads the planets written by savePlanets(), setting their types in the market store.
+     *
+     * @param in          The snapshot section of the planets.
+     * @param planetCount The number of planets.
+     * @param markets     The market store of the planets.
+     * @return The planets, ordered by their IDs.
+     * @throws IllegalStateException if a type or a name index is invalid.
+     */
+    private static Planet[] loadPlanets(SnapshotInput in, int planetCount, MarketStore markets) {
+        var types = PlanetIndustryType.values();
+        var planetTypes = new PlanetIndustryType[planetCount];
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            int type = in.readByte();
+            if (type >= types.length)
+                throw new IllegalStateException("The snapshot holds an unknown planet type!");
+            planetTypes[planetID] = types[type];
+        }
+        var names = new String[in.readCount()];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = in.readString();
+        }
+
+        var planets = new Planet[planetCount];
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            int name = in.readVarInt();
+            if (name < 0 || name >= names.length)
+                throw new IllegalStateException("The snapshot holds an unknown planet name!");
+            markets.setType(planetID, planetTypes[planetID]);
+            planets[planetID] = new Planet(names[name], planetTypes[planetID], planetID,
+                    new GoodsPrices(markets, planetID));
+        }
+        return planets;
+    }
+
+    /**
+     * Encodes a section and writes it, preceded by its tag and length and followed by its checksum, with
+     * a single gathering write.
+     *
+     * @param channel The channel of the file.
+     * @param header  The buffer for the tag and the length.
+     * @param section The buffer for the content of the section.
+     * @param tag     The tag of the section.
+     * @param writer  Encodes the content of the section.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void writeSection(FileChannel channel, SnapshotOutput header, SnapshotOutput section,
+                                     int tag, Consumer<SnapshotOutput> writer) throws IOException {
+        section.clear();
+        writer.accept(section);
+        header.clear();
+        header.writeVarInt(tag);
+        header.writeVarInt(section.size());
+        section.writeFixedInt(section.checksum());
+
+        var buffers = new ByteBuffer[]{header.toByteBuffer(), section.toByteBuffer()};
+        while (buffers[1].hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    /**
+     * Writes the whole content of a buffer.
+     *
+     * @param channel The channel of the file.
+     * @param buffer  The buffer.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
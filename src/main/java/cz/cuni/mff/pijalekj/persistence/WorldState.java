@@ -0,0 +1,18 @@
+package cz.cuni.mff.pijalekj.persistence;
+
+import cz.cuni.mff.pijalekj.GameClock;
+import cz.cuni.mff.pijalekj.managers.CriminalsManager;
+import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+
+/**
+ * Everything a world consists of, as saved and loaded by WorldSnapshot.
+ *
+ * @param locationsManager The manager of the planets, lanes and markets, which also holds the RngService.
+ * @param entityManager    The manager of the NPCs and the player.
+ * @param criminalsManager The manager of criminals.
+ * @param clock            The clock of the game.
+ */
+public record WorldState(LocationsManager locationsManager, EntityManager entityManager,
+                         CriminalsManager criminalsManager, GameClock clock) {
+}
@@ -1,33 +1,39 @@
 package cz.cuni.mff.pijalekj.ships;
 
+import cz.cuni.mff.pijalekj.builders.ShipBuilder;
 import cz.cuni.mff.pijalekj.enums.ShipSize;
 import cz.cuni.mff.pijalekj.enums.ShipType;
-import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.world.EntityStore;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
 
 
 /**
- * The Ship class represents a spaceship with various attributes such as stats, size, and type.
+ * The Ship class represents the spaceship of an entity. It is a handle over the entity's slot in the
+ * EntityStore, which holds the ship's current state; the statistics of its type are shared ShipStats.
  * It provides methods for performing actions like refueling, destruction, repairing, taking damage, and more.
  */
 public class Ship {
-    private final ShipStats shipStats;
-    private final ShipSize shipSize;
-    private final ShipType shipType;
+    private final EntityStore store;
+    private final int slot;
 
     /**
-     * Constructs a Ship with the specified ShipStats, ShipSize, and ShipType.
-     * Calculates and sets the flee chance based on maneuverability.
+     * Constructs a handle over the ship of the specified entity.
      *
-     * @param shipStats The statistics of the ship, including damage, maneuverability, shields, hull, and fuel.
-     * @param shipSize  The size category of the ship.
-     * @param shipType  The type of the ship.
+     * @param store    The store holding the state of all entities.
+     * @param entityID The ID of the entity owning the ship.
      */
-    public Ship(ShipStats shipStats, ShipSize shipSize, ShipType shipType) {
-        this.shipStats = shipStats;
-        this.shipSize = shipSize;
-        this.shipType = shipType;
-        double fleeChanceDouble = (0.8 * Math.pow(shipStats.maneuver / 100.0, 2) + 0.2) * 100;
-        shipStats.fleeChance = (int) fleeChanceDouble;
+    public Ship(EntityStore store, int entityID) {
+        this.store = store;
+        this.slot = EntityIDs.slotOf(entityID);
+    }
+
+    /**
+     * Replaces the ship with a new one of the specified type, with full hull, shields and fuel.
+     *
+     * @param type The type of the new ship.
+     */
+    public void refit(ShipType type) {
+        store.outfit(slot, type, ShipBuilder.getStats(type));
     }
 
     /**
@@ -37,30 +43,30 @@ public class Ship {
      * @throws AssertionError if the total fuel after refueling exceeds the maximum fuel capacity.
      */
     public void refuel(int capacity) {
-        assert capacity + shipStats.fuel.getCurr() <= shipStats.fuel.getMax():
+        assert capacity + store.getFuel(slot) <= store.getMaxFuel(slot):
                 "Ship was told to refuel more than it can store.";
-        shipStats.fuel.setCurr(capacity);
+        store.setFuel(slot, capacity);
     }
 
     /**
      * Destroys the ship by setting its hull health to zero.
      */
     public void destroy() {
-        shipStats.hull.setCurr(0);
+        store.setHull(slot, 0);
     }
 
     /**
      * Refuels the ship to its maximum fuel capacity.
      */
     public void refuel() {
-        shipStats.fuel.setToMax();
+        store.setFuel(slot, store.getMaxFuel(slot));
     }
 
     /**
      * Recharges the ship's shields to their maximum value.
      */
     public void rechargeShields() {
-        shipStats.shields.setToMax();
+        store.setShields(slot, store.getMaxShields(slot));
     }
 
     /**
@@ -69,12 +75,12 @@ public class Ship {
      * @param damage The amount of damage to inflict.
      */
     public void takeDamage(int damage) {
-        int carryDamage = shipStats.shields.getCurr() - damage;
+        int carryDamage = store.getShields(slot) - damage;
         if (carryDamage < 0) {
-            shipStats.shields.setCurr(0);
-            shipStats.hull.setCurr(shipStats.hull.getCurr() + carryDamage);
+            store.setShields(slot, 0);
+            store.setHull(slot, store.getHull(slot) + carryDamage);
         } else {
-            shipStats.shields.setCurr(carryDamage);
+            store.setShields(slot, carryDamage);
         }
     }
 
@@ -85,16 +91,16 @@ public class Ship {
      * @throws AssertionError if the total health after repair exceeds the maximum hull health.
      */
     public void repairHull(int newHealth){
-        assert newHealth + shipStats.hull.getCurr() <= shipStats.hull.getMax():
+        assert newHealth + store.getHull(slot) <= store.getMaxHull(slot):
                 "Ship was told to repair more than it can be.";
-        shipStats.hull.setCurr(newHealth);
+        store.setHull(slot, newHealth);
     }
 
     /**
      * Repairs the ship's hull to its maximum health.
      */
     public void repairHull() {
-        shipStats.hull.setToMax();
+        store.setHull(slot, store.getMaxHull(slot));
     }
 
     /**
@@ -103,7 +109,7 @@ public class Ship {
      * @return The ShipSize representing the size category of the ship.
      */
     public ShipSize getShipSize() {
-        return shipSize;
+        return getStats().size;
     }
 
     /**
@@ -112,16 +118,79 @@ public class Ship {
      * @return The ShipType representing the type of the ship.
      */
     public ShipType getShipType() {
-        return shipType;
+        return store.getShipType(slot);
     }
 
     /**
-     * Gets the ShipStats object containing various statistics of the ship.
+     * Gets the statistics shared by all ships of this ship's type.
      *
      * @return The ShipStats object representing the ship's statistics.
      */
     public ShipStats getStats() {
-        return shipStats;
+        return ShipBuilder.getStats(getShipType());
+    }
+
+    /**
+     * Gets the current hull health of the ship.
+     *
+     * @return The current hull health.
+     */
+    public int getHull() {
+        return store.getHull(slot);
+    }
+
+    /**
+     * Gets the maximum hull health of the ship.
+     *
+     * @return The maximum hull health.
+     */
+    public int getMaxHull() {
+        return store.getMaxHull(slot);
+    }
+
+    /**
+     * Gets the current shields of the ship.
+     *
+     * @return The current shields.
+     */
+    public int getShields() {
+        return store.getShields(slot);
+    }
+
+    /**
+     * Gets the maximum shields of the ship.
+     *
+     * @return The maximum shields.
+     */
+    public int getMaxShields() {
+        return store.getMaxShields(slot);
+    }
+
+    /**
+     * Gets the current fuel of the ship.
+     *
+     * @return The current fuel.
+     */
+    public int getFuel() {
+        return store.getFuel(slot);
+    }
+
+    /**
+     * Gets the maximum fuel of the ship.
+     *
+     * @return The maximum fuel.
+     */
+    public int getMaxFuel() {
+        return store.getMaxFuel(slot);
+    }
+
+    /**
+     * Gets the cargo capacity of the ship.
+     *
+     * @return The cargo capacity.
+     */
+    public int getMaxCargo() {
+        return getStats().maxCargo;
     }
 
     /**
@@ -130,7 +199,7 @@ public class Ship {
      * @return The flee chance as an integer percentage.
      */
     public int getFleeChance() {
-        return shipStats.fleeChance;
+        return getStats().fleeChance;
     }
 
     /**
@@ -138,14 +207,11 @@ public class Ship {
      *
      * @param attacker The attacking ship.
      * @param defender The defending ship.
-     * @return The calculated damage output after considering maneuverability and battle coefficient.
+     * @return The calculated damage output after considering maneuverability and battle coefficient,
+     *         looked up in the table of ShipBuilder.
      */
     public static int damageOutput(Ship attacker, Ship defender) {
-        double attDamage = attacker.shipStats.damage;
-        double defManeuver = defender.shipStats.maneuver;
-
-        return Math.toIntExact(
-                Math.round(attDamage * (1 - (defManeuver / (100 + Constants.BATTLE_COEFF)))));
+        return ShipBuilder.getDamage(attacker.getShipType(), defender.getShipType());
     }
 
     /**
@@ -154,14 +220,13 @@ public class Ship {
      * @return true if the ship's hull health is greater than zero; false otherwise.
      */
     public boolean isAlive() {
-        return shipStats.hull.getCurr() > 0;
+        return store.isAlive(slot);
     }
 
     /**
      * Consumes fuel, reducing the current fuel level by one unit.
      */
     public void burnFuel() {
-        shipStats.fuel.changeBy(-1);
+        store.setFuel(slot, store.getFuel(slot) - 1);
     }
 }
-
@@ -1,7 +1,16 @@
 package cz.cuni.mff.pijalekj.ships;
 
+import cz.cuni.mff.pijalekj.enums.ShipSize;
+
+/**
+ * The ShipStats class holds the statistics shared by all ships of one type. It is immutable;
+ * the current hull, shields and fuel of every ship are kept in the EntityStore.
+ */
 public class ShipStats {
-    public final MaxValue hull;
+    /**
+     *  Maximum hull of the ship.
+     */
+    public final int maxHull;
 
     /**
      *  Cargo capacity of the ship.
@@ -9,14 +18,14 @@ public class ShipStats {
     public final int maxCargo;
 
     /**
-     *  Fuel of the ship.
+     *  Maximum fuel of the ship.
      */
-    public final MaxValue fuel;
+    public final int maxFuel;
 
     /**
-     *  Ship's shields.
+     *  Maximum shields of the ship.
      */
-    public final MaxValue shields;
+    public final int maxShields;
 
     /**
      *  Damage done by the ship.
@@ -29,17 +38,25 @@ public class ShipStats {
     public final int maneuver;
 
     /**
-     *  Ship's chance to flee from combat.
+     *  Ship's chance to flee from combat, computed from its maneuver.
+     */
+    public final int fleeChance;
+
+    /**
+     *  Size category of the ship.
      */
-    public int fleeChance = 0;
+    public final ShipSize size;
 
-    public ShipStats(MaxValue hull, int cargo, MaxValue fuel,
-                     MaxValue shields, int damage, int maneuver) {
-        this.hull = hull;
+    public ShipStats(int maxHull, int cargo, int maxFuel,
+                     int maxShields, int damage, int maneuver, ShipSize size) {
+        this.maxHull = maxHull;
         maxCargo = cargo;
-        this.fuel = fuel;
-        this.shields = shields;
+        this.maxFuel = maxFuel;
+        this.maxShields = maxShields;
         this.damage = damage;
         this.maneuver = maneuver;
+        this.size = size;
+        double fleeChanceDouble = (0.8 * Math.pow(maneuver / 100.0, 2) + 0.2) * 100;
+        fleeChance = (int) fleeChanceDouble;
     }
 }
@@ -9,24 +9,36 @@ import cz.cuni.mff.pijalekj.enums.EntityType;
 import cz.cuni.mff.pijalekj.managers.CriminalsManager;
 import cz.cuni.mff.pijalekj.managers.EntityManager;
 import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.world.LaneGraph;
+import cz.cuni.mff.pijalekj.world.MarketStore;
+import cz.cuni.mff.pijalekj.world.RngService;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
 /**
  * The WorldGenerator class provides methods for generating a world, including planets, locations, and entities.
  * It utilizes randomization and data from a configuration file to create a dynamic and varied game environment.
+ * <p>
+ * All randomness is derived from a single seed: every planet gets its own SplittableRandom stream for each
+ * generation step, keyed by the seed and the planet's ID. Planets, lanes and entities are generated in
+ * parallel, and the same seed always produces the same world, regardless of the number of threads.
+ * The seed is kept by the world's RngService, which derives all randomness of the simulation from it.
  */
 public class WorldGenerator {
-    private final static Random generator = new Random();
     private final static int minDistance;
     private final static int maxDistance;
     private final static int minNeighbourCount;
     private final static int maxNeighbourCount;
+    /** The maximum number of lanes a planet can open to planets further than its direct successor. */
+    private final static int maxSkipLanes;
+
+    /** Identifies the random stream used for building a planet. */
+    private final static int PLANET_STREAM = 1;
+    /** Identifies the random stream used for wiring the lanes of a planet. */
+    private final static int LANE_STREAM = 2;
 
     static {
         Toml defaultWorldData = new Toml().read(new File("./src/data/worldData.toml"));
@@ -34,46 +46,72 @@ public class WorldGenerator {
         maxDistance = defaultWorldData.getLong("Distances.Max").intValue();
         minNeighbourCount = defaultWorldData.getLong("NeighbourCount.Min").intValue();
         maxNeighbourCount = defaultWorldData.getLong("NeighbourCount.Max").intValue();
+        maxSkipLanes = Math.max(0, maxNeighbourCount - 3);
     }
 
     /**
-     * Generates an array of random planets with specified size.
+     * Generates an array of random planets with specified size, in parallel.
      *
-     * @param size The number of planets to generate.
+     * @param size  The number of planets to generate.
+     * @param seed  The seed of the world.
+     * @param store The market store holding the markets of the planets.
      * @return An array of Planet objects representing the generated planets.
      */
-    private static Planet[] generatePlanets(int size) {
-        return IntStream.range(0, size)
-                .mapToObj(PlanetBuilder::randomPlanet)
+    private static Planet[] generatePlanets(int size, long seed, MarketStore store) {
+        store.deferPrices();
+        var planets = IntStream.range(0, size)
+                .parallel()
+                .mapToObj(ID -> PlanetBuilder.randomPlanet(ID, randomFor(seed, PLANET_STREAM, ID), store))
                 .toArray(Planet[]::new);
+        store.commitPrices();
+        return planets;
     }
 
     /**
-     * Generates a LocationsManager with random planets, connections, and entities based on the specified size.
+     * Generates a LocationsManager with random planets and connections based on the specified size,
+     * using a random seed.
      *
      * @param size The number of planets in the generated world.
      * @return A LocationsManager containing the generated world information.
      */
     public static LocationsManager generateLocations(int size) {
-        Planet[] planets = generatePlanets(size);
-        int[][] adjacencyMatrix = new int[size][size];
-        List<List<HashSet<Integer>>> presentEntities = new ArrayList<>();
-        List<HashSet<Integer>> neighborList = new ArrayList<>();
+        return generateLocations(size, ThreadLocalRandom.current().nextLong());
+    }
 
-        for (int ID = 0; ID < size; ++ID) {
-            presentEntities.add(new ArrayList<>(size));
-            for (int ID2 = 0; ID2 < size; ++ID2) {
-                presentEntities.get(ID).add(new HashSet<>());
+    /**
+     * Generates a LocationsManager with random planets and connections based on the specified size.
+     * The same size and seed always produce the same world.
+     *
+     * @param size The number of planets in the generated world.
+     * @param seed The seed of the world.
+     * @return A LocationsManager containing the generated world information.
+     */
+    public static LocationsManager generateLocations(int size, long seed) {
+        MarketStore markets = new MarketStore(size, new RngService(seed));
+        Planet[] planets = generatePlanets(size, seed, markets);
+
+        // Draw all random values of every planet's lanes in parallel, each planet from its own stream
+        int[] chainDistances = new int[size];
+        double[] neighbourRolls = new double[size];
+        int[] skipDistances = new int[size * maxSkipLanes];
+        IntStream.range(0, size).parallel().forEach(ID -> {
+            SplittableRandom random = randomFor(seed, LANE_STREAM, ID);
+            chainDistances[ID] = random.nextInt(minDistance, maxDistance + 1);
+            neighbourRolls[ID] = random.nextDouble();
+            for (int skip = 0; skip < maxSkipLanes; ++skip) {
+                skipDistances[ID * maxSkipLanes + skip] = random.nextInt(minDistance, maxDistance + 1);
             }
-            neighborList.add(new HashSet<>());
+        });
 
-            if (ID != 0) {
-                connectPlanets(adjacencyMatrix, neighborList, ID, ID - 1);
-            }
+        LaneGraph.Builder lanes = new LaneGraph.Builder(size);
+        for (int ID = 1; ID < size; ++ID) {
+            lanes.addLane(ID, ID - 1, chainDistances[ID]);
         }
 
+        // The number of new neighbors depends on the lanes opened by previous planets, so this pass stays
+        // sequential; it only does integer arithmetic on the values drawn above.
         for (int ID = 0; ID < size; ++ID) {
-            int currNoOfNeigh = neighborList.get(ID).size();
+            int currNoOfNeigh = lanes.getDegree(ID);
             if (ID == planets.length - 1) {
                 currNoOfNeigh = 5; // So that in the next line, the last planet has 0 new neighbors
             }
@@ -81,64 +119,90 @@ public class WorldGenerator {
             if (maxNeighbourCount - currNoOfNeigh <= minNeighbourCount) {
                 continue;
             }
-            int newNoOfNeigh = generator.nextInt(minNeighbourCount, maxNeighbourCount - currNoOfNeigh);
+            int range = maxNeighbourCount - currNoOfNeigh - minNeighbourCount;
+            int newNoOfNeigh = minNeighbourCount + (int) (neighbourRolls[ID] * range);
 
             for (int IDOffset = 2; IDOffset < newNoOfNeigh; ++IDOffset) {
                 if (ID + IDOffset >= size) {
                     break;
                 }
-                connectPlanets(adjacencyMatrix, neighborList, ID, ID + IDOffset);
+                lanes.addLane(ID, ID + IDOffset, skipDistances[ID * maxSkipLanes + IDOffset - 2]);
             }
         }
 
-        List<Integer[]> neighborListArray = new ArrayList<>();
-        for (var entry : neighborList) {
-            neighborListArray.add(entry.toArray(new Integer[0]));
-        }
-
-        return new LocationsManager(adjacencyMatrix, presentEntities, neighborListArray, planets);
+        return new LocationsManager(lanes.build(), planets, markets);
     }
 
     /**
-     * Connects two planets in the world by updating the adjacency matrix and neighbor lists.
+     * Creates the random stream of one planet for one generation step. Streams are derived only from
+     * the seed, the step and the planet's ID, so they do not depend on the order planets are processed in.
      *
-     * @param adjMatrix The adjacency matrix representing connections between planets.
-     * @param neighbors The list of neighbor sets for each planet.
-     * @param planet1ID The ID of the first planet to connect.
-     * @param planet2ID The ID of the second planet to connect.
+     * @param seed     The seed of the world.
+     * @param stream   The generation step the stream is used for.
+     * @param planetID The ID of the planet.
+     * @return A new SplittableRandom for the planet and step.
      */
-    private static void connectPlanets(int[][] adjMatrix, List<HashSet<Integer>> neighbors,
-                                       int planet1ID, int planet2ID)
-    {
-        int distance = generator.nextInt(minDistance, maxDistance + 1);
-        adjMatrix[planet1ID][planet2ID] = distance;
-        adjMatrix[planet2ID][planet1ID] = distance;
-        neighbors.get(planet2ID).add(planet1ID);
-        neighbors.get(planet1ID).add(planet2ID);
+    private static SplittableRandom randomFor(long seed, int stream, int planetID) {
+        return new SplittableRandom(
+                RngService.mix64(seed ^ RngService.mix64(((long) stream << 32) | (planetID & 0xFFFFFFFFL))));
     }
 
     /**
      * Generates entities, including police, traders, and pirates, and sets them in the EntityManager.
+     * Every planet gets a police ship and a trader, every fifth planet also a pirate. The entities
+     * are built in parallel, but their IDs only depend on the planet they start at.
      *
      * @param lm The LocationsManager containing the world information.
      * @param em The EntityManager to populate with generated entities.
      * @param cm The CriminalsManager to associate with generated entities.
      */
     public static void generateEntities(LocationsManager lm, EntityManager em, CriminalsManager cm) {
+        generateEntities(lm, em, cm, 1);
+    }
+
+    /**
+     * Generates entities, including police, traders, and pirates, and sets them in the EntityManager.
+     * Every planet gets density police ships and traders, every fifth planet also density pirates. The
+     * entities are built in parallel, but their IDs only depend on the planet they start at.
+     *
+     * @param lm      The LocationsManager containing the world information.
+     * @param em      The EntityManager to populate with generated entities.
+     * @param cm      The CriminalsManager to associate with generated entities.
+     * @param density The number of entities of each type generated at a planet.
+     * @throws IllegalArgumentException if the density is not positive.
+     */
+    public static void generateEntities(LocationsManager lm, EntityManager em, CriminalsManager cm, int density) {
+        if (density <= 0)
+            throw new IllegalArgumentException("The density of entities has to be positive!");
+
         int noOfPlanets = lm.getAllPlanets().length;
-        ArrayList<Entity> entities = new ArrayList<>();
+        Entity[] entities = new Entity[density * firstEntityIDOf(noOfPlanets)];
         EntityBuilder eb = new EntityBuilder(em, lm, cm);
-
-        int idCounter = 0; // Change to 1 after testing NPCs
-        for (int i = 0; i < noOfPlanets; ++i) {
-            entities.add(eb.newEntity(idCounter++, i, EntityType.Police));
-            entities.add(eb.newEntity(idCounter++, i, EntityType.Trader));
-            if (i % 5 == 0) {
-                entities.add(eb.newEntity(idCounter++, i, EntityType.Pirate));
+        em.reserve(entities.length);
+
+        IntStream.range(0, noOfPlanets).parallel().forEach(i -> {
+            int idCounter = density * firstEntityIDOf(i);
+            for (int copy = 0; copy < density; ++copy) {
+                entities[idCounter] = eb.newEntity(idCounter++, i, EntityType.Police);
+                entities[idCounter] = eb.newEntity(idCounter++, i, EntityType.Trader);
+                if (i % 5 == 0) {
+                    entities[idCounter] = eb.newEntity(idCounter++, i, EntityType.Pirate);
+                }
             }
-        }
-        em.setEntities(entities.toArray(Entity[]::new));
-        em.setPlayer(eb.newPlayer(-1, noOfPlanets / 2, "NOTSET"));
+        });
+        em.setEntities(entities);
+        em.setPlayer(eb.newPlayer(EntityManager.PLAYER_ID, noOfPlanets / 2, "NOTSET"));
+    }
+
+    /**
+     * Computes the ID of the first entity generated at a planet with a density of 1; every planet gets
+     * two entities and every fifth planet, starting at 0, one more.
+     *
+     * @param planetID The ID of the planet.
+     * @return The ID of the first entity of the planet.
+     */
+    private static int firstEntityIDOf(int planetID) {
+        return 2 * planetID + (planetID + 4) / 5;
     }
 
     /**
@@ -148,9 +212,13 @@ public class WorldGenerator {
      * @param em The EntityManager containing the entities to be added to the world.
      */
     public static void populateWorld(LocationsManager lm, EntityManager em) {
-        for (var entity : em.getEntities()) {
-            lm.addEntityTo(entity.getID(), entity.getCurrPosition());
-        }
+        var entities = em.getEntities();
+        int[] entityIDs = new int[entities.length];
+        int[] planetIDs = new int[entities.length];
+        IntStream.range(0, entities.length).parallel().forEach(i -> {
+            entityIDs[i] = entities[i].getID();
+            planetIDs[i] = entities[i].getCurrPosition();
+        });
+        lm.placeEntities(entityIDs, planetIDs);
     }
 }
-
@@ -0,0 +1,309 @@
+package cz.cuni.mff.pijalekj.world;
+
+import cz.cuni.mff.pijalekj.constants.EconomyTables;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.IntStream;
+
+/**
+ * The ArbitrageIndex class keeps track of the cheapest and the most expensive planet of every good.
+ * For each good, it holds two segment trees over planet IDs, whose nodes store the ID of the cheapest
+ * (or most expensive) planet of their range, ties going to the lower ID. The MarketStore updates the
+ * index whenever a price changes, so the best planets of any range of planet IDs are found in O(log n).
+ * <p>
+ * Planets with close IDs are also close in the galaxy, so a range of planet IDs works as a region.
+ * In lazy mode, the index holds the prices the planets had when they were last brought up to date.
+ * <p>
+ * The two trees of a good are guarded by the lock of the good. Updates take its write lock, while queries
+ * run under an optimistic read and only take the read lock if an update intervened, so queries from many
+ * threads do not block each other.
+ */
+public class ArbitrageIndex {
+    private final int planetCount;
+    private final int[] prices;
+    /** The trees of the cheapest planets, one per good; leaf of planet p is at planetCount + p. */
+    private final int[][] cheapest;
+    /** The trees of the most expensive planets, one per good. */
+    private final int[][] priciest;
+    /** The locks guarding the two trees of every good. */
+    private final StampedLock[] locks = new StampedLock[EconomyTables.GOODS_COUNT];
+
+    /**
+     * Represents buying a good on one planet and selling it on another.
+     *
+     * @param good         The index of the good.
+     * @param buyPlanetID  The ID of the planet with the lowest price.
+     * @param buyPrice     The lowest price.
+     * @param sellPlanetID The ID of the planet with the highest price.
+     * @param sellPrice    The highest price.
+     */
+    public record Spread(int good, int buyPlanetID, int buyPrice, int sellPlanetID, int sellPrice) {
+        /**
+         * Gets the profit made on a single piece of the good.
+         *
+         * @return The difference between the selling and the buying price.
+         */
+        public int profit() {
+            return sellPrice - buyPrice;
+        }
+    }
+
+    /**
+     * Constructs the index over the prices of a MarketStore.
+     *
+     * @param prices      The good-major price array of the store.
+     * @param planetCount The number of planets.
+     */
+    ArbitrageIndex(int[] prices, int planetCount) {
+        this.planetCount = planetCount;
+        this.prices = prices;
+        cheapest = new int[EconomyTables.GOODS_COUNT][2 * planetCount];
+        priciest = new int[EconomyTables.GOODS_COUNT][2 * planetCount];
+        for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+            locks[good] = new StampedLock();
+            for (int planetID = 0; planetID < planetCount; ++planetID) {
+                cheapest[good][planetCount + planetID] = planetID;
+                priciest[good][planetCount + planetID] = planetID;
+            }
+            rebuild(good);
+        }
+    }
+
+    /**
+     * Updates the index after the price of a good on a planet changed.
+     *
+     * @param planetID The ID of the planet.
+     * @param good     The index of the good.
+     */
+    void update(int planetID, int good) {
+        int[] minTree = cheapest[good];
+        int[] maxTree = priciest[good];
+        int offset = good * planetCount;
+        long stamp = locks[good].writeLock();
+        try {
+            for (int node = (planetCount + planetID) >> 1; node >= 1; node >>= 1) {
+                minTree[node] = cheaper(offset, minTree[2 * node], minTree[2 * node + 1]);
+                maxTree[node] = pricier(offset, maxTree[2 * node], maxTree[2 * node + 1]);
+            }
+        } finally {
+            locks[good].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Updates the index after the prices of all goods on a planet changed.
+     *
+     * @param planetID The ID of the planet.
+     */
+    void updatePlanet(int planetID) {
+        for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+            update(planetID, good);
+        }
+    }
+
+    /**
+     * Rebuilds the whole index after the prices of all planets changed, one good per parallel task.
+     */
+    void rebuildAll() {
+        IntStream.range(0, EconomyTables.GOODS_COUNT).parallel().forEach(this::rebuild);
+    }
+
+    /**
+     * Rebuilds the inner nodes of the trees of a good, bottom up.
+     *
+     * @param good The index of the good.
+     */
+    private void rebuild(int good) {
+        int[] minTree = cheapest[good];
+        int[] maxTree = priciest[good];
+        int offset = good * planetCount;
+        long stamp = locks[good].writeLock();
+        try {
+            for (int node = planetCount - 1; node >= 1; --node) {
+                minTree[node] = cheaper(offset, minTree[2 * node], minTree[2 * node + 1]);
+                maxTree[node] = pricier(offset, maxTree[2 * node], maxTree[2 * node + 1]);
+            }
+        } finally {
+            locks[good].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Finds the planet with the lowest price of a good among the planets with IDs in the given range.
+     *
+     * @param good The index of the good.
+     * @param from The lowest planet ID of the range, inclusive.
+     * @param to   The highest planet ID of the range, exclusive.
+     * @return The ID of the cheapest planet.
+     */
+    public int getCheapestPlanet(int good, int from, int to) {
+        checkRange(from, to);
+        return query(good, from, to, true);
+    }
+
+    /**
+     * Finds the planet with the highest price of a good among the planets with IDs in the given range.
+     *
+     * @param good The index of the good.
+     * @param from The lowest planet ID of the range, inclusive.
+     * @param to   The highest planet ID of the range, exclusive.
+     * @return The ID of the most expensive planet.
+     */
+    public int getPriciestPlanet(int good, int from, int to) {
+        checkRange(from, to);
+        return query(good, from, to, false);
+    }
+
+    /**
+     * Gets the highest price of a good among the planets with IDs in the given range.
+     *
+     * @param good The index of the good.
+     * @param from The lowest planet ID of the range, inclusive.
+     * @param to   The highest planet ID of the range, exclusive.
+     * @return The highest price.
+     */
+    public int getHighestPrice(int good, int from, int to) {
+        return prices[good * planetCount + getPriciestPlanet(good, from, to)];
+    }
+
+    /**
+     * Finds the goods with the largest difference between their lowest and highest price among the planets
+     * with IDs in the given range, sorted from the most profitable. Each good appears at most once, with its
+     * cheapest and most expensive planet.
+     *
+     * @param from  The lowest planet ID of the range, inclusive; clamped to the existing planets.
+     * @param to    The highest planet ID of the range, exclusive; clamped to the existing planets.
+     * @param count The maximum number of spreads returned.
+     * @return The spreads with a positive profit, at most count of them.
+     */
+    public List<Spread> getTopSpreads(int from, int to, int count) {
+        from = Math.max(0, from);
+        to = Math.min(planetCount, to);
+        List<Spread> spreads = new ArrayList<>();
+        for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+            int buyPlanetID = getCheapestPlanet(good, from, to);
+            int sellPlanetID = getPriciestPlanet(good, from, to);
+            var spread = new Spread(good, buyPlanetID, prices[good * planetCount + buyPlanetID],
+                    sellPlanetID, prices[good * planetCount + sellPlanetID]);
+            if (spread.profit() > 0) {
+                spreads.add(spread);
+            }
+        }
+        spreads.sort(Comparator.comparingInt(Spread::profit).reversed());
+        return spreads.subList(0, Math.min(count, spreads.size()));
+    }
+
+    /**
+     * Queries a tree of a good under an optimistic read of its lock, repeating the query under the read lock
+     * if an update intervened. Every node of a tree holds a valid planet ID, so a query overlapping an update
+     * cannot fail; its result is just discarded.
+     *
+     * @param good     The index of the good.
+     * @param from     The lowest planet ID of the range, inclusive.
+     * @param to       The highest planet ID of the range, exclusive.
+     * @param cheapest True to find the cheapest planet, false to find the most expensive one.
+     * @return The ID of the planet found.
+     */
+    private int query(int good, int from, int to, boolean cheapest) {
+        StampedLock lock = locks[good];
+        long stamp = lock.tryOptimisticRead();
+        int best = search(good, from, to, cheapest);
+        if (lock.validate(stamp)) {
+            return best;
+        }
+        stamp = lock.readLock();
+        try {
+            return search(good, from, to, cheapest);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Combines the nodes of a tree of a good that cover a range of planet IDs.
+     *
+     * @param good     The index of the good.
+     * @param from     The lowest planet ID of the range, inclusive.
+     * @param to       The highest planet ID of the range, exclusive.
+     * @param cheapest True to search the tree of the cheapest planets, false the tree of the most expensive ones.
+     * @return The ID of the planet found.
+     */
+    private int search(int good, int from, int to, boolean cheapest) {
+        int[] tree = cheapest ? this.cheapest[good] : priciest[good];
+        int offset = good * planetCount;
+        int best = -1;
+        for (int left = from + planetCount, right = to + planetCount; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                best = best < 0 ? tree[left] : better(offset, best, tree[left], cheapest);
+                ++left;
+            }
+            if ((right & 1) == 1) {
+                --right;
+                best = best < 0 ? tree[right] : better(offset, best, tree[right], cheapest);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Picks the cheaper or the more expensive of two planets, preferring the lower ID on a tie.
+     *
+     * @param offset   The offset of the good in the price array.
+     * @param first    The ID of the first planet.
+     * @param second   The ID of the second planet.
+     * @param cheapest True to pick the cheaper planet, false to pick the more expensive one.
+     * @return The ID of the picked planet.
+     */
+    private int better(int offset, int first, int second, boolean cheapest) {
+        return cheapest ? cheaper(offset, first, second) : pricier(offset, first, second);
+    }
+
+    /**
+     * Checks that a range of planet IDs is not empty and lies within the galaxy.
+     *
+     * @param from The lowest planet ID of the range, inclusive.
+     * @param to   The highest planet ID of the range, exclusive.
+     */
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > planetCount || from >= to) {
+            throw new IllegalArgumentException("Invalid planet range [%d, %d)!".formatted(from, to));
+        }
+    }
+
+    /**
+     * Picks the cheaper of two planets, preferring the lower ID on a tie.
+     *
+     * @param offset The offset of the good in the price array.
+     * @param first  The ID of the first planet.
+     * @param second The ID of the second planet.
+     * @return The ID of the cheaper planet.
+     */
+    private int cheaper(int offset, int first, int second) {
+        int firstPrice = prices[offset + first];
+        int secondPrice = prices[offset + second];
+        if (firstPrice != secondPrice) {
+            return firstPrice < secondPrice ? first : second;
+        }
+        return Math.min(first, second);
+    }
+
+    /**
+     * Picks the more expensive of two planets, preferring the lower ID on a tie.
+     *
+     * @param offset The offset of the good in the price array.
+     * @param first  The ID of the first planet.
+     * @param second The ID of the second planet.
+     * @return The ID of the more expensive planet.
+     */
+    private int pricier(int offset, int first, int second) {
+        int firstPrice = prices[offset + first];
+        int secondPrice = prices[offset + second];
+        if (firstPrice != secondPrice) {
+            return firstPrice > secondPrice ? first : second;
+        }
+        return Math.min(first, second);
+    }
+}
@@ -0,0 +1,90 @@
+package cz.cuni.mff.pijalekj.world;
+
+/**
+ * The EntityIDs class encodes and decodes entity IDs. An NPC's ID carries the index of the entity in the
+ * entity table in its low 24 bits and the generation of that index in the 7 bits above, so that every
+ * reuse of an index gives a new ID, and an ID kept after its entity was despawned can be told apart from
+ * the ID of the entity that reused the index. IDs are never negative; the player has the ID -1.
+ * <p>
+ * Generations never wrap around, as a stale ID would then match the ID of a later entity: an index whose
+ * generation reached MAX_GENERATION is retired once its entity is despawned, instead of being reused.
+ * <p>
+ * The slot of an entity in the EntityStore and the OccupancyIndex is its index + 1, so that the player
+ * occupies slot 0.
+ */
+public final class EntityIDs {
+    /** The number of bits holding the index of the entity. */
+    public static final int INDEX_BITS = 24;
+    /** The number of bits holding the generation of the index. */
+    public static final int GENERATION_BITS = 7;
+    /** The largest index an entity can have. */
+    public static final int MAX_INDEX = (1 << INDEX_BITS) - 1;
+    /** The last generation of an index. */
+    public static final int MAX_GENERATION = (1 << GENERATION_BITS) - 1;
+
+    private EntityIDs() {}
+
+    /**
+     * Composes the ID of an NPC.
+     *
+     * @param index      The index of the entity in the entity table.
+     * @param generation The generation of the index.
+     * @return The ID of the entity.
+     */
+    public static int of(int index, int generation) {
+        assert index >= 0 && index <= MAX_INDEX && generation >= 0 && generation <= MAX_GENERATION;
+        return (generation << INDEX_BITS) | index;
+    }
+
+    /**
+     * Gets the index of an NPC in the entity table.
+     *
+     * @param entityID The ID of the entity.
+     * @return The index of the entity.
+     */
+    public static int indexOf(int entityID) {
+        return entityID & MAX_INDEX;
+    }
+
+    /**
+     * Gets the generation of an NPC's index.
+     *
+     * @param entityID The ID of the entity.
+     * @return The generation encoded in the ID.
+     */
+    public static int generationOf(int entityID) {
+        return entityID >>> INDEX_BITS;
+    }
+
+    /**
+     * Checks whether an index of the specified generation can be reused, that is, whether a next generation
+     * exists.
+     *
+     * @param generation The generation.
+     * @return False if the generation is MAX_GENERATION, true otherwise.
+     */
+    public static boolean hasNextGeneration(int generation) {
+        return generation < MAX_GENERATION;
+    }
+
+    /**
+     * Gets the generation following the specified one.
+     *
+     * @param generation The generation, lower than MAX_GENERATION.
+     * @return The next generation.
+     */
+    public static int nextGeneration(int generation) {
+        assert hasNextGeneration(generation);
+        return generation + 1;
+    }
+
+    /**
+     * Converts an entity ID to its slot.
+     *
+     * @param entityID The ID of the entity.
+     * @return The slot of the entity, 0 for the player.
+     */
+    public static int slotOf(int entityID) {
+        return entityID < 0 ? 0 : indexOf(entityID) + 1;
+    }
+}
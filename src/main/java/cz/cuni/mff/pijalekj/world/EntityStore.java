@@ -0,0 +1,334 @@
+package cz.cuni.mff.pijalekj.world;
+
+import cz.cuni.mff.pijalekj.constants.EconomyTables;
+import cz.cuni.mff.pijalekj.enums.EntityActions;
+import cz.cuni.mff.pijalekj.enums.ShipType;
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
+import cz.cuni.mff.pijalekj.ships.ShipStats;
+
+import java.util.Arrays;
+
+/**
+ * The EntityStore class holds the state of all entities of the galaxy in parallel primitive arrays,
+ * one array per attribute: the ship's hull, shields and fuel with their maximums, credits, cargo,
+ * location, travel state, ship type and the last action. Ship, EntityStats and TravelManager are thin
+ * handles over one slot of the store, so an entity does not own any of its data, and loops over a single
+ * attribute of all entities stream through contiguous memory.
+ * <p>
+ * Entities use the same slots as in the OccupancyIndex, given by EntityIDs.slotOf(), so that the player
+ * occupies slot 0. Cargo is flattened: the amount of good g held by the entity
+ * in slot s is stored at s * GOODS_COUNT + g.
+ */
+public class EntityStore {
+    private static final EntityActions[] ACTIONS = EntityActions.values();
+    private static final ShipType[] SHIP_TYPES = ShipType.values();
+
+    private int capacity = 0;
+    private int[] hull = new int[0];
+    private int[] maxHull = new int[0];
+    private int[] shields = new int[0];
+    private int[] maxShields = new int[0];
+    private int[] fuel = new int[0];
+    private int[] maxFuel = new int[0];
+    private int[] credits = new int[0];
+    private int[] cargo = new int[0];
+    private int[] location = new int[0];
+    private int[] nextLocation = new int[0];
+    private int[] travelTimeLeft = new int[0];
+    private byte[] shipType = new byte[0];
+    private byte[] lastAction = new byte[0];
+
+    /**
+     * Gets the number of slots the store has room for.
+     *
+     * @return The number of slots.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Grows all arrays so that they hold at least the specified number of slots. Must not be called
+     * while other threads access the store.
+     *
+     * @param slotCount The required number of slots.
+     */
+    public void ensureCapacity(int slotCount) {
+        if (slotCount <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(slotCount, capacity * 2);
+        hull = Arrays.copyOf(hull, newCapacity);
+        maxHull = Arrays.copyOf(maxHull, newCapacity);
+        shields = Arrays.copyOf(shields, newCapacity);
+        maxShields = Arrays.copyOf(maxShields, newCapacity);
+        fuel = Arrays.copyOf(fuel, newCapacity);
+        maxFuel = Arrays.copyOf(maxFuel, newCapacity);
+        credits = Arrays.copyOf(credits, newCapacity);
+        cargo = Arrays.copyOf(cargo, newCapacity * EconomyTables.GOODS_COUNT);
+        location = Arrays.copyOf(location, newCapacity);
+        nextLocation = Arrays.copyOf(nextLocation, newCapacity);
+        travelTimeLeft = Arrays.copyOf(travelTimeLeft, newCapacity);
+        shipType = Arrays.copyOf(shipType, newCapacity);
+        lastAction = Arrays.copyOf(lastAction, newCapacity);
+        capacity = newCapacity;
+    }
+
+    /**
+     * Initializes a slot for a newly created entity: gives it a new ship of the given type, the given
+     * credits and an empty cargo, and places it at a planet.
+     *
+     * @param slot       The slot of the entity.
+     * @param type       The type of the entity's ship.
+     * @param stats      The statistics of the ship type.
+     * @param credits    The starting credits.
+     * @param locationID The ID of the planet the entity starts at.
+     * @throws IllegalArgumentException if the slot is out of the store's capacity.
+     */
+    public void initialize(int slot, ShipType type, ShipStats stats, int credits, int locationID) {
+        if (slot < 0 || slot >= capacity)
+            throw new IllegalArgumentException("EntityStore was given a slot out of its capacity!");
+        outfit(slot, type, stats);
+        this.credits[slot] = credits;
+        Arrays.fill(cargo, slot * EconomyTables.GOODS_COUNT, (slot + 1) * EconomyTables.GOODS_COUNT, 0);
+        location[slot] = locationID;
+        nextLocation[slot] = -1;
+        travelTimeLeft[slot] = 0;
+        lastAction[slot] = (byte) EntityActions.none.ordinal();
+    }
+
+    /**
+     * Replaces the ship in a slot with a new one of the given type, with full hull, shields and fuel.
+     *
+     * @param slot  The slot of the entity.
+     * @param type  The type of the new ship.
+     * @param stats The statistics of the ship type.
+     */
+    public void outfit(int slot, ShipType type, ShipStats stats) {
+        shipType[slot] = (byte) type.ordinal();
+        hull[slot] = maxHull[slot] = stats.maxHull;
+        shields[slot] = maxShields[slot] = stats.maxShields;
+        fuel[slot] = maxFuel[slot] = stats.maxFuel;
+    }
+
+    public int getHull(int slot) {
+        return hull[slot];
+    }
+
+    public void setHull(int slot, int value) {
+        hull[slot] = value;
+    }
+
+    public int getMaxHull(int slot) {
+        return maxHull[slot];
+    }
+
+    public int getShields(int slot) {
+        return shields[slot];
+    }
+
+    public void setShields(int slot, int value) {
+        shields[slot] = value;
+    }
+
+    public int getMaxShields(int slot) {
+        return maxShields[slot];
+    }
+
+    public int getFuel(int slot) {
+        return fuel[slot];
+    }
+
+    public void setFuel(int slot, int value) {
+        fuel[slot] = value;
+    }
+
+    public int getMaxFuel(int slot) {
+        return maxFuel[slot];
+    }
+
+    public int getCredits(int slot) {
+        return credits[slot];
+    }
+
+    public void setCredits(int slot, int value) {
+        credits[slot] = value;
+    }
+
+    public int getCargo(int slot, int good) {
+        return cargo[slot * EconomyTables.GOODS_COUNT + good];
+    }
+
+    public void setCargo(int slot, int good, int amount) {
+        cargo[slot * EconomyTables.GOODS_COUNT + good] = amount;
+    }
+
+    /**
+     * Gets the total amount of goods in the cargo of an entity.
+     *
+     * @param slot The slot of the entity.
+     * @return The total amount of goods.
+     */
+    public int getTotalCargo(int slot) {
+        int total = 0;
+        for (int index = slot * EconomyTables.GOODS_COUNT; index < (slot + 1) * EconomyTables.GOODS_COUNT; ++index) {
+            total += cargo[index];
+        }
+        return total;
+    }
+
+    public int getLocation(int slot) {
+        return location[slot];
+    }
+
+    public void setLocation(int slot, int planetID) {
+        location[slot] = planetID;
+    }
+
+    public int getNextLocation(int slot) {
+        return nextLocation[slot];
+    }
+
+    public void setNextLocation(int slot, int planetID) {
+        nextLocation[slot] = planetID;
+    }
+
+    public int getTravelTimeLeft(int slot) {
+        return travelTimeLeft[slot];
+    }
+
+    public void setTravelTimeLeft(int slot, int time) {
+        travelTimeLeft[slot] = time;
+    }
+
+    public ShipType getShipType(int slot) {
+        return SHIP_TYPES[shipType[slot]];
+    }
+
+    public EntityActions getLastAction(int slot) {
+        return ACTIONS[lastAction[slot]];
+    }
+
+    public void setLastAction(int slot, EntityActions action) {
+        lastAction[slot] = (byte) action.ordinal();
+    }
+
+    /**
+     * Checks whether the ship in a slot is alive, reading only the hull column.
+     *
+     * @param slot The slot of the entity.
+     * @return True if the hull is above zero.
+     */
+    public boolean isAlive(int slot) {
+        return hull[slot] > 0;
+    }
+
+    /**
+     * Writes the first slots of the store into a snapshot of the world, one attribute after another.
+     * The current hull, shields and fuel are written as what is missing to their maximums, which is
+     * mostly nothing, and locations as the differences between neighboring slots, as entities with
+     * close IDs start at close planets.
+     *
+     * @param out       The snapshot section of the entities.
+     * @param slotCount The number of slots to write.
+     */
+    public void save(SnapshotOutput out, int slotCount) {
+        assert slotCount <= capacity;
+        for (int slot = 0; slot < slotCount; ++slot) {
+            out.writeByte(shipType[slot]);
+        }
+        saveGauge(out, hull, maxHull, slotCount);
+        saveGauge(out, shields, maxShields, slotCount);
+        saveGauge(out, fuel, maxFuel, slotCount);
+        for (int slot = 0; slot < slotCount; ++slot) {
+            out.writeSignedVarInt(credits[slot]);
+        }
+        out.writeVarInts(cargo, 0, slotCount * EconomyTables.GOODS_COUNT);
+        out.writeDeltas(location, 0, slotCount);
+        for (int slot = 0; slot < slotCount; ++slot) {
+            // 0 stands for no next location; the difference from the location is shifted away from it
+            int difference = nextLocation[slot] - location[slot];
+            out.writeSignedVarInt(nextLocation[slot] < 0 ? 0 : difference >= 0 ? difference + 1 : difference);
+        }
+        out.writeVarInts(travelTimeLeft, 0, slotCount);
+        for (int slot = 0; slot < slotCount; ++slot) {
+            out.writeByte(lastAction[slot]);
+        }
+    }
+
+    /**
+     * Reads the slots written by save(), growing the store if needed.
+     *
+     * @param in        The snapshot section of the entities.
+     * @param slotCount The number of slots written.
+     * @throws IllegalStateException if a ship type or an action is unknown.
+     */
+    public void load(SnapshotInput in, int slotCount) {
+        ensureCapacity(slotCount);
+        for (int slot = 0; slot < slotCount; ++slot) {
+            shipType[slot] = (byte) checkOrdinal(in.readByte(), SHIP_TYPES.length);
+        }
+        loadGauge(in, hull, maxHull, slotCount);
+        loadGauge(in, shields, maxShields, slotCount);
+        loadGauge(in, fuel, maxFuel, slotCount);
+        for (int slot = 0; slot < slotCount; ++slot) {
+            credits[slot] = in.readSignedVarInt();
+        }
+        in.readVarInts(cargo, 0, slotCount * EconomyTables.GOODS_COUNT);
+        in.readDeltas(location, 0, slotCount);
+        for (int slot = 0; slot < slotCount; ++slot) {
+            int difference = in.readSignedVarInt();
+            nextLocation[slot] = difference == 0 ? -1
+                    : location[slot] + (difference > 0 ? difference - 1 : difference);
+        }
+        in.readVarInts(travelTimeLeft, 0, slotCount);
+        for (int slot = 0; slot < slotCount; ++slot) {
+            lastAction[slot] = (byte) checkOrdinal(in.readByte(), ACTIONS.length);
+        }
+    }
+
+    /**
+     * Writes an attribute with a maximum: the maximums, then what is missing to them.
+     *
+     * @param out       The snapshot section of the entities.
+     * @param values    The current values.
+     * @param maximums  The maximums.
+     * @param slotCount The number of slots to write.
+     */
+    private static void saveGauge(SnapshotOutput out, int[] values, int[] maximums, int slotCount) {
+        out.writeVarInts(maximums, 0, slotCount);
+        for (int slot = 0; slot < slotCount; ++slot) {
+            out.writeSignedVarInt(maximums[slot] - values[slot]);
+        }
+    }
+
+    /**
+     * Reads an attribute written by saveGauge().
+     *
+     * @param in        The snapshot section of the entities.
+     * @param values    The current values.
+     * @param maximums  The maximums.
+     * @param slotCount The number of slots written.
+     */
+    private static void loadGauge(SnapshotInput in, int[] values, int[] maximums, int slotCount) {
+        in.readVarInts(maximums, 0, slotCount);
+        for (int slot = 0; slot < slotCount; ++slot) {
+            values[slot] = maximums[slot] - in.readSignedVarInt();
+        }
+    }
+
+    /**
+     * Checks that an ordinal read from a snapshot belongs to an enum constant.
+     *
+     * @param ordinal The ordinal.
+     * @param count   The number of constants of the enum.
+     * @return The ordinal.
+     * @throws IllegalStateException if the ordinal is out of range.
+     */
+    private static int checkOrdinal(int ordinal, int count) {
+        if (ordinal >= count)
+            throw new IllegalStateException("The snapshot holds an unknown constant!");
+        return ordinal;
+    }
+}
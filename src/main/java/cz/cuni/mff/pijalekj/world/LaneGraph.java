@@ -0,0 +1,482 @@
+package cz.cuni.mff.pijalekj.world;
+
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * The LaneGraph class holds the undirected lanes between planets in compressed sparse row (CSR) form.
+ * The lanes leaving planet p occupy the positions offsets[p] to offsets[p + 1] - 1 of the targets and
+ * distances arrays, sorted by the ID of the target planet. Every such position is also a unique
+ * identifier of a directed lane, so memory grows with the number of lanes instead of the square of the planet count.
+ * <p>
+ * Generated and loaded graphs hold the arrays on the heap. A graph opened from a memory-mapped WorldImage
+ * reads them from IntBuffers in place instead; a run normally uses only one of the two kinds, so the accessors
+ * of the other one do not slow down the lookups. A LaneGraph is never modified, so it can be shared by worlds.
+ */
+public abstract class LaneGraph {
+    private final int planetCount;
+    private final int laneCount;
+    /** The largest difference between the IDs of two neighboring planets. */
+    private final int maxSpan;
+
+    /**
+     * Constructs a LaneGraph of the specified size.
+     *
+     * @param planetCount The number of planets.
+     * @param laneCount   The number of directed lanes.
+     * @param maxSpan     The largest difference between the IDs of two neighboring planets.
+     */
+    private LaneGraph(int planetCount, int laneCount, int maxSpan) {
+        this.planetCount = planetCount;
+        this.laneCount = laneCount;
+        this.maxSpan = maxSpan;
+    }
+
+    /**
+     * Uses CSR arrays held in buffers as a LaneGraph, without copying them. The buffers, typically views
+     * of a memory-mapped file, must not be modified afterwards.
+     *
+     * @param offsets    The offsets of each planet's lanes, with planetCount + 1 entries.
+     * @param targets    The target planet of each directed lane, sorted within each planet's lanes.
+     * @param distances  The distance of each directed lane.
+     * @return The LaneGraph over the buffers.
+     * @throws IllegalStateException if the buffers do not form a valid graph.
+     */
+    public static LaneGraph wrap(IntBuffer offsets, IntBuffer targets, IntBuffer distances) {
+        return new BufferBacked(offsets, targets, distances);
+    }
+
+    /**
+     * Gets the offset of a planet's lanes.
+     *
+     * @param planetID The ID of the planet, up to the number of planets inclusive.
+     * @return The index of the planet's first directed lane.
+     */
+    abstract int offset(int planetID);
+
+    /**
+     * Gets the target planet of a directed lane.
+     *
+     * @param lane The index of the directed lane.
+     * @return The ID of the target planet.
+     */
+    abstract int target(int lane);
+
+    /**
+     * Gets the distance of a directed lane.
+     *
+     * @param lane The index of the directed lane.
+     * @return The distance of the lane.
+     */
+    abstract int distance(int lane);
+
+    /**
+     * Gets the number of planets in the graph.
+     *
+     * @return The number of planets.
+     */
+    public int getPlanetCount() {
+        return planetCount;
+    }
+
+    /**
+     * Gets the number of directed lanes in the graph (every undirected lane is counted twice).
+     *
+     * @return The number of directed lanes.
+     */
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    /**
+     * Gets the largest difference between the IDs of two neighboring planets. All planets reachable
+     * in k jumps from planet p have IDs between p - k * maxSpan and p + k * maxSpan.
+     *
+     * @return The largest ID difference of a lane.
+     */
+    public int getMaxSpan() {
+        return maxSpan;
+    }
+
+    /**
+     * Gets the number of neighbors of the specified planet.
+     *
+     * @param planetID The ID of the planet.
+     * @return The number of neighbors.
+     */
+    public int getNeighborCount(int planetID) {
+        return offset(planetID + 1) - offset(planetID);
+    }
+
+    /**
+     * Gets the index-th neighbor of the specified planet.
+     *
+     * @param planetID The ID of the planet.
+     * @param index    The index of the neighbor, from 0 to getNeighborCount(planetID) - 1.
+     * @return The ID of the neighbor.
+     */
+    public int getNeighbor(int planetID, int index) {
+        return target(offset(planetID) + index);
+    }
+
+    /**
+     * Gets the distance to the index-th neighbor of the specified planet.
+     *
+     * @param planetID The ID of the planet.
+     * @param index    The index of the neighbor, from 0 to getNeighborCount(planetID) - 1.
+     * @return The distance to the neighbor.
+     */
+    public int getNeighborDistance(int planetID, int index) {
+        return distance(offset(planetID) + index);
+    }
+
+    /**
+     * Copies the neighbors of the specified planet into a new array.
+     *
+     * @param planetID The ID of the planet.
+     * @return An array of the neighbors' IDs, sorted in ascending order.
+     */
+    public abstract int[] getNeighbors(int planetID);
+
+    /**
+     * Finds the directed lane leading from one planet to another.
+     *
+     * @param planetIDFrom The ID of the source planet.
+     * @param planetIDTo   The ID of the destination planet.
+     * @return The index of the directed lane, or -1 if the planets are not neighbors.
+     */
+    public int getLaneIndex(int planetIDFrom, int planetIDTo) {
+        int end = offset(planetIDFrom + 1);
+        for (int lane = offset(planetIDFrom); lane < end; ++lane) {
+            if (target(lane) == planetIDTo) {
+                return lane;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the target planet of a directed lane.
+     *
+     * @param lane The index of the directed lane.
+     * @return The ID of the planet the lane leads to.
+     */
+    public int getLaneTarget(int lane) {
+        return target(lane);
+    }
+
+    /**
+     * Gets the distance of a directed lane.
+     *
+     * @param lane The index of the directed lane.
+     * @return The distance of the lane.
+     */
+    public int getLaneDistance(int lane) {
+        return distance(lane);
+    }
+
+    /**
+     * Gets the distance between two planets.
+     *
+     * @param planetIDFrom The ID of the source planet.
+     * @param planetIDTo   The ID of the destination planet.
+     * @return The distance between the planets, or 0 if they are not neighbors.
+     */
+    public int getDistanceBetween(int planetIDFrom, int planetIDTo) {
+        int lane = getLaneIndex(planetIDFrom, planetIDTo);
+        return lane < 0 ? 0 : distance(lane);
+    }
+
+    /**
+     * Writes the graph into a snapshot of the world: the number of lanes of every planet, then the targets
+     * of the lanes as the differences from the previous target of the row (the first one from the planet
+     * itself), as rows are sorted and lanes are short, and finally the distances.
+     *
+     * @param out The snapshot section of the lanes.
+     */
+    public void save(SnapshotOutput out) {
+        out.writeVarInt(planetCount);
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            out.writeVarInt(getNeighborCount(planetID));
+        }
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            int previous = planetID;
+            for (int lane = offset(planetID); lane < offset(planetID + 1); ++lane) {
+                out.writeSignedVarInt(target(lane) - previous);
+                previous = target(lane);
+            }
+        }
+        for (int lane = 0; lane < laneCount; ++lane) {
+            out.writeVarInt(distance(lane));
+        }
+    }
+
+    /**
+     * Reads a graph written by save().
+     *
+     * @param in The snapshot section of the lanes.
+     * @return The read LaneGraph.
+     * @throws IllegalStateException if a lane is invalid.
+     */
+    public static LaneGraph load(SnapshotInput in) {
+        int planetCount = in.readCount();
+        int[] offsets = new int[planetCount + 1];
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            offsets[planetID + 1] = Math.addExact(offsets[planetID], in.readCount());
+        }
+
+        int[] targets = new int[offsets[planetCount]];
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            int previous = planetID;
+            for (int lane = offsets[planetID]; lane < offsets[planetID + 1]; ++lane) {
+                previous += in.readSignedVarInt();
+                targets[lane] = previous;
+            }
+        }
+        int[] distances = new int[targets.length];
+        in.readVarInts(distances, 0, distances.length);
+        return new ArrayBacked(offsets, targets, distances);
+    }
+
+    /**
+     * Checks that CSR arrays form a valid graph with sorted rows, and computes its largest ID difference.
+     *
+     * @param planetCount   The number of planets.
+     * @param laneCount     The number of directed lanes, i.e. of targets.
+     * @param distanceCount The number of distances.
+     * @param offsets       Gets the offsets of each planet's lanes, planetCount + 1 of them.
+     * @param targets       Gets the target planet of each directed lane.
+     * @param distances     Gets the distance of each directed lane.
+     * @return The largest difference between the IDs of two neighboring planets.
+     * @throws IllegalStateException if the arrays do not form a valid graph.
+     */
+    private static int checkLanes(int planetCount, int laneCount, int distanceCount, IntUnaryOperator offsets,
+                                  IntUnaryOperator targets, IntUnaryOperator distances) {
+        if (planetCount < 0 || distanceCount != laneCount || offsets.applyAsInt(0) != 0
+                || offsets.applyAsInt(planetCount) != laneCount)
+            throw new IllegalStateException("LaneGraph was given arrays of invalid lengths!");
+        int span = 0;
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            int end = offsets.applyAsInt(planetID + 1);
+            if (end < offsets.applyAsInt(planetID))
+                throw new IllegalStateException("LaneGraph was given decreasing offsets!");
+            int previous = -1;
+            for (int lane = offsets.applyAsInt(planetID); lane < end; ++lane) {
+                int target = targets.applyAsInt(lane);
+                if (target <= previous || target >= planetCount || target == planetID || distances.applyAsInt(lane) <= 0)
+                    throw new IllegalStateException("LaneGraph was given an invalid lane!");
+                span = Math.max(span, Math.abs(target - planetID));
+                previous = target;
+            }
+        }
+        return span;
+    }
+
+    /**
+     * A LaneGraph holding its arrays on the heap.
+     */
+    private static final class ArrayBacked extends LaneGraph {
+        private final int[] offsets;
+        private final int[] targets;
+        private final int[] distances;
+
+        /**
+         * Constructs a LaneGraph from already built CSR arrays.
+         *
+         * @param offsets    The offsets of each planet's lanes, with planetCount + 1 entries.
+         * @param targets    The target planet of each directed lane.
+         * @param distances  The distance of each directed lane.
+         * @throws IllegalStateException if the arrays do not form a valid graph.
+         */
+        private ArrayBacked(int[] offsets, int[] targets, int[] distances) {
+            super(offsets.length - 1, targets.length, checkLanes(offsets.length - 1, targets.length, distances.length,
+                    i -> offsets[i], i -> targets[i], i -> distances[i]));
+            this.offsets = offsets;
+            this.targets = targets;
+            this.distances = distances;
+        }
+
+        @Override
+        int offset(int planetID) {
+            return offsets[planetID];
+        }
+
+        @Override
+        int target(int lane) {
+            return targets[lane];
+        }
+
+        @Override
+        int distance(int lane) {
+            return distances[lane];
+        }
+
+        @Override
+        public int[] getNeighbors(int planetID) {
+            return Arrays.copyOfRange(targets, offsets[planetID], offsets[planetID + 1]);
+        }
+    }
+
+    /**
+     * A LaneGraph reading its arrays from buffers in place.
+     */
+    private static final class BufferBacked extends LaneGraph {
+        private final IntBuffer offsets;
+        private final IntBuffer targets;
+        private final IntBuffer distances;
+
+        /**
+         * Constructs a LaneGraph over CSR arrays held in buffers.
+         *
+         * @param offsets    The offsets of each planet's lanes, with planetCount + 1 entries.
+         * @param targets    The target planet of each directed lane.
+         * @param distances  The distance of each directed lane.
+         * @throws IllegalStateException if the buffers do not form a valid graph.
+         */
+        private BufferBacked(IntBuffer offsets, IntBuffer targets, IntBuffer distances) {
+            super(offsets.limit() - 1, targets.limit(), checkLanes(offsets.limit() - 1, targets.limit(),
+                    distances.limit(), offsets::get, targets::get, distances::get));
+            this.offsets = offsets;
+            this.targets = targets;
+            this.distances = distances;
+        }
+
+        @Override
+        int offset(int planetID) {
+            return offsets.get(planetID);
+        }
+
+        @Override
+        int target(int lane) {
+            return targets.get(lane);
+        }
+
+        @Override
+        int distance(int lane) {
+            return distances.get(lane);
+        }
+
+        @Override
+        public int[] getNeighbors(int planetID) {
+            int[] neighbors = new int[getNeighborCount(planetID)];
+            targets.get(offsets.get(planetID), neighbors);
+            return neighbors;
+        }
+    }
+
+    /**
+     * The Builder class collects undirected lanes and packs them into a LaneGraph.
+     */
+    public static class Builder {
+        private final int[] degrees;
+        private int[] firstEnds = new int[16];
+        private int[] secondEnds = new int[16];
+        private int[] laneDistances = new int[16];
+        private int laneCount = 0;
+
+        /**
+         * Constructs a Builder for a graph with the specified number of planets.
+         *
+         * @param planetCount The number of planets.
+         */
+        public Builder(int planetCount) {
+            degrees = new int[planetCount];
+        }
+
+        /**
+         * Adds an undirected lane between two planets.
+         *
+         * @param planet1ID The ID of the first planet.
+         * @param planet2ID The ID of the second planet.
+         * @param distance  The distance of the lane.
+         * @throws IllegalArgumentException if the lane is invalid.
+         */
+        public void addLane(int planet1ID, int planet2ID, int distance) {
+            if (planet1ID == planet2ID || distance <= 0)
+                throw new IllegalArgumentException("LaneGraph was given an invalid lane!");
+
+            if (laneCount == firstEnds.length) {
+                firstEnds = Arrays.copyOf(firstEnds, laneCount * 2);
+                secondEnds = Arrays.copyOf(secondEnds, laneCount * 2);
+                laneDistances = Arrays.copyOf(laneDistances, laneCount * 2);
+            }
+            firstEnds[laneCount] = planet1ID;
+            secondEnds[laneCount] = planet2ID;
+            laneDistances[laneCount] = distance;
+            ++laneCount;
+            ++degrees[planet1ID];
+            ++degrees[planet2ID];
+        }
+
+        /**
+         * Gets the number of lanes added so far to the specified planet.
+         *
+         * @param planetID The ID of the planet.
+         * @return The number of lanes of the planet.
+         */
+        public int getDegree(int planetID) {
+            return degrees[planetID];
+        }
+
+        /**
+         * Packs the collected lanes into a LaneGraph.
+         *
+         * @return The built LaneGraph.
+         * @throws IllegalStateException if the same lane was added twice.
+         */
+        public LaneGraph build() {
+            int planetCount = degrees.length;
+            int[] offsets = new int[planetCount + 1];
+            for (int ID = 0; ID < planetCount; ++ID) {
+                offsets[ID + 1] = offsets[ID] + degrees[ID];
+            }
+
+            int[] targets = new int[offsets[planetCount]];
+            int[] distances = new int[offsets[planetCount]];
+            int[] next = Arrays.copyOf(offsets, planetCount);
+            for (int i = 0; i < laneCount; ++i) {
+                int first = firstEnds[i];
+                int second = secondEnds[i];
+                targets[next[first]] = second;
+                distances[next[first]++] = laneDistances[i];
+                targets[next[second]] = first;
+                distances[next[second]++] = laneDistances[i];
+            }
+
+            // Rows are disjoint, so they can be sorted in parallel
+            IntStream.range(0, planetCount).parallel()
+                    .forEach(ID -> sortRow(targets, distances, offsets[ID], offsets[ID + 1]));
+            return new ArrayBacked(offsets, targets, distances);
+        }
+
+        /**
+         * Sorts one row of the CSR arrays by target planet. Rows are short, so insertion sort is used.
+         *
+         * @param targets   The target planets.
+         * @param distances The distances, permuted together with the targets.
+         * @param from      The first position of the row.
+         * @param to        The position after the last one of the row.
+         */
+        private static void sortRow(int[] targets, int[] distances, int from, int to) {
+            for (int i = from + 1; i < to; ++i) {
+                int target = targets[i];
+                int distance = distances[i];
+                int j = i - 1;
+                while (j >= from && targets[j] > target) {
+                    targets[j + 1] = targets[j];
+                    distances[j + 1] = distances[j];
+                    --j;
+                }
+                if (j >= from && targets[j] == target)
+                    throw new IllegalStateException("LaneGraph was given the same lane twice!");
+                targets[j + 1] = target;
+                distances[j + 1] = distance;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package cz.cuni.mff.pijalekj.world;
+
+/**
+ * The MarketKernel interface represents one implementation of the big tick market update, which is run
+ * over a contiguous range of planets for a single good of the MarketStore.
+ */
+interface MarketKernel {
+    /**
+     * Produces, consumes and reprices one good on a range of planets.
+     *
+     * @param stock       The stock of the good, indexed by planet.
+     * @param prices      The prices of the good, indexed by planet.
+     * @param offset      The position of planet 0 in the stock and prices arrays.
+     * @param types       The industry type ordinal of each planet.
+     * @param jitter      The random price jitter of each planet in the range, starting at index 0.
+     * @param production  The production of the good, indexed by industry type ordinal.
+     * @param consumption The consumption of the good, indexed by industry type ordinal.
+     * @param basePrice   The base price of the good.
+     * @param from        The first planet of the range.
+     * @param to          The planet after the last one of the range.
+     */
+    void update(int[] stock, int[] prices, int offset, int[] types, int[] jitter,
+                int[] production, int[] consumption, int basePrice, int from, int to);
+}
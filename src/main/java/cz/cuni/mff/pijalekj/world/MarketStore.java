@@ -0,0 +1,460 @@
+package cz.cuni.mff.pijalekj.world;
+
+import cz.cuni.mff.pijalekj.constants.EconomyTables;
+import cz.cuni.mff.pijalekj.enums.PlanetIndustryType;
+import cz.cuni.mff.pijalekj.metrics.PlanetUpdateBatchEvent;
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The MarketStore class holds the markets of all planets of the galaxy in flat primitive arrays.
+ * The arrays are good-major: the stock and price of good g on planet p are stored at g * planetCount + p,
+ * so the big tick update streams through each good of consecutive planets, which allows it to be
+ * vectorized. Planets access their own market through GoodsPrices views.
+ * <p>
+ * The update uses the jdk.incubator.vector API if the game was built with the vector profile and the JVM
+ * was started with --add-modules jdk.incubator.vector, and a scalar fallback otherwise.
+ * <p>
+ * In lazy mode, a big tick only advances a counter. Each planet remembers the big tick its market was
+ * last brought up to date at, and the GoodsPrices view catches it up in closed form when it is accessed,
+ * so the cost of big ticks follows the activity in the galaxy rather than its size.
+ * <p>
+ * Every price change is also reflected in the store's ArbitrageIndex, immediately or, while prices are
+ * deferred, all at once when they are committed.
+ */
+public class MarketStore {
+    /** Price used instead of prices that would not be positive. */
+    static final int FALLBACK_PRICE = 20;
+    /** Exclusive upper bound of the random jitter added to base prices. */
+    private static final int PRICE_JITTER = 21;
+    /** Number of consecutive planets updated by one parallel task. */
+    private static final int CHUNK_SIZE = 4096;
+    /** Number of locks guarding lazy catch-ups; planets share them by the low bits of their IDs. */
+    private static final int CATCH_UP_LOCKS = 64;
+    private static final VarHandle LAST_UPDATED = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final MarketKernel kernel = createKernel();
+    /** The price jitter of the chunk a thread updates, one buffer per thread, so big ticks allocate nothing. */
+    private static final ThreadLocal<int[]> jitters = ThreadLocal.withInitial(() -> new int[CHUNK_SIZE]);
+    /** Production and consumption tables transposed to [good][planet type], as the update walks goods. */
+    private static final int[][] PRODUCTION_BY_GOOD = transpose(EconomyTables.PRODUCTION);
+    private static final int[][] CONSUMPTION_BY_GOOD = transpose(EconomyTables.CONSUMPTION);
+
+    private final int planetCount;
+    private final int[] types;
+    private final int[] stock;
+    private final int[] prices;
+    private final int[] lastUpdated;
+    private final ArbitrageIndex arbitrageIndex;
+    private final Object[] catchUpLocks = new Object[CATCH_UP_LOCKS];
+    private final RngService random;
+    private int bigTick = 0;
+    private boolean lazy = false;
+    private boolean pricesDeferred = false;
+
+    /**
+     * Constructs an empty MarketStore for the specified number of planets.
+     *
+     * @param planetCount The number of planets.
+     * @param random      The source of the random price jitter.
+     */
+    public MarketStore(int planetCount, RngService random) {
+        this.planetCount = planetCount;
+        this.random = random;
+        types = new int[planetCount];
+        stock = new int[planetCount * EconomyTables.GOODS_COUNT];
+        prices = new int[planetCount * EconomyTables.GOODS_COUNT];
+        lastUpdated = new int[planetCount];
+        arbitrageIndex = new ArbitrageIndex(prices, planetCount);
+        Arrays.setAll(catchUpLocks, i -> new Object());
+    }
+
+    /**
+     * Gets the source of randomness of the world the markets belong to.
+     *
+     * @return The RngService of the world.
+     */
+    public RngService getRandom() {
+        return random;
+    }
+
+    /**
+     * Gets the number of planets in the store.
+     *
+     * @return The number of planets.
+     */
+    public int getPlanetCount() {
+        return planetCount;
+    }
+
+    /**
+     * Gets the index of the cheapest and most expensive planets of every good.
+     *
+     * @return The arbitrage index of the store.
+     */
+    public ArbitrageIndex getArbitrageIndex() {
+        return arbitrageIndex;
+    }
+
+    /**
+     * Checks whether the store is in lazy mode.
+     *
+     * @return True if markets are only updated when accessed, false if all are updated every big tick.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Switches between the lazy and the eager mode. When leaving the lazy mode, all markets are caught up.
+     *
+     * @param lazy True to update markets only when accessed, false to update all of them every big tick.
+     */
+    public void setLazy(boolean lazy) {
+        if (this.lazy && !lazy) {
+            IntStream.range(0, planetCount).parallel().forEach(this::catchUp);
+        } else if (!this.lazy && lazy) {
+            Arrays.fill(lastUpdated, bigTick);
+        }
+        this.lazy = lazy;
+    }
+
+    /**
+     * Gets the number of big ticks the markets went through.
+     *
+     * @return The number of big ticks.
+     */
+    public int getBigTick() {
+        return bigTick;
+    }
+
+    /**
+     * Brings a planet's market up to date if it missed any big ticks in lazy mode. Called by the
+     * GoodsPrices view before every access. Safe to call from many threads: a planet is caught up
+     * by one of them, and the others see it as up to date afterwards.
+     *
+     * @param planetID The ID of the planet.
+     */
+    public void ensureUpdated(int planetID) {
+        if (lazy && (int) LAST_UPDATED.getAcquire(lastUpdated, planetID) != bigTick) {
+            synchronized (catchUpLocks[planetID & (CATCH_UP_LOCKS - 1)]) {
+                catchUp(planetID);
+            }
+        }
+    }
+
+    /**
+     * Copies the prices a planet's market has at the current big tick, without bringing it up to date: the
+     * prices of a planet that missed big ticks in lazy mode are computed as catchUp() would compute them.
+     * Planets are thus only caught up by the entities trading at them. Safe to call from many threads.
+     *
+     * @param planetID    The ID of the planet.
+     * @param destination The array to copy the prices of all goods to.
+     */
+    public void copyCurrentPrices(int planetID, int[] destination) {
+        if (!lazy || (int) LAST_UPDATED.getAcquire(lastUpdated, planetID) == bigTick) {
+            copyPrices(planetID, destination);
+            return;
+        }
+        synchronized (catchUpLocks[planetID & (CATCH_UP_LOCKS - 1)]) {
+            long missed = bigTick - lastUpdated[planetID];
+            if (missed <= 0) {
+                copyPrices(planetID, destination);
+                return;
+            }
+            int type = types[planetID];
+            for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+                int index = good * planetCount + planetID;
+                destination[good] = computePrice(EconomyTables.BASE_PRICES[good] + jitterOf(index),
+                        caughtUpStock(index, type, good, missed));
+            }
+        }
+    }
+
+    /**
+     * Copies the prices of all goods of a planet as they are stored.
+     *
+     * @param planetID    The ID of the planet.
+     * @param destination The array to copy the prices to.
+     */
+    private void copyPrices(int planetID, int[] destination) {
+        for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+            destination[good] = prices[good * planetCount + planetID];
+        }
+    }
+
+    /**
+     * Sets the industry type of a planet, which decides what its market produces and consumes.
+     *
+     * @param planetID The ID of the planet.
+     * @param type     The industry type of the planet.
+     */
+    public void setType(int planetID, PlanetIndustryType type) {
+        types[planetID] = type.ordinal();
+    }
+
+    /**
+     * Gets the amount of a good on a planet.
+     *
+     * @param planetID The ID of the planet.
+     * @param good     The index of the good.
+     * @return The amount of the good.
+     */
+    public int getStock(int planetID, int good) {
+        return stock[good * planetCount + planetID];
+    }
+
+    /**
+     * Sets the amount of a good on a planet.
+     *
+     * @param planetID The ID of the planet.
+     * @param good     The index of the good.
+     * @param amount   The new amount of the good.
+     */
+    public void setStock(int planetID, int good, int amount) {
+        stock[good * planetCount + planetID] = amount;
+    }
+
+    /**
+     * Gets the price of a good on a planet.
+     *
+     * @param planetID The ID of the planet.
+     * @param good     The index of the good.
+     * @return The price of the good.
+     */
+    public int getPrice(int planetID, int good) {
+        return prices[good * planetCount + planetID];
+    }
+
+    /**
+     * Sets the price of a good on a planet.
+     *
+     * @param planetID The ID of the planet.
+     * @param good     The index of the good.
+     * @param price    The new price of the good.
+     */
+    public void setPrice(int planetID, int good, int price) {
+        prices[good * planetCount + planetID] = price;
+        if (!pricesDeferred) {
+            arbitrageIndex.update(planetID, good);
+        }
+    }
+
+    /**
+     * Starts deferring price updates of the arbitrage index: until commitPrices() is called, setting a price
+     * does not update the index, so that the markets of many planets can be filled at once, from many threads.
+     */
+    public void deferPrices() {
+        pricesDeferred = true;
+    }
+
+    /**
+     * Rebuilds the arbitrage index over all prices set while they were deferred, and stops deferring them.
+     */
+    public void commitPrices() {
+        pricesDeferred = false;
+        arbitrageIndex.rebuildAll();
+    }
+
+    /**
+     * Updates a single planet: produces and consumes goods according to its type and reprices them.
+     *
+     * @param planetID The ID of the planet.
+     */
+    public void update(int planetID) {
+        ensureUpdated(planetID);
+        int type = types[planetID];
+        for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+            int index = good * planetCount + planetID;
+            int amount = stock[index] + EconomyTables.PRODUCTION[type][good];
+            amount -= Math.min(amount, EconomyTables.CONSUMPTION[type][good]);
+            stock[index] = amount;
+            prices[index] = computePrice(EconomyTables.BASE_PRICES[good] + jitterOf(index), amount);
+        }
+        arbitrageIndex.updatePlanet(planetID);
+    }
+
+    /**
+     * Updates all planets, splitting them into chunks of consecutive planets that are updated in parallel.
+     * In lazy mode, only marks that a big tick happened.
+     */
+    public void updateAll() {
+        ++bigTick;
+        if (lazy) {
+            return;
+        }
+
+        int chunkCount = (planetCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunkCount).parallel().forEach(chunk -> {
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(planetCount, from + CHUNK_SIZE);
+            int[] jitter = jitters.get();
+            var event = new PlanetUpdateBatchEvent();
+            event.begin();
+
+            for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+                for (int i = 0; i < to - from; ++i) {
+                    jitter[i] = jitterOf(good * planetCount + from + i);
+                }
+                kernel.update(stock, prices, good * planetCount, types, jitter,
+                        PRODUCTION_BY_GOOD[good], CONSUMPTION_BY_GOOD[good], EconomyTables.BASE_PRICES[good], from, to);
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.bigTick = bigTick;
+                event.firstPlanetID = from;
+                event.planetCount = to - from;
+                event.commit();
+            }
+        });
+        arbitrageIndex.rebuildAll();
+    }
+
+    /**
+     * Applies all big ticks a planet's market missed at once. A single step changes the stock s of a good
+     * to max(s + production - consumption, 0), so k steps change it to max(s + k * (production - consumption), 0).
+     * Prices only depend on the stock after the last step, so they are computed once. The caller has to hold
+     * the planet's catch-up lock, unless no other thread can access the planet.
+     *
+     * @param planetID The ID of the planet.
+     */
+    private void catchUp(int planetID) {
+        long missed = bigTick - lastUpdated[planetID];
+        if (missed <= 0) {
+            return;
+        }
+
+        int type = types[planetID];
+        for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+            int index = good * planetCount + planetID;
+            stock[index] = caughtUpStock(index, type, good, missed);
+            prices[index] = computePrice(EconomyTables.BASE_PRICES[good] + jitterOf(index), stock[index]);
+        }
+        arbitrageIndex.updatePlanet(planetID);
+        LAST_UPDATED.setRelease(lastUpdated, planetID, bigTick);
+    }
+
+    /**
+     * Computes the stock of a good after the big ticks a planet missed, as described in catchUp().
+     *
+     * @param index  The index of the good at the planet in the stock array.
+     * @param type   The industry type of the planet.
+     * @param good   The index of the good.
+     * @param missed The number of missed big ticks.
+     * @return The caught-up stock.
+     */
+    private int caughtUpStock(int index, int type, int good, long missed) {
+        long change = EconomyTables.PRODUCTION[type][good] - EconomyTables.CONSUMPTION[type][good];
+        long amount = Math.max(stock[index] + missed * change, 0);
+        return (int) Math.min(amount, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Draws the price jitter of a good at a planet for the current big tick. The jitter only depends on
+     * the big tick, so a planet caught up lazily gets the same prices as if it had been updated.
+     *
+     * @param index The index of the good at the planet in the price array.
+     * @return The jitter added to the base price.
+     */
+    private int jitterOf(int index) {
+        return random.nextInt(RngService.MARKET_STREAM, bigTick, index, PRICE_JITTER);
+    }
+
+    /**
+     * Computes the new price based on the base price and the amount in stock.
+     *
+     * @param base   The base price, including the random jitter.
+     * @param amount The amount of the good in stock.
+     * @return The computed price.
+     */
+    static int computePrice(int base, int amount) {
+        int newPrice = base - (amount / 3);
+        if (newPrice <= 0) {
+            newPrice = FALLBACK_PRICE;
+        }
+        return newPrice;
+    }
+
+    /**
+     * Writes the markets into a snapshot of the world: the big tick, the mode, the stock and the prices,
+     * and for every planet the number of big ticks its market is behind. The types of the planets are
+     * written with the planets.
+     *
+     * @param out The snapshot section of the markets.
+     */
+    public void save(SnapshotOutput out) {
+        out.writeVarInt(bigTick);
+        out.writeBoolean(lazy);
+        out.writeVarInts(stock, 0, stock.length);
+        out.writeVarInts(prices, 0, prices.length);
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            out.writeVarInt(bigTick - lastUpdated[planetID]);
+        }
+    }
+
+    /**
+     * Reads the markets written by save() and rebuilds the arbitrage index. The types of the planets have
+     * to be set already. Must not be called while the markets are accessed.
+     *
+     * @param in The snapshot section of the markets.
+     */
+    public void load(SnapshotInput in) {
+        bigTick = in.readCount();
+        lazy = in.readBoolean();
+        in.readVarInts(stock, 0, stock.length);
+        in.readVarInts(prices, 0, prices.length);
+        for (int planetID = 0; planetID < planetCount; ++planetID) {
+            lastUpdated[planetID] = bigTick - in.readVarInt();
+        }
+        arbitrageIndex.rebuildAll();
+    }
+
+    /**
+     * Transposes a [planet type][good] table into a [good][planet type] one.
+     *
+     * @param table The table to transpose.
+     * @return The transposed table.
+     */
+    private static int[][] transpose(int[][] table) {
+        int[][] transposed = new int[EconomyTables.GOODS_COUNT][table.length];
+        for (int type = 0; type < table.length; ++type) {
+            for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+                transposed[good][type] = table[type][good];
+            }
+        }
+        return transposed;
+    }
+
+    /**
+     * Selects the vectorized kernel if it is available, the scalar one otherwise.
+     *
+     * @return The kernel used for updating all planets.
+     */
+    private static MarketKernel createKernel() {
+        var vectorKernel = createVectorKernel();
+        return vectorKernel != null ? vectorKernel : new ScalarMarketKernel();
+    }
+
+    /**
+     * Creates the vectorized kernel, which is only built with the vector profile and can only run with the
+     * jdk.incubator.vector module. It is loaded reflectively, so its class is never linked without the module.
+     *
+     * @return The vectorized kernel, or null if it was not built or the module is not present.
+     */
+    static MarketKernel createVectorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (MarketKernel) Class.forName("cz.cuni.mff.pijalekj.world.VectorMarketKernel")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
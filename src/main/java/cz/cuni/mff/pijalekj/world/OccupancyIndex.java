@@ -0,0 +1,534 @@
+package cz.cuni.mff.pijalekj.world;
+
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * The OccupancyIndex class tracks which entities are present in which bucket, where a bucket is
+ * either a planet or a directed lane of the LaneGraph. Every entity is linked into at most one bucket
+ * through intrusive doubly linked lists stored in primitive arrays, so moving an entity is O(1) and
+ * neither boxes nor rehashes anything.
+ * <p>
+ * Entities are stored in slots given by EntityIDs.slotOf(); the index also remembers the full ID of the
+ * entity in every slot, so that reused slots report the ID of their current entity.
+ * <p>
+ * Criminals are also linked into a second list of their bucket, which holds only them, so that
+ * a bucket without criminals is recognized in O(1) and a criminal is found without scanning
+ * everyone else. The criminal status of entities is set through setCriminal().
+ * <p>
+ * While moves are deferred, move() only records the target bucket and the ID of the entity, and the
+ * buckets and IDs stay as they were; commitMoves() then applies the recorded moves in slot order. This
+ * lets many threads move distinct entities at once while others read the buckets.
+ */
+public class OccupancyIndex {
+    /** Marks a missing slot or bucket. */
+    public static final int NONE = -1;
+
+    private final int[] heads;
+    private final int[] counts;
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int[] buckets = new int[0];
+    private int[] ids = new int[0];
+    /** The bucket every slot is to be moved to by commitMoves(), or NONE. */
+    private int[] pending = new int[0];
+    /** The ID of the entity every pending move belongs to. */
+    private int[] pendingIDs = new int[0];
+    private final int[] criminalHeads;
+    private final int[] criminalCounts;
+    private int[] criminalNext = new int[0];
+    private int[] criminalPrev = new int[0];
+    private boolean[] criminal = new boolean[0];
+    private boolean deferring = false;
+
+    /**
+     * Constructs an empty OccupancyIndex with the specified number of buckets.
+     *
+     * @param bucketCount The number of buckets.
+     */
+    public OccupancyIndex(int bucketCount) {
+        heads = new int[bucketCount];
+        counts = new int[bucketCount];
+        criminalHeads = new int[bucketCount];
+        criminalCounts = new int[bucketCount];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(criminalHeads, NONE);
+    }
+
+    /**
+     * Gets the ID of the entity that was last moved to or placed in a slot.
+     *
+     * @param slot The slot.
+     * @return The ID of the entity.
+     */
+    public int getEntityID(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * Moves an entity to the specified bucket, removing it from its previous bucket (if any).
+     *
+     * @param entityID The ID of the entity.
+     * @param bucket   The bucket to move the entity to.
+     */
+    public void move(int entityID, int bucket) {
+        int slot = EntityIDs.slotOf(entityID);
+        if (deferring) {
+            if (slot >= pending.length) {
+                throw new IllegalStateException("OccupancyIndex cannot grow while moves are deferred!");
+            }
+            pending[slot] = bucket;
+            pendingIDs[slot] = entityID;
+            return;
+        }
+        ensureCapacity(slot + 1);
+        ids[slot] = entityID;
+        moveSlot(slot, bucket);
+    }
+
+    /**
+     * Adds an entity that is not present in any bucket yet to the specified bucket.
+     *
+     * @param entityID The ID of the entity.
+     * @param bucket   The bucket to add the entity to.
+     * @throws IllegalArgumentException if the entity is already present in a bucket.
+     * @throws IllegalStateException if moves are deferred.
+     */
+    public void add(int entityID, int bucket) {
+        if (deferring)
+            throw new IllegalStateException("OccupancyIndex cannot add entities while moves are deferred!");
+        int slot = EntityIDs.slotOf(entityID);
+        ensureCapacity(slot + 1);
+        if (buckets[slot] != NONE)
+            throw new IllegalArgumentException("OccupancyIndex was asked to add an entity that is already present!");
+        ids[slot] = entityID;
+        moveSlot(slot, bucket);
+    }
+
+    /**
+     * Moves a slot to the specified bucket, removing it from its previous bucket (if any).
+     *
+     * @param slot   The slot.
+     * @param bucket The bucket to move the slot to.
+     */
+    private void moveSlot(int slot, int bucket) {
+        if (buckets[slot] == bucket) {
+            return;
+        }
+        unlink(slot);
+
+        int head = heads[bucket];
+        next[slot] = head;
+        prev[slot] = NONE;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        heads[bucket] = slot;
+        buckets[slot] = bucket;
+        ++counts[bucket];
+        if (criminal[slot]) {
+            linkCriminal(slot, bucket);
+        }
+    }
+
+    /**
+     * Sets whether an entity is a criminal. Must not be called while entities play.
+     *
+     * @param entityID   The ID of the entity.
+     * @param isCriminal True if the entity is a criminal.
+     */
+    public void setCriminal(int entityID, boolean isCriminal) {
+        int slot = EntityIDs.slotOf(entityID);
+        ensureCapacity(slot + 1);
+        if (criminal[slot] == isCriminal) {
+            return;
+        }
+        criminal[slot] = isCriminal;
+        int bucket = buckets[slot];
+        if (bucket == NONE) {
+            return;
+        }
+        if (isCriminal) {
+            linkCriminal(slot, bucket);
+        } else {
+            unlinkCriminal(slot, bucket);
+        }
+    }
+
+    /**
+     * Gets the number of criminals in a bucket.
+     *
+     * @param bucket The bucket.
+     * @return The number of criminals in the bucket.
+     */
+    public int getCriminalCount(int bucket) {
+        return criminalCounts[bucket];
+    }
+
+    /**
+     * Finds a criminal in a bucket other than the specified entity.
+     *
+     * @param bucket     The bucket.
+     * @param excludedID The ID of the entity to skip.
+     * @return The slot of the first criminal found, or NONE if there is none.
+     */
+    public int findCriminalSlot(int bucket, int excludedID) {
+        for (int slot = criminalHeads[bucket]; slot != NONE; slot = criminalNext[slot]) {
+            if (ids[slot] != excludedID) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Starts deferring moves: until commitMoves() is called, move() only records the target bucket and
+     * the ID of the entity, so that distinct entities can be moved from many threads at once.
+     */
+    public void deferMoves() {
+        deferring = true;
+    }
+
+    /**
+     * Stops deferring moves and applies all recorded ones in slot order, that is, in the order of entity IDs.
+     * Only the last recorded move of every entity is applied.
+     */
+    public void commitMoves() {
+        deferring = false;
+        for (int slot = 0; slot < pending.length; ++slot) {
+            if (pending[slot] != NONE) {
+                int bucket = pending[slot];
+                pending[slot] = NONE;
+                ids[slot] = pendingIDs[slot];
+                moveSlot(slot, bucket);
+            }
+        }
+    }
+
+    /**
+     * Places entities that are not present in any bucket yet. The entities are grouped by bucket and
+     * the buckets are linked in parallel; within a bucket, the entities end up in the same order as if
+     * they were moved there one by one.
+     *
+     * @param entityIDs     The IDs of the entities.
+     * @param targetBuckets The bucket of each entity.
+     * @throws IllegalArgumentException if an entity is already present in a bucket.
+     */
+    public void placeAll(int[] entityIDs, int[] targetBuckets) {
+        int maxSlot = 0;
+        for (int entityID : entityIDs) {
+            maxSlot = Math.max(maxSlot, EntityIDs.slotOf(entityID));
+        }
+        ensureCapacity(maxSlot + 1);
+        for (int entityID : entityIDs) {
+            if (buckets[EntityIDs.slotOf(entityID)] != NONE)
+                throw new IllegalArgumentException("OccupancyIndex was asked to place an entity twice!");
+            ids[EntityIDs.slotOf(entityID)] = entityID;
+        }
+
+        // Counting sort of the entities by bucket, keeping their relative order
+        int[] starts = new int[heads.length + 1];
+        for (int bucket : targetBuckets) {
+            ++starts[bucket + 1];
+        }
+        for (int bucket = 0; bucket < heads.length; ++bucket) {
+            starts[bucket + 1] += starts[bucket];
+        }
+        int[] sorted = new int[entityIDs.length];
+        int[] fill = Arrays.copyOf(starts, heads.length);
+        for (int i = 0; i < entityIDs.length; ++i) {
+            sorted[fill[targetBuckets[i]]++] = EntityIDs.slotOf(entityIDs[i]);
+        }
+
+        // Every bucket touches only its own head, count and slots, so buckets can be linked in parallel
+        IntStream.range(0, heads.length).parallel().forEach(bucket -> {
+            for (int i = starts[bucket]; i < starts[bucket + 1]; ++i) {
+                int slot = sorted[i];
+                int head = heads[bucket];
+                next[slot] = head;
+                prev[slot] = NONE;
+                if (head != NONE) {
+                    prev[head] = slot;
+                }
+                heads[bucket] = slot;
+                buckets[slot] = bucket;
+            }
+            counts[bucket] += starts[bucket + 1] - starts[bucket];
+        });
+        for (int slot : sorted) {
+            if (criminal[slot]) {
+                linkCriminal(slot, buckets[slot]);
+            }
+        }
+    }
+
+    /**
+     * Removes an entity from the specified bucket. Does nothing if the entity is not in that bucket.
+     *
+     * @param entityID The ID of the entity.
+     * @param bucket   The bucket to remove the entity from.
+     */
+    public void remove(int entityID, int bucket) {
+        int slot = EntityIDs.slotOf(entityID);
+        if (slot < buckets.length && ids[slot] == entityID && buckets[slot] == bucket) {
+            unlink(slot);
+        }
+    }
+
+    /**
+     * Gets the bucket the entity is currently in.
+     *
+     * @param entityID The ID of the entity.
+     * @return The bucket of the entity, or NONE if it is not present anywhere.
+     */
+    public int getBucket(int entityID) {
+        int slot = EntityIDs.slotOf(entityID);
+        return slot < buckets.length && ids[slot] == entityID ? buckets[slot] : NONE;
+    }
+
+    /**
+     * Gets the number of entities in a bucket.
+     *
+     * @param bucket The bucket.
+     * @return The number of entities in the bucket.
+     */
+    public int getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * Gets the first slot of a bucket.
+     *
+     * @param bucket The bucket.
+     * @return The first slot of the bucket, or NONE if the bucket is empty.
+     */
+    public int getFirstSlot(int bucket) {
+        return heads[bucket];
+    }
+
+    /**
+     * Gets the slot following the specified one in the same bucket.
+     *
+     * @param slot The slot.
+     * @return The next slot, or NONE if the slot is the last one of its bucket.
+     */
+    public int getNextSlot(int slot) {
+        return next[slot];
+    }
+
+    /**
+     * Performs the given action for the ID of every entity in a bucket, without allocating.
+     *
+     * @param bucket The bucket.
+     * @param action The action to perform for each entity ID.
+     */
+    public void forEach(int bucket, IntConsumer action) {
+        for (int slot = heads[bucket]; slot != NONE; slot = next[slot]) {
+            action.accept(ids[slot]);
+        }
+    }
+
+    /**
+     * Finds the first entity in a bucket whose ID matches the given predicate.
+     *
+     * @param bucket    The bucket.
+     * @param predicate The predicate the entity ID has to match.
+     * @return The slot of the first matching entity, or NONE if there is none.
+     */
+    public int findSlot(int bucket, IntPredicate predicate) {
+        for (int slot = heads[bucket]; slot != NONE; slot = next[slot]) {
+            if (predicate.test(ids[slot])) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Copies the IDs of all entities in a bucket into an array.
+     *
+     * @param bucket      The bucket.
+     * @param destination The array to copy to.
+     * @param offset      The position in the array to start at.
+     * @return The position after the last copied ID.
+     */
+    public int copyEntities(int bucket, int[] destination, int offset) {
+        for (int slot = heads[bucket]; slot != NONE; slot = next[slot]) {
+            destination[offset++] = ids[slot];
+        }
+        return offset;
+    }
+
+    /**
+     * Writes the buckets into a snapshot of the world. Lists are written from their tails, in the order
+     * the entities were linked in, so that linking them in that order again restores them exactly; the order
+     * decides who entities find first. Every bucket is written as its count and the IDs of its entities,
+     * as differences from the previous ID, followed by the criminals of all buckets the same way.
+     * Must not be called while moves are deferred.
+     *
+     * @param out The snapshot section of the occupancy.
+     */
+    public void save(SnapshotOutput out) {
+        assert !deferring;
+        out.writeVarInt(heads.length);
+        int[] order = new int[16];
+        int previous = 0;
+        for (int bucket = 0; bucket < heads.length; ++bucket) {
+            if (order.length < counts[bucket]) {
+                order = new int[Math.max(counts[bucket], order.length * 2)];
+            }
+            int count = 0;
+            for (int slot = heads[bucket]; slot != NONE; slot = next[slot]) {
+                order[count++] = slot;
+            }
+            out.writeVarInt(count);
+            for (int i = count - 1; i >= 0; --i) {
+                out.writeSignedVarInt(ids[order[i]] - previous);
+                previous = ids[order[i]];
+            }
+        }
+        for (int bucket = 0; bucket < heads.length; ++bucket) {
+            if (order.length < criminalCounts[bucket]) {
+                order = new int[Math.max(criminalCounts[bucket], order.length * 2)];
+            }
+            int count = 0;
+            for (int slot = criminalHeads[bucket]; slot != NONE; slot = criminalNext[slot]) {
+                order[count++] = slot;
+            }
+            out.writeVarInt(count);
+            for (int i = count - 1; i >= 0; --i) {
+                out.writeSignedVarInt(ids[order[i]] - previous);
+                previous = ids[order[i]];
+            }
+        }
+    }
+
+    /**
+     * Reads the buckets written by save() into this empty index: places the entities and marks
+     * the criminals in their original order.
+     *
+     * @param in The snapshot section of the occupancy.
+     * @throws IllegalStateException if the number of buckets differs or an entity is placed twice.
+     */
+    public void load(SnapshotInput in) {
+        if (in.readCount() != heads.length)
+            throw new IllegalStateException("The snapshot holds a different number of buckets!");
+        int[] entityIDs = new int[16];
+        int[] targetBuckets = new int[16];
+        int total = 0;
+        int previous = 0;
+        for (int bucket = 0; bucket < heads.length; ++bucket) {
+            int count = in.readCount();
+            if (entityIDs.length - total < count) {
+                int newLength = Math.max(total + count, entityIDs.length * 2);
+                entityIDs = Arrays.copyOf(entityIDs, newLength);
+                targetBuckets = Arrays.copyOf(targetBuckets, newLength);
+            }
+            for (int i = 0; i < count; ++i) {
+                previous += in.readSignedVarInt();
+                entityIDs[total] = previous;
+                targetBuckets[total++] = bucket;
+            }
+        }
+        placeAll(Arrays.copyOf(entityIDs, total), Arrays.copyOf(targetBuckets, total));
+
+        for (int bucket = 0; bucket < heads.length; ++bucket) {
+            int count = in.readCount();
+            for (int i = 0; i < count; ++i) {
+                previous += in.readSignedVarInt();
+                if (getBucket(previous) != bucket)
+                    throw new IllegalStateException("The snapshot holds a criminal outside its bucket!");
+                setCriminal(previous, true);
+            }
+        }
+    }
+
+    /**
+     * Unlinks a slot from its bucket, if it is in any.
+     *
+     * @param slot The slot.
+     */
+    private void unlink(int slot) {
+        int bucket = buckets[slot];
+        if (bucket == NONE) {
+            return;
+        }
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } else {
+            heads[bucket] = next[slot];
+        }
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        }
+        buckets[slot] = NONE;
+        --counts[bucket];
+        if (criminal[slot]) {
+            unlinkCriminal(slot, bucket);
+        }
+    }
+
+    /**
+     * Links a slot into the criminal list of a bucket.
+     *
+     * @param slot   The slot.
+     * @param bucket The bucket the slot is in.
+     */
+    private void linkCriminal(int slot, int bucket) {
+        int head = criminalHeads[bucket];
+        criminalNext[slot] = head;
+        criminalPrev[slot] = NONE;
+        if (head != NONE) {
+            criminalPrev[head] = slot;
+        }
+        criminalHeads[bucket] = slot;
+        ++criminalCounts[bucket];
+    }
+
+    /**
+     * Unlinks a slot from the criminal list of a bucket.
+     *
+     * @param slot   The slot.
+     * @param bucket The bucket the slot is in.
+     */
+    private void unlinkCriminal(int slot, int bucket) {
+        if (criminalPrev[slot] != NONE) {
+            criminalNext[criminalPrev[slot]] = criminalNext[slot];
+        } else {
+            criminalHeads[bucket] = criminalNext[slot];
+        }
+        if (criminalNext[slot] != NONE) {
+            criminalPrev[criminalNext[slot]] = criminalPrev[slot];
+        }
+        --criminalCounts[bucket];
+    }
+
+    /**
+     * Grows the per-slot arrays so that they hold at least the specified number of slots.
+     *
+     * @param slotCount The required number of slots.
+     */
+    private void ensureCapacity(int slotCount) {
+        if (slotCount <= buckets.length) {
+            return;
+        }
+        int oldLength = buckets.length;
+        int newLength = Math.max(slotCount, oldLength * 2);
+        next = Arrays.copyOf(next, newLength);
+        prev = Arrays.copyOf(prev, newLength);
+        buckets = Arrays.copyOf(buckets, newLength);
+        ids = Arrays.copyOf(ids, newLength);
+        pending = Arrays.copyOf(pending, newLength);
+        pendingIDs = Arrays.copyOf(pendingIDs, newLength);
+        criminalNext = Arrays.copyOf(criminalNext, newLength);
+        criminalPrev = Arrays.copyOf(criminalPrev, newLength);
+        criminal = Arrays.copyOf(criminal, newLength);
+        Arrays.fill(buckets, oldLength, newLength, NONE);
+        Arrays.fill(pending, oldLength, newLength, NONE);
+    }
+}
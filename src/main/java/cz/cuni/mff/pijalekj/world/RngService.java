@@ -0,0 +1,130 @@
+package cz.cuni.mff.pijalekj.world;
+
+import java.util.SplittableRandom;
+
+/**
+ * The RngService class is the source of all randomness of a running simulation. Random values are not
+ * drawn from a shared generator; every value is a hash of the world seed, the tick, a stream identifying
+ * what the value decides, and a key identifying who it is decided for (an entity, a planet, a battle).
+ * Values therefore do not depend on the order they are drawn in or on the number of threads, nothing is
+ * contended and nothing is allocated, and the same seed always gives the same history of the world.
+ * <p>
+ * Code that needs a whole sequence of values, like a battle, gets its own SplittableRandom seeded the
+ * same way.
+ */
+public final class RngService {
+    /** Identifies the values deciding where NPCs travel, keyed by the entity ID. */
+    public static final int TRAVEL_STREAM = 1;
+    /** Identifies the values jittering market prices, keyed by the good and the planet ID. */
+    public static final int MARKET_STREAM = 2;
+    /** Identifies the streams of battles between NPCs, keyed by the order of the battle in the tick. */
+    public static final int BATTLE_STREAM = 3;
+    /** Identifies the streams of the player's battles, keyed by the opponent's ID. */
+    public static final int PLAYER_BATTLE_STREAM = 4;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+    private long tick = 0;
+
+    /**
+     * Constructs an RngService for a world.
+     *
+     * @param seed The seed of the world.
+     */
+    public RngService(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Gets the seed of the world.
+     *
+     * @return The seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the tick the values are currently drawn for.
+     *
+     * @return The current tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Sets the tick the values are drawn for. Must not be called while other threads draw values.
+     *
+     * @param tick The current tick.
+     */
+    public void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * Draws a value for the current tick.
+     *
+     * @param stream What the value decides.
+     * @param key    Who the value is decided for.
+     * @param bound  The exclusive upper bound of the value; must be positive.
+     * @return A value from 0 (inclusive) to bound (exclusive).
+     */
+    public int nextInt(int stream, long key, int bound) {
+        return nextInt(stream, tick, key, bound);
+    }
+
+    /**
+     * Draws a value for the specified tick, for values whose time is not the current tick, like market
+     * updates caught up later.
+     *
+     * @param stream What the value decides.
+     * @param tick   The tick the value is drawn for.
+     * @param key    Who the value is decided for.
+     * @param bound  The exclusive upper bound of the value; must be positive.
+     * @return A value from 0 (inclusive) to bound (exclusive).
+     */
+    public int nextInt(int stream, long tick, long key, int bound) {
+        assert bound > 0;
+        // 31 random bits scaled to the bound; the bias is below bound / 2^31
+        return (int) (((hash(stream, tick, key) >>> 33) * bound) >>> 31);
+    }
+
+    /**
+     * Creates a generator of a whole sequence of values for the current tick.
+     *
+     * @param stream What the values decide.
+     * @param key    Who the values are decided for.
+     * @return A new SplittableRandom.
+     */
+    public SplittableRandom split(int stream, long key) {
+        return new SplittableRandom(hash(stream, tick, key));
+    }
+
+    /**
+     * Hashes the seed, the stream, the tick and the key into a random value.
+     *
+     * @param stream What the value decides.
+     * @param tick   The tick the value is drawn for.
+     * @param key    Who the value is decided for.
+     * @return The random value.
+     */
+    private long hash(int stream, long tick, long key) {
+        long value = mix64(seed + stream * GOLDEN_GAMMA);
+        value = mix64(value ^ tick);
+        return mix64(value + key * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Scrambles the bits of a value, so that nearby inputs produce unrelated outputs.
+     *
+     * @param value The value to scramble.
+     * @return The scrambled value.
+     */
+    public static long mix64(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
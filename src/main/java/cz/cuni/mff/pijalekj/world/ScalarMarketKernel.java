@@ -0,0 +1,20 @@
+package cz.cuni.mff.pijalekj.world;
+
+/**
+ * The ScalarMarketKernel class updates markets one planet at a time. It is used whenever the
+ * VectorMarketKernel is not available, i.e. the game was not built with the vector profile or runs
+ * without the jdk.incubator.vector module.
+ */
+class ScalarMarketKernel implements MarketKernel {
+    @Override
+    public void update(int[] stock, int[] prices, int offset, int[] types, int[] jitter,
+                       int[] production, int[] consumption, int basePrice, int from, int to) {
+        for (int planet = from; planet < to; ++planet) {
+            int type = types[planet];
+            int amount = stock[offset + planet] + production[type];
+            amount -= Math.min(amount, consumption[type]);
+            stock[offset + planet] = amount;
+            prices[offset + planet] = MarketStore.computePrice(basePrice + jitter[planet - from], amount);
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package cz.cuni.mff.pijalekj.world;
+
+import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.constants.EconomyTables;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The TradeRouteTable class holds the best trade routes starting at every planet. A route leads over at
+ * most maxHops lanes to a planet where the goods bought at the origin sell for more, and it is rated by
+ * the profit of the goods minus the fuel burnt on the way. The profit depends on how much a trader can
+ * afford and carry, so the routes are ranked separately for each bracket of credits and free cargo space.
+ * <p>
+ * A row of the table holds the ROUTES_PER_BRACKET best routes of every bracket of one origin. It is found
+ * by a hop-bounded dynamic programming pass over the lane graph, which gives the shortest route of at most
+ * maxHops lanes to every planet within reach. Rows are valid for one big tick of the MarketStore, since
+ * prices only change on big ticks. Right after a big tick, rebuildUsedRows() rebuilds the rows traders
+ * planned from since the previous one in a single parallel pass, so that traders planning during the tick
+ * mostly only look their routes up. A row that is accessed while out of date, because no trader planned
+ * from its origin in the previous period, is built on access. A row is allocated when it is first built,
+ * so planets no trader plans from take no memory. Rows of distinct origins may be built from many threads
+ * at once.
+ * <p>
+ * Every route takes maxHops + 2 ints of its row: the destination, the travel length, the number of lanes
+ * and the maxHops - 1 planets between the origin and the destination.
+ * <p>
+ * Rows are ranked from prices only, as if the origin had MAX_PIECES of every good, and the prices are read
+ * without catching lazy markets up (see MarketStore.copyCurrentPrices()). A row thus only depends on the
+ * big tick, not on when in the period it was built or on which markets traders caught up. Traders re-rate
+ * the few routes of their bracket with rate() for their own credits, free space and the current stock.
+ */
+public class TradeRouteTable {
+    /** The number of routes kept for every origin and bracket. */
+    public static final int ROUTES_PER_BRACKET = 4;
+    /** The lower bounds of the credit brackets, the first one also stands for less. */
+    private static final int[] BRACKET_CREDITS = {1000, 2500, 10000, 50000};
+    /** The lower bounds of the free cargo space brackets, the first one also stands for less. */
+    private static final int[] BRACKET_CARGO = {10, 25, 50};
+    /** The number of brackets. */
+    public static final int BRACKET_COUNT = BRACKET_CREDITS.length * BRACKET_CARGO.length;
+    /** The most pieces of one good a trader buys, so that traders won't buy the best one out. */
+    private static final int MAX_PIECES = 10;
+    /** The offsets of the fields of a route in its row. */
+    private static final int DESTINATION = 0;
+    private static final int TRAVEL_LENGTH = 1;
+    private static final int HOP_COUNT = 2;
+    private static final int STOPS = 3;
+
+    private final LaneGraph lanes;
+    private final MarketStore markets;
+    private final int maxHops;
+    /** The number of ints of a route in its row. */
+    private final int entrySize;
+    private final ThreadLocal<Scratch> scratches;
+    /** The big tick every row was built at, or -1 if it was never built. */
+    private final int[] builtAt;
+    /** The rows of the origins, indexed by offsetOf(); null if the row was never built. */
+    private final int[][] rows;
+    /** Whether the row of every origin was accessed since the last rebuildUsedRows(). */
+    private final boolean[] used;
+
+    /**
+     * Constructs an empty table, whose rows are built when first accessed.
+     *
+     * @param lanes   The lane graph of the galaxy.
+     * @param markets The markets of all planets.
+     * @param maxHops The maximum number of lanes of a route.
+     */
+    public TradeRouteTable(LaneGraph lanes, MarketStore markets, int maxHops) {
+        this.lanes = lanes;
+        this.markets = markets;
+        this.maxHops = maxHops;
+        this.entrySize = STOPS + maxHops - 1;
+        int planetCount = lanes.getPlanetCount();
+        scratches = ThreadLocal.withInitial(() -> new Scratch(maxHops));
+        builtAt = new int[planetCount];
+        rows = new int[planetCount][];
+        used = new boolean[planetCount];
+        Arrays.fill(builtAt, -1);
+    }
+
+    /**
+     * Gets the bracket a trader falls into.
+     *
+     * @param credits   The credits of the trader.
+     * @param freeSpace The free cargo space of the trader.
+     * @return The index of the bracket.
+     */
+    public static int getBracket(int credits, int freeSpace) {
+        return bracketOf(BRACKET_CREDITS, credits) * BRACKET_CARGO.length + bracketOf(BRACKET_CARGO, freeSpace);
+    }
+
+    /**
+     * Gets the destination of a route, building the row of the origin if it is out of date.
+     *
+     * @param originID The ID of the planet the route starts at.
+     * @param bracket  The bracket of the trader.
+     * @param rank     The rank of the route in the bracket, from 0 to ROUTES_PER_BRACKET - 1.
+     * @return The ID of the destination, or -1 if the origin has fewer routes.
+     */
+    public int getDestination(int originID, int bracket, int rank) {
+        if (builtAt[originID] != markets.getBigTick()) {
+            rebuild(originID, scratches.get());
+        }
+        if (!used[originID]) {
+            used[originID] = true;
+        }
+        return rows[originID][offsetOf(bracket, rank) + DESTINATION];
+    }
+
+    /**
+     * Rebuilds the out of date rows of the origins that were accessed since the last call, in parallel, and
+     * forgets that they were accessed. Called right after every big tick of the MarketStore. Rows only
+     * depend on the big tick, so this only decides when a row is built, not what it holds.
+     */
+    public void rebuildUsedRows() {
+        int bigTick = markets.getBigTick();
+        IntStream.range(0, used.length).parallel().forEach(originID -> {
+            if (used[originID]) {
+                used[originID] = false;
+                if (builtAt[originID] != bigTick) {
+                    rebuild(originID, scratches.get());
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks whether the row of an origin is up to date, so that looking its routes up builds nothing.
+     *
+     * @param originID The ID of the origin.
+     * @return True if the row was built at the current big tick.
+     */
+    boolean isUpToDate(int originID) {
+        return builtAt[originID] == markets.getBigTick();
+    }
+
+    /**
+     * Gets the travel length of a route returned by getDestination().
+     *
+     * @param originID The ID of the planet the route starts at.
+     * @param bracket  The bracket of the trader.
+     * @param rank     The rank of the route in the bracket.
+     * @return The sum of the distances of the lanes of the route.
+     */
+    public int getTravelLength(int originID, int bracket, int rank) {
+        return rows[originID][offsetOf(bracket, rank) + TRAVEL_LENGTH];
+    }
+
+    /**
+     * Copies the planets between the origin and the destination of a route returned by getDestination().
+     *
+     * @param originID    The ID of the planet the route starts at.
+     * @param bracket     The bracket of the trader.
+     * @param rank        The rank of the route in the bracket.
+     * @param destination The array to copy to, with room for maxHops - 1 planets.
+     * @return The number of copied planets, one less than the number of lanes of the route.
+     */
+    public int copyStops(int originID, int bracket, int rank, int[] destination) {
+        int[] row = rows[originID];
+        int offset = offsetOf(bracket, rank);
+        int stopCount = row[offset + HOP_COUNT] - 1;
+        System.arraycopy(row, offset + STOPS, destination, 0, stopCount);
+        return stopCount;
+    }
+
+    /**
+     * Rates buying goods at the origin and selling them at the destination. The goods are bought in
+     * the order of their price differences, from the highest, at most MAX_PIECES of each, until the
+     * credits or the space run out. If two goods have the same difference, the later one is treated
+     * as if its difference was lower by one (repeatedly); goods whose difference drops to zero are not
+     * bought. Only the market of the origin, whose stock is read, is brought up to date.
+     *
+     * @param originID      The ID of the planet the goods are bought at.
+     * @param destinationID The ID of the planet the goods are sold at.
+     * @param travelLength  The length of the route between the planets.
+     * @param credits       The credits of the trader.
+     * @param freeSpace     The free cargo space of the trader.
+     * @param toBuy         The array the amounts of the goods to buy are written to.
+     * @return The rating: the estimated profit minus the cost of the fuel.
+     */
+    public int rate(int originID, int destinationID, int travelLength, int credits, int freeSpace, int[] toBuy) {
+        var scratch = scratches.get();
+        markets.ensureUpdated(originID);
+        markets.copyCurrentPrices(originID, scratch.originPrices);
+        for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+            scratch.originStock[good] = markets.getStock(originID, good);
+        }
+        markets.copyCurrentPrices(destinationID, scratch.prices);
+        int count = sortGains(scratch);
+        return buy(scratch, count, travelLength, credits, freeSpace, toBuy);
+    }
+
+    /**
+     * Rates a route as the table ranks it: as rate() does, but as if the origin had MAX_PIECES of every good.
+     *
+     * @param originID      The ID of the planet the goods are bought at.
+     * @param destinationID The ID of the planet the goods are sold at.
+     * @param travelLength  The length of the route between the planets.
+     * @param credits       The credits of the trader.
+     * @param freeSpace     The free cargo space of the trader.
+     * @return The rating the route is ranked by.
+     */
+    int rank(int originID, int destinationID, int travelLength, int credits, int freeSpace) {
+        var scratch = scratches.get();
+        markets.copyCurrentPrices(originID, scratch.originPrices);
+        Arrays.fill(scratch.originStock, MAX_PIECES);
+        markets.copyCurrentPrices(destinationID, scratch.prices);
+        int count = sortGains(scratch);
+        return buy(scratch, count, travelLength, credits, freeSpace, scratch.toBuy);
+    }
+
+    /**
+     * Rebuilds the row of an origin, allocating it if it was never built.
+     *
+     * @param originID The ID of the origin.
+     * @param scratch  The scratch buffers of the current thread.
+     */
+    private void rebuild(int originID, Scratch scratch) {
+        int reachedCount = findShortestRoutes(originID, scratch);
+        int[] row = rows[originID];
+        if (row == null) {
+            row = new int[BRACKET_COUNT * ROUTES_PER_BRACKET * entrySize];
+            rows[originID] = row;
+        }
+        for (int offset = 0; offset < row.length; offset += entrySize) {
+            row[offset + DESTINATION] = -1;
+        }
+        Arrays.fill(scratch.ratings, Integer.MIN_VALUE);
+        markets.copyCurrentPrices(originID, scratch.originPrices);
+        Arrays.fill(scratch.originStock, MAX_PIECES);
+
+        for (int i = 0; i < reachedCount; ++i) {
+            int slot = scratch.reached[i];
+            markets.copyCurrentPrices(scratch.planets[slot], scratch.prices);
+            int count = sortGains(scratch);
+            int travelLength = scratch.bestDistances[slot];
+            for (int bracket = 0; bracket < BRACKET_COUNT; ++bracket) {
+                int credits = BRACKET_CREDITS[bracket / BRACKET_CARGO.length];
+                int freeSpace = BRACKET_CARGO[bracket % BRACKET_CARGO.length];
+                int rating = buy(scratch, count, travelLength, credits, freeSpace, scratch.toBuy);
+                insertRoute(row, bracket, slot, rating, scratch);
+            }
+        }
+        builtAt[originID] = markets.getBigTick();
+    }
+
+    /**
+     * Finds the shortest routes of at most maxHops lanes from an origin to all planets within reach.
+     * Layer h of the pass holds the planets whose shortest route of at most h lanes is shorter than any
+     * route with fewer lanes, and only these are extended to the next layer.
+     *
+     * @param originID The ID of the origin.
+     * @param scratch  The scratch buffers of the current thread; the routes are left in them, indexed by
+     *                 the slots of the planets.
+     * @return The number of reached planets, not counting the origin.
+     */
+    private int findShortestRoutes(int originID, Scratch scratch) {
+        scratch.startSearch();
+        int originSlot = scratch.slotOf(originID);
+        scratch.active[0] = originSlot;
+        scratch.layerDistances[0][originSlot] = 0;
+        scratch.bestDistances[originSlot] = 0;
+        scratch.bestHops[originSlot] = 0;
+        int activeCount = 1;
+        int reachedCount = 0;
+
+        for (int hop = 1; hop <= maxHops && activeCount > 0; ++hop) {
+            // Every lane of the layer may reach a new planet, so make room for all of them at once
+            int laneCount = 0;
+            for (int i = 0; i < activeCount; ++i) {
+                laneCount += lanes.getNeighborCount(scratch.planets[scratch.active[i]]);
+            }
+            scratch.reserve(laneCount);
+
+            int[] planets = scratch.planets;
+            int[] active = scratch.active;
+            int[] nextActive = scratch.nextActive;
+            int[] previousDistances = scratch.layerDistances[hop - 1];
+            int[] distances = scratch.layerDistances[hop];
+            int[] predecessors = scratch.layerPredecessors[hop];
+            int nextCount = 0;
+            for (int i = 0; i < activeCount; ++i) {
+                int slot = active[i];
+                int planetID = planets[slot];
+                for (int index = 0; index < lanes.getNeighborCount(planetID); ++index) {
+                    int neighborSlot = scratch.slotOf(lanes.getNeighbor(planetID, index));
+                    int distance = previousDistances[slot] + lanes.getNeighborDistance(planetID, index);
+                    if (distances[neighborSlot] == Integer.MAX_VALUE) {
+                        nextActive[nextCount++] = neighborSlot;
+                    } else if (distance >= distances[neighborSlot]) {
+                        continue;
+                    }
+                    distances[neighborSlot] = distance;
+                    predecessors[neighborSlot] = slot;
+                }
+            }
+
+            // Only the planets reached by a shorter route than before are worth extending
+            activeCount = 0;
+            for (int i = 0; i < nextCount; ++i) {
+                int slot = nextActive[i];
+                if (scratch.bestDistances[slot] == Integer.MAX_VALUE) {
+                    scratch.reached[reachedCount++] = slot;
+                } else if (distances[slot] >= scratch.bestDistances[slot]) {
+                    continue;
+                }
+                scratch.bestDistances[slot] = distances[slot];
+                scratch.bestHops[slot] = hop;
+                active[activeCount++] = slot;
+            }
+        }
+        return reachedCount;
+    }
+
+    /**
+     * Inserts a route into the best routes of a bracket if it is rated higher than one of them;
+     * routes rated the same keep the order they were found in.
+     *
+     * @param row     The row of the origin.
+     * @param bracket The bracket.
+     * @param slot    The slot of the destination in the scratch buffers.
+     * @param rating  The rating of the route.
+     * @param scratch The scratch buffers of the current thread.
+     */
+    private void insertRoute(int[] row, int bracket, int slot, int rating, Scratch scratch) {
+        int[] ratings = scratch.ratings;
+        int base = bracket * ROUTES_PER_BRACKET;
+        if (rating <= ratings[base + ROUTES_PER_BRACKET - 1]) {
+            return;
+        }
+        int rank = ROUTES_PER_BRACKET - 1;
+        for (; rank > 0 && ratings[base + rank - 1] < rating; --rank) {
+            ratings[base + rank] = ratings[base + rank - 1];
+            System.arraycopy(row, offsetOf(bracket, rank - 1), row, offsetOf(bracket, rank), entrySize);
+        }
+        ratings[base + rank] = rating;
+
+        int offset = offsetOf(bracket, rank);
+        int hops = scratch.bestHops[slot];
+        row[offset + DESTINATION] = scratch.planets[slot];
+        row[offset + TRAVEL_LENGTH] = scratch.bestDistances[slot];
+        row[offset + HOP_COUNT] = hops;
+        for (int hop = hops, stop = slot; hop > 1; --hop) {
+            stop = scratch.layerPredecessors[hop][stop];
+            row[offset + STOPS + hop - 2] = scratch.planets[stop];
+        }
+    }
+
+    /**
+     * Sorts the goods that sell for more at the destination than at the origin by the price difference,
+     * from the highest, resolving equal differences as described in rate().
+     *
+     * @param scratch The scratch buffers of the current thread, with the prices of the origin and of the
+     *                destination; the sorted differences and goods are left in them.
+     * @return The number of goods worth buying.
+     */
+    private int sortGains(Scratch scratch) {
+        int[] keys = scratch.keys;
+        int[] goods = scratch.goods;
+        int count = 0;
+        for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+            int priceDiff = scratch.prices[good] - scratch.originPrices[good];
+
+            while (containsKey(keys, count, priceDiff)) {
+                --priceDiff;
+            }
+            if (priceDiff > 0) {
+                // Insertion into the keys sorted in descending order
+                int position = count++;
+                for (; position > 0 && keys[position - 1] < priceDiff; --position) {
+                    keys[position] = keys[position - 1];
+                    goods[position] = goods[position - 1];
+                }
+                keys[position] = priceDiff;
+                goods[position] = good;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decides how much of the sorted goods to buy and rates the purchase.
+     *
+     * @param scratch      The scratch buffers of the current thread, with the prices and stock of the origin
+     *                     and the goods sorted by sortGains().
+     * @param count        The number of sorted goods.
+     * @param travelLength The length of the route.
+     * @param credits      The credits of the trader.
+     * @param freeSpace    The free cargo space of the trader.
+     * @param toBuy        The array the amounts of the goods to buy are written to.
+     * @return The rating of the purchase.
+     */
+    private int buy(Scratch scratch, int count, int travelLength, int credits, int freeSpace, int[] toBuy) {
+        Arrays.fill(toBuy, 0);
+        int rating = -(travelLength * Constants.fuelCost);
+        for (int i = 0; i < count; ++i) {
+            int key = scratch.keys[i];
+            int good = scratch.goods[i];
+            int price = scratch.originPrices[good];
+            int available = scratch.originStock[good];
+            int buyable = Math.min(MAX_PIECES, Math.min(available, credits / price));
+
+            if (freeSpace - buyable <= 0) {
+                toBuy[good] = freeSpace;
+                return rating + freeSpace * key;
+            }
+
+            toBuy[good] = buyable;
+            rating += buyable * key;
+            freeSpace -= buyable;
+            credits -= buyable * price;
+        }
+        return rating;
+    }
+
+    /**
+     * Computes the offset of a route in the row of its origin.
+     *
+     * @param bracket The bracket.
+     * @param rank    The rank of the route in the bracket.
+     * @return The offset of the first field of the route.
+     */
+    private int offsetOf(int bracket, int rank) {
+        return (bracket * ROUTES_PER_BRACKET + rank) * entrySize;
+    }
+
+    /**
+     * Finds the bracket a value falls into.
+     *
+     * @param bounds The ascending lower bounds of the brackets.
+     * @param value  The value.
+     * @return The index of the highest bracket whose bound the value reaches, or 0.
+     */
+    private static int bracketOf(int[] bounds, int value) {
+        int bracket = 0;
+        while (bracket + 1 < bounds.length && value >= bounds[bracket + 1]) {
+            ++bracket;
+        }
+        return bracket;
+    }
+
+    /**
+     * Checks whether a key is among the first count keys.
+     *
+     * @param keys  The keys.
+     * @param count The number of keys.
+     * @param key   The key to look for.
+     * @return True if the key is present.
+     */
+    private static boolean containsKey(int[] keys, int count, int key) {
+        for (int i = 0; i < count; ++i) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Holds the buffers of one thread. A search only touches the neighbourhood of its origin, so the planets
+     * it reaches are given consecutive slots by a hash map, and the buffers are indexed by these slots and
+     * sized to the largest neighbourhood searched so far. Entries of the map are stamped with the number of
+     * the current search, so the map need not be cleared between searches.
+     */
+    private static final class Scratch {
+        /** The initial number of slots. */
+        private static final int INITIAL_CAPACITY = 64;
+
+        /** The shortest distances of routes with exactly h lanes from the origin, per layer h. */
+        int[][] layerDistances;
+        /** The slot of the planet preceding every planet on its route, per layer. */
+        int[][] layerPredecessors;
+        /** The shortest distance from the origin over all layers. */
+        int[] bestDistances;
+        /** The number of lanes of the shortest route from the origin. */
+        int[] bestHops;
+        /** The ID of the planet in every slot. */
+        int[] planets;
+        int[] active;
+        int[] nextActive;
+        int[] reached;
+        final int[] ratings = new int[BRACKET_COUNT * ROUTES_PER_BRACKET];
+        final int[] toBuy = new int[EconomyTables.GOODS_COUNT];
+        /** The prices of the goods at the origin. */
+        final int[] originPrices = new int[EconomyTables.GOODS_COUNT];
+        /** The stock of the goods at the origin, as far as a purchase is concerned. */
+        final int[] originStock = new int[EconomyTables.GOODS_COUNT];
+        /** The prices of the goods at the destination. */
+        final int[] prices = new int[EconomyTables.GOODS_COUNT];
+        /** The price differences of the goods worth buying, in descending order. */
+        final int[] keys = new int[EconomyTables.GOODS_COUNT];
+        /** The goods with the price differences in keys. */
+        final int[] goods = new int[EconomyTables.GOODS_COUNT];
+        /** The planet IDs of the entries of the hash map, open addressing with linear probing. */
+        private int[] mapKeys;
+        /** The slots of the entries of the hash map. */
+        private int[] mapSlots;
+        /** The search every entry of the hash map was made by. */
+        private int[] mapStamps;
+        private int size = 0;
+        private int search = 0;
+
+        Scratch(int maxHops) {
+            layerDistances = new int[maxHops + 1][INITIAL_CAPACITY];
+            layerPredecessors = new int[maxHops + 1][INITIAL_CAPACITY];
+            bestDistances = new int[INITIAL_CAPACITY];
+            bestHops = new int[INITIAL_CAPACITY];
+            planets = new int[INITIAL_CAPACITY];
+            active = new int[INITIAL_CAPACITY];
+            nextActive = new int[INITIAL_CAPACITY];
+            reached = new int[INITIAL_CAPACITY];
+            mapKeys = new int[2 * INITIAL_CAPACITY];
+            mapSlots = new int[2 * INITIAL_CAPACITY];
+            mapStamps = new int[2 * INITIAL_CAPACITY];
+        }
+
+        /**
+         * Starts a new search, forgetting the slots of the previous one.
+         */
+        void startSearch() {
+            if (++search == 0) {
+                Arrays.fill(mapStamps, 0);
+                search = 1;
+            }
+            size = 0;
+        }
+
+        /**
+         * Gets the slot of a planet, giving it the next free slot if the current search has not reached it yet.
+         * A new slot starts unreached in every layer. There has to be room for the new slot, see reserve().
+         *
+         * @param planetID The ID of the planet.
+         * @return The slot of the planet.
+         */
+        int slotOf(int planetID) {
+            int mask = mapKeys.length - 1;
+            for (int i = hash(planetID) & mask; ; i = (i + 1) & mask) {
+                if (mapStamps[i] != search) {
+                    int slot = size++;
+                    mapStamps[i] = search;
+                    mapKeys[i] = planetID;
+                    mapSlots[i] = slot;
+                    planets[slot] = planetID;
+                    for (int[] distances : layerDistances) {
+                        distances[slot] = Integer.MAX_VALUE;
+                    }
+                    bestDistances[slot] = Integer.MAX_VALUE;
+                    return slot;
+                }
+                if (mapKeys[i] == planetID) {
+                    return mapSlots[i];
+                }
+            }
+        }
+
+        /**
+         * Makes room for a number of new slots, keeping the hash map at most half full. Growing the buffers
+         * replaces them, so arrays read from them before have to be read again.
+         *
+         * @param count The number of new slots.
+         */
+        void reserve(int count) {
+            int needed = size + count;
+            if (needed > planets.length) {
+                int capacity = Math.max(needed, 2 * planets.length);
+                for (int hop = 0; hop < layerDistances.length; ++hop) {
+                    layerDistances[hop] = Arrays.copyOf(layerDistances[hop], capacity);
+                    layerPredecessors[hop] = Arrays.copyOf(layerPredecessors[hop], capacity);
+                }
+                bestDistances = Arrays.copyOf(bestDistances, capacity);
+                bestHops = Arrays.copyOf(bestHops, capacity);
+                planets = Arrays.copyOf(planets, capacity);
+                active = Arrays.copyOf(active, capacity);
+                nextActive = Arrays.copyOf(nextActive, capacity);
+                reached = Arrays.copyOf(reached, capacity);
+            }
+            if (2 * needed > mapKeys.length) {
+                int mapCapacity = Integer.highestOneBit(2 * needed - 1) << 1;
+                mapKeys = new int[mapCapacity];
+                mapSlots = new int[mapCapacity];
+                mapStamps = new int[mapCapacity];
+                int mask = mapCapacity - 1;
+                for (int slot = 0; slot < size; ++slot) {
+                    int i = hash(planets[slot]) & mask;
+                    while (mapStamps[i] == search) {
+                        i = (i + 1) & mask;
+                    }
+                    mapStamps[i] = search;
+                    mapKeys[i] = planets[slot];
+                    mapSlots[i] = slot;
+                }
+            }
+        }
+
+        /**
+         * Spreads the bits of a planet ID, so that planets with close IDs do not probe the same entries.
+         *
+         * @param planetID The ID of the planet.
+         * @return The hash of the ID.
+         */
+        private static int hash(int planetID) {
+            int hash = planetID * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
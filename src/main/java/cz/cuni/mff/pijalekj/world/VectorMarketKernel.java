@@ -0,0 +1,52 @@
+package cz.cuni.mff.pijalekj.world;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorMarketKernel class updates markets with the jdk.incubator.vector API, processing as many
+ * planets at once as the preferred vector shape of the CPU allows. It is only compiled with the vector
+ * profile, and only loaded when the module is present, i.e. when the JVM runs with
+ * --add-modules jdk.incubator.vector.
+ */
+class VectorMarketKernel implements MarketKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void update(int[] stock, int[] prices, int offset, int[] types, int[] jitter,
+                       int[] production, int[] consumption, int basePrice, int from, int to) {
+        int planet = from;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        for (; planet < upperBound; planet += SPECIES.length()) {
+            IntVector type = IntVector.fromArray(SPECIES, types, planet);
+            IntVector produced = IntVector.zero(SPECIES);
+            IntVector consumed = IntVector.zero(SPECIES);
+            for (int t = 0; t < production.length; ++t) {
+                VectorMask<Integer> isType = type.eq(t);
+                produced = produced.blend(production[t], isType);
+                consumed = consumed.blend(consumption[t], isType);
+            }
+
+            IntVector amount = IntVector.fromArray(SPECIES, stock, offset + planet).add(produced);
+            amount = amount.sub(amount.min(consumed));
+            amount.intoArray(stock, offset + planet);
+
+            IntVector price = IntVector.fromArray(SPECIES, jitter, planet - from)
+                    .add(basePrice)
+                    .sub(amount.lanewise(VectorOperators.DIV, 3));
+            price = price.blend(MarketStore.FALLBACK_PRICE, price.compare(VectorOperators.LE, 0));
+            price.intoArray(prices, offset + planet);
+        }
+
+        // The tail that does not fill a whole vector
+        for (; planet < to; ++planet) {
+            int type = types[planet];
+            int amount = stock[offset + planet] + production[type];
+            amount -= Math.min(amount, consumption[type]);
+            stock[offset + planet] = amount;
+            prices[offset + planet] = MarketStore.computePrice(basePrice + jitter[planet - from], amount);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package cz.cuni.mff.pijalekj;
+
+import cz.cuni.mff.pijalekj.persistence.WorldImage;
+import cz.cuni.mff.pijalekj.persistence.WorldSnapshot;
+import cz.cuni.mff.pijalekj.persistence.WorldState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that the number of threads the Simulation runs on decides only how fast it runs, not how the
+ * world turns out, and that a world opened from an image is the world of the image. A Simulation on
+ * a single thread lets NPCs play sequentially, and on more threads in parallel, so the modes are
+ * compared as well.
+ */
+class SimulationTest {
+    private static final int PLANETS = 400;
+    private static final int DENSITY = 2;
+    private static final long SEED = 42;
+    /** Enough ticks for a few big ticks, battles and respawns. */
+    private static final int TICKS = 300;
+    private static final int[] THREADS = {2, 4, 8};
+
+    /**
+     * The same seeded world runs sequentially on a single thread and in parallel on several ones; the
+     * snapshots of the worlds after the run must be identical.
+     */
+    @Test
+    void threadsDoNotChangeTheWorld(@TempDir Path directory) throws IOException {
+        byte[] expected = runAndSave(1, directory.resolve("1.snapshot"));
+        for (int threads : THREADS) {
+            byte[] actual = runAndSave(threads, directory.resolve(threads + ".snapshot"));
+            assertArrayEquals(expected, actual, "World run on %d threads".formatted(threads));
+        }
+    }
+
+    /**
+     * A Simulation built from an image must take the planets and the seed from it, and must refuse settings
+     * that do not match the image instead of ignoring them.
+     */
+    @Test
+    void imageDecidesPlanetsAndSeed(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("world.image");
+        var generated = new Simulation.Builder().planets(PLANETS).seed(SEED).threads(1).build();
+        WorldImage.write(path, generated.getLocationsManager());
+        var image = WorldImage.open(path);
+        assertEquals(PLANETS, image.getPlanetCount());
+        assertEquals(SEED, image.getSeed());
+
+        var opened = new Simulation.Builder().image(image).threads(1).build();
+        assertEquals(PLANETS, opened.getLocationsManager().getAllPlanets().length);
+        assertEquals(SEED, opened.getLocationsManager().getRandom().getSeed());
+        new Simulation.Builder().image(image).planets(PLANETS).seed(SEED).threads(1).build();
+
+        assertThrows(IllegalStateException.class,
+                () -> new Simulation.Builder().image(image).planets(PLANETS + 1).threads(1).build());
+        assertThrows(IllegalStateException.class,
+                () -> new Simulation.Builder().seed(SEED + 1).image(image).threads(1).build());
+    }
+
+    /**
+     * Runs the seeded world on a number of threads and saves it.
+     *
+     * @param threads The number of threads.
+     * @param path    The path of the snapshot.
+     * @return The bytes of the snapshot.
+     * @throws IOException if the snapshot cannot be written or read.
+     */
+    private static byte[] runAndSave(int threads, Path path) throws IOException {
+        var simulation = new Simulation.Builder()
+                .planets(PLANETS)
+                .density(DENSITY)
+                .seed(SEED)
+                .threads(threads)
+                .build();
+        simulation.run(TICKS);
+        WorldSnapshot.save(path, new WorldState(simulation.getLocationsManager(), simulation.getEntityManager(),
+                simulation.getCriminalsManager(), simulation.getClock()));
+        return Files.readAllBytes(path);
+    }
+}
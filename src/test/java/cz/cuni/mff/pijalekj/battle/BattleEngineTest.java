@@ -0,0 +1,165 @@
+package cz.cuni.mff.pijalekj.battle;
+
+import cz.cuni.mff.pijalekj.builders.EntityBuilder;
+import cz.cuni.mff.pijalekj.entities.Police;
+import cz.cuni.mff.pijalekj.enums.EntityType;
+import cz.cuni.mff.pijalekj.managers.CriminalsManager;
+import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.FightRequests;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.utils.WorldGenerator;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
+import cz.cuni.mff.pijalekj.world.RngService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pins when the BattleEngine marks criminals. The loop it replaced marked the attacker of every request
+ * right before its battle, and cleared both parties instead if either was dead. The engine marks them
+ * after all battles, in the order of the requests, which must leave the same criminals: battles never
+ * look at criminals, and every entity takes part in at most one request of a tick.
+ */
+class BattleEngineTest {
+    private static final int PLANETS = 20;
+    private static final long SEED = 1;
+    private static final int REQUESTS = 200;
+    private static final EntityType[] TYPES = {EntityType.Trader, EntityType.Pirate, EntityType.Police};
+
+    private LocationsManager locations;
+    private CriminalsManager criminals;
+    private EntityManager entities;
+    private BattleEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        locations = WorldGenerator.generateLocations(PLANETS, SEED);
+        criminals = new CriminalsManager(locations);
+        entities = new EntityManager();
+        entities.reserve(1);
+        entities.setPlayer(new EntityBuilder(entities, locations, criminals)
+                .newPlayer(EntityManager.PLAYER_ID, 0, "Tester"));
+        engine = new BattleEngine(new RngService(SEED));
+    }
+
+    /**
+     * Attackers of fought battles must become criminals unless they are police, criminals attacked by the
+     * police must stay criminals, both parties of a request whose target is dead must be cleared without a
+     * battle, and requests involving the player must be left to the game.
+     */
+    @Test
+    void criminalsAreMarkedAsBeforeEachBattle() {
+        int pirate = spawn(EntityType.Pirate);
+        int trader = spawn(EntityType.Trader);
+        int police = spawn(EntityType.Police);
+        int wanted = spawn(EntityType.Pirate);
+        int lateAttacker = spawn(EntityType.Pirate);
+        int deadTarget = spawn(EntityType.Trader);
+        int playerAttacker = spawn(EntityType.Pirate);
+        int playerTarget = spawn(EntityType.Trader);
+        criminals.addCriminal(wanted);
+        criminals.addCriminal(lateAttacker);
+        criminals.addCriminal(deadTarget);
+        kill(deadTarget);
+        int lateAttackerHull = entities.getEntityShip(lateAttacker).getHull();
+
+        var requests = new FightRequests();
+        requests.add(EntityManager.PLAYER_ID, playerTarget);
+        requests.add(pirate, trader);
+        requests.add(police, wanted);
+        requests.add(lateAttacker, deadTarget);
+        requests.add(playerAttacker, EntityManager.PLAYER_ID);
+        engine.resolve(requests, entities, criminals);
+
+        assertTrue(criminals.isCriminal(pirate), "The attacker was not marked");
+        assertFalse(criminals.isCriminal(trader), "The attacked was marked");
+        assertFalse(criminals.isCriminal(police), "The police was marked");
+        assertTrue(criminals.isCriminal(wanted), "The criminal attacked by the police was cleared");
+        assertFalse(criminals.isCriminal(lateAttacker), "The attacker of a dead target was not cleared");
+        assertFalse(criminals.isCriminal(deadTarget), "The dead target was not cleared");
+        assertEquals(lateAttackerHull, entities.getEntityShip(lateAttacker).getHull(), "A dead target fought");
+        assertFalse(criminals.isCriminal(EntityManager.PLAYER_ID), "The player was marked by the engine");
+        assertFalse(criminals.isCriminal(playerAttacker), "The attacker of the player was marked by the engine");
+    }
+
+    /**
+     * Random requests between random NPCs, some of them dead and some criminals already, must leave the
+     * criminals the replaced loop left, replayed in the order of the requests.
+     */
+    @Test
+    void criminalsMatchReplacedLoop() {
+        var random = new SplittableRandom(SEED);
+        var requests = new FightRequests();
+        boolean[] alive = new boolean[REQUESTS * 2];
+        for (int i = 0; i < REQUESTS; ++i) {
+            int attackerID = spawn(TYPES[random.nextInt(TYPES.length)]);
+            int attackedID = spawn(TYPES[random.nextInt(TYPES.length)]);
+            for (int entityID : new int[]{attackerID, attackedID}) {
+                if (random.nextInt(4) == 0) {
+                    criminals.addCriminal(entityID);
+                }
+                if (random.nextInt(4) == 0) {
+                    kill(entityID);
+                }
+            }
+            alive[2 * i] = entities.getEntity(attackerID).isAlive();
+            alive[2 * i + 1] = entities.getEntity(attackedID).isAlive();
+            requests.add(attackerID, attackedID);
+        }
+
+        var expected = new CriminalsManager(locations);
+        for (int i = 0; i < REQUESTS; ++i) {
+            int attackerID = requests.getAttacker(i);
+            int attackedID = requests.getAttacked(i);
+            if (criminals.isCriminal(attackerID)) {
+                expected.addCriminal(attackerID);
+            }
+            if (criminals.isCriminal(attackedID)) {
+                expected.addCriminal(attackedID);
+            }
+        }
+        for (int i = 0; i < REQUESTS; ++i) {
+            int attackerID = requests.getAttacker(i);
+            if (!(entities.getEntity(attackerID) instanceof Police)) {
+                expected.addCriminal(attackerID);
+            }
+            if (!alive[2 * i] || !alive[2 * i + 1]) {
+                expected.removeCriminal(attackerID);
+                expected.removeCriminal(requests.getAttacked(i));
+            }
+        }
+
+        engine.resolve(requests, entities, criminals);
+        assertEquals(expected.getCriminalCount(), criminals.getCriminalCount());
+        for (int i = 0; i < REQUESTS; ++i) {
+            for (int entityID : new int[]{requests.getAttacker(i), requests.getAttacked(i)}) {
+                assertEquals(expected.isCriminal(entityID), criminals.isCriminal(entityID),
+                        "Criminal status of entity %d of request %d".formatted(entityID, i));
+            }
+        }
+    }
+
+    /**
+     * Spawns an NPC at the first planet.
+     *
+     * @param type The type of the NPC.
+     * @return The ID of the NPC.
+     */
+    private int spawn(EntityType type) {
+        return entities.spawn(type, 0, locations, criminals);
+    }
+
+    /**
+     * Destroys the ship of an NPC, leaving it in the world.
+     *
+     * @param entityID The ID of the NPC.
+     */
+    private void kill(int entityID) {
+        entities.getStore().setHull(EntityIDs.slotOf(entityID), 0);
+    }
+}
@@ -0,0 +1,289 @@
+package cz.cuni.mff.pijalekj.battle;
+
+import cz.cuni.mff.pijalekj.constants.EconomyTables;
+import cz.cuni.mff.pijalekj.entities.Entity;
+import cz.cuni.mff.pijalekj.managers.CriminalsManager;
+import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.utils.WorldGenerator;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
+import cz.cuni.mff.pijalekj.world.EntityStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the BattleResolver with the turn-by-turn battle loop it replaced, in which the fighters took
+ * turns asking their battle() for a decision, attacking or rolling a number from 0 to 100 to flee, until
+ * one of them fled or died.
+ */
+class BattleResolverTest {
+    private static final long SEED = 1;
+    /** The number of battles fought by each pair both ways. */
+    private static final int BATTLES = 20000;
+
+    private static final int PAIRS_PER_COMBINATION = 20;
+    private static final double MAX_DEVIATIONS = 4.5;
+    private static final double HEALTH_TOLERANCE = 0.02;
+    /** The turns after which the loop gives up a battle in which neither fighter can end it. */
+    private static final int MAX_TURNS = 1_000_000;
+
+    private static final int ATTACKER_WON = 0;
+    private static final int DEFENDER_WON = 1;
+    private static final int ESCAPED = 2;
+    /** Not an outcome of its own: the battle changed the credits or cargo of a fighter. */
+    private static final int LOOTED = 3;
+
+    /**
+     * Pairs of NPCs of every combination of types fight from full health, with their credits and cargo
+     * restored before every battle, many times in both ways:
+     * <ul>
+     *     <li>If no fighter ever tries to flee, the battle is deterministic, and every battle fought by the
+     *     resolver must end with exactly the hull and shields of the loop, and take the spoils as it did.</li>
+     *     <li>Otherwise, the shares of battles won by the attacker, won by the defender, fled, and in which the
+     *     winner took the spoils must not differ by more than MAX_DEVIATIONS standard deviations of their
+     *     difference, and the average health left to each fighter, relative to its full health, must agree
+     *     within HEALTH_TOLERANCE.</li>
+     * </ul>
+     */
+    @Test
+    void resolverMatchesTurnByTurnLoop() {
+        LocationsManager locations = WorldGenerator.generateLocations(500, SEED);
+        var entityManager = new EntityManager();
+        WorldGenerator.generateEntities(locations, entityManager, new CriminalsManager(locations));
+        WorldGenerator.populateWorld(locations, entityManager);
+        EntityStore store = entityManager.getStore();
+        var random = new SplittableRandom(SEED);
+
+        // NPCs grouped by type, as every type decides differently
+        var byType = new ArrayList<List<Entity>>();
+        var types = new ArrayList<Class<?>>();
+        for (var entity : entityManager.getEntities()) {
+            int type = types.indexOf(entity.getClass());
+            if (type < 0) {
+                types.add(entity.getClass());
+                byType.add(new ArrayList<>());
+                type = types.size() - 1;
+            }
+            byType.get(type).add(entity);
+        }
+
+        int exact = 0;
+        for (var attackers : byType) {
+            for (var defenders : byType) {
+                for (int pair = 0; pair < PAIRS_PER_COMBINATION; ++pair) {
+                    Entity attacker = attackers.get(random.nextInt(attackers.size()));
+                    Entity defender = defenders.get(random.nextInt(defenders.size()));
+                    if (attacker == defender) {
+                        continue;
+                    }
+                    if (compare(attacker, defender, store, random)) {
+                        ++exact;
+                    }
+                }
+            }
+        }
+        assertTrue(types.size() > 1, "The world holds NPCs of a single type");
+        assertTrue(exact > 0, "No deterministic battles were compared");
+    }
+
+    /**
+     * Fights battles between a pair of entities with the loop and with the resolver and compares them.
+     *
+     * @param attacker The attacking entity.
+     * @param defender The defending entity.
+     * @param store    The store of the entities, used to restore them.
+     * @param random   The random generator of the battles.
+     * @return True if the battles were deterministic and compared exactly.
+     */
+    private static boolean compare(Entity attacker, Entity defender, EntityStore store, RandomGenerator random) {
+        var attackerBelongings = new Belongings(attacker, store);
+        var defenderBelongings = new Belongings(defender, store);
+        var loop = new Outcomes();
+        var resolver = new Outcomes();
+        long fleeAttempts = 0;
+        for (int battle = 0; battle < BATTLES; ++battle) {
+            attackerBelongings.restore();
+            defenderBelongings.restore();
+            fleeAttempts += fightTurnByTurn(attacker, defender, random);
+            loop.add(attacker, defender, attackerBelongings.changed() || defenderBelongings.changed());
+
+            attackerBelongings.restore();
+            defenderBelongings.restore();
+            new Battle(attacker, defender, random).fight();
+            resolver.add(attacker, defender, attackerBelongings.changed() || defenderBelongings.changed());
+        }
+        String pair = "%s %d attacking %s %d".formatted(attacker.getClass().getSimpleName(), attacker.getID(),
+                defender.getClass().getSimpleName(), defender.getID());
+
+        if (fleeAttempts == 0) {
+            assertTrue(loop.isConstant(), "The deterministic battles of %s vary in the loop".formatted(pair));
+            assertTrue(resolver.isConstant(), "The deterministic battles of %s vary".formatted(pair));
+            assertEquals(loop.lastHealth, resolver.lastHealth, "Health after the battles of " + pair);
+            assertEquals(loop.share(LOOTED), resolver.share(LOOTED), 0, "Spoils of the battles of " + pair);
+            return true;
+        }
+        for (int outcome = ATTACKER_WON; outcome <= LOOTED; ++outcome) {
+            double share = (loop.share(outcome) + resolver.share(outcome)) / 2;
+            double deviation = Math.sqrt(2 * share * (1 - share) / BATTLES);
+            assertEquals(loop.share(outcome), resolver.share(outcome), MAX_DEVIATIONS * deviation,
+                    "Share of outcome %d of the battles of %s".formatted(outcome, pair));
+        }
+        double attackerFull = attacker.getOwnedShip().getMaxHull() + attacker.getOwnedShip().getMaxShields();
+        double defenderFull = defender.getOwnedShip().getMaxHull() + defender.getOwnedShip().getMaxShields();
+        assertEquals(loop.attackerHealth / BATTLES / attackerFull, resolver.attackerHealth / BATTLES / attackerFull,
+                HEALTH_TOLERANCE, "Health left to the attacker in the battles of " + pair);
+        assertEquals(loop.defenderHealth / BATTLES / defenderFull, resolver.defenderHealth / BATTLES / defenderFull,
+                HEALTH_TOLERANCE, "Health left to the defender in the battles of " + pair);
+        return false;
+    }
+
+    /**
+     * Fights a battle the way the loop replaced by the BattleResolver did, except that it ends when
+     * a fighter dies.
+     *
+     * @param attacker  The attacking entity, which acts first.
+     * @param defender  The defending entity.
+     * @param generator The random generator deciding the flee attempts.
+     * @return The number of flee attempts.
+     */
+    private static int fightTurnByTurn(Entity attacker, Entity defender, RandomGenerator generator) {
+        Entity[] fighters = {attacker, defender};
+        int attempts = 0;
+        for (int turn = 0; turn < MAX_TURNS; ++turn) {
+            var attacking = fighters[turn % 2];
+            var attacked = fighters[(turn + 1) % 2];
+            var decision = attacking.battle(attacked);
+            switch (decision.actionType()) {
+                case attack -> attacked.takeDamage(decision.value());
+                case flee -> {
+                    ++attempts;
+                    if (generator.nextInt(0, 101) <= decision.value()) {
+                        return attempts;
+                    }
+                }
+            }
+            if (!attacked.isAlive()) {
+                attacking.won(attacked);
+                return attempts;
+            }
+        }
+        return attempts;
+    }
+
+    /**
+     * The credits and cargo an entity starts every battle with.
+     */
+    private static final class Belongings {
+        private final EntityStore store;
+        private final int slot;
+        private final int credits;
+        private final int[] cargo = new int[EconomyTables.GOODS_COUNT];
+
+        /**
+         * Remembers the current credits and cargo of an entity.
+         *
+         * @param entity The entity.
+         * @param store  The store of the entities.
+         */
+        Belongings(Entity entity, EntityStore store) {
+            this.store = store;
+            slot = EntityIDs.slotOf(entity.getID());
+            credits = store.getCredits(slot);
+            for (int good = 0; good < cargo.length; ++good) {
+                cargo[good] = store.getCargo(slot, good);
+            }
+        }
+
+        /**
+         * Repairs the ship of the entity and gives it back its credits and cargo.
+         */
+        void restore() {
+            store.setHull(slot, store.getMaxHull(slot));
+            store.setShields(slot, store.getMaxShields(slot));
+            store.setCredits(slot, credits);
+            for (int good = 0; good < cargo.length; ++good) {
+                store.setCargo(slot, good, cargo[good]);
+            }
+        }
+
+        /**
+         * Checks whether the credits or cargo of the entity changed since they were restored.
+         *
+         * @return True if they did.
+         */
+        boolean changed() {
+            if (store.getCredits(slot) != credits) {
+                return true;
+            }
+            for (int good = 0; good < cargo.length; ++good) {
+                if (store.getCargo(slot, good) != cargo[good]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The outcomes of the battles of one pair fought one way.
+     */
+    private static final class Outcomes {
+        private final int[] counts = new int[4];
+        private int battles = 0;
+        private double attackerHealth = 0;
+        private double defenderHealth = 0;
+        /** The hull and shields of both fighters after the last battle, packed into one value. */
+        private long lastHealth = 0;
+        private boolean constant = true;
+
+        /**
+         * Records the outcome of a finished battle.
+         *
+         * @param attacker The attacking entity.
+         * @param defender The defending entity.
+         * @param looted   True if the battle changed the credits or cargo of a fighter.
+         */
+        void add(Entity attacker, Entity defender, boolean looted) {
+            var attackerShip = attacker.getOwnedShip();
+            var defenderShip = defender.getOwnedShip();
+            ++counts[!defender.isAlive() ? ATTACKER_WON : !attacker.isAlive() ? DEFENDER_WON : ESCAPED];
+            if (looted) {
+                ++counts[LOOTED];
+            }
+            attackerHealth += attackerShip.getHull() + attackerShip.getShields();
+            defenderHealth += defenderShip.getHull() + defenderShip.getShields();
+
+            long health = (long) attackerShip.getHull() << 48 ^ (long) attackerShip.getShields() << 32
+                    ^ (long) defenderShip.getHull() << 16 ^ defenderShip.getShields();
+            constant &= battles == 0 || health == lastHealth;
+            lastHealth = health;
+            ++battles;
+        }
+
+        /**
+         * Gets the share of the battles that ended with an outcome, or in which the spoils were taken.
+         *
+         * @param outcome The outcome.
+         * @return The share of the battles, from 0 to 1.
+         */
+        double share(int outcome) {
+            return (double) counts[outcome] / battles;
+        }
+
+        /**
+         * Checks whether all battles ended with the same hull and shields.
+         *
+         * @return True if they did.
+         */
+        boolean isConstant() {
+            return constant;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package cz.cuni.mff.pijalekj.entities;
+
+import cz.cuni.mff.pijalekj.builders.EntityBuilder;
+import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.enums.EntityType;
+import cz.cuni.mff.pijalekj.managers.CriminalsManager;
+import cz.cuni.mff.pijalekj.managers.EntityManager;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.utils.WorldGenerator;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
+import cz.cuni.mff.pijalekj.world.EntityStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the maintenance NPCs do at a planet: what it repairs and what it charges for it.
+ */
+class EntityTest {
+    private static final int PLANETS = 20;
+    private static final long SEED = 1;
+    private static final int CREDITS = 10_000;
+
+    private EntityStore store;
+    private Entity entity;
+    private int slot;
+
+    @BeforeEach
+    void setUp() {
+        LocationsManager locations = WorldGenerator.generateLocations(PLANETS, SEED);
+        var criminals = new CriminalsManager(locations);
+        var entities = new EntityManager();
+        entities.reserve(1);
+        entities.setPlayer(new EntityBuilder(entities, locations, criminals)
+                .newPlayer(EntityManager.PLAYER_ID, 0, "Tester"));
+        entity = entities.getEntity(entities.spawn(EntityType.Trader, 0, locations, criminals));
+        store = entities.getStore();
+        slot = EntityIDs.slotOf(entity.getID());
+        store.setCredits(slot, CREDITS);
+    }
+
+    /**
+     * Maintenance must fill the tank and repair the hull to their maximums, charging the fuel and the hull
+     * points it adds at their own costs.
+     */
+    @Test
+    void maintenanceRefuelsAndRepairsToMaximum() {
+        int fuelDiff = store.getMaxFuel(slot) - 1;
+        int hullDiff = store.getMaxHull(slot) / 2;
+        store.setFuel(slot, 1);
+        store.setHull(slot, store.getMaxHull(slot) - hullDiff);
+
+        entity.maintenance();
+        assertEquals(store.getMaxFuel(slot), store.getFuel(slot));
+        assertEquals(store.getMaxHull(slot), store.getHull(slot));
+        assertEquals(CREDITS - fuelDiff * Constants.fuelCost - hullDiff * Constants.repairCost,
+                entity.getEntityStats().getCredits());
+    }
+
+    /**
+     * A ship that ran out of fuel must be refueled to its maximum, not beyond it.
+     */
+    @Test
+    void maintenanceOfEmptyTankStopsAtMaximum() {
+        store.setFuel(slot, -3);
+
+        entity.maintenance();
+        assertEquals(store.getMaxFuel(slot), store.getFuel(slot));
+        entity.maintenance();
+        assertEquals(store.getMaxFuel(slot), store.getFuel(slot));
+    }
+}
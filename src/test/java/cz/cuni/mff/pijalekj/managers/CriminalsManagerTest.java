@@ -0,0 +1,57 @@
+package cz.cuni.mff.pijalekj.managers;
+
+import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.utils.WorldGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the timing wheel of the CriminalsManager with the map-based countdown it replaced, which kept
+ * the remaining timeout of every criminal in a map and decremented all of them every tick.
+ */
+class CriminalsManagerTest {
+    private static final int TICKS = 20000;
+    private static final long SEED = 1;
+    /** The IDs of the entities marked and pardoned, from the player's -1 up. */
+    private static final int ENTITY_COUNT = 300;
+    private static final int MAX_CHANGES_PER_TICK = 4;
+
+    /**
+     * Every tick marks and pardons a few random entities, the player included, in both; after the tick,
+     * both must agree on the status of every entity and on the number of criminals.
+     */
+    @Test
+    void wheelMatchesCountdown() {
+        var random = new SplittableRandom(SEED);
+        var criminals = new CriminalsManager(WorldGenerator.generateLocations(50, SEED));
+        var timeouts = new HashMap<Integer, Integer>();
+
+        for (int tick = 0; tick < TICKS; ++tick) {
+            int changes = random.nextInt(MAX_CHANGES_PER_TICK);
+            for (int change = 0; change < changes; ++change) {
+                int entityID = random.nextInt(ENTITY_COUNT) - 1;
+                if (random.nextBoolean()) {
+                    criminals.addCriminal(entityID);
+                    timeouts.put(entityID, Constants.DEFAULT_TIMEOUT);
+                } else {
+                    criminals.removeCriminal(entityID);
+                    timeouts.remove(entityID);
+                }
+            }
+
+            criminals.updateCriminals();
+            timeouts.replaceAll((key, value) -> value - 1);
+            timeouts.entrySet().removeIf(item -> item.getValue() <= 0);
+
+            for (int entityID = -1; entityID < ENTITY_COUNT - 1; ++entityID) {
+                assertEquals(timeouts.containsKey(entityID), criminals.isCriminal(entityID),
+                        "Status of entity %d after tick %d".formatted(entityID, tick));
+            }
+            assertEquals(timeouts.size(), criminals.getCriminalCount(), "Criminals after tick " + tick);
+        }
+    }
+}
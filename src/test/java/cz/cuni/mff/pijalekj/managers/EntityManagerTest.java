@@ -0,0 +1,263 @@
+package cz.cuni.mff.pijalekj.managers;
+
+import cz.cuni.mff.pijalekj.builders.EntityBuilder;
+import cz.cuni.mff.pijalekj.entities.Entity;
+import cz.cuni.mff.pijalekj.entities.EntityStats;
+import cz.cuni.mff.pijalekj.entities.Pirate;
+import cz.cuni.mff.pijalekj.enums.EntityType;
+import cz.cuni.mff.pijalekj.persistence.SnapshotInput;
+import cz.cuni.mff.pijalekj.persistence.SnapshotOutput;
+import cz.cuni.mff.pijalekj.ships.Ship;
+import cz.cuni.mff.pijalekj.utils.WorldGenerator;
+import cz.cuni.mff.pijalekj.world.EntityIDs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the entity table of the EntityManager: the free list, the generations of reused indices and the
+ * retirement of indices in their last generation, as seen through IDs, fights and snapshots.
+ */
+class EntityManagerTest {
+    private static final int PLANETS = 20;
+    private static final long SEED = 1;
+
+    private LocationsManager locations;
+    private CriminalsManager criminals;
+    private EntityManager entities;
+
+    @BeforeEach
+    void setUp() {
+        locations = WorldGenerator.generateLocations(PLANETS, SEED);
+        criminals = new CriminalsManager(locations);
+        entities = new EntityManager();
+        entities.reserve(1);
+        entities.setPlayer(new EntityBuilder(entities, locations, criminals)
+                .newPlayer(EntityManager.PLAYER_ID, 0, "Tester"));
+    }
+
+    /**
+     * A despawned NPC's index must be reused by the next spawned NPC, in the next generation.
+     */
+    @Test
+    void despawnedIndexIsReusedInNextGeneration() {
+        int first = spawn(EntityType.Trader);
+        int second = spawn(EntityType.Pirate);
+        assertEquals(0, EntityIDs.indexOf(first));
+        assertEquals(1, EntityIDs.indexOf(second));
+        assertEquals(0, EntityIDs.generationOf(first));
+
+        entities.despawn(first, locations, criminals);
+        int third = spawn(EntityType.Police);
+        assertEquals(EntityIDs.indexOf(first), EntityIDs.indexOf(third), "The free index is not reused");
+        assertEquals(1, EntityIDs.generationOf(third), "The reused index keeps its generation");
+        assertNotEquals(first, third);
+        assertEquals(2, entities.getEntityCount());
+    }
+
+    /**
+     * A spawned NPC must be present at its planet, and adding it anywhere again must be refused instead of
+     * moving it, while moving it is allowed.
+     */
+    @Test
+    void spawnedNpcIsAddedOnlyOnce() {
+        int entityID = spawn(EntityType.Trader);
+        assertTrue(locations.anyPresent(0, 0, ID -> ID == entityID));
+        assertThrows(IllegalArgumentException.class, () -> locations.addEntityTo(entityID, 1));
+        assertTrue(locations.anyPresent(0, 0, ID -> ID == entityID), "A refused add moved the NPC");
+
+        locations.moveEntity(entityID, 1);
+        assertFalse(locations.anyPresent(0, 0, ID -> ID == entityID));
+        assertTrue(locations.anyPresent(1, 1, ID -> ID == entityID));
+    }
+
+    /**
+     * An ID kept after its NPC was despawned must be recognized as stale, before and after its index is reused.
+     */
+    @Test
+    void staleIdIsRejected() {
+        int stale = spawn(EntityType.Trader);
+        entities.despawn(stale, locations, criminals);
+        assertFalse(entities.isCurrent(stale));
+        assertThrows(IllegalArgumentException.class, () -> entities.getEntity(stale));
+
+        int current = spawn(EntityType.Trader);
+        assertFalse(entities.isCurrent(stale));
+        assertThrows(IllegalArgumentException.class, () -> entities.getEntity(stale));
+        assertThrows(IllegalArgumentException.class, () -> entities.getEntityShip(stale));
+        assertThrows(IllegalArgumentException.class, () -> entities.despawn(stale, locations, criminals));
+        assertTrue(entities.isCurrent(current));
+        assertEquals(current, entities.getEntity(current).getID());
+    }
+
+    /**
+     * An index despawned in its last generation must never be used again.
+     */
+    @Test
+    void indexInLastGenerationIsRetired() {
+        int last = cycleToLastGeneration();
+        assertEquals(EntityIDs.MAX_GENERATION, EntityIDs.generationOf(last));
+
+        entities.despawn(last, locations, criminals);
+        assertFalse(entities.isCurrent(last));
+        assertEquals(0, entities.getEntityCount());
+        int next = spawn(EntityType.Pirate);
+        assertEquals(1, EntityIDs.indexOf(next), "The retired index is reused");
+        assertEquals(0, EntityIDs.generationOf(next));
+        assertFalse(entities.isCurrent(last));
+        assertEquals(1, entities.getEntityCount());
+    }
+
+    /**
+     * A claim on an NPC despawned before the tick must be dropped, while a claim on the NPC reusing its index
+     * is accepted.
+     */
+    @Test
+    void staleTargetIsDropped() {
+        int[] target = {FightRequests.NO_TARGET};
+        int attacker = buildAttacker(target);
+        int stale = spawn(EntityType.Trader);
+        entities.despawn(stale, locations, criminals);
+        int current = spawn(EntityType.Trader);
+        assertEquals(EntityIDs.indexOf(stale), EntityIDs.indexOf(current));
+
+        target[0] = stale;
+        var requests = entities.play(OptionalInt.empty(), locations);
+        assertEquals(FightRequests.NO_TARGET, requests.getAttackedBy(attacker), "The stale target is attacked");
+
+        target[0] = current;
+        requests = entities.play(OptionalInt.empty(), locations);
+        assertEquals(current, requests.getAttackedBy(attacker), "The current target is not attacked");
+    }
+
+    /**
+     * A saved table must load with the same used, free and retired indices.
+     */
+    @Test
+    void snapshotKeepsFreeAndRetiredIndices() {
+        int retired = cycleToLastGeneration();
+        entities.despawn(retired, locations, criminals);
+        int live = spawn(EntityType.Police);
+        int free = spawn(EntityType.Trader);
+        entities.despawn(free, locations, criminals);
+
+        var out = new SnapshotOutput(256);
+        entities.save(out);
+        var loaded = new EntityManager();
+        loaded.load(inputOf(out), locations, criminals);
+
+        assertEquals(1, loaded.getEntityCount());
+        assertTrue(loaded.isCurrent(live));
+        assertFalse(loaded.isCurrent(retired));
+        assertFalse(loaded.isCurrent(free));
+        int reused = loaded.spawn(EntityType.Pirate, 0, locations, criminals);
+        assertEquals(EntityIDs.indexOf(free), EntityIDs.indexOf(reused), "The free index is not reused");
+        assertEquals(EntityIDs.generationOf(free) + 1, EntityIDs.generationOf(reused));
+        int appended = loaded.spawn(EntityType.Pirate, 0, locations, criminals);
+        assertEquals(3, EntityIDs.indexOf(appended), "The retired index is reused");
+    }
+
+    /**
+     * A table whose empty indices do not match its free list must not load.
+     */
+    @Test
+    void snapshotWithInvalidFreeListIsRejected() {
+        int trader = EntityType.Trader.ordinal() + 1;
+        // An empty index that is neither free nor in its last generation
+        assertRejected(new int[]{0, trader}, new int[0]);
+        // A free index that is in use
+        assertRejected(new int[]{trader, trader}, new int[]{1});
+        // A free index listed twice
+        assertRejected(new int[]{0, trader}, new int[]{0, 0});
+        // A free index out of the table
+        assertRejected(new int[]{0, trader}, new int[]{0, 2});
+        // A generation beyond the last one
+        assertRejected(new int[]{(EntityIDs.MAX_GENERATION + 1) << 3, trader}, new int[]{0});
+    }
+
+    /**
+     * Spawns an NPC at the first planet.
+     *
+     * @param type The type of the NPC.
+     * @return The ID of the NPC.
+     */
+    private int spawn(EntityType type) {
+        return entities.spawn(type, 0, locations, criminals);
+    }
+
+    /**
+     * Spawns and despawns NPCs at the same index until it reaches its last generation.
+     *
+     * @return The ID of the NPC at the index in its last generation.
+     */
+    private int cycleToLastGeneration() {
+        int entityID = spawn(EntityType.Trader);
+        int index = EntityIDs.indexOf(entityID);
+        while (EntityIDs.hasNextGeneration(EntityIDs.generationOf(entityID))) {
+            entities.despawn(entityID, locations, criminals);
+            entityID = spawn(EntityType.Trader);
+            assertEquals(index, EntityIDs.indexOf(entityID), "The free index is not reused");
+        }
+        return entityID;
+    }
+
+    /**
+     * Puts a pirate at the first index of the table, which claims whatever the array holds in every tick.
+     *
+     * @param target The target claimed by the pirate.
+     * @return The ID of the pirate.
+     */
+    private int buildAttacker(int[] target) {
+        int entityID = EntityIDs.of(0, 0);
+        entities.reserve(1);
+        new EntityBuilder(entities, locations, criminals).newEntity(entityID, 0, EntityType.Pirate);
+        var store = entities.getStore();
+        var attacker = new Pirate(new TravelManager(locations, store, entityID), entities, criminals,
+                new Ship(store, entityID), new EntityStats(store, entityID), entityID) {
+            @Override
+            public OptionalInt play() {
+                return target[0] == FightRequests.NO_TARGET ? OptionalInt.empty() : OptionalInt.of(target[0]);
+            }
+        };
+        entities.setEntities(new Entity[]{attacker});
+        locations.addEntityTo(entityID, 0);
+        return entityID;
+    }
+
+    /**
+     * Writes an entity table with the specified indices and free list and checks that it does not load.
+     *
+     * @param indices     The generation of every index, shifted left by 3, ORed with its type + 1 or 0.
+     * @param freeIndices The free indices.
+     */
+    private void assertRejected(int[] indices, int[] freeIndices) {
+        var out = new SnapshotOutput(64);
+        out.writeVarInt(indices.length);
+        out.writeVarInts(indices, 0, indices.length);
+        out.writeVarInt(freeIndices.length);
+        out.writeVarInts(freeIndices, 0, freeIndices.length);
+        out.writeString("Tester");
+        assertThrows(IllegalStateException.class,
+                () -> new EntityManager().load(inputOf(out), locations, criminals));
+    }
+
+    /**
+     * Reads back what was written into a SnapshotOutput.
+     *
+     * @param out The output.
+     * @return An input over its bytes.
+     */
+    private static SnapshotInput inputOf(SnapshotOutput out) {
+        var buffer = out.toByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new SnapshotInput(bytes, 0, bytes.length);
+    }
+}
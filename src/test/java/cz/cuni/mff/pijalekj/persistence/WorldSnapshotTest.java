@@ -0,0 +1,149 @@
+package cz.cuni.mff.pijalekj.persistence;
+
+import cz.cuni.mff.pijalekj.Simulation;
+import cz.cuni.mff.pijalekj.battle.BattleEngine;
+import cz.cuni.mff.pijalekj.managers.FightRequests;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Saves worlds run by a Simulation and checks that they load back as they were, and that damaged snapshots
+ * are rejected instead of being loaded as different worlds.
+ */
+class WorldSnapshotTest {
+    private static final int PLANETS = 300;
+    private static final int DENSITY = 2;
+    private static final long SEED = 7;
+    /** Not a multiple of the market period, so the world is saved between big ticks. */
+    private static final int TICKS = 50;
+    /** The number of positions of a snapshot that are truncated or damaged. */
+    private static final int SAMPLES = 256;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * A loaded world saved again must give a snapshot identical to the one it was loaded from.
+     */
+    @Test
+    void saveLoadSaveIsIdentical() throws IOException {
+        byte[] saved = save(runWorld(), "saved.snapshot");
+        WorldState loaded = WorldSnapshot.load(directory.resolve("saved.snapshot"));
+        assertArrayEquals(saved, save(loaded, "resaved.snapshot"));
+    }
+
+    /**
+     * A world loaded from a snapshot taken between big ticks must continue exactly as the saved world does.
+     */
+    @Test
+    void loadedWorldContinuesAsSaved() throws IOException {
+        var simulation = new Simulation.Builder()
+                .planets(PLANETS)
+                .density(DENSITY)
+                .seed(SEED)
+                .threads(2)
+                .build();
+        simulation.run(TICKS);
+        save(stateOf(simulation), "saved.snapshot");
+        WorldState loaded = WorldSnapshot.load(directory.resolve("saved.snapshot"));
+
+        simulation.run(TICKS);
+        // The saved world continues in parallel, the loaded one sequentially
+        var battleEngine = new BattleEngine(loaded.locationsManager().getRandom());
+        for (int tick = 0; tick < TICKS; ++tick) {
+            // The phases of a tick of the Simulation
+            boolean bigTick = loaded.clock().tick();
+            loaded.locationsManager().getRandom().setTick(loaded.clock().get_ticks());
+            if (bigTick) {
+                loaded.entityManager().resetNPCs(loaded.criminalsManager(), loaded.locationsManager());
+                loaded.locationsManager().updateAllPlanets();
+            }
+            FightRequests fightRequests = loaded.entityManager().play(OptionalInt.empty(), loaded.locationsManager());
+            battleEngine.resolve(fightRequests, loaded.entityManager(), loaded.criminalsManager());
+            loaded.criminalsManager().updateCriminals();
+        }
+
+        assertArrayEquals(save(stateOf(simulation), "continued.snapshot"), save(loaded, "loaded.snapshot"));
+    }
+
+    /**
+     * A snapshot cut off anywhere must not load.
+     */
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException {
+        byte[] saved = save(runWorld(), "saved.snapshot");
+        Path damaged = directory.resolve("truncated.snapshot");
+        for (int sample = 0; sample <= SAMPLES; ++sample) {
+            int length = (int) ((long) (saved.length - 1) * sample / SAMPLES);
+            Files.write(damaged, Arrays.copyOf(saved, length));
+            assertThrows(IOException.class, () -> WorldSnapshot.load(damaged),
+                    "Snapshot cut off after %d of %d bytes".formatted(length, saved.length));
+        }
+    }
+
+    /**
+     * A snapshot with a damaged byte anywhere must not load.
+     */
+    @Test
+    void corruptedSnapshotIsRejected() throws IOException {
+        byte[] saved = save(runWorld(), "saved.snapshot");
+        Path damaged = directory.resolve("corrupted.snapshot");
+        for (int sample = 0; sample <= SAMPLES; ++sample) {
+            int position = (int) ((long) (saved.length - 1) * sample / SAMPLES);
+            byte[] bytes = saved.clone();
+            bytes[position] ^= 0x5A;
+            Files.write(damaged, bytes);
+            assertThrows(IOException.class, () -> WorldSnapshot.load(damaged),
+                    "Snapshot damaged at byte %d of %d".formatted(position, saved.length));
+        }
+    }
+
+    /**
+     * Generates the seeded world and runs it for a while.
+     *
+     * @return The state of the world.
+     */
+    private static WorldState runWorld() {
+        var simulation = new Simulation.Builder()
+                .planets(PLANETS)
+                .density(DENSITY)
+                .seed(SEED)
+                .build();
+        simulation.run(TICKS);
+        return stateOf(simulation);
+    }
+
+    /**
+     * Gets everything a simulated world consists of.
+     *
+     * @param simulation The Simulation.
+     * @return The state of its world.
+     */
+    private static WorldState stateOf(Simulation simulation) {
+        return new WorldState(simulation.getLocationsManager(), simulation.getEntityManager(),
+                simulation.getCriminalsManager(), simulation.getClock());
+    }
+
+    /**
+     * Saves a world into the temporary directory.
+     *
+     * @param world The world.
+     * @param name  The name of the snapshot.
+     * @return The bytes of the snapshot.
+     * @throws IOException if the snapshot cannot be written or read.
+     */
+    private byte[] save(WorldState world, String name) throws IOException {
+        Path path = directory.resolve(name);
+        WorldSnapshot.save(path, world);
+        return Files.readAllBytes(path);
+    }
+}
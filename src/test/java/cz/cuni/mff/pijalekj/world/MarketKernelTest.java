@@ -0,0 +1,60 @@
+package cz.cuni.mff.pijalekj.world;
+
+import cz.cuni.mff.pijalekj.enums.PlanetIndustryType;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the scalar kernel of the big tick market update on random markets against the rules of the update.
+ * VectorMarketKernelTest checks the vectorized kernel against it.
+ */
+class MarketKernelTest {
+    static final long SEED = 1;
+    static final int PLANETS = 1000;
+    /** The position of planet 0 in the arrays, as if the good was not the first one. */
+    static final int OFFSET = 2 * PLANETS;
+    static final int BASE_PRICE = 40;
+    /** Ranges of planets, including empty ones and ones that do not fill whole vectors. */
+    static final int[][] RANGES = {{0, PLANETS}, {0, 0}, {3, 4}, {5, 18}, {17, 80}, {999, 1000}, {1, 999}};
+
+    private final SplittableRandom random = new SplittableRandom(SEED);
+    private final int typeCount = PlanetIndustryType.values().length;
+    final int[] types = random.ints(PLANETS, 0, typeCount).toArray();
+    final int[] production = random.ints(typeCount, 0, 10).toArray();
+    final int[] consumption = random.ints(typeCount, 0, 10).toArray();
+    /** Stocks from empty to large enough for prices to fall back to FALLBACK_PRICE. */
+    final int[] stock = random.ints(OFFSET + PLANETS, 0, 200).toArray();
+    final int[] jitter = random.ints(PLANETS, 0, 21).toArray();
+
+    /**
+     * The scalar kernel must produce and consume the good on every planet of the range, never going below
+     * zero, reprice it from the new stock, and leave the other planets alone.
+     */
+    @Test
+    void scalarKernelUpdatesRange() {
+        for (int[] range : RANGES) {
+            int from = range[0];
+            int to = range[1];
+            int[] updatedStock = stock.clone();
+            int[] updatedPrices = new int[stock.length];
+            new ScalarMarketKernel().update(updatedStock, updatedPrices, OFFSET, types, jitter,
+                    production, consumption, BASE_PRICE, from, to);
+
+            for (int planet = 0; planet < PLANETS; ++planet) {
+                int index = OFFSET + planet;
+                if (planet < from || planet >= to) {
+                    assertEquals(stock[index], updatedStock[index]);
+                    assertEquals(0, updatedPrices[index]);
+                    continue;
+                }
+                int amount = Math.max(stock[index] + production[types[planet]] - consumption[types[planet]], 0);
+                assertEquals(amount, updatedStock[index], "Stock of planet %d".formatted(planet));
+                assertEquals(MarketStore.computePrice(BASE_PRICE + jitter[planet - from], amount),
+                        updatedPrices[index], "Price of planet %d".formatted(planet));
+            }
+        }
+    }
+}
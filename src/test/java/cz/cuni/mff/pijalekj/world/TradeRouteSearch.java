@@ -0,0 +1,123 @@
+package cz.cuni.mff.pijalekj.world;
+
+/**
+ * An exhaustive route search, the reference TradeRouteTableTest checks the best routes of the table against.
+ * It walks every route of at most maxHops lanes from the origin that visits no planet twice, rates the
+ * planet each route ends at, and a planet replaces the best one so far only if it has a strictly higher
+ * rating. Routes that visit a planet twice are never shorter than the route that skips the loop, so the
+ * best rating found is the one of the best planet at its shortest route. The path is kept on primitive
+ * stacks and the planets of the current path are marked, so the search allocates nothing.
+ * <p>
+ * Planets are rated with TradeRouteTable.rank(), with as much stock at the origin as the table assumes.
+ * The search grew out of the depth-first search traders planned their trips with before the table, which
+ * visited every planet only through the first route that reached it.
+ */
+final class TradeRouteSearch {
+    private final LaneGraph lanes;
+    private final TradeRouteTable table;
+    private final int maxHops;
+    /** The planets of the current path, the origin first. */
+    private final int[] nodes;
+    /** The travel length from the origin to each planet of the current path. */
+    private final int[] lengths;
+    /** The index of the next neighbor to explore of each planet of the current path. */
+    private final int[] positions;
+    private final int[] bestPath;
+    /** Whether every planet is on the current path. */
+    private final boolean[] onPath;
+    private int bestRating;
+    private int bestTravelLength;
+
+    /**
+     * Constructs a search over a lane graph.
+     *
+     * @param lanes   The lane graph of the galaxy.
+     * @param table   The table whose rating rules rate the planets.
+     * @param maxHops The maximum number of lanes of a route.
+     */
+    TradeRouteSearch(LaneGraph lanes, TradeRouteTable table, int maxHops) {
+        this.lanes = lanes;
+        this.table = table;
+        this.maxHops = maxHops;
+        nodes = new int[maxHops + 1];
+        lengths = new int[maxHops + 1];
+        positions = new int[maxHops + 1];
+        bestPath = new int[maxHops + 1];
+        onPath = new boolean[lanes.getPlanetCount()];
+    }
+
+    /**
+     * Finds the best planet for a trader at the origin.
+     *
+     * @param originID  The ID of the planet the trader is at.
+     * @param credits   The credits of the trader.
+     * @param freeSpace The free cargo space of the trader.
+     * @return The number of planets of the best path, including the origin, or 0 if no planet was found.
+     */
+    int findBestRoute(int originID, int credits, int freeSpace) {
+        bestRating = Integer.MIN_VALUE;
+        bestTravelLength = 0;
+        int bestLength = 0;
+        int depth = 0;
+        nodes[0] = originID;
+        lengths[0] = 0;
+        positions[0] = 0;
+        onPath[originID] = true;
+
+        while (depth >= 0) {
+            int planetID = nodes[depth];
+            if (depth == maxHops || positions[depth] == lanes.getNeighborCount(planetID)) {
+                onPath[planetID] = false;
+                --depth;
+                continue;
+            }
+            int position = positions[depth]++;
+            int neighborID = lanes.getNeighbor(planetID, position);
+            if (onPath[neighborID]) {
+                continue;
+            }
+
+            onPath[neighborID] = true;
+            lengths[depth + 1] = lengths[depth] + lanes.getNeighborDistance(planetID, position);
+            ++depth;
+            nodes[depth] = neighborID;
+            positions[depth] = 0;
+
+            int rating = table.rank(originID, neighborID, lengths[depth], credits, freeSpace);
+            if (rating > bestRating) {
+                bestRating = rating;
+                bestTravelLength = lengths[depth];
+                bestLength = depth + 1;
+                System.arraycopy(nodes, 0, bestPath, 0, bestLength);
+            }
+        }
+        return bestLength;
+    }
+
+    /**
+     * Gets the rating of the best planet found by the last search.
+     *
+     * @return The rating.
+     */
+    int getBestRating() {
+        return bestRating;
+    }
+
+    /**
+     * Gets the travel length of the best path found by the last search.
+     *
+     * @return The sum of the distances of the lanes of the path.
+     */
+    int getBestTravelLength() {
+        return bestTravelLength;
+    }
+
+    /**
+     * Gets the best path found by the last search, the origin first.
+     *
+     * @return The path, as long as the last search returned.
+     */
+    int[] getBestPath() {
+        return bestPath;
+    }
+}
@@ -0,0 +1,269 @@
+package cz.cuni.mff.pijalekj.world;
+
+import cz.cuni.mff.pijalekj.constants.Constants;
+import cz.cuni.mff.pijalekj.constants.EconomyTables;
+import cz.cuni.mff.pijalekj.managers.LocationsManager;
+import cz.cuni.mff.pijalekj.utils.WorldGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cross-checks the TradeRouteTable against a brute-force enumeration of all routes of at most
+ * TRADE_PLAN_DEPTH lanes and against the exhaustive TradeRouteSearch. Every check is repeated over a few
+ * big ticks, so that rows rebuilt at the big tick and on access are checked too.
+ */
+class TradeRouteTableTest {
+    private static final int PLANETS = 500;
+    private static final long SEED = 1;
+    private static final int BIG_TICKS = 3;
+    /** A trader's credits and free space falling into every bracket, in the order of the brackets. */
+    private static final int[] CREDITS = {1000, 2500, 10000, 50000};
+    private static final int[] FREE_SPACE = {10, 25, 50};
+
+    /**
+     * The routes of the table must be real routes of their stated length, that length must be the
+     * shortest one, and the ratings the routes are ranked by must be the best ratings of the brute force,
+     * in order.
+     */
+    @Test
+    void routesMatchBruteForce() {
+        LocationsManager locations = WorldGenerator.generateLocations(PLANETS, SEED);
+        LaneGraph lanes = locations.getLaneGraph();
+        TradeRouteTable table = locations.getTradeRoutes();
+        int[] shortest = new int[PLANETS];
+        int[] ratings = new int[PLANETS];
+        int[] stops = new int[Constants.TRADE_PLAN_DEPTH - 1];
+
+        for (int bigTick = 0; bigTick < BIG_TICKS; ++bigTick) {
+            for (int originID = 0; originID < PLANETS; ++originID) {
+                Arrays.fill(shortest, Integer.MAX_VALUE);
+                enumerate(lanes, originID, 0, 0, shortest);
+
+                for (int bracket = 0; bracket < TradeRouteTable.BRACKET_COUNT; ++bracket) {
+                    int credits = CREDITS[bracket / FREE_SPACE.length];
+                    int freeSpace = FREE_SPACE[bracket % FREE_SPACE.length];
+                    assertEquals(bracket, TradeRouteTable.getBracket(credits, freeSpace), "Bracket of the test");
+
+                    int reachable = 0;
+                    for (int planetID = 0; planetID < PLANETS; ++planetID) {
+                        if (planetID != originID && shortest[planetID] != Integer.MAX_VALUE) {
+                            ratings[reachable++] = table.rank(originID, planetID, shortest[planetID], credits,
+                                    freeSpace);
+                        }
+                    }
+                    Arrays.sort(ratings, 0, reachable);
+
+                    for (int rank = 0; rank < TradeRouteTable.ROUTES_PER_BRACKET; ++rank) {
+                        int destinationID = table.getDestination(originID, bracket, rank);
+                        String route = "Route %d of bracket %d from planet %d".formatted(rank, bracket, originID);
+                        if (destinationID < 0) {
+                            assertTrue(rank >= reachable, route + " is missing");
+                            break;
+                        }
+
+                        int travelLength = table.getTravelLength(originID, bracket, rank);
+                        assertEquals(shortest[destinationID], travelLength, route + " is not the shortest one");
+
+                        int stopCount = table.copyStops(originID, bracket, rank, stops);
+                        int from = originID;
+                        int length = 0;
+                        for (int stop = 0; stop <= stopCount; ++stop) {
+                            int to = stop < stopCount ? stops[stop] : destinationID;
+                            assertTrue(to != destinationID || stop == stopCount, route + " passes its destination");
+                            int lane = lanes.getLaneIndex(from, to);
+                            assertTrue(lane >= 0, route + " uses a missing lane");
+                            length += lanes.getLaneDistance(lane);
+                            from = to;
+                        }
+                        assertEquals(travelLength, length, route + " has stops of another length");
+
+                        int rating = table.rank(originID, destinationID, travelLength, credits, freeSpace);
+                        assertEquals(ratings[reachable - 1 - rank], rating, route + " is not rated as the brute force");
+                    }
+                }
+            }
+            locations.updateAllPlanets();
+        }
+    }
+
+    /**
+     * The best route of the table must be rated exactly as the best route of the exhaustive search, and the
+     * best path of the search must be a real route of its stated length. Both are rated as the table ranks
+     * its routes.
+     */
+    @Test
+    void bestRoutesMatchExhaustiveSearch() {
+        LocationsManager locations = WorldGenerator.generateLocations(PLANETS, SEED);
+        LaneGraph lanes = locations.getLaneGraph();
+        TradeRouteTable table = locations.getTradeRoutes();
+        var search = new TradeRouteSearch(lanes, table, Constants.TRADE_PLAN_DEPTH);
+
+        for (int bigTick = 0; bigTick < BIG_TICKS; ++bigTick) {
+            for (int originID = 0; originID < PLANETS; ++originID) {
+                for (int bracket = 0; bracket < TradeRouteTable.BRACKET_COUNT; ++bracket) {
+                    int credits = CREDITS[bracket / FREE_SPACE.length];
+                    int freeSpace = FREE_SPACE[bracket % FREE_SPACE.length];
+                    String routes = "Routes of bracket %d from planet %d".formatted(bracket, originID);
+                    int pathLength = search.findBestRoute(originID, credits, freeSpace);
+                    int destinationID = table.getDestination(originID, bracket, 0);
+                    if (pathLength == 0) {
+                        assertEquals(-1, destinationID, routes + " lead nowhere in the search");
+                        continue;
+                    }
+                    assertTrue(destinationID >= 0, routes + " are missing");
+
+                    int[] path = search.getBestPath();
+                    int length = 0;
+                    for (int planet = 1; planet < pathLength; ++planet) {
+                        length += lanes.getDistanceBetween(path[planet - 1], path[planet]);
+                    }
+                    assertEquals(search.getBestTravelLength(), length, routes + " differ in the search path");
+
+                    int travelLength = table.getTravelLength(originID, bracket, 0);
+                    int rating = table.rank(originID, destinationID, travelLength, credits, freeSpace);
+                    assertEquals(search.getBestRating(), rating, routes + " are rated otherwise than the search");
+                }
+            }
+            locations.updateAllPlanets();
+        }
+    }
+
+    /**
+     * A row must only depend on the big tick: rows of a lazy world built right after a big tick must equal
+     * the rows of an eager world built after the stock of every planet changed, as trades would change it.
+     * The stock is restored before the next big tick, so that both worlds keep the same prices. Rows
+     * accessed in one big tick are rebuilt by the next one before the stock changes, so every big tick
+     * only checks the origins not accessed in the previous one.
+     */
+    @Test
+    void rowsOnlyDependOnBigTick() {
+        LocationsManager lazy = WorldGenerator.generateLocations(PLANETS, SEED);
+        LocationsManager eager = WorldGenerator.generateLocations(PLANETS, SEED);
+        lazy.setLazyMarkets(true);
+        eager.setLazyMarkets(false);
+        int[] lazyStops = new int[Constants.TRADE_PLAN_DEPTH - 1];
+        int[] eagerStops = new int[Constants.TRADE_PLAN_DEPTH - 1];
+        int[] stock = new int[PLANETS * EconomyTables.GOODS_COUNT];
+
+        for (int bigTick = 0; bigTick < BIG_TICKS; ++bigTick) {
+            lazy.updateAllPlanets();
+            eager.updateAllPlanets();
+            MarketStore markets = eager.getMarkets();
+            for (int planetID = 0; planetID < PLANETS; ++planetID) {
+                for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+                    stock[planetID * EconomyTables.GOODS_COUNT + good] = markets.getStock(planetID, good);
+                    markets.setStock(planetID, good, markets.getStock(planetID, good) / 2);
+                }
+            }
+
+            for (int originID = bigTick % 2; originID < PLANETS; originID += 2) {
+                for (int bracket = 0; bracket < TradeRouteTable.BRACKET_COUNT; ++bracket) {
+                    for (int rank = 0; rank < TradeRouteTable.ROUTES_PER_BRACKET; ++rank) {
+                        String route = "Route %d of bracket %d from planet %d".formatted(rank, bracket, originID);
+                        int destinationID = lazy.getTradeRoutes().getDestination(originID, bracket, rank);
+                        assertEquals(destinationID, eager.getTradeRoutes().getDestination(originID, bracket, rank),
+                                route + " has another destination");
+                        if (destinationID < 0) {
+                            break;
+                        }
+                        assertEquals(lazy.getTradeRoutes().getTravelLength(originID, bracket, rank),
+                                eager.getTradeRoutes().getTravelLength(originID, bracket, rank),
+                                route + " has another length");
+                        int stopCount = lazy.getTradeRoutes().copyStops(originID, bracket, rank, lazyStops);
+                        assertEquals(stopCount, eager.getTradeRoutes().copyStops(originID, bracket, rank, eagerStops),
+                                route + " has another number of stops");
+                        assertArrayEquals(Arrays.copyOf(lazyStops, stopCount), Arrays.copyOf(eagerStops, stopCount),
+                                route + " has other stops");
+                    }
+                }
+            }
+
+            for (int planetID = 0; planetID < PLANETS; ++planetID) {
+                for (int good = 0; good < EconomyTables.GOODS_COUNT; ++good) {
+                    markets.setStock(planetID, good, stock[planetID * EconomyTables.GOODS_COUNT + good]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A big tick must rebuild exactly the rows accessed since the previous one, and only once: a row not
+     * accessed again must be left out of date by the big tick after. The rebuilt rows must equal the rows
+     * of another world with the same seed that are built on access.
+     */
+    @Test
+    void usedRowsAreRebuiltAtBigTick() {
+        LocationsManager locations = WorldGenerator.generateLocations(PLANETS, SEED);
+        LocationsManager other = WorldGenerator.generateLocations(PLANETS, SEED);
+        locations.setLazyMarkets(true);
+        other.setLazyMarkets(true);
+        TradeRouteTable table = locations.getTradeRoutes();
+        TradeRouteTable otherTable = other.getTradeRoutes();
+
+        for (int originID = 0; originID < PLANETS; originID += 2) {
+            table.getDestination(originID, 0, 0);
+        }
+        locations.updateAllPlanets();
+        other.updateAllPlanets();
+        for (int originID = 0; originID < PLANETS; ++originID) {
+            assertEquals(originID % 2 == 0, table.isUpToDate(originID),
+                    "Row of planet %d after the first big tick".formatted(originID));
+        }
+
+        for (int originID = 0; originID < PLANETS; originID += 2) {
+            for (int bracket = 0; bracket < TradeRouteTable.BRACKET_COUNT; ++bracket) {
+                for (int rank = 0; rank < TradeRouteTable.ROUTES_PER_BRACKET; ++rank) {
+                    String route = "Route %d of bracket %d from planet %d".formatted(rank, bracket, originID);
+                    int destinationID = table.getDestination(originID, bracket, rank);
+                    assertEquals(otherTable.getDestination(originID, bracket, rank), destinationID,
+                            route + " has another destination");
+                    if (destinationID < 0) {
+                        break;
+                    }
+                    assertEquals(otherTable.getTravelLength(originID, bracket, rank),
+                            table.getTravelLength(originID, bracket, rank), route + " has another length");
+                }
+            }
+        }
+
+        for (int originID = 1; originID < PLANETS; originID += 4) {
+            table.getDestination(originID, 0, 0);
+        }
+        locations.updateAllPlanets();
+        for (int originID = 0; originID < PLANETS; ++originID) {
+            assertEquals(originID % 2 == 0 || originID % 4 == 1, table.isUpToDate(originID),
+                    "Row of planet %d after the second big tick".formatted(originID));
+        }
+        locations.updateAllPlanets();
+        for (int originID = 0; originID < PLANETS; ++originID) {
+            assertFalse(table.isUpToDate(originID), "Row of planet %d after the third big tick".formatted(originID));
+        }
+    }
+
+    /**
+     * Enumerates all routes of at most TRADE_PLAN_DEPTH lanes from a planet, recording the shortest travel
+     * length to every planet reached.
+     *
+     * @param lanes    The lane graph.
+     * @param planetID The planet the route has reached.
+     * @param length   The travel length of the route so far.
+     * @param hops     The number of lanes of the route so far.
+     * @param shortest The shortest travel lengths found so far.
+     */
+    private static void enumerate(LaneGraph lanes, int planetID, int length, int hops, int[] shortest) {
+        shortest[planetID] = Math.min(shortest[planetID], length);
+        if (hops == Constants.TRADE_PLAN_DEPTH) {
+            return;
+        }
+        for (int neighbor = 0; neighbor < lanes.getNeighborCount(planetID); ++neighbor) {
+            enumerate(lanes, lanes.getNeighbor(planetID, neighbor),
+                    length + lanes.getNeighborDistance(planetID, neighbor), hops + 1, shortest);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package cz.cuni.mff.pijalekj.world;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Checks the vectorized kernel of the big tick market update against the scalar one, on the random markets
+ * of MarketKernelTest. Like the kernel, it is only built and run with the vector profile.
+ */
+class VectorMarketKernelTest extends MarketKernelTest {
+    /**
+     * The vectorized kernel must give exactly the same stock and prices as the scalar one.
+     */
+    @Test
+    void vectorKernelMatchesScalarKernel() {
+        for (int[] range : RANGES) {
+            int[] scalarStock = stock.clone();
+            int[] scalarPrices = new int[stock.length];
+            new ScalarMarketKernel().update(scalarStock, scalarPrices, OFFSET, types, jitter,
+                    production, consumption, BASE_PRICE, range[0], range[1]);
+            int[] vectorStock = stock.clone();
+            int[] vectorPrices = new int[stock.length];
+            new VectorMarketKernel().update(vectorStock, vectorPrices, OFFSET, types, jitter,
+                    production, consumption, BASE_PRICE, range[0], range[1]);
+
+            String message = "Planets %d to %d".formatted(range[0], range[1]);
+            assertArrayEquals(scalarStock, vectorStock, message);
+            assertArrayEquals(scalarPrices, vectorPrices, message);
+        }
+    }
+
+    /**
+     * With the module present, the markets must pick the vectorized kernel.
+     */
+    @Test
+    void marketsUseVectorKernel() {
+        assertInstanceOf(VectorMarketKernel.class, MarketStore.createVectorKernel());
+    }
+}